@@ -0,0 +1,57 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmarks jar. Accepts the standard JMH command line options (for example, a benchmark
+ * name regex, "-p numBoxes=1000" or "-f 2") but unlike the default JMH main class, results are written as JSON
+ * to {@link #DEFAULT_RESULT_FILE} unless "-rf" and/or "-rff" are specified, so they can be tracked over time.
+ */
+public class BenchmarkRunner {
+
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    private BenchmarkRunner(){ }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if(cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            //Listing/help only - delegate to JMH
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder b = new OptionsBuilder().parent(cmd);
+        if(!cmd.getResultFormat().hasValue()) {
+            b.resultFormat(ResultFormatType.JSON);
+        }
+        if(!cmd.getResult().hasValue()) {
+            b.result(DEFAULT_RESULT_FILE);
+        }
+
+        new Runner(b.build()).run();
+    }
+}
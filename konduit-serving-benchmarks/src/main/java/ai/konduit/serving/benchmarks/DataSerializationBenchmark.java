@@ -0,0 +1,123 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.pipeline.api.data.BoundingBox;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.ValueType;
+import ai.konduit.serving.pipeline.impl.data.ProtoData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON and protobuf (de)serialization of {@link Data} instances, for a few representative payloads:
+ * <ul>
+ *     <li>SCALARS: a handful of strings, numbers and booleans - for example, request metadata or classifier output</li>
+ *     <li>IMAGE_NDARRAY: a single float32 [1, 3, 224, 224] array - a typical preprocessed image</li>
+ *     <li>DETECTIONS: a list of 100 bounding boxes plus a small [1, 100] probability array - typical detector output</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataSerializationBenchmark {
+
+    public enum Payload {SCALARS, IMAGE_NDARRAY, DETECTIONS}
+
+    @Param({"SCALARS", "IMAGE_NDARRAY", "DETECTIONS"})
+    public Payload payload;
+
+    private Data data;
+    private String json;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        data = create(payload);
+        json = data.toJson();
+        bytes = data.asBytes();
+    }
+
+    protected static Data create(Payload payload) {
+        Random r = new Random(12345);
+        switch (payload) {
+            case SCALARS:
+                Data d = Data.empty();
+                d.put("label", "golden retriever");
+                d.put("index", 207L);
+                d.put("prob", 0.9312);
+                d.put("valid", true);
+                d.putListString("top5", Arrays.asList("golden retriever", "labrador", "kuvasz", "tennis ball", "clumber"));
+                return d;
+            case IMAGE_NDARRAY:
+                float[][][][] img = new float[1][3][224][224];
+                for (float[][] channel : img[0]) {
+                    for (float[] row : channel) {
+                        for (int i = 0; i < row.length; i++) {
+                            row[i] = r.nextFloat();
+                        }
+                    }
+                }
+                return Data.singleton("image", NDArray.create(img));
+            case DETECTIONS:
+                List<BoundingBox> boxes = new ArrayList<>();
+                float[][] probs = new float[1][100];
+                for (int i = 0; i < 100; i++) {
+                    double x = r.nextDouble() * 0.8, y = r.nextDouble() * 0.8;
+                    probs[0][i] = r.nextFloat();
+                    boxes.add(BoundingBox.createXY(x, x + 0.1, y, y + 0.1, "class_" + r.nextInt(80), (double) probs[0][i]));
+                }
+                Data det = Data.singletonList("bounding_boxes", boxes, ValueType.BOUNDING_BOX);
+                det.put("detection_scores", NDArray.create(probs));
+                return det;
+            default:
+                throw new IllegalStateException("Unknown payload: " + payload);
+        }
+    }
+
+    @Benchmark
+    public String toJson() {
+        return data.toJson();
+    }
+
+    @Benchmark
+    public Data fromJson() {
+        return Data.fromJson(json);
+    }
+
+    @Benchmark
+    public byte[] protoAsBytes() {
+        return data.asBytes();
+    }
+
+    @Benchmark
+    public Data protoFromBytes() {
+        return ProtoData.fromBytes(bytes);
+    }
+}
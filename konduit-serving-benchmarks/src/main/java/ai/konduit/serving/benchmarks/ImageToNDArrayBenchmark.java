@@ -0,0 +1,97 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.data.image.convert.ImageToNDArray;
+import ai.konduit.serving.data.image.convert.ImageToNDArrayConfig;
+import ai.konduit.serving.data.image.convert.config.NDFormat;
+import ai.konduit.serving.pipeline.api.data.Image;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.NDArrayType;
+import org.bytedeco.javacpp.indexer.UByteIndexer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+
+/**
+ * {@link ImageToNDArray#convert(Image, ImageToNDArrayConfig)} for common input resolutions and model input sizes,
+ * with the default (center crop, RGB, [0,1] scaling) configuration
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageToNDArrayBenchmark {
+
+    /**
+     * Input image resolution, "WxH"
+     */
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String inputResolution;
+
+    /**
+     * Output NDArray height and width
+     */
+    @Param({"224", "416"})
+    public int outputSize;
+
+    @Param({"CHANNELS_FIRST", "CHANNELS_LAST"})
+    public NDFormat format;
+
+    private Image image;
+    private ImageToNDArrayConfig config;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] split = inputResolution.split("x");
+        int w = Integer.parseInt(split[0]);
+        int h = Integer.parseInt(split[1]);
+
+        Random r = new Random(12345);
+        Mat m = new Mat(h, w, CV_8UC3);
+        UByteIndexer idx = m.createIndexer();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                for (int c = 0; c < 3; c++) {
+                    idx.put(y, x, c, r.nextInt(256));
+                }
+            }
+        }
+        idx.release();
+        image = Image.create(m);
+
+        config = new ImageToNDArrayConfig()
+                .height(outputSize)
+                .width(outputSize)
+                .dataType(NDArrayType.FLOAT)
+                .format(format);
+    }
+
+    @Benchmark
+    public NDArray convert() {
+        return ImageToNDArray.convert(image, config);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import ai.konduit.serving.pipeline.impl.format.JavaNDArrayConverters;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions between Java arrays and {@link SerializedNDArray} as implemented in {@link JavaNDArrayConverters}.<br>
+ * A new NDArray wrapper is created on every invocation, so the converter lookup in the NDArrayConverterRegistry is
+ * included in the measurement (as it is in the real pipeline runners), but no cached conversion result can be reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NDArrayConversionBenchmark {
+
+    /**
+     * Image side length: arrays are [1, 3, size, size] (rank 4) or 3*size*size (rank 1)
+     */
+    @Param({"32", "224", "512"})
+    public int size;
+
+    private float[] float1d;
+    private float[][][][] float4d;
+    private double[][][][] double4d;
+    private SerializedNDArray serializedFloat4d;
+    private SerializedNDArray serializedFloat1d;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random r = new Random(12345);
+        float1d = new float[3 * size * size];
+        for (int i = 0; i < float1d.length; i++) {
+            float1d[i] = r.nextFloat();
+        }
+        float4d = new float[1][3][size][size];
+        double4d = new double[1][3][size][size];
+        for (int c = 0; c < 3; c++) {
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    float4d[0][c][y][x] = r.nextFloat();
+                    double4d[0][c][y][x] = float4d[0][c][y][x];
+                }
+            }
+        }
+        serializedFloat1d = NDArray.create(float1d).getAs(SerializedNDArray.class);
+        serializedFloat4d = NDArray.create(float4d).getAs(SerializedNDArray.class);
+    }
+
+    @Benchmark
+    public SerializedNDArray float1dToSerialized() {
+        return NDArray.create(float1d).getAs(SerializedNDArray.class);
+    }
+
+    @Benchmark
+    public SerializedNDArray float4dToSerialized() {
+        return NDArray.create(float4d).getAs(SerializedNDArray.class);
+    }
+
+    @Benchmark
+    public SerializedNDArray double4dToSerialized() {
+        return NDArray.create(double4d).getAs(SerializedNDArray.class);
+    }
+
+    @Benchmark
+    public float[] serializedToFloat1d() {
+        return NDArray.create(serializedFloat1d).getAs(float[].class);
+    }
+
+    @Benchmark
+    public float[][][][] serializedToFloat4d() {
+        return NDArray.create(serializedFloat4d).getAs(float[][][][].class);
+    }
+}
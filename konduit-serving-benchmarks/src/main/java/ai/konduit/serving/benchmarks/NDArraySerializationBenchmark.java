@@ -0,0 +1,112 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.NDArrayType;
+import ai.konduit.serving.pipeline.impl.data.ProtoData;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protobuf serialization and deserialization of a single large float32 NDArray (for example, a feature tensor).<br>
+ * The interesting metric is the allocation per operation rather than the time: run with the GC profiler
+ * ({@code -prof gc}) and compare {@code gc.alloc.rate.norm} to the array size. Ideally:
+ * <ul>
+ *     <li>{@code asBytes}: one allocation of the array size (the output array)</li>
+ *     <li>{@code fromBytes}: no allocation proportional to the array size (NDArray bytes are views of the input)</li>
+ *     <li>{@code write}: no allocation proportional to the array size (written straight to the stream)</li>
+ *     <li>{@code roundTrip}: one allocation of the array size</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class NDArraySerializationBenchmark {
+
+    @Param({"1", "64"})
+    public int sizeMB;
+
+    private Data data;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int length = sizeMB * 1024 * 1024 / 4;
+        ByteBuffer bb = ByteBuffer.allocateDirect(length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < length; i++) {
+            bb.putFloat(i / (float) length);
+        }
+        data = Data.singleton("features", NDArray.create(new SerializedNDArray(NDArrayType.FLOAT, new long[]{1, length}, bb)));
+        bytes = data.asBytes();
+    }
+
+    @Benchmark
+    public byte[] asBytes() {
+        return data.asBytes();
+    }
+
+    @Benchmark
+    public Data fromBytes() {
+        return ProtoData.fromBytes(bytes);
+    }
+
+    @Benchmark
+    public void write(Blackhole bh) throws IOException {
+        data.write(new BlackholeOutputStream(bh));
+    }
+
+    @Benchmark
+    public Data roundTrip() {
+        return ProtoData.fromBytes(ProtoData.fromBytes(bytes).asBytes());
+    }
+
+    /**
+     * Consumes the written bytes without storing them
+     */
+    private static class BlackholeOutputStream extends OutputStream {
+        private final Blackhole bh;
+
+        private BlackholeOutputStream(Blackhole bh) {
+            this.bh = bh;
+        }
+
+        @Override
+        public void write(int b) {
+            bh.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bh.consume(b);
+            bh.consume(len);
+        }
+    }
+}
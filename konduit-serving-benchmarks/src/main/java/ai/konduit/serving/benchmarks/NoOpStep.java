@@ -0,0 +1,73 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.pipeline.api.context.Context;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.step.PipelineStep;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunnerFactory;
+import ai.konduit.serving.pipeline.registry.PipelineRegistry;
+
+/**
+ * A pipeline step that returns its input unchanged - used to measure the overhead of the pipeline executors themselves.
+ */
+public class NoOpStep implements PipelineStep {
+
+    static {
+        PipelineRegistry.registerStepRunnerFactory(new Factory());
+    }
+
+    public static class Factory implements PipelineStepRunnerFactory {
+
+        @Override
+        public boolean canRun(PipelineStep pipelineStep) {
+            return pipelineStep instanceof NoOpStep;
+        }
+
+        @Override
+        public PipelineStepRunner create(PipelineStep pipelineStep) {
+            return new Runner((NoOpStep) pipelineStep);
+        }
+    }
+
+    public static class Runner implements PipelineStepRunner {
+        private final NoOpStep step;
+
+        public Runner(NoOpStep step) {
+            this.step = step;
+        }
+
+        @Override
+        public void close() {
+
+        }
+
+        @Override
+        public PipelineStep getPipelineStep() {
+            return step;
+        }
+
+        @Override
+        public Data exec(Context ctx, Data data) {
+            return data;
+        }
+    }
+}
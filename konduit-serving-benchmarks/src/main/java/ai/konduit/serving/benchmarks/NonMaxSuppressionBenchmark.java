@@ -0,0 +1,87 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.pipeline.impl.step.bbox.nms.NonMaxSuppression;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for {@link NonMaxSuppression} over 1k to 20k candidate boxes.<br>
+ * Boxes are random, with sizes chosen so a realistic fraction of them overlap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NonMaxSuppressionBenchmark {
+
+    @Param({"1000", "5000", "20000"})
+    public int numBoxes;
+
+    @Param({"1", "80"})
+    public int numClasses;
+
+    private float[] x1;
+    private float[] y1;
+    private float[] x2;
+    private float[] y2;
+    private float[] scores;
+    private int[] classes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random r = new Random(12345);
+        x1 = new float[numBoxes];
+        y1 = new float[numBoxes];
+        x2 = new float[numBoxes];
+        y2 = new float[numBoxes];
+        scores = new float[numBoxes];
+        classes = new int[numBoxes];
+        for (int i = 0; i < numBoxes; i++) {
+            x1[i] = r.nextFloat() * 0.9f;
+            y1[i] = r.nextFloat() * 0.9f;
+            x2[i] = x1[i] + 0.02f + r.nextFloat() * 0.1f;
+            y2[i] = y1[i] + 0.02f + r.nextFloat() * 0.1f;
+            scores[i] = r.nextFloat();
+            classes[i] = r.nextInt(numClasses);
+        }
+    }
+
+    @Benchmark
+    public int[] hardNms() {
+        return NonMaxSuppression.nms(x1, y1, x2, y2, scores, numClasses > 1 ? classes : null, 0.5f, 0);
+    }
+
+    @Benchmark
+    public int[] hardNmsMax100() {
+        return NonMaxSuppression.nms(x1, y1, x2, y2, scores, numClasses > 1 ? classes : null, 0.5f, 100);
+    }
+
+    @Benchmark
+    public int[] softNms() {
+        //Soft-NMS modifies the scores in place
+        return NonMaxSuppression.softNms(x1, y1, x2, y2, scores.clone(), numClasses > 1 ? classes : null, 0.5f, 0.05f, 0);
+    }
+}
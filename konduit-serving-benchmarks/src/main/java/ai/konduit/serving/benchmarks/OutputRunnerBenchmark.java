@@ -0,0 +1,168 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.pipeline.api.data.BoundingBox;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.ValueType;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.pipeline.impl.step.bbox.nms.BoundingBoxNMSStep;
+import ai.konduit.serving.pipeline.impl.step.bbox.nms.BoundingBoxNMSStepRunner;
+import ai.konduit.serving.pipeline.impl.step.bbox.yolo.YoloToBoundingBoxRunner;
+import ai.konduit.serving.pipeline.impl.step.bbox.yolo.YoloToBoundingBoxStep;
+import ai.konduit.serving.pipeline.impl.step.ml.classifier.ClassifierOutputRunner;
+import ai.konduit.serving.pipeline.impl.step.ml.classifier.ClassifierOutputStep;
+import ai.konduit.serving.pipeline.impl.step.ml.ssd.SSDToBoundingBoxRunner;
+import ai.konduit.serving.pipeline.impl.step.ml.ssd.SSDToBoundingBoxStep;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Model output post-processing runners, executed directly (without a pipeline executor), on outputs shaped like
+ * those of common models:
+ * <ul>
+ *     <li>Classifier: [1, 1000] probabilities (ImageNet), top 5</li>
+ *     <li>YOLO: [1, 5*(5+80), 13, 13] activations (5 priors, COCO classes)</li>
+ *     <li>SSD: 100 detections (TensorFlow object detection API output format)</li>
+ *     <li>NMS: 1000 bounding boxes over 80 labels</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputRunnerBenchmark {
+
+    private PipelineStepRunner classifier;
+    private Data classifierInput;
+
+    private PipelineStepRunner yolo;
+    private Data yoloInput;
+
+    private PipelineStepRunner ssd;
+    private Data ssdInput;
+
+    private PipelineStepRunner nms;
+    private Data nmsInput;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random r = new Random(12345);
+
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            labels.add("label_" + i);
+        }
+        float[][] probs = new float[1][1000];
+        float sum = 0;
+        for (int i = 0; i < 1000; i++) {
+            probs[0][i] = r.nextFloat();
+            sum += probs[0][i];
+        }
+        for (int i = 0; i < 1000; i++) {
+            probs[0][i] /= sum;
+        }
+        classifier = new ClassifierOutputRunner(new ClassifierOutputStep()
+                .inputName("probabilities")
+                .labels(labels)
+                .topN(5));
+        classifierInput = Data.singleton("probabilities", NDArray.create(probs));
+
+        int numPriors = 5;
+        int numClasses = 80;
+        int grid = 13;
+        float[][][][] yoloOut = new float[1][numPriors * (5 + numClasses)][grid][grid];
+        for (int b = 0; b < numPriors; b++) {
+            int offset = b * (5 + numClasses);
+            for (int y = 0; y < grid; y++) {
+                for (int x = 0; x < grid; x++) {
+                    yoloOut[0][offset][y][x] = r.nextFloat();                  //x in cell
+                    yoloOut[0][offset + 1][y][x] = r.nextFloat();              //y in cell
+                    yoloOut[0][offset + 2][y][x] = 1 + r.nextFloat() * 3;      //w, grid units
+                    yoloOut[0][offset + 3][y][x] = 1 + r.nextFloat() * 3;      //h, grid units
+                    yoloOut[0][offset + 4][y][x] = r.nextFloat();              //confidence
+                    for (int c = 0; c < numClasses; c++) {
+                        yoloOut[0][offset + 5 + c][y][x] = r.nextFloat() / numClasses;
+                    }
+                }
+            }
+        }
+        yolo = new YoloToBoundingBoxRunner(new YoloToBoundingBoxStep()
+                .input("yolo")
+                .numClasses(numClasses)
+                .threshold(0.5));
+        yoloInput = Data.singleton("yolo", NDArray.create(yoloOut));
+
+        int numDetections = 100;
+        float[][][] boxes = new float[1][numDetections][4];
+        float[][] scores = new float[1][numDetections];
+        float[][] classes = new float[1][numDetections];
+        for (int i = 0; i < numDetections; i++) {
+            float y1 = r.nextFloat() * 0.8f, x1 = r.nextFloat() * 0.8f;
+            boxes[0][i] = new float[]{y1, x1, y1 + 0.05f + r.nextFloat() * 0.15f, x1 + 0.05f + r.nextFloat() * 0.15f};
+            scores[0][i] = r.nextFloat();
+            classes[0][i] = 1 + r.nextInt(numClasses);
+        }
+        ssd = new SSDToBoundingBoxRunner(new SSDToBoundingBoxStep()
+                .classLabels(SSDToBoundingBoxStep.COCO_LABELS)
+                .nmsThreshold(0.5));
+        ssdInput = Data.singleton("detection_boxes", NDArray.create(boxes));
+        ssdInput.put("detection_scores", NDArray.create(scores));
+        ssdInput.put("detection_classes", NDArray.create(classes));
+
+        List<BoundingBox> bbs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            double x1 = r.nextDouble() * 0.8, y1 = r.nextDouble() * 0.8;
+            bbs.add(BoundingBox.createXY(x1, x1 + 0.05 + r.nextDouble() * 0.15, y1, y1 + 0.05 + r.nextDouble() * 0.15,
+                    "label_" + r.nextInt(numClasses), r.nextDouble()));
+        }
+        nms = new BoundingBoxNMSStepRunner(new BoundingBoxNMSStep()
+                .inputName("boxes")
+                .iouThreshold(0.5));
+        nmsInput = Data.singletonList("boxes", bbs, ValueType.BOUNDING_BOX);
+    }
+
+    @Benchmark
+    public Data classifierOutput() {
+        return classifier.exec(null, classifierInput);
+    }
+
+    @Benchmark
+    public Data yoloToBoundingBox() {
+        return yolo.exec(null, yoloInput);
+    }
+
+    @Benchmark
+    public Data ssdToBoundingBox() {
+        return ssd.exec(null, ssdInput);
+    }
+
+    @Benchmark
+    public Data boundingBoxNms() {
+        return nms.exec(null, nmsInput);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.benchmarks;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.impl.pipeline.SequencePipeline;
+import ai.konduit.serving.pipeline.impl.pipeline.graph.GraphBuilder;
+import ai.konduit.serving.pipeline.impl.pipeline.graph.GraphStep;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of {@link ai.konduit.serving.pipeline.impl.pipeline.SequencePipelineExecutor} and
+ * {@link ai.konduit.serving.pipeline.impl.pipeline.GraphPipelineExecutor}: pipelines consisting only of
+ * {@link NoOpStep}s, so the measurement is of the executors themselves
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineExecutorBenchmark {
+
+    @Param({"1", "5", "20"})
+    public int numSteps;
+
+    private PipelineExecutor sequence;
+    private PipelineExecutor graph;
+    private Data input;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SequencePipeline.Builder sb = SequencePipeline.builder();
+        for (int i = 0; i < numSteps; i++) {
+            sb.add(new NoOpStep());
+        }
+        sequence = sb.build().executor();
+
+        GraphBuilder gb = new GraphBuilder();
+        GraphStep s = gb.input();
+        for (int i = 0; i < numSteps; i++) {
+            s = s.then("step_" + i, new NoOpStep());
+        }
+        graph = gb.build(s).executor();
+
+        input = Data.singleton("in", "value");
+        input.put("prob", 0.5);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sequence.close();
+        graph.close();
+    }
+
+    @Benchmark
+    public Data sequenceExec() {
+        return sequence.exec(input);
+    }
+
+    @Benchmark
+    public Data graphExec() {
+        return graph.exec(input);
+    }
+}
@@ -169,6 +169,7 @@ public class KonduitRunCommand extends RunCommand {
     @Override
     protected void deploy() {
         if (INFERENCE_SERVICE_TYPE_NAME.equalsIgnoreCase(serviceType)) {
+            DeployKonduitServing.configureProcess(inferenceConfiguration);
             DeployKonduitServing.registerInferenceVerticleFactory(vertx);
             super.setMainVerticle(INFERENCE_SERVICE_IDENTIFIER + ":" + inferenceConfiguration.protocol().name().toLowerCase());
         } else {
@@ -0,0 +1,298 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.data.arrow;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.NDArrayType;
+import ai.konduit.serving.pipeline.api.data.ValueType;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import lombok.NonNull;
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.complex.FixedSizeListVector;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Conversion between Arrow record batches ({@link VectorSchemaRoot}) and {@link Data}, one column per key.
+ * <p>
+ * Columns are mapped as follows:
+ * <ul>
+ *     <li>Integer and floating point (single/double precision) columns: rank 1 NDArray with shape [rows]</li>
+ *     <li>Fixed size lists of integer or floating point values: rank 2 NDArray with shape [rows, listSize]</li>
+ *     <li>UTF-8 columns: List&lt;String&gt;</li>
+ *     <li>Boolean columns: List&lt;Boolean&gt;</li>
+ * </ul>
+ * When going from Arrow to Data, the NDArrays are read-only views of the Arrow buffers, not copies. They are only valid
+ * until the batch is closed or the next batch is loaded into the same VectorSchemaRoot.<br>
+ * When going from Data to Arrow, List&lt;Long&gt; and List&lt;Double&gt; values are also supported, and all values
+ * are copied into new vectors.<br>
+ * Null values and dictionary encoded columns are not supported.
+ */
+public class ArrowBatches {
+
+    private ArrowBatches() {
+    }
+
+    /**
+     * Convert the current record batch to a Data instance, without copying the numerical columns.
+     *
+     * @param root Record batch to convert
+     * @return Data with one value per column
+     */
+    public static Data toData(@NonNull VectorSchemaRoot root) {
+        Data out = Data.empty();
+        int rows = root.getRowCount();
+        for (FieldVector v : root.getFieldVectors()) {
+            String name = v.getField().getName();
+            if (v.getField().getDictionary() != null)
+                throw new UnsupportedOperationException("Dictionary encoded columns are not supported: column \"" + name + "\"");
+            if (v.getNullCount() > 0)
+                throw new UnsupportedOperationException("Columns with null values are not supported: column \"" + name + "\" has "
+                        + v.getNullCount() + " nulls");
+
+            if (v instanceof BaseFixedWidthVector && !(v instanceof BitVector)) {
+                NDArrayType type = ndArrayType(name, v.getField().getType());
+                out.put(name, NDArray.create(view(v.getDataBuffer(), type, new long[]{rows})));
+            } else if (v instanceof FixedSizeListVector) {
+                FixedSizeListVector list = (FixedSizeListVector) v;
+                FieldVector child = list.getDataVector();
+                if (!(child instanceof BaseFixedWidthVector) || child instanceof BitVector)
+                    throw new UnsupportedOperationException("Only fixed size lists of integer or floating point values are supported: column \""
+                            + name + "\" has values of type " + child.getField().getType());
+                if (child.getNullCount() > 0)
+                    throw new UnsupportedOperationException("Columns with null values are not supported: column \"" + name + "\" has null list values");
+                NDArrayType type = ndArrayType(name, child.getField().getType());
+                out.put(name, NDArray.create(view(child.getDataBuffer(), type, new long[]{rows, list.getListSize()})));
+            } else if (v instanceof VarCharVector) {
+                VarCharVector vc = (VarCharVector) v;
+                List<String> l = new ArrayList<>(rows);
+                for (int i = 0; i < rows; i++) {
+                    l.add(new String(vc.get(i), StandardCharsets.UTF_8));
+                }
+                out.putListString(name, l);
+            } else if (v instanceof BitVector) {
+                BitVector bv = (BitVector) v;
+                List<Boolean> l = new ArrayList<>(rows);
+                for (int i = 0; i < rows; i++) {
+                    l.add(bv.get(i) != 0);
+                }
+                out.putListBoolean(name, l);
+            } else {
+                throw new UnsupportedOperationException("Unsupported Arrow column type for column \"" + name + "\": " + v.getField().getType());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Convert the Data instance to a new record batch, one column per key. All values must have the same number of rows
+     * (NDArray first dimension, or list size). The caller is responsible for closing the returned VectorSchemaRoot.
+     *
+     * @param data      Data to convert
+     * @param allocator Allocator for the vectors
+     * @return Record batch with one column per key
+     */
+    public static VectorSchemaRoot toArrow(@NonNull Data data, @NonNull BufferAllocator allocator) {
+        List<FieldVector> vectors = new ArrayList<>();
+        int rows = -1;
+        try {
+            for (String key : data.keys()) {
+                ValueType vt = data.type(key);
+                FieldVector v;
+                int n;
+                if (vt == ValueType.NDARRAY) {
+                    SerializedNDArray arr = data.getNDArray(key).getAs(SerializedNDArray.class);
+                    long[] shape = arr.getShape();
+                    n = (int) shape[0];
+                    v = fromNDArray(key, arr, allocator);
+                } else if (vt == ValueType.LIST) {
+                    List<?> l = data.getList(key, data.listType(key));
+                    n = l.size();
+                    v = fromList(key, l, data.listType(key), allocator);
+                } else {
+                    throw new UnsupportedOperationException("Unable to convert value \"" + key + "\" of type " + vt
+                            + " to an Arrow column: only NDArray and List values are supported");
+                }
+                vectors.add(v);
+
+                if (rows >= 0 && n != rows)
+                    throw new IllegalStateException("All values must have the same number of rows: value \"" + key + "\" has "
+                            + n + " rows, previous values had " + rows + " rows");
+                rows = n;
+            }
+        } catch (RuntimeException e) {
+            for (FieldVector v : vectors) {
+                v.close();
+            }
+            throw e;
+        }
+
+        VectorSchemaRoot root = new VectorSchemaRoot(vectors);
+        root.setRowCount(Math.max(rows, 0));
+        return root;
+    }
+
+    private static SerializedNDArray view(ArrowBuf buf, NDArrayType type, long[] shape) {
+        long length = type.width();
+        for (long l : shape)
+            length *= l;
+        ByteBuffer bb = buf.nioBuffer(0, (int) length);
+        return new SerializedNDArray(type, shape, bb.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    private static FieldVector fromNDArray(String name, SerializedNDArray arr, BufferAllocator allocator) {
+        long[] shape = arr.getShape();
+        if (shape.length != 1 && shape.length != 2)
+            throw new UnsupportedOperationException("Only rank 1 and rank 2 NDArrays can be converted to Arrow columns: value \""
+                    + name + "\" has shape " + Arrays.toString(shape));
+        ArrowType type = arrowType(name, arr.getType());
+        int rows = (int) shape[0];
+
+        ByteBuffer bb = arr.getBuffer().duplicate();
+        ((Buffer) bb).rewind();
+        ((Buffer) bb).limit((int) (rows * (shape.length == 2 ? shape[1] : 1) * arr.getType().width()));
+
+        if (shape.length == 1) {
+            BaseFixedWidthVector v = (BaseFixedWidthVector) new Field(name, FieldType.nullable(type), null).createVector(allocator);
+            copy(v, bb, rows);
+            return v;
+        }
+
+        int listSize = (int) shape[1];
+        FixedSizeListVector list = FixedSizeListVector.empty(name, listSize, allocator);
+        list.addOrGetVector(FieldType.nullable(type));
+        list.setInitialCapacity(rows);
+        list.allocateNew();
+        copy((BaseFixedWidthVector) list.getDataVector(), bb, rows * listSize);
+        list.getValidityBuffer().setOne(0, BitVectorHelper.getValidityBufferSize(rows));
+        list.setValueCount(rows);
+        return list;
+    }
+
+    private static void copy(BaseFixedWidthVector v, ByteBuffer from, int count) {
+        v.allocateNew(count);
+        v.getDataBuffer().setBytes(0, from);
+        v.getValidityBuffer().setOne(0, BitVectorHelper.getValidityBufferSize(count));
+        v.setValueCount(count);
+    }
+
+    private static FieldVector fromList(String name, List<?> l, ValueType listType, BufferAllocator allocator) {
+        int n = l.size();
+        switch (listType) {
+            case STRING:
+                VarCharVector vc = new VarCharVector(name, allocator);
+                vc.allocateNew(n);
+                for (int i = 0; i < n; i++) {
+                    vc.setSafe(i, ((String) l.get(i)).getBytes(StandardCharsets.UTF_8));
+                }
+                vc.setValueCount(n);
+                return vc;
+            case INT64:
+                BigIntVector bi = new BigIntVector(name, allocator);
+                bi.allocateNew(n);
+                for (int i = 0; i < n; i++) {
+                    bi.set(i, (Long) l.get(i));
+                }
+                bi.setValueCount(n);
+                return bi;
+            case DOUBLE:
+                Float8Vector f8 = new Float8Vector(name, allocator);
+                f8.allocateNew(n);
+                for (int i = 0; i < n; i++) {
+                    f8.set(i, (Double) l.get(i));
+                }
+                f8.setValueCount(n);
+                return f8;
+            case BOOLEAN:
+                BitVector b = new BitVector(name, allocator);
+                b.allocateNew(n);
+                for (int i = 0; i < n; i++) {
+                    b.set(i, (Boolean) l.get(i) ? 1 : 0);
+                }
+                b.setValueCount(n);
+                return b;
+            default:
+                throw new UnsupportedOperationException("Unable to convert list \"" + name + "\" of type " + listType
+                        + " to an Arrow column: only String, Int64, Double and Boolean lists are supported");
+        }
+    }
+
+    private static NDArrayType ndArrayType(String name, ArrowType type) {
+        if (type instanceof ArrowType.FloatingPoint) {
+            FloatingPointPrecision p = ((ArrowType.FloatingPoint) type).getPrecision();
+            if (p == FloatingPointPrecision.SINGLE)
+                return NDArrayType.FLOAT;
+            if (p == FloatingPointPrecision.DOUBLE)
+                return NDArrayType.DOUBLE;
+        } else if (type instanceof ArrowType.Int) {
+            ArrowType.Int t = (ArrowType.Int) type;
+            switch (t.getBitWidth()) {
+                case 8:
+                    return t.getIsSigned() ? NDArrayType.INT8 : NDArrayType.UINT8;
+                case 16:
+                    return t.getIsSigned() ? NDArrayType.INT16 : NDArrayType.UINT16;
+                case 32:
+                    return t.getIsSigned() ? NDArrayType.INT32 : NDArrayType.UINT32;
+                case 64:
+                    return t.getIsSigned() ? NDArrayType.INT64 : NDArrayType.UINT64;
+            }
+        }
+        throw new UnsupportedOperationException("Unsupported Arrow column type for column \"" + name + "\": " + type);
+    }
+
+    private static ArrowType arrowType(String name, NDArrayType type) {
+        switch (type) {
+            case DOUBLE:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case FLOAT:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+            case INT64:
+                return new ArrowType.Int(64, true);
+            case INT32:
+                return new ArrowType.Int(32, true);
+            case INT16:
+                return new ArrowType.Int(16, true);
+            case INT8:
+                return new ArrowType.Int(8, true);
+            case UINT64:
+                return new ArrowType.Int(64, false);
+            case UINT32:
+                return new ArrowType.Int(32, false);
+            case UINT16:
+                return new ArrowType.Int(16, false);
+            case UINT8:
+                return new ArrowType.Int(8, false);
+            default:
+                throw new UnsupportedOperationException("Unable to convert NDArray \"" + name + "\" of type " + type + " to an Arrow column");
+        }
+    }
+}
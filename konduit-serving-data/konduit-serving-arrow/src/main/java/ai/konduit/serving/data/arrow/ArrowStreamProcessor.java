@@ -0,0 +1,126 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.data.arrow;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import lombok.NonNull;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.function.Function;
+
+/**
+ * Runs a function (usually a pipeline) over an Arrow IPC stream, one record batch at a time: each input batch is
+ * converted to a {@link Data} instance with {@link ArrowBatches#toData(VectorSchemaRoot)}, and each output Data instance
+ * is written as a record batch of the output stream.<br>
+ * Only one input and one output batch are held in memory at any time, so streams larger than the available memory can be
+ * processed, as long as the individual batches fit.
+ * <p>
+ * The output schema is defined by the output of the first batch. All subsequent outputs must have the same schema.
+ * If the input stream has no record batches, the output is a valid stream with an empty schema (no fields) and no
+ * record batches.
+ */
+public class ArrowStreamProcessor {
+
+    public static final String CONTENT_TYPE = "application/vnd.apache.arrow.stream";
+
+    private ArrowStreamProcessor() {
+    }
+
+    /**
+     * Process all the record batches of the input stream. The streams are not closed by this method, and if an
+     * exception is thrown, the output stream is left without the end of stream marker, so that a reader can't mistake
+     * a partial output for a complete one.
+     * <p>
+     * Note that the input Data instances hold views of the Arrow buffers: the function must not keep references to
+     * the input NDArrays after it returns.
+     *
+     * @param in        Arrow IPC stream to read the input batches from
+     * @param out       Stream to write the output batches to, in the Arrow IPC stream format
+     * @param allocator Allocator for the input and output batches
+     * @param fn        Function to apply to each batch
+     * @return Number of record batches processed
+     */
+    public static long process(@NonNull InputStream in, @NonNull OutputStream out, @NonNull BufferAllocator allocator,
+                               @NonNull Function<Data, Data> fn) throws IOException {
+        long count = 0;
+        VectorSchemaRoot outRoot = null;
+        //The writer isn't closed, as that would write the end of stream marker and close the output stream
+        ArrowStreamWriter writer = null;
+        try (ArrowStreamReader reader = new ArrowStreamReader(new NonClosingInputStream(in), allocator)) {
+            VectorSchemaRoot inRoot = reader.getVectorSchemaRoot();
+            while (reader.loadNextBatch()) {
+                Data output = fn.apply(ArrowBatches.toData(inRoot));
+
+                try (VectorSchemaRoot batch = ArrowBatches.toArrow(output, allocator)) {
+                    if (outRoot == null) {
+                        outRoot = VectorSchemaRoot.create(batch.getSchema(), allocator);
+                        writer = new ArrowStreamWriter(outRoot, new DictionaryProvider.MapDictionaryProvider(), out);
+                        writer.start();
+                    } else if (!outRoot.getSchema().equals(batch.getSchema())) {
+                        throw new IllegalStateException("Output of record batch " + count + " has a different schema to the first output: "
+                                + batch.getSchema() + " vs. " + outRoot.getSchema());
+                    }
+
+                    try (ArrowRecordBatch rb = new VectorUnloader(batch).getRecordBatch()) {
+                        new VectorLoader(outRoot).load(rb);
+                    }
+                }
+                writer.writeBatch();
+                count++;
+            }
+
+            if (writer == null) {
+                //No output to take the schema from, but a stream always starts with a schema
+                outRoot = VectorSchemaRoot.create(new Schema(Collections.emptyList()), allocator);
+                writer = new ArrowStreamWriter(outRoot, new DictionaryProvider.MapDictionaryProvider(), out);
+                writer.start();
+            }
+            writer.end();
+            out.flush();
+        } finally {
+            if (outRoot != null)
+                outRoot.close();
+        }
+        return count;
+    }
+
+    private static class NonClosingInputStream extends FilterInputStream {
+        private NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            //Closed by the caller
+        }
+    }
+}
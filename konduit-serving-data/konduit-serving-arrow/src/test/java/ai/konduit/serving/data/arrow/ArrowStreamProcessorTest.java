@@ -0,0 +1,112 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.data.arrow;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.ValueType;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ArrowStreamProcessorTest {
+
+    @Test
+    public void testProcessStream() throws Exception {
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE)) {
+            Data d = Data.singleton("x", NDArray.create(new float[]{1, 2, 3}));
+            d.put("features", NDArray.create(new double[][]{{1, 2}, {3, 4}, {5, 6}}));
+            d.putListString("id", Arrays.asList("a", "b", "c"));
+
+            //Two identical input batches
+            ByteArrayOutputStream input = new ByteArrayOutputStream();
+            try (VectorSchemaRoot root = ArrowBatches.toArrow(d, allocator);
+                 ArrowStreamWriter writer = new ArrowStreamWriter(root, new DictionaryProvider.MapDictionaryProvider(), input)) {
+                writer.start();
+                writer.writeBatch();
+                writer.writeBatch();
+                writer.end();
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            long count = ArrowStreamProcessor.process(new ByteArrayInputStream(input.toByteArray()), output, allocator, in -> {
+                assertTrue(in.getNDArray("x").getAs(SerializedNDArray.class).getBuffer().isDirect());
+                float[] x = in.getNDArray("x").getAs(float[].class);
+                double[][] f = in.getNDArray("features").getAs(double[][].class);
+                float[] y = new float[x.length];
+                for (int i = 0; i < x.length; i++) {
+                    y[i] = (float) (x[i] * f[i][1]);
+                }
+                Data out = Data.singleton("y", NDArray.create(y));
+                out.putListString("id", in.getListString("id"));
+                return out;
+            });
+            assertEquals(2, count);
+
+            try (ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(output.toByteArray()), allocator)) {
+                int batches = 0;
+                while (reader.loadNextBatch()) {
+                    Data out = ArrowBatches.toData(reader.getVectorSchemaRoot());
+                    assertEquals(Arrays.asList("y", "id"), out.keys());
+                    assertArrayEquals(new float[]{2, 8, 18}, out.getNDArray("y").getAs(float[].class), 0.0f);
+                    assertEquals(ValueType.STRING, out.listType("id"));
+                    assertEquals(Arrays.asList("a", "b", "c"), out.getListString("id"));
+                    batches++;
+                }
+                assertEquals(2, batches);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyStream() throws Exception {
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE)) {
+            //A schema, but no record batches
+            ByteArrayOutputStream input = new ByteArrayOutputStream();
+            try (VectorSchemaRoot root = ArrowBatches.toArrow(Data.singleton("x", NDArray.create(new float[]{1})), allocator);
+                 ArrowStreamWriter writer = new ArrowStreamWriter(root, new DictionaryProvider.MapDictionaryProvider(), input)) {
+                writer.start();
+                writer.end();
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            long count = ArrowStreamProcessor.process(new ByteArrayInputStream(input.toByteArray()), output, allocator, in -> {
+                throw new IllegalStateException("Should not be called");
+            });
+            assertEquals(0, count);
+
+            //The output is still a valid stream
+            try (ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(output.toByteArray()), allocator)) {
+                assertTrue(reader.getVectorSchemaRoot().getSchema().getFields().isEmpty());
+                assertFalse(reader.loadNextBatch());
+            }
+        }
+    }
+}
@@ -69,6 +69,11 @@ import org.nd4j.shade.jackson.annotation.JsonProperty;
  *         instead of a single {@code NDArray} - one entry for each entry in the input {@code List<Image>}. FIRST:
  *         the first bounding box only is returned as as single {@code NDArray} - the remainder are discarded/ignored.
  *     </li>
+ *     <li><b>jpegReducedDecode</b>: If true, JPEG images that are at least 2x larger than the output height/width are
+ *         downscaled (by a factor of 2, 4 or 8) by the JPEG decoder while decoding, before being cropped/resized to the output size.
+ *         This is much faster than decoding at full resolution, but the values differ slightly from a full resolution
+ *         decode + resize. Only applies when height and width are set. Default: false
+ *     </li>
  * </ul>
  *
  * @author Alex Black
@@ -134,6 +139,12 @@ public class ImageToNDArrayConfig {
             defaultValue = "NONE")
     private ListHandling listHandling = ListHandling.NONE;
 
+    @Schema(description = "If true, JPEG images that are at least 2x larger than the output height/width are downscaled " +
+            "(by a factor of 2, 4 or 8) while decoding, which is much faster than a full resolution decode followed by a " +
+            "resize. Values differ slightly from a full resolution decode. Only applies when height and width are set.",
+            defaultValue = "false")
+    private boolean jpegReducedDecode;
+
 
     public ImageToNDArrayConfig(@JsonProperty("height") Integer height, @JsonProperty("width") Integer width, @JsonProperty("dataType") NDArrayType dataType,
                                 @JsonProperty("includeMinibatchDim") boolean includeMinibatchDim, @JsonProperty("aspectRatioHandling") AspectRatioHandling aspectRatioHandling,
@@ -55,6 +55,15 @@ public class CameraFrameCaptureStep implements PipelineStep {
             defaultValue = "image")
     private String outputKey = "image";
 
+    @Schema(description = "Number of frames captured ahead of time by a background thread. 0 disables prefetching, in which case " +
+            "frames are captured when the step is executed.",
+            defaultValue = "0")
+    private int prefetchFrames = 0;
+
+    @Schema(description = "What to do when the prefetched frames buffer is full.",
+            defaultValue = "DROP_OLDEST")
+    private FramePrefetchPolicy prefetchPolicy = FramePrefetchPolicy.DROP_OLDEST;
+
     public CameraFrameCaptureStep(@JsonProperty("camera") int camera, @JsonProperty("width") int width,
                                   @JsonProperty("height") int height, @JsonProperty("outputKey") String outputKey,
                                   @JsonProperty("skipFrames") Integer skipFrames){
@@ -0,0 +1,55 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.data.image.step.capture;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Which frames the video decoder skips, without decoding them (FFmpeg's {@code skip_frame} option).<br>
+ * Used in {@link VideoFrameCaptureStep}
+ * <ul>
+ *     <li>NONE: Decode all frames</li>
+ *     <li>NON_REFERENCE: Skip the frames that no other frame depends on</li>
+ *     <li>BIDIRECTIONAL: Skip the bidirectionally predicted frames (B-frames)</li>
+ *     <li>NON_INTRA: Skip all the frames except intra coded frames</li>
+ *     <li>NON_KEY: Skip all the frames except keyframes</li>
+ * </ul>
+ */
+@Schema(description = "An enum specifying which frames the video decoder skips, without decoding them. <br><br>" +
+        "NONE -> Decode all frames, <br>" +
+        "NON_REFERENCE -> Skip the frames that no other frame depends on, <br>" +
+        "BIDIRECTIONAL -> Skip the bidirectionally predicted frames (B-frames), <br>" +
+        "NON_INTRA -> Skip all the frames except intra coded frames, <br>" +
+        "NON_KEY -> Skip all the frames except keyframes")
+public enum DecoderSkipMode {
+    NONE("default"), NON_REFERENCE("noref"), BIDIRECTIONAL("bidir"), NON_INTRA("nointra"), NON_KEY("nokey");
+
+    private final String ffmpegValue;
+
+    DecoderSkipMode(String ffmpegValue) {
+        this.ffmpegValue = ffmpegValue;
+    }
+
+    /**
+     * @return The value of FFmpeg's {@code skip_frame} decoder option for this mode
+     */
+    public String ffmpegValue() {
+        return ffmpegValue;
+    }
+}
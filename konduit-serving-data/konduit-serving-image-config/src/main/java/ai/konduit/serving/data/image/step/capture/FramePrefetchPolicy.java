@@ -0,0 +1,36 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.data.image.step.capture;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * What the frame capture decode thread should do when the prefetched frames buffer is full.<br>
+ * Used in {@link VideoFrameCaptureStep} and {@link CameraFrameCaptureStep} when frames are prefetched.
+ * <ul>
+ *     <li>DROP_OLDEST: Discard the oldest buffered frame, so the pipeline always gets the most recent frames. Best for live sources</li>
+ *     <li>BLOCK: Wait until the pipeline takes a frame, so no frame is lost. Best for video files</li>
+ * </ul>
+ */
+@Schema(description = "An enum specifying what to do when the prefetched frames buffer is full. <br><br>" +
+        "DROP_OLDEST -> Discard the oldest buffered frame, so the pipeline always gets the most recent frames, <br>" +
+        "BLOCK -> Wait until the pipeline takes a frame, so no frame is lost")
+public enum FramePrefetchPolicy {
+    DROP_OLDEST, BLOCK
+}
@@ -59,6 +59,24 @@ public class VideoFrameCaptureStep implements PipelineStep {
             defaultValue = "image")
     private Integer skipFrames;
 
+    @Schema(description = "Optional - Which frames the decoder skips without decoding them (FFmpeg's skip_frame option). " +
+            "Unlike skipFrames, this saves the decoding cost of the skipped frames. For example, NON_KEY only returns keyframes.",
+            defaultValue = "NONE")
+    private DecoderSkipMode decoderSkipMode = DecoderSkipMode.NONE;
+
+    @Schema(description = "Optional - Name of the FFmpeg video decoder to use, for example \"h264_cuvid\" (NVIDIA) or " +
+            "\"h264_qsv\" (Intel Quick Sync) for hardware accelerated decoding. If not set: the default decoder of the video codec is used.")
+    private String videoCodec;
+
+    @Schema(description = "Number of frames decoded ahead of time by a background thread. 0 disables prefetching, in which case " +
+            "frames are decoded when the step is executed.",
+            defaultValue = "0")
+    private int prefetchFrames = 0;
+
+    @Schema(description = "What to do when the prefetched frames buffer is full.",
+            defaultValue = "BLOCK")
+    private FramePrefetchPolicy prefetchPolicy = FramePrefetchPolicy.BLOCK;
+
     public VideoFrameCaptureStep(@JsonProperty("filePath") String filePath, @JsonProperty("outputKey") String outputKey,
                                  @JsonProperty("loop") boolean loop, @JsonProperty("skipFrames") Integer skipFrames){
         this.filePath = filePath;
@@ -46,6 +46,9 @@ import java.util.List;
  *         and the original input size.</li>
  *     <li><b>metadataKey</b>: Sets the key that the metadata will be stored under. Default: {@link #DEFAULT_METADATA_KEY}. Not relevant if
  *         metadata == false</li>
+ *     <li><b>parallelism</b>: Number of threads used to decode and convert the images of a {@code List<Image>} input (BATCH and
+ *         LIST_OUT list handling). Null, 0 or 1: convert sequentially on the calling thread. -1: use the JVM-wide common
+ *         ForkJoinPool. Values &gt; 1: use a dedicated pool with the specified number of threads. Default: null</li>
  * </ul>
  * <p>
  * Note that metadata will have the following format:<br>
@@ -98,6 +101,11 @@ public class ImageToNDArrayStep implements PipelineStep {
             defaultValue = DEFAULT_METADATA_KEY)
     private String metadataKey = DEFAULT_METADATA_KEY;
 
+    @Schema(description = "Number of threads used to decode and convert the images of a list of images input (BATCH and " +
+            "LIST_OUT list handling). Null, 0 or 1 means the images are converted sequentially on the calling thread. -1 " +
+            "means the JVM-wide common ForkJoinPool is used; values > 1 create a dedicated pool with the specified parallelism.")
+    private Integer parallelism;
+
     public ImageToNDArrayStep(@JsonProperty("config") ImageToNDArrayConfig config, @JsonProperty("keys") List<String> keys,
                               @JsonProperty("outputNames") List<String> outputNames, @JsonProperty("keepOtherValues") boolean keepOtherValues,
                               @JsonProperty("metadata") boolean metadata, @JsonProperty("metadataKey") String metadataKey) {
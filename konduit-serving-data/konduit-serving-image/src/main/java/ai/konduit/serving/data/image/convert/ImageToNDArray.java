@@ -26,10 +26,14 @@ import ai.konduit.serving.pipeline.api.data.BoundingBox;
 import ai.konduit.serving.pipeline.api.data.Image;
 import ai.konduit.serving.pipeline.api.data.NDArray;
 import ai.konduit.serving.pipeline.api.data.NDArrayType;
+import ai.konduit.serving.pipeline.impl.data.image.Jpeg;
 import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
 import com.google.common.primitives.Longs;
+import org.bytedeco.javacpp.BytePointer;
 import org.bytedeco.javacpp.Loader;
 import org.bytedeco.javacpp.indexer.*;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgcodecs;
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.bytedeco.opencv.opencv_core.Rect;
 import org.bytedeco.opencv.opencv_core.Size;
@@ -47,6 +51,15 @@ import java.nio.*;
  */
 public class ImageToNDArray {
 
+    /**
+     * Largest image (in elements: height x width x channels) for which the per thread buffers are reused. Larger
+     * images use temporary buffers, so that a single large image doesn't keep a large buffer alive in every thread
+     */
+    private static final int MAX_REUSED_ELEMENTS = 1920 * 1080 * 3;
+
+    private static final ThreadLocal<Mat> RESIZE_BUFFER = ThreadLocal.withInitial(Mat::new);
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
     private ImageToNDArray() {
     }
 
@@ -118,19 +131,156 @@ public class ImageToNDArray {
     }
 
     protected static Pair<NDArray,BoundingBox> convert(Image image, ImageToNDArrayConfig config, boolean withMeta) {
+        //Note we use the decoded size here: for compressed formats, Image.height()/width() would decode the image again
+        Mat m = decode(image, config);
+        Pair<Mat,BoundingBox> p = resize(m, config, withMeta);
+        m = p.getFirst();
+
+        int outH = m.rows();
+        int outW = m.cols();
+        ByteBuffer bb = allocate((long) outH * outW * m.channels() * config.dataType().width());
+        toBuffer(m, config, bb);
+
+        int ch = config.channelLayout().numChannels();
+
+        long[] shape;
+        if (config.format() == NDFormat.CHANNELS_FIRST) {
+            shape =  new long[]{ch, outH, outW};
+        } else {
+            shape = new long[]{outH, outW, ch};
+        }
+
+        if(config.includeMinibatchDim()) {
+            shape = Longs.concat(new long[]{1},shape);
+        }
+
+        SerializedNDArray arr = new SerializedNDArray(config.dataType(), shape, bb);
+
+        return new Pair<>(NDArray.create(arr), p.getSecond());
+    }
+
+    /**
+     * Convert the provided (decoded) image, writing the values to the provided buffer instead of allocating a new one.
+     * Values are written starting at the current position of the buffer, which is not modified. This allows a batch of
+     * images to be converted directly into slices of the one (pre-allocated) buffer.
+     *
+     * @param m        Image to convert, usually from {@link #decode(Image, ImageToNDArrayConfig)}
+     * @param config   Configuration to use
+     * @param withMeta If true: return the crop region
+     * @param out      Buffer to write the values to, little endian. Must have space for the height * width * channels
+     *                 values of the converted image
+     * @return The crop region if withMeta is true, null otherwise
+     */
+    public static BoundingBox convert(Mat m, ImageToNDArrayConfig config, boolean withMeta, ByteBuffer out) {
+        Pair<Mat,BoundingBox> p = resize(m, config, withMeta);
+        toBuffer(p.getFirst(), config, out);
+        return p.getSecond();
+    }
+
+    /**
+     * Decode the image to a Mat for conversion. If {@link ImageToNDArrayConfig#jpegReducedDecode()} is set and the image
+     * is a JPEG that is at least 2x larger than the output size, the image is downscaled by the JPEG decoder while
+     * decoding (by 2, 4 or 8 - the largest that still gives an image at least as large as the output size). This is much
+     * faster than decoding at full size and then resizing, as most of the decoding work is skipped.
+     */
+    public static Mat decode(Image image, ImageToNDArrayConfig config) {
+        Object o = image.get();
+        if (config.jpegReducedDecode() && o instanceof Jpeg && config.height() != null && config.width() != null) {
+            Mat m = decodeReduced(((Jpeg) o).getFileBytes(), config.height(), config.width(),
+                    config.channelLayout() == NDChannelLayout.GRAYSCALE);
+            if (m != null)
+                return m;
+        }
+        return image.getAs(Mat.class);
+    }
+
+    /**
+     * @return The decoded (reduced size) image, or null if the image isn't large enough to be downscaled while decoding
+     */
+    protected static Mat decodeReduced(ByteBuffer fileBytes, int outH, int outW, boolean grayscale) {
+        int[] wh = jpegSize(fileBytes);
+        if (wh == null)
+            return null;
+
+        int scale = 8;
+        while (scale > 1 && (wh[0] / scale < outW || wh[1] / scale < outH))
+            scale /= 2;
+
+        int flags;
+        switch (scale) {
+            case 8:
+                flags = grayscale ? opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_8 : opencv_imgcodecs.IMREAD_REDUCED_COLOR_8;
+                break;
+            case 4:
+                flags = grayscale ? opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_4 : opencv_imgcodecs.IMREAD_REDUCED_COLOR_4;
+                break;
+            case 2:
+                flags = grayscale ? opencv_imgcodecs.IMREAD_REDUCED_GRAYSCALE_2 : opencv_imgcodecs.IMREAD_REDUCED_COLOR_2;
+                break;
+            default:
+                return null;
+        }
+        //Same as a full size (IMREAD_UNCHANGED) decode: don't rotate according to the EXIF orientation
+        flags |= opencv_imgcodecs.IMREAD_IGNORE_ORIENTATION;
+
+        ((Buffer) fileBytes).position(0);
+        Mat encoded = new Mat(new BytePointer(fileBytes), false);
+        Mat decoded = opencv_imgcodecs.imdecode(encoded, flags);
+        return decoded == null || decoded.empty() ? null : decoded;
+    }
+
+    /**
+     * Read the image size from the JPEG header (the start of frame segment), without decoding the image
+     *
+     * @return [width, height], or null if the size could not be determined
+     */
+    protected static int[] jpegSize(ByteBuffer b) {
+        int n = b.limit();
+        if (n < 4 || (b.get(0) & 0xFF) != 0xFF || (b.get(1) & 0xFF) != 0xD8)
+            return null;
+
+        int i = 2;
+        while (i + 9 < n) {
+            if ((b.get(i) & 0xFF) != 0xFF)
+                return null;
+            int marker = b.get(i + 1) & 0xFF;
+            if (marker == 0xFF) {
+                //Fill byte
+                i++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                //Markers without a length
+                i += 2;
+                continue;
+            }
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                int h = ((b.get(i + 5) & 0xFF) << 8) | (b.get(i + 6) & 0xFF);
+                int w = ((b.get(i + 7) & 0xFF) << 8) | (b.get(i + 8) & 0xFF);
+                return h > 0 && w > 0 ? new int[]{w, h} : null;
+            }
+            int length = ((b.get(i + 2) & 0xFF) << 8) | (b.get(i + 3) & 0xFF);
+            i += 2 + length;
+        }
+        return null;
+    }
+
+    /**
+     * Crop and/or resize the image to the output size (if necessary), and convert the color channels
+     */
+    protected static Pair<Mat,BoundingBox> resize(Mat m, ImageToNDArrayConfig config, boolean withMeta) {
         BoundingBox bbMeta = null;
 
         Integer outH = config.height();
         Integer outW = config.width();
         if (outH == null)
-            outH = image.height();
+            outH = m.rows();
         if (outW == null)
-            outW = image.width();
+            outW = m.cols();
 
 
         //Resize if necessary
-        boolean correctSize = outH == image.height() && outW == image.width();
-        Mat m = image.getAs(Mat.class);
+        boolean correctSize = outH == m.rows() && outW == m.cols();
         if (!correctSize) {
             AspectRatioHandling h = config.aspectRatioHandling();
             if (h == AspectRatioHandling.CENTER_CROP) {
@@ -139,7 +289,7 @@ public class ImageToNDArray {
                 if (cropped.cols() == outW && cropped.rows() == outH) {
                     m = cropped;
                 } else {
-                    Mat resized = new Mat();
+                    Mat resized = resizeBuffer(outH, outW, cropped.channels());
                     org.bytedeco.opencv.global.opencv_imgproc.resize(cropped, resized, new Size(outW, outH));
                     m = resized;
                 }
@@ -150,7 +300,7 @@ public class ImageToNDArray {
             } else if (h == AspectRatioHandling.PAD) {
                 throw new UnsupportedOperationException("Not yet implemented");
             } else if (h == AspectRatioHandling.STRETCH) {
-                Mat resized = new Mat();
+                Mat resized = resizeBuffer(outH, outW, m.channels());
                 org.bytedeco.opencv.global.opencv_imgproc.resize(m, resized, new Size(outW, outH));
                 m = resized;
 
@@ -168,36 +318,24 @@ public class ImageToNDArray {
 
         m = convertColor(m, config);
         Preconditions.checkState(m.channels() <= 3,"Channels must not be greater than 3!");
+        return new Pair<>(m, bbMeta);
+    }
 
-        ByteBuffer bb = toFloatBuffer(m, config);
-
-        if (config.dataType() != NDArrayType.FLOAT) //TODO there are likely more efficient ways than this!
-            bb = ImageUtils.cast(bb, NDArrayType.FLOAT, config.dataType());
-
-        int ch = config.channelLayout().numChannels();
-
-        long[] shape;
-        if (config.format() == NDFormat.CHANNELS_FIRST) {
-            shape =  new long[]{ch, outH, outW};
-        } else {
-            shape = new long[]{outH, outW, ch};
-        }
-
-        /*   INDArray arrCreate = Nd4j.create(ND4JUtil.typeNDArrayTypeToNd4j(config.dataType()),shape, Nd4j.getStrides(shape),'c');
-         *//**
-         * Note this logic assumes 3d arrays.
-         * Postpone reshape till after the data is filled in
-         * since the new shape is just the minibatch size.
-         *//*
-        ImageUtils.fillNDArray(m,true,arrCreate);
-        ByteBuffer bb = arrCreate.data().asNio();*/
-        if(config.includeMinibatchDim()) {
-            shape = Longs.concat(new long[]{1},shape);
-        }
-
-        SerializedNDArray arr = new SerializedNDArray(config.dataType(), shape, bb);
+    /**
+     * @return The per thread Mat to resize into, or a new Mat if the resized image is too large to keep it around
+     */
+    private static Mat resizeBuffer(int h, int w, int channels) {
+        return (long) h * w * channels <= MAX_REUSED_ELEMENTS ? RESIZE_BUFFER.get() : new Mat();
+    }
 
-        return new Pair<>(NDArray.create(arr), bbMeta);
+    /**
+     * Allocate a (little endian) buffer for NDArray values - direct, except on Android
+     */
+    public static ByteBuffer allocate(long lengthBytes) {
+        Preconditions.checkState(lengthBytes <= Integer.MAX_VALUE, "Unable to allocate buffer: %s bytes exceeds the " +
+                "maximum buffer size", lengthBytes);
+        boolean direct = !Loader.getPlatform().startsWith("android");
+        return direct ? ByteBuffer.allocateDirect((int) lengthBytes).order(ByteOrder.LITTLE_ENDIAN) : ByteBuffer.allocate((int) lengthBytes).order(ByteOrder.LITTLE_ENDIAN);
     }
 
     public static Pair<Mat,BoundingBox> centerCrop(Mat image, int outH, int outW, boolean withBB) {
@@ -294,92 +432,153 @@ public class ImageToNDArray {
         return m;
     }
 
-    protected static ByteBuffer toFloatBuffer(Mat m, ImageToNDArrayConfig config) {
+    /**
+     * Convert the (8-bit, BGR or grayscale) Mat to a buffer of the configured data type, in a single pass:
+     * channel reordering, normalization, layout (CHW or HWC) and conversion to the output type are fused together.<br>
+     * Normalization is done through a lookup table per channel, as there are only 256 possible input values. This gives
+     * the same values as applying the {@link ImageUtils.FloatNormalizer} to each element, without the cost of a call
+     * per element. The pixels are read from the Mat with a single bulk copy, into a per thread scratch array.<br>
+     * Values are written to the provided buffer, starting at its current position.
+     */
+    protected static void toBuffer(Mat m, ImageToNDArrayConfig config, ByteBuffer out) {
         Preconditions.checkState(config.channelLayout() == NDChannelLayout.RGB ||
                         config.channelLayout() == NDChannelLayout.BGR ||
                         config.channelLayout() == NDChannelLayout.GRAYSCALE,
                 "Only GRAYSCALE, RGB and BGR conversion implement so far");
 
-        Preconditions.checkState(config.dataType() != NDArrayType.BOOL && config.dataType() != NDArrayType.UTF8,
-                "%s datatype is not supported for ImageToNDArray", config.dataType());
+        NDArrayType dataType = config.dataType();
+        Preconditions.checkState(dataType != NDArrayType.BOOL && dataType != NDArrayType.UTF8,
+                "%s datatype is not supported for ImageToNDArray", dataType);
 
-        boolean direct = !Loader.getPlatform().startsWith("android");
+        if (m.depth() != opencv_core.CV_8U) {
+            throw new RuntimeException("Not yet implemented: Mat depth " + m.depth());
+        }
 
-        //By default, Mat stores values in channels first format - CHW
+        if (!m.isContinuous()) {
+            //For example, a crop that didn't need resizing
+            m = m.clone();
+        }
+
+        //Mat stores values in HWC format, BGR order
         int h = m.rows();
         int w = m.cols();
         int ch = m.channels();
-
-        int lengthElements = h * w * ch;
-        int lengthBytes = lengthElements * 4;
-
-        ByteBuffer bb = direct ? ByteBuffer.allocateDirect(lengthBytes).order(ByteOrder.LITTLE_ENDIAN) : ByteBuffer.allocate(lengthBytes).order(ByteOrder.LITTLE_ENDIAN);
-        FloatBuffer fb = bb.asFloatBuffer();
+        int plane = h * w;
+        int lengthElements = plane * ch;
 
         boolean rgb = config.channelLayout() == NDChannelLayout.RGB;
+        float[][] lut = lookupTables(ImageUtils.getFloatNormalizer(config, rgb), ch);
+
+        Scratch scratch = SCRATCH.get();
+        byte[] pixels = scratch.pixels(lengthElements);
+        float[] values = scratch.values(lengthElements);
+        m.data().get(pixels, 0, lengthElements);
+
+        boolean channelsFirst = config.format() == NDFormat.CHANNELS_FIRST;
+        for (int c = 0; c < ch; c++) {
+            float[] table = lut[c];
+            int src = (rgb && ch == 3) ? 2 - c : c;         //BGR -> RGB, if required
+            int dst = channelsFirst ? c * plane : c;
+            int dstStride = channelsFirst ? 1 : ch;
+            for (int i = 0, j = src, k = dst; i < plane; i++, j += ch, k += dstStride) {
+                values[k] = table[pixels[j] & 0xFF];
+            }
+        }
 
-        ImageUtils.FloatNormalizer f = ImageUtils.getFloatNormalizer(config, rgb);
-
-
-        Indexer imgIdx = m.createIndexer(direct);
-        if (imgIdx instanceof UByteIndexer) {
-            UByteIndexer ubIdx = (UByteIndexer) imgIdx;
-            if (config.format() == NDFormat.CHANNELS_FIRST) {
-                if (rgb) {
-                    //Mat is HWC in BGR, we want (N)CHW in RGB format
-                    int[] rgbToBgr = {2, 1, 0};
-                    for (int c = 0; c < rgbToBgr.length; c++) {
-                        for (int y = 0; y < h; y++) {
-                            for (int x = 0; x < w; x++) {
-                                //int idxBGR = (ch * w * y) + (ch * x) + rgbToBgr[c];
-                                int v = ubIdx.get(y,x,rgbToBgr[c]);
-                                float normalized = f.normalize(v, c);
-                                fb.put(normalized);
-                            }
-                        }
-                    }
-                } else {
-                    UByteRawIndexer uByteRawIndexer = (UByteRawIndexer) ubIdx;
-                    //Mat is HWC in BGR, we want (N)CHW in BGR format
-                    for (int c = 0; c < 3; c++) {
-                        for (int y = 0; y < h; y++) {
-                            for (int x = 0; x < w; x++) {
-                                int idxBGR = (ch * w * y) + (ch * x) + c;
-                                int v = uByteRawIndexer.getRaw(idxBGR);
-                                float normalized = f.normalize(v, c);
-                                fb.put(normalized);
-                            }
-                        }
-                    }
-                }
-            } else {
-                if (rgb) {
-                    //Mat is HWC in BGR, we want (N)HWC in RGB format
-                    fb.position(0);
-                    UByteRawIndexer uByteRawIndexer = (UByteRawIndexer) ubIdx;
-                    for (int i = 0; i < lengthElements; i += 3) {
-                        int b = uByteRawIndexer.getRaw(i);
-                        int g = uByteRawIndexer.getRaw(i + 1);
-                        int r = uByteRawIndexer.getRaw(i + 2);
-                        fb.put(f.normalize(r, 0));
-                        fb.put(f.normalize(g, 1));
-                        fb.put(f.normalize(b, 2));
-                    }
-                } else {
-                    //Mat is HWC in BGR, we want (N)HWC in BGR format
-                    UByteRawIndexer uByteRawIndexer = (UByteRawIndexer) ubIdx;
+        long lengthBytes = (long) lengthElements * dataType.width();
+        Preconditions.checkState(out.remaining() >= lengthBytes, "Output buffer is too small for image of size %sx%s with %s channels: " +
+                "%s bytes remaining, %s bytes required", h, w, ch, out.remaining(), lengthBytes);
+        write(values, lengthElements, dataType, out);
+    }
 
-                    for (int i = 0; i < lengthElements; i++) {
-                        float normalized = f.normalize(uByteRawIndexer.getRaw(i), i % 3);
-                        fb.put(normalized);
-                    }
-                }
+    /**
+     * @return For each channel c, the normalized value of each possible (8-bit) input value v: {@code lut[c][v]}
+     */
+    protected static float[][] lookupTables(ImageUtils.FloatNormalizer f, int channels) {
+        float[][] lut = new float[channels][256];
+        for (int c = 0; c < channels; c++) {
+            for (int v = 0; v < 256; v++) {
+                lut[c][v] = f.normalize(v, c);
             }
-        } else {
-            throw new RuntimeException("Not yet implemented: " + imgIdx.getClass());
+        }
+        return lut;
+    }
+
+    /**
+     * Write the first {@code length} values to the buffer (starting at its current position), converted to the given type. Conversions are the same as
+     * {@link ImageUtils#cast(ByteBuffer, NDArrayType, NDArrayType)} from FLOAT
+     */
+    protected static void write(float[] values, int length, NDArrayType type, ByteBuffer bb) {
+        switch (type) {
+            case FLOAT:
+                bb.asFloatBuffer().put(values, 0, length);
+                break;
+            case DOUBLE:
+                DoubleBuffer db = bb.asDoubleBuffer();
+                for (int i = 0; i < length; i++)
+                    db.put(values[i]);
+                break;
+            case INT64:
+            case UINT64:
+                LongBuffer lb = bb.asLongBuffer();
+                for (int i = 0; i < length; i++)
+                    lb.put((long) values[i]);
+                break;
+            case INT32:
+            case UINT32:
+                IntBuffer ib = bb.asIntBuffer();
+                for (int i = 0; i < length; i++)
+                    ib.put((int) values[i]);
+                break;
+            case INT16:
+            case UINT16:
+                ShortBuffer sb = bb.asShortBuffer();
+                for (int i = 0; i < length; i++)
+                    sb.put((short) (int) values[i]);
+                break;
+            case INT8:
+            case UINT8:
+                for (int i = 0; i < length; i++)
+                    bb.put(bb.position() + i, (byte) (int) values[i]);
+                break;
+            case FLOAT16:
+                HalfIndexer idx_f16 = HalfIndexer.create(bb.asShortBuffer());
+                for (int i = 0; i < length; i++)
+                    idx_f16.put(i, values[i]);
+                break;
+            case BFLOAT16:
+                Bfloat16Indexer idx_bf16 = Bfloat16Indexer.create(bb.asShortBuffer());
+                for (int i = 0; i < length; i++)
+                    idx_bf16.put(i, values[i]);
+                break;
+            default:
+                throw new UnsupportedOperationException("Conversion to " + type + " not supported or not yet implemented");
+        }
+    }
+
+    /**
+     * Per thread arrays for the pixels and values of the image being converted, reused while large enough.
+     * Arrays above {@link #MAX_REUSED_ELEMENTS} are temporary
+     */
+    private static class Scratch {
+        private byte[] pixels = new byte[0];
+        private float[] values = new float[0];
+
+        private byte[] pixels(int length) {
+            if (length > MAX_REUSED_ELEMENTS)
+                return new byte[length];
+            if (pixels.length < length)
+                pixels = new byte[length];
+            return pixels;
         }
 
-        return bb;
+        private float[] values(int length) {
+            if (length > MAX_REUSED_ELEMENTS)
+                return new float[length];
+            if (values.length < length)
+                values = new float[length];
+            return values;
+        }
     }
 
 }
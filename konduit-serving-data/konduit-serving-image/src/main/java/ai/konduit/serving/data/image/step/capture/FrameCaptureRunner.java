@@ -26,6 +26,19 @@ import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
 import lombok.extern.slf4j.Slf4j;
 import org.bytedeco.javacv.*;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs {@link CameraFrameCaptureStep} and {@link VideoFrameCaptureStep}: each execution returns the next frame of the
+ * camera or video.<br>
+ * If {@code prefetchFrames > 0}, frames are grabbed (and skipped, if required) by a dedicated decode thread, ahead of
+ * time, into a bounded buffer. Execution then only takes the next decoded frame from the buffer, so that the decoding
+ * rate is decoupled from the inference rate (for example in an {@code AsyncPipeline}). When the buffer is full, the
+ * decode thread either waits or discards the oldest frame, depending on the {@link FramePrefetchPolicy}.
+ */
 @Slf4j
 @CanRun(CameraFrameCaptureStep.class)
 public class FrameCaptureRunner implements PipelineStepRunner {
@@ -33,12 +46,22 @@ public class FrameCaptureRunner implements PipelineStepRunner {
     protected final PipelineStep step;
     protected final int skip;
     protected final String outputKey;
-    protected boolean initialized;
+    protected final int prefetchFrames;
+    protected final FramePrefetchPolicy prefetchPolicy;
+    protected volatile boolean initialized;
+    protected volatile boolean started;     //Initialized, and decode thread started if prefetching
     protected FrameGrabber grabber;
     protected OpenCVFrameConverter.ToIplImage converter;
     protected boolean loop = false;
     private Runnable init;
 
+    //Prefetching
+    protected BlockingQueue<Frame> prefetched;
+    protected Thread decodeThread;
+    protected volatile boolean endOfStream;
+    protected volatile Throwable decodeError;
+    protected final AtomicLong droppedFrames = new AtomicLong();
+
     public FrameCaptureRunner(CameraFrameCaptureStep step){
         this.outputKey = step.outputKey();
         this.step = step;
@@ -46,6 +69,8 @@ public class FrameCaptureRunner implements PipelineStepRunner {
             this.initOpenCVFrameGrabber(step);
         };
         this.skip = -1;
+        this.prefetchFrames = step.prefetchFrames();
+        this.prefetchPolicy = step.prefetchPolicy() == null ? FramePrefetchPolicy.DROP_OLDEST : step.prefetchPolicy();
     }
 
     public FrameCaptureRunner(VideoFrameCaptureStep step){
@@ -55,12 +80,36 @@ public class FrameCaptureRunner implements PipelineStepRunner {
             this.initFFmpegFrameGrabber(step);
         };
         this.skip = step.skipFrames() == null ? 0 : step.skipFrames();
+        this.prefetchFrames = step.prefetchFrames();
+        this.prefetchPolicy = step.prefetchPolicy() == null ? FramePrefetchPolicy.BLOCK : step.prefetchPolicy();
     }
 
     @Override
     public synchronized void close() {
+        started = false;
         if(initialized){
             initialized = false;
+            if(decodeThread != null){
+                //The decode thread may be in a native grab() call: the grabber can only be released once it has finished
+                decodeThread.interrupt();
+                boolean interrupted = false;
+                while(decodeThread.isAlive()){
+                    try {
+                        decodeThread.join(5000);
+                    } catch (InterruptedException e){
+                        interrupted = true;
+                    }
+                    if(decodeThread.isAlive())
+                        log.warn("Waiting for the frame decode thread to finish before closing the FrameGrabber");
+                }
+                if(interrupted)
+                    Thread.currentThread().interrupt();
+                decodeThread = null;
+                prefetched.clear();
+                if(droppedFrames.get() > 0){
+                    log.info("Dropped {} prefetched frames that were not taken in time", droppedFrames.get());
+                }
+            }
             try {
                 grabber.stop();
                 grabber.close();
@@ -76,41 +125,117 @@ public class FrameCaptureRunner implements PipelineStepRunner {
     }
 
     @Override
-    public synchronized Data exec(Context ctx, Data data) {
-        if(!initialized)
-            init.run();
+    public Data exec(Context ctx, Data data) {
+        if(!started) {
+            synchronized (this) {
+                if(!started) {
+                    init.run();
+                    if(prefetchFrames > 0)
+                        startPrefetching();
+                    started = true;
+                }
+            }
+        }
 
         try {
-            Frame frame = grabber.grab();
-            if(frame == null && loop){
-                frame = grabber.grab();
+            Frame frame;
+            if(prefetchFrames > 0){
+                frame = takePrefetched();
+            } else {
+                synchronized (this) {
+                    frame = grabNext();
+                }
+                if(frame == null)
+                    throw new IllegalStateException("No more frames available");
             }
-            frame = frame.clone();  //Clone otherwise buffer will be reused and async overwritten in async pipelines
             Image i = Image.create(frame);
-            //System.out.println("IMAGE: h=" + i.height() + ", w=" + i.width());
-
-            if(skip > 0){
-                //using setFrameNumber can be costly - seems to require decoding from the last keyframe?
-                //i.e., cost of calling setFrameNumber grows linearly over time, then jumps back to a few MS periodically
-                // (presumably once it hits next keyframe)
-                int maxFrames = grabber.getLengthInFrames();
-                if(skip >= 20){     //TODO this threshold should be selected based
-                    int currFrame = grabber.getFrameNumber();
-                    int setFrame = Math.min(maxFrames, currFrame + skip);
-                    grabber.setFrameNumber(setFrame);
-                } else {
-                    for( int j=0; j<skip; j++ ) {
-                        if(grabber.grab() == null)
-                            break;
-                    }
-                }
+            return Data.singleton(outputKey, i);
+        } catch (Throwable t){
+            throw new RuntimeException("Error getting frame", t);
+        }
+    }
 
+    /**
+     * Grab the next frame, and then skip the following frames as configured.
+     *
+     * @return A copy of the next frame, or null if there are no more frames
+     */
+    protected Frame grabNext() throws Exception {
+        Frame frame = grabber.grab();
+        if(frame == null && loop){
+            frame = grabber.grab();
+        }
+        if(frame == null)
+            return null;
+        frame = frame.clone();  //Clone otherwise buffer will be reused and async overwritten in async pipelines
 
+        if(skip > 0){
+            //using setFrameNumber can be costly - seems to require decoding from the last keyframe?
+            //i.e., cost of calling setFrameNumber grows linearly over time, then jumps back to a few MS periodically
+            // (presumably once it hits next keyframe)
+            int maxFrames = grabber.getLengthInFrames();
+            if(skip >= 20){     //TODO this threshold should be selected based
+                int currFrame = grabber.getFrameNumber();
+                int setFrame = Math.min(maxFrames, currFrame + skip);
+                grabber.setFrameNumber(setFrame);
+            } else {
+                for( int j=0; j<skip; j++ ) {
+                    if(grabber.grab() == null)
+                        break;
+                }
             }
+        }
+        return frame;
+    }
 
-            return Data.singleton(outputKey, i);
+    protected void startPrefetching(){
+        prefetched = new ArrayBlockingQueue<>(prefetchFrames);
+        endOfStream = false;
+        decodeError = null;
+        decodeThread = new Thread(this::decodeLoop, "konduit-frame-capture-" + outputKey);
+        decodeThread.setDaemon(true);
+        decodeThread.start();
+    }
+
+    protected void decodeLoop(){
+        try {
+            while(initialized && !Thread.currentThread().isInterrupted()){
+                Frame frame = grabNext();
+                if(frame == null){
+                    endOfStream = true;
+                    return;
+                }
+
+                if(prefetchPolicy == FramePrefetchPolicy.BLOCK){
+                    prefetched.put(frame);
+                } else {
+                    while(!prefetched.offer(frame)){
+                        if(prefetched.poll() != null)
+                            droppedFrames.incrementAndGet();
+                    }
+                }
+            }
+        } catch (InterruptedException e){
+            //Closed
         } catch (Throwable t){
-            throw new RuntimeException("Error getting frame", t);
+            if(initialized) {
+                log.error("Error decoding frames in background", t);
+                decodeError = t;
+            }
+        }
+    }
+
+    protected Frame takePrefetched() throws InterruptedException {
+        while(true){
+            Frame frame = prefetched.poll(100, TimeUnit.MILLISECONDS);
+            if(frame != null)
+                return frame;
+            if(decodeError != null)
+                throw new RuntimeException("Error decoding frames", decodeError);
+            if(endOfStream && prefetched.isEmpty())
+                throw new IllegalStateException("No more frames available");
+            if(!initialized)
+                throw new IllegalStateException("Frame capture was closed");
         }
     }
 
@@ -134,7 +259,15 @@ public class FrameCaptureRunner implements PipelineStepRunner {
     }
 
     protected void initFFmpegFrameGrabber(VideoFrameCaptureStep step){
-        grabber = new FFmpegFrameGrabber(step.filePath());
+        FFmpegFrameGrabber ffmpegGrabber = new FFmpegFrameGrabber(step.filePath());
+        grabber = ffmpegGrabber;
+
+        if(step.decoderSkipMode() != null && step.decoderSkipMode() != DecoderSkipMode.NONE){
+            ffmpegGrabber.setVideoOption("skip_frame", step.decoderSkipMode().ffmpegValue());
+        }
+        if(step.videoCodec() != null && !step.videoCodec().isEmpty()){
+            ffmpegGrabber.setVideoCodecName(step.videoCodec());
+        }
 
         loop = step.loop();
         converter = new OpenCVFrameConverter.ToIplImage();
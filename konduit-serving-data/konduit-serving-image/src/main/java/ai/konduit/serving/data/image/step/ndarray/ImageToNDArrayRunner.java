@@ -21,14 +21,16 @@ package ai.konduit.serving.data.image.step.ndarray;
 import ai.konduit.serving.annotation.runner.CanRun;
 import ai.konduit.serving.data.image.convert.ImageToNDArray;
 import ai.konduit.serving.data.image.convert.ImageToNDArrayConfig;
+import ai.konduit.serving.data.image.convert.config.NDFormat;
 import ai.konduit.serving.pipeline.api.context.Context;
 import ai.konduit.serving.pipeline.api.data.*;
 import ai.konduit.serving.pipeline.api.step.PipelineStep;
 import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
 import ai.konduit.serving.pipeline.impl.data.ValueNotFoundException;
 import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import com.google.common.primitives.Longs;
 import lombok.NonNull;
-import org.bytedeco.javacpp.Loader;
+import org.bytedeco.opencv.opencv_core.Mat;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.common.primitives.Pair;
 
@@ -38,19 +40,28 @@ import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
 
 @CanRun(ImageToNDArrayStep.class)
 public class ImageToNDArrayRunner implements PipelineStepRunner {
 
     protected final ImageToNDArrayStep step;
+    protected ForkJoinPool pool;
 
     public ImageToNDArrayRunner(@NonNull ImageToNDArrayStep step){
         this.step = step;
     }
 
     @Override
-    public void close() {
-        //No-op
+    public synchronized void close() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
     }
 
     @Override
@@ -111,8 +122,6 @@ public class ImageToNDArrayRunner implements PipelineStepRunner {
             boolean isList = data.type(s) == ValueType.LIST && data.listType(s) == ValueType.IMAGE;
 
             if(isList){
-                List<NDArray> l = new ArrayList<>();
-                boolean batch = false;
                 switch (step.config().listHandling()){
                     default:
                     case NONE:
@@ -131,60 +140,24 @@ public class ImageToNDArrayRunner implements PipelineStepRunner {
                         }
                         return d;
                     case BATCH:
-                        batch = true;   //Fall through
+                        List<Image> batch = data.getListImage(s);
+                        if(batch.isEmpty()) {
+                            //Return empty NDArray
+                            empty(d, outNames.get(idx++));
+                        } else if(batch.size() == 1) {
+                            d.put(outNames.get(idx++), ImageToNDArray.convert(batch.get(0), step.config()));
+                        } else {
+                            d.put(outNames.get(idx++), convertBatch(batch));
+                        }
+                        break;
                     case LIST_OUT:
                         List<Image> images = data.getListImage(s);
-                        for(Image i : images){
-                            NDArray out = ImageToNDArray.convert(i, step.config());
-                            l.add(out);
-                        }
+                        NDArray[] l = new NDArray[images.size()];
+                        forEach(images.size(), i -> l[i] = ImageToNDArray.convert(images.get(i), step.config()));
+                        d.putListNDArray(outNames.get(idx++), Arrays.asList(l));
                         break;
                 }
 
-                if(batch){
-                    if(l.size() == 0) {
-                        //Return empty NDArray
-                        empty(d, outNames.get(idx++));
-                        continue;
-                    } else if(l.size() == 1) {
-                        d.put(outNames.get(idx++), l.get(0));
-                    } else {
-                        //Check that all have the same shape before combining
-                        long[] first = l.get(0).shape();
-                        for (NDArray arr : l) {
-                            long[] curr = arr.shape();
-                            Preconditions.checkState(Arrays.equals(first, curr), "Error in ImageToNDArrayStep:" +
-                                    "ImageToNDArrayStep.config.listHandling == BATCH but at least two output NDArrays have different shapes" +
-                                    "(%s vs. %s). Unable to combine multiple NDArrays according to batch dimension if they have different shapes." +
-                                    " Setting ImageToNDArrayStep.config.height/width or only passing in all the same size images will solve this problem", first, curr);
-                        }
-
-                        //Concatenate. Note that C order along dimension 0 means we can just copy buffers
-                        SerializedNDArray nd = l.get(0).getAs(SerializedNDArray.class);
-                        int size = nd.getBuffer().capacity();
-                        int newSize = size * l.size();
-                        long[] newShape = l.get(0).shape().clone();
-                        if(!step.config().includeMinibatchDim()){
-                            newShape = new long[]{0, newShape[0], newShape[1], newShape[2]};
-                        }
-
-                        newShape[0] = l.size();
-                        boolean direct = !Loader.getPlatform().startsWith("android");
-                        ByteBuffer outBuff = direct ? ByteBuffer.allocateDirect(newSize).order(ByteOrder.LITTLE_ENDIAN) : ByteBuffer.allocate(newSize).order(ByteOrder.LITTLE_ENDIAN);
-                        nd.getBuffer().rewind();
-                        outBuff.put(nd.getBuffer());
-                        for( int i = 1; i < l.size(); i++) {
-                            SerializedNDArray ndarr = l.get(i).getAs(SerializedNDArray.class);
-                            ndarr.getBuffer().rewind();
-                            outBuff.put(ndarr.getBuffer());
-                        }
-                        SerializedNDArray outArr = new SerializedNDArray(l.get(0).type(), newShape, outBuff);
-                        d.put(outNames.get(idx++), NDArray.create(outArr));
-                    }
-                } else {
-                    d.putListNDArray(outNames.get(idx++), l);
-                }
-
             } else {
                 //Single image case
 
@@ -238,6 +211,120 @@ public class ImageToNDArrayRunner implements PipelineStepRunner {
         return d;
     }
 
+    /**
+     * Convert the images directly into slices of the one (pre-allocated) output array, instead of converting each image
+     * to a separate array and then concatenating them. With parallelism configured, images are decoded and converted
+     * in parallel - each thread writes to its own slice of the output buffer
+     */
+    protected NDArray convertBatch(List<Image> images) {
+        ImageToNDArrayConfig config = step.config();
+        int n = images.size();
+
+        //Decode the first image on the calling thread: if height/width aren't set, we need its size to allocate the output
+        Mat first = ImageToNDArray.decode(images.get(0), config);
+        int h = config.height() != null ? config.height() : first.rows();
+        int w = config.width() != null ? config.width() : first.cols();
+        int ch = config.channelLayout().numChannels();
+        boolean channelsFirst = config.format() == NDFormat.CHANNELS_FIRST;
+
+        int imageBytes = h * w * ch * config.dataType().width();
+        ByteBuffer outBuff = ImageToNDArray.allocate((long) imageBytes * n);
+        forEach(n, i -> {
+            Mat m = i == 0 ? first : ImageToNDArray.decode(images.get(i), config);
+
+            //Without a fixed output height/width, each image is converted at its own size
+            int currH = config.height() != null ? h : m.rows();
+            int currW = config.width() != null ? w : m.cols();
+            Preconditions.checkState(currH == h && currW == w, "Error in ImageToNDArrayStep:" +
+                    "ImageToNDArrayStep.config.listHandling == BATCH but at least two output NDArrays have different shapes" +
+                    "(%s vs. %s). Unable to combine multiple NDArrays according to batch dimension if they have different shapes." +
+                    " Setting ImageToNDArrayStep.config.height/width or only passing in all the same size images will solve this problem",
+                    imageShape(channelsFirst, ch, h, w), imageShape(channelsFirst, ch, currH, currW));
+
+            //Note C order along dimension 0 means image i is the i'th contiguous block of the buffer
+            ByteBuffer slice = outBuff.duplicate();
+            ((Buffer) slice).position(i * imageBytes);
+            ((Buffer) slice).limit((i + 1) * imageBytes);
+            ImageToNDArray.convert(m, config, false, slice.slice().order(ByteOrder.LITTLE_ENDIAN));
+        });
+
+        long[] shape = Longs.concat(new long[]{n}, imageShape(channelsFirst, ch, h, w));
+        return NDArray.create(new SerializedNDArray(config.dataType(), shape, outBuff));
+    }
+
+    private static long[] imageShape(boolean channelsFirst, int ch, int h, int w) {
+        return channelsFirst ? new long[]{ch, h, w} : new long[]{h, w, ch};
+    }
+
+    /**
+     * Execute the task for each index 0 to n-1: in parallel if a pool is configured, sequentially otherwise.<br>
+     * The calling thread and the helper tasks submitted to the pool take the next index from a shared counter, and the
+     * caller only waits for the indices already taken by running helpers. A helper that only starts once all indices are
+     * taken has nothing to do, so the caller never blocks on a queued task, even when the pool threads are all busy
+     * (for example in the common pool).
+     */
+    protected void forEach(int n, IntConsumer task) {
+        ForkJoinPool pool = executor();
+        if (pool == null || n <= 1) {
+            for (int i = 0; i < n; i++) {
+                task.accept(i);
+            }
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(n);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Runnable worker = () -> {
+            for (int i = next.getAndIncrement(); i < n; i = next.getAndIncrement()) {
+                try {
+                    task.accept(i);
+                } catch (Throwable t) {
+                    error.compareAndSet(null, t);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        int helpers = Math.min(n - 1, pool.getParallelism());
+        for (int i = 0; i < helpers; i++) {
+            pool.execute(worker);
+        }
+        worker.run();
+
+        //Always wait for all indices, even after a failure: they write to buffers owned by the caller
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        Throwable t = error.get();
+        if (t instanceof Error)
+            throw (Error) t;
+        if (t != null)
+            throw (RuntimeException) t;
+    }
+
+    protected synchronized ForkJoinPool executor() {
+        Integer parallelism = step.parallelism();
+        if (parallelism == null || parallelism == 0 || parallelism == 1)
+            return null;
+        if (parallelism == -1)
+            return ForkJoinPool.commonPool();
+        Preconditions.checkState(parallelism > 1, "Invalid ImageToNDArrayStep parallelism: must be -1, 0 or positive, got %s", parallelism);
+        if (pool == null)
+            pool = new ForkJoinPool(parallelism);
+        return pool;
+    }
+
     private void empty(Data d, String outName) {
         long[] shape = ImageToNDArray.getOutputShape(step.config());
         if(shape.length == 3){
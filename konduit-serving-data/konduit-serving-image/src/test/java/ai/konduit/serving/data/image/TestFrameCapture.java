@@ -0,0 +1,200 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.data.image;
+
+import ai.konduit.serving.data.image.step.capture.DecoderSkipMode;
+import ai.konduit.serving.data.image.step.capture.FrameCaptureRunner;
+import ai.konduit.serving.data.image.step.capture.FramePrefetchPolicy;
+import ai.konduit.serving.data.image.step.capture.VideoFrameCaptureStep;
+import ai.konduit.serving.pipeline.api.data.Data;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC3;
+import static org.bytedeco.opencv.global.opencv_core.mean;
+import static org.junit.Assert.*;
+
+public class TestFrameCapture {
+
+    private static final int NUM_FRAMES = 30;
+    private static final int KEYFRAME_INTERVAL = 10;
+    private static final int INTENSITY_STEP = 8;       //Frame i is a flat image of intensity i * INTENSITY_STEP
+
+    @ClassRule
+    public static TemporaryFolder testDir = new TemporaryFolder();
+
+    private static File video;
+
+    @BeforeClass
+    public static void generateVideo() throws Exception {
+        video = new File(testDir.getRoot(), "frames.mp4");
+        OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+        try (FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(video, 32, 32)) {
+            recorder.setFormat("mp4");
+            recorder.setVideoCodec(avcodec.AV_CODEC_ID_MPEG4);
+            recorder.setFrameRate(30);
+            recorder.setGopSize(KEYFRAME_INTERVAL);
+            recorder.setVideoQuality(1);
+            recorder.start();
+            for (int i = 0; i < NUM_FRAMES; i++) {
+                int v = i * INTENSITY_STEP;
+                try (Mat m = new Mat(32, 32, CV_8UC3, new Scalar(v, v, v, 0))) {
+                    recorder.record(converter.convert(m));
+                }
+            }
+            recorder.stop();
+        }
+    }
+
+    @Test
+    public void testNoPrefetch() {
+        FrameCaptureRunner runner = new FrameCaptureRunner(step());
+        try {
+            assertEquals(range(0, NUM_FRAMES, 1), readAll(runner));
+        } finally {
+            runner.close();
+        }
+    }
+
+    @Test
+    public void testSkipFrames() {
+        FrameCaptureRunner runner = new FrameCaptureRunner(step().skipFrames(2));
+        try {
+            assertEquals(range(0, NUM_FRAMES, 3), readAll(runner));
+        } finally {
+            runner.close();
+        }
+    }
+
+    @Test
+    public void testPrefetchBlock() throws Exception {
+        FrameCaptureRunner runner = new FrameCaptureRunner(step()
+                .prefetchFrames(4)
+                .prefetchPolicy(FramePrefetchPolicy.BLOCK));
+        try {
+            //The decode thread waits for the buffer to have space, so no frame is lost however slow the execution is
+            List<Integer> frames = new ArrayList<>();
+            frames.add(frameIndex(runner.exec(null, Data.empty())));
+            Thread.sleep(500);
+            frames.addAll(readAll(runner));
+            assertEquals(range(0, NUM_FRAMES, 1), frames);
+        } finally {
+            runner.close();
+        }
+    }
+
+    @Test
+    public void testPrefetchDropOldest() throws Exception {
+        FrameCaptureRunner runner = new FrameCaptureRunner(step()
+                .prefetchFrames(4)
+                .prefetchPolicy(FramePrefetchPolicy.DROP_OLDEST));
+        try {
+            //The decode thread reaches the end of the video while waiting, keeping only the most recent frames
+            runner.exec(null, Data.empty());
+            Thread.sleep(500);
+            assertEquals(range(NUM_FRAMES - 4, NUM_FRAMES, 1), readAll(runner));
+        } finally {
+            runner.close();
+        }
+    }
+
+    @Test
+    public void testPrefetchClose() throws Exception {
+        FrameCaptureRunner runner = new FrameCaptureRunner(step()
+                .prefetchFrames(2)
+                .prefetchPolicy(FramePrefetchPolicy.BLOCK));
+        try {
+            //Closing stops the decode thread, which is waiting on the full buffer, and the capture restarts when executed again
+            assertEquals(0, frameIndex(runner.exec(null, Data.empty())));
+            Thread.sleep(200);
+            runner.close();
+            assertEquals(0, frameIndex(runner.exec(null, Data.empty())));
+            assertEquals(1, frameIndex(runner.exec(null, Data.empty())));
+        } finally {
+            runner.close();
+        }
+    }
+
+    @Test
+    public void testDecoderSkipMode() {
+        FrameCaptureRunner runner = new FrameCaptureRunner(step().decoderSkipMode(DecoderSkipMode.NON_KEY));
+        try {
+            //Only the keyframes are decoded. The encoder may add keyframes on its own, but at least every KEYFRAME_INTERVAL
+            List<Integer> frames = readAll(runner);
+            assertTrue(frames.toString(), frames.size() < NUM_FRAMES);
+            assertTrue(frames.toString(), frames.containsAll(range(0, NUM_FRAMES, KEYFRAME_INTERVAL)));
+            for (int i = 1; i < frames.size(); i++) {
+                assertTrue(frames.toString(), frames.get(i) > frames.get(i - 1));
+            }
+        } finally {
+            runner.close();
+        }
+    }
+
+    private static VideoFrameCaptureStep step() {
+        return new VideoFrameCaptureStep()
+                .filePath(video.getAbsolutePath())
+                .loop(false);
+    }
+
+    /**
+     * Executes the runner until the end of the video
+     *
+     * @return Index of each returned frame
+     */
+    private static List<Integer> readAll(FrameCaptureRunner runner) {
+        List<Integer> frames = new ArrayList<>();
+        while (true) {
+            Data out;
+            try {
+                out = runner.exec(null, Data.empty());
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                assertEquals("No more frames available", e.getCause().getMessage());
+                return frames;
+            }
+            frames.add(frameIndex(out));
+            assertTrue("Read past the end of the video", frames.size() <= NUM_FRAMES);
+        }
+    }
+
+    private static int frameIndex(Data data) {
+        Mat m = data.getImage("image").getAs(Mat.class);
+        return (int) Math.round(mean(m).get(0) / INTENSITY_STEP);
+    }
+
+    private static List<Integer> range(int from, int to, int step) {
+        List<Integer> l = new ArrayList<>();
+        for (int i = from; i < to; i += step) {
+            l.add(i);
+        }
+        return l;
+    }
+}
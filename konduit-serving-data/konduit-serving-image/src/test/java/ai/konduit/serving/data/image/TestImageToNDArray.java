@@ -1,6 +1,7 @@
 package ai.konduit.serving.data.image;
 
 import ai.konduit.serving.data.image.convert.ImageToNDArrayConfig;
+import ai.konduit.serving.data.image.convert.config.AspectRatioHandling;
 import ai.konduit.serving.data.image.convert.config.ImageNormalization;
 import ai.konduit.serving.data.image.convert.config.NDChannelLayout;
 import ai.konduit.serving.data.image.convert.config.NDFormat;
@@ -9,6 +10,7 @@ import ai.konduit.serving.data.nd4j.util.ND4JUtil;
 import ai.konduit.serving.pipeline.api.data.*;
 import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
 import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.impl.data.image.Jpeg;
 import ai.konduit.serving.pipeline.impl.pipeline.SequencePipeline;
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.datavec.image.loader.NativeImageLoader;
@@ -24,6 +26,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -262,6 +267,55 @@ public class TestImageToNDArray {
         }
     }
 
+    @Test
+    public void testNonUniformImage(){
+        //Every pixel different, to check the layout and channel order of the output - not just the values
+        int h = 24;
+        int w = 20;
+        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        for( int y=0; y<h; y++ ){
+            for( int x=0; x<w; x++ ){
+                int r = (y * 10 + x) % 256;
+                int g = (x * 7 + 3) % 256;
+                int b = (y * 11 + x * 5) % 256;
+                bi.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        Data in = Data.singleton("image", Image.create(bi));
+
+        for(boolean rgb : new boolean[]{true, false}) {
+            for (NDFormat f : NDFormat.values()) {
+                Pipeline p = SequencePipeline.builder()
+                        .add(new ImageToNDArrayStep()
+                                .config(new ImageToNDArrayConfig()
+                                        .normalization(new ImageNormalization(ImageNormalization.Type.SCALE_01))
+                                        .height(h)
+                                        .width(w)
+                                        .channelLayout(rgb ? NDChannelLayout.RGB : NDChannelLayout.BGR)
+                                        .format(f)
+                                        .includeMinibatchDim(false)
+                                        .dataType(NDArrayType.FLOAT)
+                                )
+                        )
+                        .build();
+
+                float[][][] fArr = p.executor().exec(in).getNDArray("image").getAs(float[][][].class);
+
+                for( int y=0; y<h; y++ ){
+                    for( int x=0; x<w; x++ ){
+                        int pixel = bi.getRGB(x, y);
+                        int[] expRgb = {(pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF};
+                        for( int c=0; c<3; c++ ){
+                            float e = expRgb[rgb ? c : 2 - c] / 255f;
+                            float a = f == NDFormat.CHANNELS_FIRST ? fArr[c][y][x] : fArr[y][x][c];
+                            assertEquals(e, a, 1e-6f);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     public int[][][] singleColorRGB(int h, int w, String color){
 
         int idx;
@@ -326,6 +380,35 @@ public class TestImageToNDArray {
 
 
 
+    @Test
+    public void testLargeImage(){
+        //Images above the size for which the per thread buffers are reused are converted with temporary buffers
+        int r = 255;
+        int g = 128;
+        int b = 32;
+        Data in = Data.singleton("image", Image.create(createConstantImageRgb(32, 32, r, g, b)));
+
+        for(int[] hw : new int[][]{{1100, 2000}, {32, 32}, {1100, 2000}}) {
+            Pipeline p = SequencePipeline.builder()
+                    .add(new ImageToNDArrayStep()
+                            .config(new ImageToNDArrayConfig()
+                                    .height(hw[0])
+                                    .width(hw[1])
+                                    .aspectRatioHandling(AspectRatioHandling.STRETCH)
+                                    .includeMinibatchDim(false)
+                                    .normalization(new ImageNormalization(ImageNormalization.Type.NONE))))
+                    .build();
+
+            INDArray arr = p.executor().exec(in).getNDArray("image").getAs(INDArray.class);
+            assertArrayEquals(new long[]{3, hw[0], hw[1]}, arr.shape());
+            int[] expected = {r, g, b};
+            for(int c = 0; c < 3; c++) {
+                assertEquals(expected[c], arr.slice(c).minNumber().intValue());
+                assertEquals(expected[c], arr.slice(c).maxNumber().intValue());
+            }
+        }
+    }
+
     @Test
     public void testImageNormalizationRgbBgr(){
         //Test image normalization - RGB and BGR
@@ -829,6 +912,107 @@ public class TestImageToNDArray {
     }
 
 
+    @Test
+    public void testBatchingParallel(){
+        List<Image> inputImages = new ArrayList<>();
+        for( int i=0; i<8; i++ ){
+            int size = 16 + 8 * i;
+            inputImages.add(Image.create(createConstantImageRgb(size, 2 * size, 30 * i, 255 - 20 * i, 10 * i)));
+        }
+        Data in = Data.singletonList("images", inputImages, ValueType.IMAGE);
+
+        for(ImageToNDArrayConfig.ListHandling lh : new ImageToNDArrayConfig.ListHandling[]{ImageToNDArrayConfig.ListHandling.BATCH, ImageToNDArrayConfig.ListHandling.LIST_OUT}) {
+            for (NDFormat f : NDFormat.values()) {
+                Data exp = null;
+                for (Integer parallelism : new Integer[]{null, 4, -1}) {
+                    Pipeline p = SequencePipeline.builder()
+                            .add(new ImageToNDArrayStep()
+                                    .config(new ImageToNDArrayConfig()
+                                            .height(32)
+                                            .width(48)
+                                            .dataType(NDArrayType.FLOAT)
+                                            .listHandling(lh)
+                                            .format(f)
+                                    )
+                                    .keys("images")
+                                    .outputNames("out")
+                                    .parallelism(parallelism)
+                            )
+                            .build();
+
+                    Data out = p.executor().exec(in);
+                    if (exp == null) {
+                        exp = out;
+                    } else {
+                        assertEquals(lh + " - " + f + " - parallelism=" + parallelism, exp, out);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testBatchingParallelCommonPoolBusy() throws Exception {
+        //Conversions with parallelism -1 executed from the common pool itself, with more conversions than pool threads:
+        //the threads waiting for their own batch must not wait for tasks queued behind them
+        List<Image> inputImages = new ArrayList<>();
+        for( int i=0; i<8; i++ ){
+            inputImages.add(Image.create(createConstantImageRgb(32, 48, 30 * i, 255 - 20 * i, 10 * i)));
+        }
+        Data in = Data.singletonList("images", inputImages, ValueType.IMAGE);
+
+        Pipeline p = SequencePipeline.builder()
+                .add(new ImageToNDArrayStep()
+                        .config(new ImageToNDArrayConfig()
+                                .height(32)
+                                .width(48)
+                                .listHandling(ImageToNDArrayConfig.ListHandling.BATCH))
+                        .keys("images")
+                        .outputNames("out")
+                        .parallelism(-1))
+                .build();
+        PipelineExecutor exec = p.executor();
+        Data exp = exec.exec(in);
+
+        List<Future<Data>> futures = new ArrayList<>();
+        for( int i=0; i<2 * ForkJoinPool.getCommonPoolParallelism() + 2; i++ ){
+            futures.add(ForkJoinPool.commonPool().submit(() -> exec.exec(in)));
+        }
+        for(Future<Data> f : futures){
+            assertEquals(exp, f.get(60, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testJpegReducedDecode(){
+        Image jpeg = Image.create(Image.create(createConstantImageRgb(480, 640, 255, 128, 0)).getAs(Jpeg.class));
+        Data in = Data.singleton("image", jpeg);
+
+        INDArray exp = null;
+        for(boolean reduced : new boolean[]{false, true}) {
+            Pipeline p = SequencePipeline.builder()
+                    .add(new ImageToNDArrayStep()
+                            .config(new ImageToNDArrayConfig()
+                                    .height(100)
+                                    .width(100)
+                                    .dataType(NDArrayType.FLOAT)
+                                    .jpegReducedDecode(reduced)
+                            )
+                    )
+                    .build();
+
+            INDArray arr = p.executor().exec(in).getNDArray("image").getAs(INDArray.class);
+            assertArrayEquals(new long[]{1, 3, 100, 100}, arr.shape());
+            if (exp == null) {
+                exp = arr;
+            } else {
+                //Decoded at 1/4 size (160x120) instead of full size - values should be very close for a constant image
+                assertTrue(exp.equalsWithEps(arr, 0.02));
+            }
+        }
+    }
+
+
     @Test
     public void testImageNormalizationNonRgb(){
         //TODO Test image normalization - RGBA, BGRA, GRAYSCALE
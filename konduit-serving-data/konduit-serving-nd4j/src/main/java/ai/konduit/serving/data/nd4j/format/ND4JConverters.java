@@ -267,6 +267,14 @@ public class ND4JConverters  {
 
             ByteBuffer bb = from.getBuffer();
             bb.rewind();
+            if(!bb.isDirect() && !bb.hasArray()){
+                //Read-only heap views (for example, arrays deserialized from protobuf without copying) can't be
+                //passed to native code: copy into a direct buffer first
+                ByteBuffer direct = ByteBuffer.allocateDirect(bb.remaining()).order(bb.order());
+                direct.put(bb);
+                bb = direct;
+                bb.rewind();
+            }
 
             DataBuffer db = Nd4j.createBuffer(bb, dt, (int)length, 0);
             INDArray arr = Nd4j.create(db, shape);
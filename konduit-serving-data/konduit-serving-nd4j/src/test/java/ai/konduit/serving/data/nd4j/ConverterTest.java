@@ -106,6 +106,31 @@ public class ConverterTest {
         assertEquals(iArr4, ndConverted4);
     }
 
+    @Test
+    public void testTwoStepDataTypeAndRank(){
+        //There is no direct INDArray -> double[] converter: INDArray -> SerializedNDArray -> double[] is used, which is
+        //only possible for rank 1 DOUBLE arrays. Earlier lookups with another type or rank must not affect later ones
+        NDArray fArr = NDArray.create(Nd4j.createFromArray(1.0f, 2.0f, 3.0f));
+        assertFalse(fArr.canGetAs(double[].class));
+        try {
+            fArr.getAs(double[].class);
+            fail("Expected exception");
+        } catch (IllegalStateException e){
+            //Expected
+        }
+
+        NDArray dArr = NDArray.create(Nd4j.createFromArray(1.0, 2.0, 3.0));
+        assertTrue(dArr.canGetAs(double[].class));
+        assertArrayEquals(new double[]{1, 2, 3}, dArr.getAs(double[].class), 0.0);
+
+        NDArray dArr2 = NDArray.create(Nd4j.createFromArray(new double[][]{{1, 2}, {3, 4}}));
+        assertFalse(dArr2.canGetAs(double[].class));
+        assertFalse(fArr.canGetAs(double[].class));
+
+        NDArray dArr3 = NDArray.create(Nd4j.createFromArray(4.0, 5.0));
+        assertArrayEquals(new double[]{4, 5}, dArr3.getAs(double[].class), 0.0);
+    }
+
     @Test
     public void testCanGenAsRank(){
         //NDArray.canGetAs(float[][].class) shouldn't work on a rank != 2 array
@@ -56,6 +56,12 @@ public class DL4JStep implements PipelineStep {
 
     @Schema(description = "Enable verbose mode, defaults to false")
     private boolean verboseMode = false;
+
+    @Schema(description = "Number of model replicas used to execute concurrent requests in parallel. The replicas share " +
+            "the same (read-only) parameters, so each additional replica only costs memory for its activations. " +
+            "Usually no more than the number of cores divided by the number of BLAS threads is useful.", defaultValue = "1")
+    private int replicas = 1;
+
     public DL4JStep(@JsonProperty("modelUri") String modelUri,
                     @JsonProperty("inputNames") List<String> inputNames,
                     @JsonProperty("outputNames") List<String> outputNames,
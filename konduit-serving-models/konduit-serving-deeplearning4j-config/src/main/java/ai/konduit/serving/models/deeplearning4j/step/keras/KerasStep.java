@@ -50,6 +50,10 @@ public class KerasStep implements PipelineStep {
             "from the computation graph output - INDArray[] to data keys).")
     private List<String> outputNames;
 
+    @Schema(description = "Number of model replicas used to execute concurrent requests in parallel. The replicas share " +
+            "the same (read-only) parameters, so each additional replica only costs memory for its activations.", defaultValue = "1")
+    private int replicas = 1;
+
     public KerasStep(@JsonProperty("modelUri") String modelUri, @JsonProperty("inputNames") List<String> inputNames,
                      @JsonProperty("outputNames") List<String> outputNames){
         this.modelUri = modelUri;
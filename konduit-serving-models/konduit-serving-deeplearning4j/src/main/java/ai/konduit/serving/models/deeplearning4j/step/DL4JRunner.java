@@ -22,8 +22,9 @@ import ai.konduit.serving.pipeline.api.data.Data;
 import ai.konduit.serving.pipeline.api.data.NDArray;
 import ai.konduit.serving.pipeline.api.exception.ModelLoadingException;
 import ai.konduit.serving.pipeline.api.protocol.URIResolver;
+import ai.konduit.serving.pipeline.api.step.BatchCapableRunner;
+import ai.konduit.serving.pipeline.api.step.ShareableRunner;
 import ai.konduit.serving.pipeline.api.step.PipelineStep;
-import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
 import ai.konduit.serving.pipeline.impl.data.JData;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.nn.graph.ComputationGraph;
@@ -42,13 +43,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
 
 @Slf4j
 @CanRun({DL4JStep.class, KerasStep.class})
-public class DL4JRunner implements PipelineStepRunner {
+public class DL4JRunner implements BatchCapableRunner, ShareableRunner {
 
     public static final String DEFAULT_OUT_NAME_SINGLE = "default";
 
@@ -57,6 +59,8 @@ public class DL4JRunner implements PipelineStepRunner {
     private KerasStep kStep;
     private MultiLayerNetwork net;
     private ComputationGraph graph;
+    private ReplicaPool<MultiLayerNetwork> netPool;
+    private ReplicaPool<ComputationGraph> graphPool;
 
     public DL4JRunner(KerasStep step) {
         this.kStep = step;
@@ -92,6 +96,8 @@ public class DL4JRunner implements PipelineStepRunner {
                         " by DL4JRunner", t);
             }
         }
+
+        initReplicas(step.replicas());
     }
 
     public DL4JRunner(DL4JStep step) {
@@ -178,11 +184,48 @@ public class DL4JRunner implements PipelineStepRunner {
 
         Nd4j.getExecutioner().enableDebugMode(step.debugMode());
         Nd4j.getExecutioner().enableVerboseMode(step.verboseMode());
+
+        initReplicas(step.replicas());
+    }
+
+    /**
+     * Create the pool of model replicas used by {@link #exec(Context, Data)}. The first replica is the loaded model itself;
+     * the others are new instances of the same configuration that are initialized with a view of the loaded model's
+     * parameters (i.e., no copy), so additional replicas only cost the memory for their activations.
+     */
+    private void initReplicas(int numReplicas) {
+        Preconditions.checkState(numReplicas >= 1, "Number of model replicas must be 1 or more, got %s", numReplicas);
+
+        if (net != null) {
+            List<MultiLayerNetwork> replicas = new ArrayList<>(numReplicas);
+            replicas.add(net);
+            for (int i = 1; i < numReplicas; i++) {
+                MultiLayerNetwork replica = new MultiLayerNetwork(net.getLayerWiseConfigurations().clone());
+                replica.init(net.params(), false);
+                replicas.add(replica);
+            }
+            netPool = new ReplicaPool<>(replicas);
+        } else {
+            List<ComputationGraph> replicas = new ArrayList<>(numReplicas);
+            replicas.add(graph);
+            for (int i = 1; i < numReplicas; i++) {
+                ComputationGraph replica = new ComputationGraph(graph.getConfiguration().clone());
+                replica.init(graph.params(), false);
+                replicas.add(replica);
+            }
+            graphPool = new ReplicaPool<>(replicas);
+        }
+
+        if (numReplicas > 1) {
+            log.info("Created {} replicas of the {} model sharing the same parameters", numReplicas,
+                    net != null ? "MultiLayerNetwork" : "ComputationGraph");
+        }
     }
 
 
     @Override
     public void close() {
+        //Only the loaded model owns the parameters - the other replicas hold views of the same buffer
         try {
             if (net != null) {
                 net.close();
@@ -211,8 +254,11 @@ public class DL4JRunner implements PipelineStepRunner {
         if (net != null) {
             INDArray arr = getOnlyArray(data);
             INDArray out;
-            synchronized (net) {
-                out = net.output(arr);
+            MultiLayerNetwork replica = netPool.borrow();
+            try {
+                out = replica.output(arr);
+            } finally {
+                netPool.release(replica);
             }
 
             String outName = outputName();
@@ -247,8 +293,11 @@ public class DL4JRunner implements PipelineStepRunner {
                 }
             }
             INDArray[] out;
-            synchronized (graph) {
-                out = graph.output(input);
+            ComputationGraph replica = graphPool.borrow();
+            try {
+                out = replica.output(input);
+            } finally {
+                graphPool.release(replica);
             }
 
             //Work out output names
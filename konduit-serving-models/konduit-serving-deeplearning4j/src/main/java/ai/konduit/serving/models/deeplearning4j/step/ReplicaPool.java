@@ -0,0 +1,87 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.models.deeplearning4j.step;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A pool of interchangeable model replicas that can be borrowed for the duration of a single inference call.<br>
+ * Borrowing and returning a replica only uses atomic (CAS) operations unless all of the replicas are in use,
+ * in which case the caller blocks until one is returned.
+ *
+ * @param <T> Type of the model replica
+ */
+public class ReplicaPool<T> {
+
+    private final List<T> replicas;
+    private final ConcurrentLinkedQueue<T> available;
+    private final Semaphore permits;
+
+    public ReplicaPool(@NonNull List<T> replicas) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one model replica is required");
+        }
+
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+        this.available = new ConcurrentLinkedQueue<>(replicas);
+        this.permits = new Semaphore(replicas.size());
+    }
+
+    /**
+     * Borrow a replica, blocking until one is available. The replica must be returned with {@link #release(Object)}
+     */
+    public T borrow() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a model replica", e);
+        }
+
+        return available.poll();
+    }
+
+    /**
+     * Return a replica previously obtained from {@link #borrow()}
+     */
+    public void release(@NonNull T replica) {
+        available.offer(replica);
+        permits.release();
+    }
+
+    /**
+     * @return All replicas in this pool, whether or not they are currently borrowed
+     */
+    public List<T> replicas() {
+        return replicas;
+    }
+
+    /**
+     * @return Number of replicas in this pool
+     */
+    public int size() {
+        return replicas.size();
+    }
+}
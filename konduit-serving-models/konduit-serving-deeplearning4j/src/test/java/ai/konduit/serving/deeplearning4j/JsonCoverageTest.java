@@ -27,13 +27,13 @@ public class JsonCoverageTest extends BaseJsonCoverageTest {
     public void testDL4JStep() {
         testConfigSerDe(new DL4JStep()
                 .inputNames("inputNames").loaderClass("loaderClass")
-                .modelUri("modelUri").outputNames("outputNames"));
+                .modelUri("modelUri").outputNames("outputNames").replicas(2));
     }
 
     @Test
     public void testKerasStep() {
         testConfigSerDe(new KerasStep().inputNames("inputNames").outputNames("outputNames")
-                .modelUri("modelUri"));
+                .modelUri("modelUri").replicas(2));
     }
 
 
@@ -39,7 +39,12 @@ import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
 
@@ -132,6 +137,48 @@ public class TestDL4JStep {
         }
     }
 
+    @Test
+    public void testReplicasConcurrent() throws Exception {
+        File netFile = createIrisMLNFile();
+
+        Pipeline p = SequencePipeline.builder()
+                .add(new DL4JStep()
+                        .modelUri(netFile.getAbsolutePath())
+                        .replicas(4))
+                .build();
+
+        PipelineExecutor e = p.executor();
+
+        int numThreads = 8;
+        INDArray[] inputs = new INDArray[numThreads];
+        INDArray[] expected = new INDArray[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            inputs[i] = Nd4j.rand(DataType.FLOAT, 3, 4);
+            expected[i] = predictFromFile(netFile, inputs[i]);
+        }
+
+        ExecutorService es = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<INDArray>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                Data d = Data.singleton("in", NDArray.create(inputs[i]));
+                futures.add(es.submit(() -> {
+                    INDArray out = null;
+                    for (int j = 0; j < 20; j++) {
+                        out = e.exec(d).getNDArray("default").getAs(INDArray.class);
+                    }
+                    return out;
+                }));
+            }
+
+            for (int i = 0; i < numThreads; i++) {
+                assertEquals(expected[i], futures.get(i).get());
+            }
+        } finally {
+            es.shutdown();
+        }
+    }
+
     public File createIrisMLNFile() throws Exception {
         File dir = testDir.newFolder();
         return createIrisMLNFile(dir);
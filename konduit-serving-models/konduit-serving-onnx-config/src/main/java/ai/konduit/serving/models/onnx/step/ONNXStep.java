@@ -53,6 +53,17 @@ public class ONNXStep implements PipelineStep {
             "Must be a java.util.Function<String,MultiLayerNetwork> or java.util.Function<String,ComputationGraph>")
     private String loaderClass;
 
+    @Schema(description = "Number of threads used to parallelize the execution within nodes of the graph.", defaultValue = "1")
+    private int intraOpNumThreads = 1;
+
+    @Schema(description = "Number of threads used to execute independent nodes of the graph in parallel. " +
+            "0 means the ONNX runtime default (sequential execution).", defaultValue = "0")
+    private int interOpNumThreads = 0;
+
+    @Schema(description = "If true, and all the requested outputs have static shapes, the outputs are bound to pre-shaped " +
+            "arrays that the ONNX runtime writes into directly, avoiding an extra output allocation and copy.", defaultValue = "false")
+    private boolean ioBinding = false;
+
     public ONNXStep(@JsonProperty("modelUri") String modelUri, @JsonProperty("inputNames") List<String> inputNames,
                     @JsonProperty("outputNames") List<String> outputNames){
         this.modelUri = modelUri;
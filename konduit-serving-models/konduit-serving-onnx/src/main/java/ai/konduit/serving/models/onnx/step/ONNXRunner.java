@@ -26,27 +26,26 @@ import ai.konduit.serving.models.onnx.utils.ONNXUtils;
 import ai.konduit.serving.pipeline.api.context.Context;
 import ai.konduit.serving.pipeline.api.data.Data;
 import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.step.BatchCapableRunner;
+import ai.konduit.serving.pipeline.api.step.ShareableRunner;
 import ai.konduit.serving.pipeline.api.step.PipelineStep;
-import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
 import lombok.extern.slf4j.Slf4j;
 import org.bytedeco.javacpp.*;
 import org.bytedeco.onnxruntime.*;
 import org.nd4j.common.base.Preconditions;
-import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 
-import static ai.konduit.serving.models.onnx.utils.ONNXUtils.getDataBuffer;
+import static ai.konduit.serving.models.onnx.utils.ONNXUtils.getArray;
 import static ai.konduit.serving.models.onnx.utils.ONNXUtils.getTensor;
 import static org.bytedeco.onnxruntime.global.onnxruntime.*;
 
 @Slf4j
 @CanRun({ONNXStep.class})
-public class ONNXRunner implements PipelineStepRunner {
+public class ONNXRunner implements BatchCapableRunner, ShareableRunner {
 
     private  ONNXStep onnxStep;
     private Session session;
@@ -57,6 +56,17 @@ public class ONNXRunner implements PipelineStepRunner {
     private   static Env env;
     private Pointer bp;
 
+    //Session metadata: resolved once at construction as it doesn't change between calls
+    private String[] inputNames;
+    private BytePointer[] inputNamePointers;
+    private PointerPointer<BytePointer> inputNodeNames;
+    private String[] outputNames;
+    private BytePointer[] outputNamePointers;
+    private PointerPointer<BytePointer> outputNodeNames;
+    private DataType[] outputTypes;
+    private long[][] outputShapes;      //Null entries for outputs with dynamic shapes
+    private boolean ioBinding;
+
     public ONNXRunner(ONNXStep onnxStep) {
         this.onnxStep = onnxStep;
         if(env == null) {
@@ -65,7 +75,14 @@ public class ONNXRunner implements PipelineStepRunner {
         }
         sessionOptions = new SessionOptions();
         sessionOptions.SetGraphOptimizationLevel(ORT_ENABLE_EXTENDED);
-        sessionOptions.SetIntraOpNumThreads(1);
+        sessionOptions.SetIntraOpNumThreads(onnxStep.intraOpNumThreads());
+        if(onnxStep.interOpNumThreads() > 0) {
+            sessionOptions.SetInterOpNumThreads(onnxStep.interOpNumThreads());
+            if(onnxStep.interOpNumThreads() > 1) {
+                //Inter op threads are only used when independent nodes of the graph are allowed to run in parallel
+                sessionOptions.SetExecutionMode(ORT_PARALLEL);
+            }
+        }
         sessionOptions.retainReference();
         allocator = new AllocatorWithDefaultOptions();
         allocator.retainReference();
@@ -76,6 +93,76 @@ public class ONNXRunner implements PipelineStepRunner {
         //retain the session reference to prevent pre emptive release of the session.
         session.retainReference();
 
+        initMetadata();
+    }
+
+    private void initMetadata() {
+        int numInputNodes = (int) session.GetInputCount();
+        inputNames = new String[numInputNodes];
+        inputNamePointers = new BytePointer[numInputNodes];
+        inputNodeNames = new PointerPointer<>(numInputNodes);
+        for (int i = 0; i < numInputNodes; i++) {
+            BytePointer inputName = session.GetInputNameAllocated(i, allocator.asOrtAllocator());
+            inputNamePointers[i] = inputName;
+            inputNames[i] = inputName.getString();
+            inputNodeNames.put(i, inputName);
+        }
+
+        int numModelOutputs = (int) session.GetOutputCount();
+        Map<String, Integer> modelOutputIdxs = new LinkedHashMap<>();
+        BytePointer[] modelOutputNames = new BytePointer[numModelOutputs];
+        for (int i = 0; i < numModelOutputs; i++) {
+            BytePointer outputName = session.GetOutputNameAllocated(i, allocator.asOrtAllocator());
+            modelOutputNames[i] = outputName;
+            modelOutputIdxs.put(outputName.getString(), i);
+        }
+
+        //Only the requested outputs are computed. All of them, if none are specified.
+        List<String> requested = onnxStep.outputNames() != null && !onnxStep.outputNames().isEmpty() ?
+                onnxStep.outputNames() : new ArrayList<>(modelOutputIdxs.keySet());
+        int numOutputNodes = requested.size();
+        outputNames = new String[numOutputNodes];
+        outputNamePointers = new BytePointer[numOutputNodes];
+        outputNodeNames = new PointerPointer<>(numOutputNodes);
+        outputTypes = new DataType[numOutputNodes];
+        outputShapes = new long[numOutputNodes][];
+        boolean allStatic = true;
+        for (int i = 0; i < numOutputNodes; i++) {
+            String name = requested.get(i);
+            Integer idx = modelOutputIdxs.get(name);
+            Preconditions.checkState(idx != null, "Output name %s not found in the model outputs: %s", name, modelOutputIdxs.keySet());
+
+            outputNames[i] = name;
+            outputNamePointers[i] = modelOutputNames[idx];
+            outputNodeNames.put(i, modelOutputNames[idx]);
+
+            TypeInfo typeInfo = session.GetOutputTypeInfo(idx);
+            outputTypes[i] = ONNXUtils.dataTypeForOnnxType(typeInfo.GetTensorTypeAndShapeInfo().GetElementType());
+            outputShapes[i] = staticShape(typeInfo);
+            allStatic &= outputShapes[i] != null;
+        }
+
+        ioBinding = onnxStep.ioBinding();
+        if(ioBinding && !allStatic) {
+            log.warn("ONNXStep ioBinding is enabled but not all requested outputs {} have static shapes. Falling back to " +
+                    "regular execution for model {}", Arrays.asList(outputNames), onnxStep.modelUri());
+            ioBinding = false;
+        }
+    }
+
+    private static long[] staticShape(TypeInfo typeInfo) {
+        int rank = (int) typeInfo.GetTensorTypeAndShapeInfo().GetDimensionsCount();
+        long[] shape = new long[rank];
+        if(rank > 0) {
+            typeInfo.GetTensorTypeAndShapeInfo().GetShape().get(shape);
+        }
+
+        for (long l : shape) {
+            if (l < 0) {
+                return null;
+            }
+        }
+        return shape;
     }
 
 
@@ -99,31 +186,55 @@ public class ONNXRunner implements PipelineStepRunner {
     @Override
     public Data exec(Context ctx, Data data) {
         Data ret = Data.empty();
-        long numInputNodes = session.GetInputCount();
-        long numOutputNodes = session.GetOutputCount();
+        int numInputNodes = inputNames.length;
+        int numOutputNodes = outputNames.length;
 
-        PointerPointer<BytePointer> inputNodeNames = new PointerPointer<>(numInputNodes);
-        PointerPointer<BytePointer> outputNodeNames = new PointerPointer<>(numOutputNodes);
+        //Input arrays are referenced until the end of this method as the tensors are views of their memory
+        INDArray[] inputArrays = new INDArray[numInputNodes];
+        Value[] inputTensors = new Value[numInputNodes];
+        for (int i = 0; i < numInputNodes; i++) {
+            INDArray arr = data.getNDArray(inputNames[i]).getAs(INDArray.class);
+            if(arr.isView() || arr.ordering() != 'c') {
+                arr = arr.dup('c');
+            }
+            inputArrays[i] = arr;
+            inputTensors[i] = getTensor(arr, memoryInfo);
+            Preconditions.checkState(inputTensors[i].IsTensor(),"Input must be a tensor.");
+        }
 
-        Value inputVal = new Value(numInputNodes);
+        if(ioBinding) {
+            //Outputs are written by ONNX runtime directly into the memory of the (pre-shaped) ND4J arrays
+            INDArray[] outputArrays = new INDArray[numOutputNodes];
+            IoBinding binding = new IoBinding(session);
+            try {
+                for (int i = 0; i < numInputNodes; i++) {
+                    binding.BindInput(inputNamePointers[i], inputTensors[i]);
+                }
+
+                for (int i = 0; i < numOutputNodes; i++) {
+                    outputArrays[i] = Nd4j.create(outputTypes[i], outputShapes[i]);
+                    binding.BindOutput(outputNamePointers[i], getTensor(outputArrays[i], memoryInfo));
+                }
+
+                session.Run(runOptions, binding);
+            } finally {
+                binding.close();
+            }
+
+            for (int i = 0; i < numOutputNodes; i++) {
+                ret.put(outputNames[i], NDArray.create(outputArrays[i]));
+            }
+            return ret;
+        }
 
+        Value inputVal = new Value(numInputNodes);
         for (int i = 0; i < numInputNodes; i++) {
-            BytePointer inputName = session.GetInputNameAllocated(i, allocator.asOrtAllocator());
-            inputNodeNames.put(i, inputName);
-            INDArray arr = data.getNDArray(inputName.getString()).getAs(INDArray.class);
-            Value inputTensor = getTensor(arr, memoryInfo);
-            Preconditions.checkState(inputTensor.IsTensor(),"Input must be a tensor.");
-            inputVal.position(i).put(inputTensor);
+            inputVal.position(i).put(inputTensors[i]);
         }
 
         //reset position after iterating
         inputVal.position(0);
 
-        for (int i = 0; i < numOutputNodes; i++) {
-            BytePointer outputName = session.GetOutputNameAllocated(i, allocator.asOrtAllocator());
-            outputNodeNames.put(i, outputName);
-        }
-
         ValueVector outputVector = session.Run(
                 runOptions,
                 inputNodeNames,
@@ -132,25 +243,12 @@ public class ONNXRunner implements PipelineStepRunner {
                 outputNodeNames,
                 numOutputNodes);
 
-        Map<String, INDArray> output = new LinkedHashMap<>();
-
         for (int i = 0; i < numOutputNodes; i++) {
             Value outValue = outputVector.get(i);
-
-            DataBuffer buffer = getDataBuffer(outValue);
-            output.put((outputNodeNames.get(BytePointer.class, i)).getString(), Nd4j.create(buffer));
+            ret.put(outputNames[i], NDArray.create(getArray(outValue)));
         }
 
-        Preconditions.checkNotNull(output,"Output must not be null!");
-        for(String outputName : onnxStep.outputNames()) {
-            Preconditions.checkNotNull(output.get(outputName),"Output name " + outputName + " not found in output!");
-            ret.put(outputName, NDArray.create(output.get(outputName)));
-        }
-
-
         return ret;
-
-
     }
 
 }
@@ -48,7 +48,7 @@ public class ONNXUtils {
      * @return
      */
     public static DataType dataTypeForOnnxType(int dataType) {
-        if(dataType == dataType) {
+        if(dataType == ONNX_TENSOR_ELEMENT_DATA_TYPE_FLOAT) {
             return FLOAT;
         } else if(dataType == ONNX_TENSOR_ELEMENT_DATA_TYPE_INT8) {
             return INT8;
@@ -124,7 +124,7 @@ public class ONNXUtils {
      * @return
      */
     public static INDArray getArray(Value value) {
-        DataType dataType = dataTypeForOnnxType(value.GetTypeInfo().GetONNXType());
+        DataType dataType = dataTypeForOnnxType(value.GetTensorTypeAndShapeInfo().GetElementType());
         LongPointer shape = value.GetTensorTypeAndShapeInfo().GetShape();
         long[] shapeConvert;
         if(shape != null) {
@@ -222,7 +222,7 @@ public class ONNXUtils {
                 case ONNX_TENSOR_ELEMENT_DATA_TYPE_INT8:
                     BytePointer pInt8 = tens.GetTensorMutableDataByte().capacity(size);
                     Indexer int8Indexer = ByteIndexer.create(pInt8);
-                    buffer = Nd4j.createBuffer(pInt8, DataType.UINT8, size, int8Indexer);
+                    buffer = Nd4j.createBuffer(pInt8, DataType.INT8, size, int8Indexer);
                     break;
                 case ONNX_TENSOR_ELEMENT_DATA_TYPE_UINT16:
                     ShortPointer pUint16 = tens.GetTensorMutableDataUShort().capacity(size);
@@ -25,7 +25,8 @@ public class JsonCoverageTest extends BaseJsonCoverageTest {
     public void testONNXStep() {
         testConfigSerDe(new ONNXStep()
                 .inputNames("inputNames").loaderClass("loaderClass")
-                .modelUri("modelUri").outputNames("outputNames"));
+                .modelUri("modelUri").outputNames("outputNames")
+                .intraOpNumThreads(2).interOpNumThreads(2).ioBinding(true));
     }
 
 
@@ -13,6 +13,8 @@ import org.nd4j.linalg.factory.Nd4j;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.File;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 @NotThreadSafe
@@ -42,6 +44,33 @@ public class ONNXStepTests {
         System.out.println(outRet);
     }
 
+    @Test
+    public void testOnnxMnistIoBinding() {
+        File f = Resources.asFile("mnist-8.onnx");
+        PipelineExecutor regular = SequencePipeline.builder()
+                .add(new ONNXStep()
+                        .inputNames("Input3")
+                        .outputNames("Plus214_Output_0")
+                        .modelUri(f.getAbsolutePath()))
+                .build().executor();
+
+        PipelineExecutor bound = SequencePipeline.builder()
+                .add(new ONNXStep()
+                        .inputNames("Input3")
+                        .outputNames("Plus214_Output_0")
+                        .modelUri(f.getAbsolutePath())
+                        .ioBinding(true))
+                .build().executor();
+
+        for( int i = 0; i < 3; i++) {
+            INDArray arr = Nd4j.rand(DataType.FLOAT, 1, 1, 28, 28);
+            INDArray exp = regular.exec(Data.singleton("Input3", NDArray.create(arr))).getNDArray("Plus214_Output_0").getAs(INDArray.class);
+            INDArray act = bound.exec(Data.singleton("Input3", NDArray.create(arr))).getNDArray("Plus214_Output_0").getAs(INDArray.class);
+            assertArrayEquals(new long[]{1, 10}, exp.shape());
+            assertEquals(exp, act);
+        }
+    }
+
     @Test
     public void testOnnxAdd() {
         File f = Resources.asFile("add.onnx");
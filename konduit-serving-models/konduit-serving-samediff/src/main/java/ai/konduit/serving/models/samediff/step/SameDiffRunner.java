@@ -22,8 +22,8 @@ import ai.konduit.serving.pipeline.api.data.NDArray;
 import ai.konduit.serving.pipeline.api.data.ValueType;
 import ai.konduit.serving.pipeline.api.exception.ModelLoadingException;
 import ai.konduit.serving.pipeline.api.protocol.URIResolver;
+import ai.konduit.serving.pipeline.api.step.BatchCapableRunner;
 import ai.konduit.serving.pipeline.api.step.PipelineStep;
-import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
 import org.nd4j.autodiff.listeners.At;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.internal.InferenceSession;
@@ -38,7 +38,7 @@ import java.util.List;
 import java.util.Map;
 
 @CanRun(SameDiffStep.class)
-public class SameDiffRunner implements PipelineStepRunner {
+public class SameDiffRunner implements BatchCapableRunner {
 
     public static final String DEFAULT_OUT_NAME_SINGLE = "default";
 
@@ -24,8 +24,9 @@ import ai.konduit.serving.pipeline.api.data.Data;
 import ai.konduit.serving.pipeline.api.data.NDArray;
 import ai.konduit.serving.pipeline.api.data.ValueType;
 import ai.konduit.serving.pipeline.api.protocol.URIResolver;
+import ai.konduit.serving.pipeline.api.step.BatchCapableRunner;
+import ai.konduit.serving.pipeline.api.step.ShareableRunner;
 import ai.konduit.serving.pipeline.api.step.PipelineStep;
-import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
 import ai.konduit.serving.pipeline.impl.data.ValueNotFoundException;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -43,7 +44,7 @@ import java.util.List;
 
 @Slf4j
 @CanRun(TensorFlowStep.class)
-public class TensorFlowRunner implements PipelineStepRunner {
+public class TensorFlowRunner implements BatchCapableRunner, ShareableRunner {
 
 
     static {
@@ -26,6 +26,7 @@ import ai.konduit.serving.pipeline.util.DataUtils;
 import ai.konduit.serving.pipeline.util.ObjectMappers;
 import lombok.NonNull;
 import org.nd4j.common.base.Preconditions;
+import org.nd4j.shade.jackson.core.JsonGenerator;
 import org.nd4j.shade.jackson.core.JsonProcessingException;
 import org.nd4j.shade.jackson.databind.annotation.JsonDeserialize;
 import org.nd4j.shade.jackson.databind.annotation.JsonSerialize;
@@ -83,6 +84,14 @@ public interface Data {
         }
     }
 
+    /**
+     * Write this Data instance as JSON (in the same format as {@link #toJson()}) to the specified stream, without
+     * building the full JSON String first. The stream is not closed.
+     */
+    default void writeJson(OutputStream toStream) throws IOException {
+        ObjectMappers.json().writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(toStream, this);
+    }
+
     List<String> keys();
 
     String key(int id);
@@ -0,0 +1,28 @@
+/* ******************************************************************************
+ * Copyright (c) 2022 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package ai.konduit.serving.pipeline.api.step;
+
+/**
+ * A marker interface for {@link PipelineStepRunner}s that can execute a batch of examples at once, where all of the
+ * input NDArrays are stacked along dimension 0 (one row/slice per example) and all of the output NDArrays
+ * have the same number of rows (in the same order) as the input NDArrays.<br>
+ * This is what allows {@link ai.konduit.serving.pipeline.impl.pipeline.BatchingPipelineExecutor} to combine
+ * concurrent requests into a single execution of a pipeline.
+ */
+public interface BatchCapableRunner extends PipelineStepRunner {
+
+}
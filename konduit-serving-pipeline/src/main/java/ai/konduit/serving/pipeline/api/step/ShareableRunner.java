@@ -0,0 +1,28 @@
+/* ******************************************************************************
+ * Copyright (c) 2022 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+
+package ai.konduit.serving.pipeline.api.step;
+
+/**
+ * A marker interface for {@link PipelineStepRunner}s that are thread-safe, and hence a single instance can be shared by
+ * all of the {@link ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor}s in the same JVM that execute an
+ * identical {@link PipelineStep} configuration.<br>
+ * Runners that don't implement this interface always get one instance per executor.
+ * See {@link ai.konduit.serving.pipeline.registry.SharedRunnerRegistry}
+ */
+public interface ShareableRunner extends PipelineStepRunner {
+
+}
@@ -28,12 +28,20 @@ import java.util.*;
 @Slf4j
 public class JData implements Data {
 
-    private Map<String, Value> dataMap = new LinkedHashMap<>();
+    private final Map<String, Value> dataMap;
     private Data metaData;
 
     private static final String VALUE_NOT_FOUND_TEXT = "Value not found for key \"%s\"";
     private static final String VALUE_HAS_WRONG_TYPE_TEXT = "Value has wrong type for key \"%s\": requested type %s, actual type %s";
 
+    public JData() {
+        this(new LinkedHashMap<>());
+    }
+
+    protected JData(@NonNull Map<String, Value> dataMap) {
+        this.dataMap = dataMap;
+    }
+
     public Map<String, Value> getDataMap() {
         return dataMap;
     }
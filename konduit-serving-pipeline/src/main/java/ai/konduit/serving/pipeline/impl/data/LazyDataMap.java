@@ -0,0 +1,217 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package ai.konduit.serving.pipeline.impl.data;
+
+import ai.konduit.serving.pipeline.impl.data.helpers.ProtobufUtils;
+import ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * A data map that keeps the parsed protobuf items and only converts an item to a {@link Value} the first time it is
+ * accessed via {@link #get(Object)}, {@link #put(String, Value)}, {@link #remove(Object)} or {@link Map.Entry#getValue()}.
+ * Keys, sizes and containment checks never decode an item.<br>
+ * Items that have not been decoded are written back as the original protobuf items when the map is serialized (see
+ * {@link ProtobufUtils#serializeMap(Map)}), so values that are passed through a pipeline untouched are never converted.
+ * <br>
+ * Used by {@link ProtoData#fromBytes(byte[], boolean)} and {@link ProtoData#fromStream(java.io.InputStream, boolean)}
+ * <br>
+ * Like the maps of other {@link ai.konduit.serving.pipeline.api.data.Data} instances, this map is not thread-safe: as
+ * reading a value may decode it (and so modify the map), it should not be shared between threads, even for reading,
+ * without external synchronization.
+ */
+public class LazyDataMap extends AbstractMap<String, Value> {
+
+    //Values are either Value instances or (not yet decoded) DataProtoMessage.DataScheme instances
+    private final Map<String, Object> entries;
+
+    public LazyDataMap(@NonNull Map<String, DataProtoMessage.DataScheme> items) {
+        entries = new LinkedHashMap<>();
+        for (Map.Entry<String, DataProtoMessage.DataScheme> e : items.entrySet()) {
+            //Unsupported items are skipped, as with eager deserialization
+            if (ProtobufUtils.isSupported(e.getValue())) {
+                entries.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private LazyDataMap(LazyDataMap other) {
+        entries = new LinkedHashMap<>(other.entries);
+    }
+
+    /**
+     * @return A copy of this map. Items that are not yet decoded are not decoded by the copy
+     */
+    public LazyDataMap copy() {
+        return new LazyDataMap(this);
+    }
+
+    /**
+     * @return True if the value for the specified key has been converted from its protobuf item (or was set directly)
+     */
+    public boolean isDecoded(String key) {
+        return !(entries.get(key) instanceof DataProtoMessage.DataScheme);
+    }
+
+    /**
+     * @return The entries that have been decoded (or were set directly), in insertion order
+     */
+    public Map<String, Value> decoded() {
+        Map<String, Value> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : entries.entrySet()) {
+            if (!(e.getValue() instanceof DataProtoMessage.DataScheme)) {
+                out.put(e.getKey(), (Value) e.getValue());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return The protobuf items that have not been decoded, in insertion order
+     */
+    public Map<String, DataProtoMessage.DataScheme> undecoded() {
+        Map<String, DataProtoMessage.DataScheme> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : entries.entrySet()) {
+            if (e.getValue() instanceof DataProtoMessage.DataScheme) {
+                out.put(e.getKey(), (DataProtoMessage.DataScheme) e.getValue());
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public Value get(Object key) {
+        Object o = entries.get(key);
+        if (o instanceof DataProtoMessage.DataScheme) {
+            return decode((String) key, (DataProtoMessage.DataScheme) o);
+        }
+        return (Value) o;
+    }
+
+    @Override
+    public Value put(String key, Value value) {
+        return resolve(key, entries.put(key, value));
+    }
+
+    @Override
+    public Value remove(Object key) {
+        return resolve((String) key, entries.remove(key));
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return entries.keySet();
+    }
+
+    @Override
+    public Set<Entry<String, Value>> entrySet() {
+        return new AbstractSet<Entry<String, Value>>() {
+            @Override
+            public Iterator<Entry<String, Value>> iterator() {
+                Iterator<String> keys = entries.keySet().iterator();
+                return new Iterator<Entry<String, Value>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Value> next() {
+                        return new LazyEntry(keys.next());
+                    }
+
+                    @Override
+                    public void remove() {
+                        keys.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    private Value decode(String key, DataProtoMessage.DataScheme item) {
+        Value value = ProtobufUtils.deserializeValue(item);
+        //Replacing the value of an existing key is not a structural modification: iteration order is unchanged
+        entries.put(key, value);
+        return value;
+    }
+
+    private static Value resolve(String key, Object previous) {
+        if (previous instanceof DataProtoMessage.DataScheme) {
+            return ProtobufUtils.deserializeValue((DataProtoMessage.DataScheme) previous);
+        }
+        return (Value) previous;
+    }
+
+    private class LazyEntry implements Entry<String, Value> {
+        private final String key;
+
+        private LazyEntry(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Value getValue() {
+            return get(key);
+        }
+
+        @Override
+        public Value setValue(Value value) {
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry))
+                return false;
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+    }
+}
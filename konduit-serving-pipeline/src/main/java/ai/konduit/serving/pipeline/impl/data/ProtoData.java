@@ -20,11 +20,13 @@ package ai.konduit.serving.pipeline.impl.data;
 import ai.konduit.serving.pipeline.api.data.Data;
 import ai.konduit.serving.pipeline.api.exception.DataLoadingException;
 import ai.konduit.serving.pipeline.impl.data.helpers.ProtobufUtils;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage;
 import java.io.*;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Slf4j
@@ -43,13 +45,27 @@ public class ProtoData extends JData {
     }
 
     public ProtoData(@NonNull Data data) {
-        if(data instanceof JData){
-            getDataMap().putAll(((JData)data).getDataMap());
-            setMetaData(data.getMetaData());
+        super(copyDataMap(data));
+        setMetaData(data.getMetaData());
+    }
+
+    private ProtoData(LazyDataMap dataMap, Data metaData) {
+        super(dataMap);
+        if (metaData != null && metaData.size() != 0) {
+            setMetaData(metaData);
         }
-        else {
+    }
+
+    private static Map<String, Value> copyDataMap(Data data) {
+        if (!(data instanceof JData)) {
             throw new UnsupportedOperationException("ProtoData(Data data) constructor not supported");
         }
+        Map<String, Value> dataMap = ((JData) data).getDataMap();
+        if (dataMap instanceof LazyDataMap) {
+            //Don't decode the values that haven't been accessed yet
+            return ((LazyDataMap) dataMap).copy();
+        }
+        return new LinkedHashMap<>(dataMap);
     }
 
     @Override
@@ -66,17 +82,22 @@ public class ProtoData extends JData {
 
     @Override
     public void write(OutputStream toStream) throws IOException {
+        toProtoMessage().writeTo(toStream);
+    }
 
+    /**
+     * @return The protobuf message for this data. Note that NDArray and image values are not copied into the message:
+     * the message must be written out before these are modified
+     */
+    public DataProtoMessage.DataMap toProtoMessage() {
         if (hasMetaData()) {
-            DataProtoMessage.DataMap pbDataMap = ProtobufUtils.serialize(getDataMap(), ((JData)getMetaData()).getDataMap());
-            pbDataMap.writeTo(toStream);
+            return ProtobufUtils.serialize(getDataMap(), ((JData)getMetaData()).getDataMap());
         }
         else {
             Map<String, DataProtoMessage.DataScheme> newItemsMap = ProtobufUtils.serializeMap(getDataMap());
-            DataProtoMessage.DataMap pbDataMap = DataProtoMessage.DataMap.newBuilder().
+            return DataProtoMessage.DataMap.newBuilder().
                     putAllMapItems(newItemsMap).
                     build();
-            pbDataMap.writeTo(toStream);
         }
     }
 
@@ -87,37 +108,70 @@ public class ProtoData extends JData {
     }
 
     public static Data fromStream(InputStream stream) throws IOException {
+        return fromStream(stream, false);
+    }
+
+    /**
+     * @param lazy If true, values are only converted from their protobuf representation when first accessed, and values
+     *             that are never accessed are written back as their original bytes. See {@link LazyDataMap}
+     */
+    public static Data fromStream(InputStream stream, boolean lazy) throws IOException {
         // mergeFrom performs stream buffering internally
         DataProtoMessage.DataMap.Builder builder = DataProtoMessage.DataMap.newBuilder().mergeFrom(stream);
         DataProtoMessage.DataMap dataMap = builder.build();
-        return ProtobufUtils.deserialize(dataMap);
+        return lazy ? lazy(dataMap) : ProtobufUtils.deserialize(dataMap);
     }
 
     public byte[] asBytes() {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        //Serialize directly into an exactly sized array, rather than through a (growing) ByteArrayOutputStream
+        DataProtoMessage.DataMap message = toProtoMessage();
+        byte[] out = new byte[message.getSerializedSize()];
+        CodedOutputStream cos = CodedOutputStream.newInstance(out);
         try {
-            write(baos);
+            message.writeTo(cos);
+            cos.checkNoSpaceLeft();
         } catch (IOException e) {
-            String errorText = "Failed write to ByteArrayOutputStream";
+            String errorText = "Failed to serialize data to bytes";
             log.error(errorText, e);
             throw new DataLoadingException(errorText);
         }
-        return baos.toByteArray();
+        return out;
     }
 
+    /**
+     * Note that the NDArray values of the returned Data are read-only views of the input array (not copies), hence the
+     * input array should not be modified afterwards
+     */
     public static Data fromBytes(byte[] input) {
-        Data retVal = empty();
-        DataProtoMessage.DataMap.Builder builder = null;
+        return fromBytes(input, false);
+    }
+
+    /**
+     * As per {@link #fromBytes(byte[])}
+     *
+     * @param lazy If true, values are only converted from their protobuf representation when first accessed, and values
+     *             that are never accessed are written back as their original bytes. See {@link LazyDataMap}
+     */
+    public static Data fromBytes(byte[] input, boolean lazy) {
+        DataProtoMessage.DataMap dataMap;
         try {
-            builder = DataProtoMessage.DataMap.newBuilder().mergeFrom(input);
-        } catch (InvalidProtocolBufferException e) {
+            //With aliasing, NDArray bytes fields are views of the input array rather than copies
+            CodedInputStream cis = CodedInputStream.newInstance(input);
+            cis.enableAliasing(true);
+            dataMap = DataProtoMessage.DataMap.parseFrom(cis);
+        } catch (IOException e) {
             String errorText = "Error converting bytes array to data";
             log.error(errorText,e);
             throw new DataLoadingException(errorText);
         }
-        DataProtoMessage.DataMap dataMap = builder.build();
-        retVal = ProtobufUtils.deserialize(dataMap);
-        return retVal;
+        return lazy ? lazy(dataMap) : ProtobufUtils.deserialize(dataMap);
+    }
+
+    private static ProtoData lazy(DataProtoMessage.DataMap dataMap) {
+        //Metadata is usually small, so it is converted eagerly
+        Data metaData = dataMap.getMetaDataCount() == 0 ? null :
+                ProtobufUtils.deserialize(DataProtoMessage.DataMap.newBuilder().putAllMapItems(dataMap.getMetaDataMap()).build());
+        return new ProtoData(new LazyDataMap(dataMap.getMapItemsMap()), metaData);
     }
 
     @Override
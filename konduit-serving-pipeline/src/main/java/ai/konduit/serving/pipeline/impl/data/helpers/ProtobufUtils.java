@@ -19,33 +19,37 @@ package ai.konduit.serving.pipeline.impl.data.helpers;
 
 import ai.konduit.serving.pipeline.api.data.*;
 import ai.konduit.serving.pipeline.impl.data.JData;
+import ai.konduit.serving.pipeline.impl.data.LazyDataMap;
 import ai.konduit.serving.pipeline.impl.data.Value;
 import ai.konduit.serving.pipeline.impl.data.box.BBoxCHW;
 import ai.konduit.serving.pipeline.impl.data.box.BBoxXY;
 import ai.konduit.serving.pipeline.impl.data.image.Png;
 import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
 import ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage;
-import ai.konduit.serving.pipeline.impl.data.wrappers.ListValue;
+import ai.konduit.serving.pipeline.impl.data.wrappers.*;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import lombok.val;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.*;
 
 public class ProtobufUtils {
 
     private static String PNG = "PNG";
 
+    /**
+     * Wraps (without copying) the whole buffer of the serialized array. The buffer is copied only once, when the
+     * message is written out. Note that the array must not be modified until the message has been written.
+     */
     private static List<ByteString> ndArrayToByteStringList(SerializedNDArray sn) {
-        sn.getBuffer().rewind();
-        byte[] bufferBytes = new byte[sn.getBuffer().remaining()];
-        sn.getBuffer().get(bufferBytes);
-        ByteString byteString = ByteString.copyFrom(bufferBytes);
-        List<ByteString> byteStringList = new ArrayList<>();
-        byteStringList.add(byteString);
-        return byteStringList;
+        ByteBuffer bb = sn.getBuffer().duplicate();
+        ((Buffer) bb).rewind();
+        return Collections.singletonList(UnsafeByteOperations.unsafeWrap(bb));
     }
 
     private static DataProtoMessage.NDArray.ValueType toPbNDArrayType(NDArrayType origType) {
@@ -181,8 +185,9 @@ public class ProtobufUtils {
 
         List<ByteString> data = pbArray.getArrayList();
         DataProtoMessage.NDArray.ValueType type = pbArray.getType();
-        byte[] bytes = data.get(0).toByteArray();
-        ByteBuffer bb = ByteBuffer.wrap(bytes);
+        //Read-only view over the message bytes - no copy when the message was parsed with aliasing enabled
+        //SerializedNDArray buffers are little endian
+        ByteBuffer bb = data.get(0).asReadOnlyByteBuffer().slice().order(ByteOrder.LITTLE_ENDIAN);
         SerializedNDArray ndArray = new SerializedNDArray(fromPbNDArrayType(type), aShapes, bb);
         return NDArray.create(ndArray);
     }
@@ -224,6 +229,14 @@ public class ProtobufUtils {
 
     public static Map<String, DataProtoMessage.DataScheme> serializeMap(Map<String,Value> dataMap) {
 
+        if (dataMap instanceof LazyDataMap) {
+            //Entries that were never decoded are written back as the original protobuf items
+            LazyDataMap lazyDataMap = (LazyDataMap) dataMap;
+            Map<String, DataProtoMessage.DataScheme> pbItemsMap = serializeMap(lazyDataMap.decoded());
+            pbItemsMap.putAll(lazyDataMap.undecoded());
+            return pbItemsMap;
+        }
+
         Map<String, DataProtoMessage.DataScheme> pbItemsMap = new HashMap<>();
         Iterator<Map.Entry<String, Value>> iterator = dataMap.entrySet().iterator();
 
@@ -260,7 +273,7 @@ public class ProtobufUtils {
                 byte[] imageBytes = p.getBytes();
                 //byte[] imageBytes = new JavaImageConverters.IdentityConverter().convert(image, byte[].class);
                 DataProtoMessage.Image pbImage = DataProtoMessage.Image.newBuilder().
-                        addData(ByteString.copyFrom(imageBytes)).
+                        addData(UnsafeByteOperations.unsafeWrap(imageBytes)).
                         setType(PNG).
                         build();
 
@@ -384,7 +397,7 @@ public class ProtobufUtils {
                         Png p = image.getAs(Png.class);
                         byte[] imageBytes = p.getBytes();
                         DataProtoMessage.Image pbImage = DataProtoMessage.Image.newBuilder().
-                                addData(ByteString.copyFrom(imageBytes)).
+                                addData(UnsafeByteOperations.unsafeWrap(imageBytes)).
                                 setType(PNG).
                                 build();
                         pbImages.add(pbImage);
@@ -484,95 +497,120 @@ public class ProtobufUtils {
 
     private static Data dataFromMap(Map<String, DataProtoMessage.DataScheme> schemeMap) {
 
-        Data retData = new JData();
+        JData retData = new JData();
         Iterator<Map.Entry<String, DataProtoMessage.DataScheme>> iterator =
                 schemeMap.entrySet().iterator();
         while (iterator.hasNext()) {
             Map.Entry<String, DataProtoMessage.DataScheme> entry = iterator.next();
-            DataProtoMessage.DataScheme item = entry.getValue();
-            if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.STRING.ordinal()) {
-                retData.put(entry.getKey(), item.getSValue());
-            }
-            if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.BOOLEAN.ordinal()) {
-                retData.put(entry.getKey(), item.getBoolValue());
-            }
-            if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.INT64.ordinal()) {
-                retData.put(entry.getKey(), item.getIValue());
-            }
-            if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.DOUBLE.ordinal()) {
-                retData.put(entry.getKey(), item.getDoubleValue());
-            }
-            if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.DATA.ordinal()) {
-                DataProtoMessage.DataMap itemMetaData = item.getMetaData();
-                Data embeddedData = deserialize(itemMetaData);
-                retData.put(entry.getKey(), embeddedData);
-            }
-            if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.BOUNDING_BOX.ordinal()) {
-                DataProtoMessage.BoundingBox pbBox = item.getBoxValue();
-                BoundingBox boundingBox = deserializeBoundingBox(pbBox);
-                retData.put(entry.getKey(), boundingBox);
-            }
-            if(item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.POINT.ordinal()) {
-                DataProtoMessage.Point pbPoint = item.getPointValue();
-                Point point = deserializePoint(pbPoint);
-                retData.put(entry.getKey(), point);
+            Value value = deserializeValue(entry.getValue());
+            if (value != null) {
+                retData.getDataMap().put(entry.getKey(), value);
             }
+        }
+        return retData;
+    }
 
-            if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.LIST.ordinal()) {
-                if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.DOUBLE.ordinal()) {
-                    retData.putListDouble(entry.getKey(), item.getListValue().getDList().getListList());
-                } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.BOOLEAN.ordinal()) {
-                    retData.putListBoolean(entry.getKey(), item.getListValue().getBList().getListList());
-                } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.INT64.ordinal()) {
-                    retData.putListInt64(entry.getKey(), item.getListValue().getIList().getListList());
-                } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.STRING.ordinal()) {
-                    retData.putListString(entry.getKey(), item.getListValue().getSList().getListList());
-                } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.IMAGE.ordinal()) {
-                    List<DataProtoMessage.Image> pbImages = item.getListValue().getImList().getListList();
-                    List<Image> images = new ArrayList<>();
-                    for (val pbImage : pbImages) {
-                        Image image = deserializeImage(pbImage);
-                        images.add(image);
-                    }
-                    retData.putListImage(entry.getKey(), images);
-                } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.NDARRAY.ordinal()) {
-                    List<DataProtoMessage.NDArray> pbArrays = item.getListValue().getNdList().getListList();
-                    List<NDArray> arrays = new ArrayList<>();
-                    for (val pbArray : pbArrays) {
-                        NDArray ndArray = deserializeNDArray(pbArray);
-                        arrays.add(ndArray);
-                    }
-                    retData.putListNDArray(entry.getKey(), arrays);
-                } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.BOUNDING_BOX.ordinal()) {
-                    List<DataProtoMessage.BoundingBox> pbArrays = item.getListValue().getBboxList().getListList();
-                    List<BoundingBox> boxes = new ArrayList<>();
-                    for (val pbBox : pbArrays) {
-                        BoundingBox boundingBox = deserializeBoundingBox(pbBox);
-                        boxes.add(boundingBox);
-                    }
-                    retData.putListBoundingBox(entry.getKey(), boxes);
-                } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.POINT.ordinal()) {
-                    List<DataProtoMessage.Point> pbArrays = item.getListValue().getPList().getListList();
-                    List<Point> points = new ArrayList<>();
-                    for (val pbPoint : pbArrays) {
-                        Point point = deserializePoint(pbPoint);
-                        points.add(point);
-                    }
-                    retData.putListPoint(entry.getKey(), points);
+    /**
+     * @return True if {@link #deserializeValue(DataProtoMessage.DataScheme)} supports the type of the item
+     */
+    public static boolean isSupported(DataProtoMessage.DataScheme item) {
+        int type = item.getTypeValue();
+        return type == DataProtoMessage.DataScheme.ValueType.STRING.ordinal() ||
+                type == DataProtoMessage.DataScheme.ValueType.BOOLEAN.ordinal() ||
+                type == DataProtoMessage.DataScheme.ValueType.INT64.ordinal() ||
+                type == DataProtoMessage.DataScheme.ValueType.DOUBLE.ordinal() ||
+                type == DataProtoMessage.DataScheme.ValueType.DATA.ordinal() ||
+                type == DataProtoMessage.DataScheme.ValueType.BOUNDING_BOX.ordinal() ||
+                type == DataProtoMessage.DataScheme.ValueType.POINT.ordinal() ||
+                type == DataProtoMessage.DataScheme.ValueType.LIST.ordinal() ||
+                type == DataProtoMessage.DataScheme.ValueType.IMAGE.ordinal() ||
+                type == DataProtoMessage.DataScheme.ValueType.NDARRAY.ordinal();
+    }
+
+    /**
+     * Convert a single protobuf item to a value
+     *
+     * @return The value, or null if the item type (or list element type) is not supported
+     */
+    public static Value deserializeValue(DataProtoMessage.DataScheme item) {
+        if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.STRING.ordinal()) {
+            return new StringValue(item.getSValue());
+        }
+        if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.BOOLEAN.ordinal()) {
+            return new BooleanValue(item.getBoolValue());
+        }
+        if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.INT64.ordinal()) {
+            return new IntValue(item.getIValue());
+        }
+        if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.DOUBLE.ordinal()) {
+            return new DoubleValue(item.getDoubleValue());
+        }
+        if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.DATA.ordinal()) {
+            DataProtoMessage.DataMap itemMetaData = item.getMetaData();
+            Data embeddedData = deserialize(itemMetaData);
+            return new DataValue(embeddedData);
+        }
+        if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.BOUNDING_BOX.ordinal()) {
+            DataProtoMessage.BoundingBox pbBox = item.getBoxValue();
+            return new BBoxValue(deserializeBoundingBox(pbBox));
+        }
+        if(item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.POINT.ordinal()) {
+            DataProtoMessage.Point pbPoint = item.getPointValue();
+            return new PointValue(deserializePoint(pbPoint));
+        }
+
+        if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.LIST.ordinal()) {
+            if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.DOUBLE.ordinal()) {
+                return new ListValue<>(item.getListValue().getDList().getListList(), ValueType.DOUBLE);
+            } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.BOOLEAN.ordinal()) {
+                return new ListValue<>(item.getListValue().getBList().getListList(), ValueType.BOOLEAN);
+            } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.INT64.ordinal()) {
+                return new ListValue<>(item.getListValue().getIList().getListList(), ValueType.INT64);
+            } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.STRING.ordinal()) {
+                return new ListValue<>(item.getListValue().getSList().getListList(), ValueType.STRING);
+            } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.IMAGE.ordinal()) {
+                List<DataProtoMessage.Image> pbImages = item.getListValue().getImList().getListList();
+                List<Image> images = new ArrayList<>();
+                for (val pbImage : pbImages) {
+                    Image image = deserializeImage(pbImage);
+                    images.add(image);
                 }
-            }
-            if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.IMAGE.ordinal()) {
-                DataProtoMessage.Image pbImage = item.getImValue();
-                Image image = deserializeImage(pbImage);
-                retData.put(entry.getKey(), image);
-            }
-            if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.NDARRAY.ordinal()) {
-                DataProtoMessage.NDArray pbArray = item.getNdValue();
-                NDArray ndArray = deserializeNDArray(pbArray);
-                retData.put(entry.getKey(), ndArray);
+                return new ListValue<>(images, ValueType.IMAGE);
+            } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.NDARRAY.ordinal()) {
+                List<DataProtoMessage.NDArray> pbArrays = item.getListValue().getNdList().getListList();
+                List<NDArray> arrays = new ArrayList<>();
+                for (val pbArray : pbArrays) {
+                    NDArray ndArray = deserializeNDArray(pbArray);
+                    arrays.add(ndArray);
+                }
+                return new ListValue<>(arrays, ValueType.NDARRAY);
+            } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.BOUNDING_BOX.ordinal()) {
+                List<DataProtoMessage.BoundingBox> pbArrays = item.getListValue().getBboxList().getListList();
+                List<BoundingBox> boxes = new ArrayList<>();
+                for (val pbBox : pbArrays) {
+                    BoundingBox boundingBox = deserializeBoundingBox(pbBox);
+                    boxes.add(boundingBox);
+                }
+                return new ListValue<>(boxes, ValueType.BOUNDING_BOX);
+            } else if (item.getListTypeValue() == DataProtoMessage.DataScheme.ValueType.POINT.ordinal()) {
+                List<DataProtoMessage.Point> pbArrays = item.getListValue().getPList().getListList();
+                List<Point> points = new ArrayList<>();
+                for (val pbPoint : pbArrays) {
+                    Point point = deserializePoint(pbPoint);
+                    points.add(point);
+                }
+                return new ListValue<>(points, ValueType.POINT);
             }
         }
-        return retData;
+        if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.IMAGE.ordinal()) {
+            DataProtoMessage.Image pbImage = item.getImValue();
+            return new ImageValue(deserializeImage(pbImage));
+        }
+        if (item.getTypeValue() == DataProtoMessage.DataScheme.ValueType.NDARRAY.ordinal()) {
+            DataProtoMessage.NDArray pbArray = item.getNdValue();
+            return new NDArrayValue(deserializeNDArray(pbArray));
+        }
+        return null;
     }
 
     public static Data deserialize(DataProtoMessage.DataMap dataMap) {
@@ -22,13 +22,36 @@ import ai.konduit.serving.pipeline.api.data.NDArray;
 import ai.konduit.serving.pipeline.api.format.NDArrayConverter;
 import ai.konduit.serving.pipeline.api.format.NDArrayFormat;
 import ai.konduit.serving.pipeline.registry.NDArrayConverterRegistry;
-import lombok.AllArgsConstructor;
-import org.nd4j.common.base.Preconditions;
+import ai.konduit.serving.pipeline.settings.KonduitSettings;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-@AllArgsConstructor
 public abstract class BaseNDArray<T> implements NDArray {
 
+    private static volatile boolean memoizeConversions = KonduitSettings.getMemoizeNDArrayConversions();
+
     protected final T array;
+    private volatile Map<Class<?>, Object> converted;
+
+    public BaseNDArray(T array) {
+        this.array = array;
+    }
+
+    /**
+     * Enable or disable memoization of {@link #getAs(Class)} conversions. When enabled, each array keeps the result of
+     * each conversion, so repeated calls (for example, the same {@code getAs(INDArray.class)} from multiple pipeline
+     * steps) return the same instance instead of converting again. Note that the converted instance is then shared:
+     * modifying it (or the array it was converted from) in place is not reflected in the other formats.<br>
+     * Disabled by default. See also {@link KonduitSettings#getMemoizeNDArrayConversions()}
+     */
+    public static void setMemoizeConversions(boolean memoize) {
+        memoizeConversions = memoize;
+    }
+
+    public static boolean isMemoizeConversions() {
+        return memoizeConversions;
+    }
 
     @Override
     public Object get() {
@@ -42,9 +65,29 @@ public abstract class BaseNDArray<T> implements NDArray {
 
     @Override
     public <T> T getAs(Class<T> type) {
-        NDArrayConverter converter = NDArrayConverterRegistry.getConverterFor(this, type);
-        Preconditions.checkState(converter != null, "No converter found for converting from %s to %s", array.getClass(), type);
-        return converter.convert(this, type);
+        if (!memoizeConversions || type.isInstance(array)) {
+            return NDArrayConverterRegistry.convert(this, type);
+        }
+
+        Map<Class<?>, Object> m = converted;
+        if (m == null) {
+            synchronized (this) {
+                if (converted == null) {
+                    converted = new ConcurrentHashMap<>();
+                }
+                m = converted;
+            }
+        }
+        Object out = m.get(type);
+        if (out == null) {
+            //Not computeIfAbsent: converters may call getAs on this array themselves
+            out = NDArrayConverterRegistry.convert(this, type);
+            Object prev = m.putIfAbsent(type, out);
+            if (prev != null) {
+                out = prev;
+            }
+        }
+        return (T) out;
     }
 
     @Override
@@ -23,6 +23,7 @@ import ai.konduit.serving.pipeline.api.step.PipelineStep;
 import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
 import ai.konduit.serving.pipeline.api.step.PipelineStepRunnerFactory;
 import ai.konduit.serving.pipeline.registry.PipelineRegistry;
+import ai.konduit.serving.pipeline.registry.SharedRunnerRegistry;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.nd4j.common.base.Preconditions;
@@ -70,9 +71,27 @@ public abstract class BasePipelineExecutor implements PipelineExecutor {
             throw new IllegalStateException(msg.toString());
         }
 
-        PipelineStepRunner r = f.create(step);
+        PipelineStepRunnerFactory factory = f;
+        PipelineStepRunner r = SharedRunnerRegistry.acquire(step, factory, () -> factory.create(step));
         Preconditions.checkNotNull(r, "Failed to create PipelineStepRunner: PipelineStepRunnerFactory.create(...) returned null: " +
                 "Pipeline step %s, PipelineStepRunnerFactory %s", step.getClass(), f.getClass());
         return r;
     }
+
+    /**
+     * Close the runners of this executor. Runners shared with other executors (see {@link SharedRunnerRegistry}) are
+     * only closed once they are no longer used by any executor
+     */
+    @Override
+    public void close() {
+        for (PipelineStepRunner r : getRunners()) {
+            if (r == null)
+                continue;
+            try {
+                SharedRunnerRegistry.release(r);
+            } catch (Throwable t) {
+                getLogger().error("Error closing PipelineStepRunner", t);
+            }
+        }
+    }
 }
@@ -0,0 +1,714 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.pipeline.impl.pipeline;
+
+import ai.konduit.serving.pipeline.api.context.Context;
+import ai.konduit.serving.pipeline.api.context.PipelineMetrics;
+import ai.konduit.serving.pipeline.api.context.Profiler;
+import ai.konduit.serving.pipeline.api.context.ProfilerConfig;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.NDArrayType;
+import ai.konduit.serving.pipeline.api.data.ValueType;
+import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.api.step.BatchCapableRunner;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.pipeline.impl.context.DefaultContext;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.slf4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A {@link PipelineExecutor} that combines concurrent {@link #exec(Data)} calls into a single execution of the
+ * batch-capable steps of the underlying pipeline (dynamic micro-batching).<br>
+ * Requests are collected until either {@code maxBatchSize} requests are pending, or {@code maxWaitMicros} microseconds
+ * have passed since the first request of the batch arrived. The NDArrays of all the requests are then stacked along
+ * dimension 0, the batch-capable steps are executed once, and the output NDArrays are split back (by rows) to each caller.
+ * <p>
+ * Which steps are batched:<br>
+ * - If all the runners of the underlying pipeline implement {@link BatchCapableRunner}, the whole pipeline is executed
+ * once per batch<br>
+ * - Otherwise, for a {@link SequencePipeline}, the steps before the first batch-capable runner and after the last one
+ * (for example, image decoding and post-processing) are executed for each request on its caller's thread. In between,
+ * each contiguous run of batch-capable runners (typically the model) is executed once per batch, and any other step is
+ * executed for each request of the batch<br>
+ * - Otherwise, nothing is batched, and requests are executed one by one exactly as the underlying executor would
+ * <p>
+ * Requests are only stacked when all of them have the same keys, all of their NDArray values have the same type and the
+ * same shape (except along dimension 0) and have rank 2 or more, and all of their non-NDArray values are equal. Otherwise,
+ * the batched steps are executed for each request.
+ * <p>
+ * Note that callers block until their batch has been executed, so this is only useful when {@link #exec(Data)} is
+ * called concurrently from multiple threads.<br>
+ * The batching thread only assembles the batches: each batch is executed on the thread of the caller of its first
+ * request, and requests that end up being executed one by one are executed on their own caller's thread. Batches are
+ * therefore executed concurrently, with no more concurrency than the callers themselves provide.
+ */
+@Slf4j
+public class BatchingPipelineExecutor implements PipelineExecutor {
+
+    @Getter
+    protected final PipelineExecutor underlyingExec;
+    @Getter
+    protected final int maxBatchSize;
+    @Getter
+    protected final long maxWaitMicros;
+    protected final boolean batchCapable;
+
+    protected final List<PipelineStepRunner> prefix;        //Executed for each request, before batching
+    protected final List<Segment> segments;                 //Executed for each batch. Null if nothing can be batched
+    protected final List<PipelineStepRunner> suffix;        //Executed for each request, after batching
+    private volatile Context runnerContext;
+
+    protected final BlockingQueue<PendingRequest> queue = new LinkedBlockingQueue<>();
+    protected final Thread batchingThread;
+    protected volatile boolean closed;
+    protected volatile boolean batchingDisabled;
+
+    public BatchingPipelineExecutor(@NonNull PipelineExecutor underlyingExec, int maxBatchSize, long maxWaitMicros) {
+        this(underlyingExec, underlyingExec instanceof SequencePipelineExecutor ? underlyingExec.getRunners() : null,
+                maxBatchSize, maxWaitMicros);
+    }
+
+    /**
+     * @param sequenceRunners The runners of the underlying executor, if it executes them one after the other with the
+     *                        output of each runner as the input of the next one (as for a {@link SequencePipeline}).
+     *                        Null otherwise, in which case only a fully batch-capable pipeline is batched.
+     */
+    protected BatchingPipelineExecutor(@NonNull PipelineExecutor underlyingExec, List<PipelineStepRunner> sequenceRunners,
+                                       int maxBatchSize, long maxWaitMicros) {
+        Preconditions.checkArgument(maxBatchSize >= 1, "Max batch size must be 1 or more, got %s", maxBatchSize);
+        Preconditions.checkArgument(maxWaitMicros >= 0, "Max wait time must be 0 or more, got %s", maxWaitMicros);
+
+        this.underlyingExec = underlyingExec;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitMicros = maxWaitMicros;
+
+        int first = -1;
+        int last = -1;
+        if (sequenceRunners != null) {
+            for (int i = 0; i < sequenceRunners.size(); i++) {
+                if (sequenceRunners.get(i) instanceof BatchCapableRunner) {
+                    if (first < 0) {
+                        first = i;
+                    }
+                    last = i;
+                }
+            }
+        }
+
+        if (isBatchCapable(underlyingExec.getRunners())) {
+            prefix = Collections.emptyList();
+            segments = Collections.singletonList(new Segment(null, true));
+            suffix = Collections.emptyList();
+        } else if (first >= 0) {
+            prefix = new ArrayList<>(sequenceRunners.subList(0, first));
+            suffix = new ArrayList<>(sequenceRunners.subList(last + 1, sequenceRunners.size()));
+            segments = new ArrayList<>();
+            int start = first;
+            for (int i = first + 1; i <= last + 1; i++) {
+                boolean end = i > last ||
+                        (sequenceRunners.get(i) instanceof BatchCapableRunner) != (sequenceRunners.get(start) instanceof BatchCapableRunner);
+                if (end) {
+                    segments.add(new Segment(new ArrayList<>(sequenceRunners.subList(start, i)),
+                            sequenceRunners.get(start) instanceof BatchCapableRunner));
+                    start = i;
+                }
+            }
+        } else {
+            prefix = Collections.emptyList();
+            segments = null;
+            suffix = Collections.emptyList();
+        }
+        this.batchCapable = segments != null;
+
+        if (batchCapable && maxBatchSize > 1) {
+            batchingThread = new Thread(this::batchLoop, "konduit-pipeline-batching");
+            batchingThread.setDaemon(true);
+            batchingThread.start();
+        } else {
+            if (!batchCapable) {
+                log.warn("No pipeline step runners that support batch execution ({}) could be batched. Requests will be executed one by one.",
+                        BatchCapableRunner.class.getSimpleName());
+            }
+            batchingThread = null;
+        }
+    }
+
+    /**
+     * @return True if all of the specified runners can execute batches of stacked inputs
+     */
+    public static boolean isBatchCapable(List<PipelineStepRunner> runners) {
+        if (runners == null || runners.isEmpty()) {
+            return false;
+        }
+
+        for (PipelineStepRunner r : runners) {
+            if (!(r instanceof BatchCapableRunner)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Pipeline getPipeline() {
+        return underlyingExec.getPipeline();
+    }
+
+    @Override
+    public List<PipelineStepRunner> getRunners() {
+        return underlyingExec.getRunners();
+    }
+
+    @Override
+    public Data exec(Data data) {
+        if (batchingThread == null || batchingDisabled) {
+            return underlyingExec.exec(data);
+        }
+
+        PendingRequest request = submit(exec(prefix, data));
+        List<PendingRequest> batch = request.task.join();
+        if (batch != null) {
+            execBatch(batch);
+        }
+        return exec(suffix, request.get());
+    }
+
+    @Override
+    public Data[] exec(Data... data) {
+        if (batchingThread == null || batchingDisabled) {
+            return underlyingExec.exec(data);
+        }
+
+        Data[] inputs = new Data[data.length];
+        for (int i = 0; i < data.length; i++) {
+            inputs[i] = exec(prefix, data[i]);
+        }
+
+        PendingRequest[] requests = new PendingRequest[data.length];
+        for (int i = 0; i < data.length; i++) {
+            requests[i] = submit(inputs[i]);
+        }
+
+        //Execute whatever is assigned to this thread as soon as it is assigned, in any order. Handling the requests in
+        //order could deadlock: the caller we'd be waiting for may itself be waiting for one of our later requests
+        List<PendingRequest> remaining = new ArrayList<>(Arrays.asList(requests));
+        while (!remaining.isEmpty()) {
+            CompletableFuture<?>[] tasks = new CompletableFuture<?>[remaining.size()];
+            for (int i = 0; i < tasks.length; i++) {
+                tasks[i] = remaining.get(i).task;
+            }
+            CompletableFuture.anyOf(tasks).join();
+
+            for (Iterator<PendingRequest> iter = remaining.iterator(); iter.hasNext(); ) {
+                PendingRequest r = iter.next();
+                if (r.task.isDone()) {
+                    iter.remove();
+                    List<PendingRequest> batch = r.task.join();
+                    if (batch != null) {
+                        execBatch(batch);
+                    }
+                }
+            }
+        }
+
+        Data[] out = new Data[data.length];
+        for (int i = 0; i < data.length; i++) {
+            out[i] = exec(suffix, requests[i].get());
+        }
+        return out;
+    }
+
+    protected PendingRequest submit(Data data) {
+        Preconditions.checkState(!closed, "Unable to execute pipeline: BatchingPipelineExecutor has been closed");
+        PendingRequest request = new PendingRequest(data);
+        queue.add(request);
+        if (closed) {
+            //Closed concurrently - the batching thread may already have exited
+            request.close();
+        }
+        return request;
+    }
+
+    protected void batchLoop() {
+        List<PendingRequest> batch = new ArrayList<>(maxBatchSize);
+        while (!closed) {
+            try {
+                PendingRequest first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingRequest next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                //Hand the batch to the caller of its first request, to be executed on that thread
+                batch.get(0).task.complete(new ArrayList<>(batch));
+            } catch (InterruptedException e) {
+                if (!closed) {
+                    log.warn("Batching thread was interrupted", e);
+                }
+                for (PendingRequest r : batch) {
+                    r.close();
+                }
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        PendingRequest r;
+        while ((r = queue.poll()) != null) {
+            r.close();
+        }
+    }
+
+    /**
+     * Execute the batch, on the thread of the caller of its first request. Every request of the batch is either completed,
+     * or handed back to its own caller to be executed individually
+     */
+    protected void execBatch(List<PendingRequest> batch) {
+        try {
+            doExecBatch(batch);
+        } catch (Throwable t) {
+            //Should never happen - doExecBatch completes every request - but don't leave any caller hanging
+            for (PendingRequest r : batch) {
+                r.future.completeExceptionally(t);
+                r.task.complete(null);
+            }
+        }
+    }
+
+    protected void doExecBatch(List<PendingRequest> batch) {
+        if (batch.size() == 1 || batchingDisabled) {
+            execIndividually(batch);
+            return;
+        }
+
+        int n = batch.size();
+        Data[] current = new Data[n];
+        Throwable[] errors = new Throwable[n];
+        for (int i = 0; i < n; i++) {
+            current[i] = batch.get(i).input;
+        }
+
+        for (Segment segment : segments) {
+            if (!segment.batchCapable || batchingDisabled || !execStacked(segment, current, errors)) {
+                for (int i = 0; i < n; i++) {
+                    if (errors[i] == null) {
+                        try {
+                            current[i] = exec(segment, current[i]);
+                        } catch (Throwable t) {
+                            errors[i] = t;
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (errors[i] != null) {
+                batch.get(i).future.completeExceptionally(errors[i]);
+            } else {
+                batch.get(i).future.complete(current[i]);
+            }
+            batch.get(i).task.complete(null);
+        }
+    }
+
+    /**
+     * Execute the segment once, on the stacked inputs of all the requests that haven't failed yet
+     *
+     * @return True if the outputs were stored in {@code current}, false if the segment must be executed for each request
+     * instead
+     */
+    protected boolean execStacked(Segment segment, Data[] current, Throwable[] errors) {
+        List<Integer> indices = new ArrayList<>(current.length);
+        List<Data> inputs = new ArrayList<>(current.length);
+        for (int i = 0; i < current.length; i++) {
+            if (errors[i] == null) {
+                indices.add(i);
+                inputs.add(current[i]);
+            }
+        }
+        if (inputs.size() <= 1) {
+            return false;
+        }
+
+        long[] rows = new long[inputs.size()];
+        Data stacked = stack(inputs, rows);
+        if (stacked == null) {
+            return false;
+        }
+
+        Data output;
+        try {
+            output = exec(segment, stacked);
+        } catch (Throwable t) {
+            //Execute one by one, so that a single invalid request only fails itself
+            log.debug("Batch execution failed - executing {} requests individually", inputs.size(), t);
+            return false;
+        }
+
+        Data[] split = split(output, rows);
+        if (split == null) {
+            log.warn("Unable to split the pipeline output back into individual results: all output NDArrays must have " +
+                    "the same number of rows as the stacked inputs. Disabling batching for this pipeline.");
+            batchingDisabled = true;
+            return false;
+        }
+
+        for (int j = 0; j < split.length; j++) {
+            current[indices.get(j)] = split[j];
+        }
+        return true;
+    }
+
+    /**
+     * Execute the first request on this thread, and hand each of the other requests back to its own caller
+     */
+    protected void execIndividually(List<PendingRequest> batch) {
+        for (int i = 1; i < batch.size(); i++) {
+            PendingRequest r = batch.get(i);
+            r.task.complete(Collections.singletonList(r));
+        }
+
+        PendingRequest r = batch.get(0);
+        try {
+            Data d = r.input;
+            for (Segment segment : segments) {
+                d = exec(segment, d);
+            }
+            r.future.complete(d);
+        } catch (Throwable t) {
+            r.future.completeExceptionally(t);
+        }
+    }
+
+    protected Data exec(Segment segment, Data data) {
+        return segment.runners == null ? underlyingExec.exec(data) : exec(segment.runners, data);
+    }
+
+    /**
+     * Execute the runners one after the other, as {@link SequencePipelineExecutor} does
+     */
+    protected Data exec(List<PipelineStepRunner> runners, Data data) {
+        if (runners.isEmpty()) {
+            return data;
+        }
+
+        Context ctx = context();
+        Profiler profiler = ctx.profiler();
+        PipelineMetrics metrics = (PipelineMetrics) ctx.metrics();
+        Data current = data;
+        for (PipelineStepRunner psr : runners) {
+            String name = psr.name();
+            profiler.eventStart(name);
+            metrics.setInstanceName(name);
+            metrics.setStepName(psr.getPipelineStep().name());
+
+            current = psr.exec(ctx, current);
+
+            profiler.eventEnd(name);
+            profiler.closeAll();
+        }
+        return current;
+    }
+
+    private Context context() {
+        if (runnerContext == null) {
+            synchronized (this) {
+                if (runnerContext == null) {
+                    Pipeline p = underlyingExec.getPipeline();
+                    runnerContext = new DefaultContext(new PipelineMetrics(p == null ? null : p.id()), underlyingExec.profiler());
+                }
+            }
+        }
+        return runnerContext;
+    }
+
+    /**
+     * Stack the specified Data instances into a single Data instance, with all NDArrays concatenated along dimension 0.
+     *
+     * @param inputs The Data instances to stack
+     * @param rows   Output: the number of rows (size of dimension 0) of each of the inputs
+     * @return The stacked Data instance, or null if the inputs can't be stacked
+     */
+    public static Data stack(@NonNull List<Data> inputs, @NonNull long[] rows) {
+        Preconditions.checkArgument(rows.length == inputs.size(), "Rows array length (%s) must match number of inputs (%s)",
+                rows.length, inputs.size());
+        if (inputs.isEmpty()) {
+            return null;
+        }
+
+        Data first = inputs.get(0);
+        List<String> keys = first.keys();
+        for (Data d : inputs) {
+            if (d.hasMetaData() || d.size() != keys.size()) {
+                return null;
+            }
+        }
+
+        Arrays.fill(rows, -1);
+        Data out = Data.empty();
+        boolean anyNDArrays = false;
+        for (String key : keys) {
+            ValueType vt = first.type(key);
+            for (Data d : inputs) {
+                if (!d.has(key) || d.type(key) != vt) {
+                    return null;
+                }
+            }
+
+            if (vt != ValueType.NDARRAY) {
+                Object value = first.get(key);
+                for (Data d : inputs) {
+                    if (!Objects.equals(value, d.get(key))) {
+                        return null;
+                    }
+                }
+                out.copyFrom(key, first);
+                continue;
+            }
+
+            SerializedNDArray[] arrays = new SerializedNDArray[inputs.size()];
+            NDArrayType type = null;
+            long[] shape = null;
+            long totalRows = 0;
+            for (int i = 0; i < arrays.length; i++) {
+                SerializedNDArray arr = inputs.get(i).getNDArray(key).getAs(SerializedNDArray.class);
+                long[] s = arr.getShape();
+                if (!arr.getType().isFixedWidth() || s.length < 2) {
+                    return null;
+                }
+
+                if (type == null) {
+                    type = arr.getType();
+                    shape = s;
+                } else if (arr.getType() != type || !sameTrailingDims(shape, s)) {
+                    return null;
+                }
+
+                if (rows[i] == -1) {
+                    rows[i] = s[0];
+                } else if (rows[i] != s[0]) {
+                    return null;        //Different NDArrays in the same request have different number of rows
+                }
+
+                arrays[i] = arr;
+                totalRows += s[0];
+            }
+
+            long bytesPerRow = bytesPerRow(type, shape);
+            long totalBytes = bytesPerRow * totalRows;
+            if (totalBytes > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            ByteBuffer bb = ByteBuffer.allocateDirect((int) totalBytes).order(ByteOrder.LITTLE_ENDIAN);
+            for (SerializedNDArray arr : arrays) {
+                int length = (int) (bytesPerRow * arr.getShape()[0]);
+                ByteBuffer src = arr.getBuffer().duplicate();
+                if (src.capacity() < length) {
+                    return null;
+                }
+                src.clear();
+                src.limit(length);
+                bb.put(src);
+            }
+            bb.flip();
+
+            long[] outShape = shape.clone();
+            outShape[0] = totalRows;
+            out.put(key, NDArray.create(new SerializedNDArray(type, outShape, bb)));
+            anyNDArrays = true;
+        }
+
+        return anyNDArrays ? out : null;
+    }
+
+    /**
+     * Split the output of a stacked execution back into one Data instance per request. The NDArrays are split along
+     * dimension 0 (without copying - the returned NDArrays are views of the stacked output), and all other values are
+     * copied to each of the results.
+     *
+     * @param output The output of the stacked execution
+     * @param rows   The number of rows for each request, as returned by {@link #stack(List, long[])}
+     * @return One output per request, or null if the output can't be split
+     */
+    public static Data[] split(@NonNull Data output, @NonNull long[] rows) {
+        long totalRows = 0;
+        for (long r : rows) {
+            totalRows += r;
+        }
+
+        Data[] out = new Data[rows.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = Data.empty();
+        }
+
+        for (String key : output.keys()) {
+            if (output.type(key) != ValueType.NDARRAY) {
+                for (Data d : out) {
+                    d.copyFrom(key, output);
+                }
+                continue;
+            }
+
+            SerializedNDArray arr = output.getNDArray(key).getAs(SerializedNDArray.class);
+            long[] shape = arr.getShape();
+            if (!arr.getType().isFixedWidth() || shape.length == 0 || shape[0] != totalRows) {
+                return null;
+            }
+
+            long bytesPerRow = bytesPerRow(arr.getType(), shape);
+            ByteBuffer buffer = arr.getBuffer().duplicate();
+            buffer.clear();
+            if (buffer.capacity() < bytesPerRow * totalRows) {
+                return null;
+            }
+
+            long offset = 0;
+            for (int i = 0; i < rows.length; i++) {
+                long length = bytesPerRow * rows[i];
+                buffer.limit((int) (offset + length));
+                buffer.position((int) offset);
+                ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+                long[] outShape = shape.clone();
+                outShape[0] = rows[i];
+                out[i].put(key, NDArray.create(new SerializedNDArray(arr.getType(), outShape, slice)));
+                offset += length;
+            }
+        }
+
+        return out;
+    }
+
+    private static boolean sameTrailingDims(long[] s1, long[] s2) {
+        if (s1.length != s2.length) {
+            return false;
+        }
+        for (int i = 1; i < s1.length; i++) {
+            if (s1[i] != s2[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long bytesPerRow(NDArrayType type, long[] shape) {
+        long bytes = type.width();
+        for (int i = 1; i < shape.length; i++) {
+            bytes *= shape[i];
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (batchingThread != null) {
+            batchingThread.interrupt();
+        }
+        underlyingExec.close();
+    }
+
+    @Override
+    public Logger getLogger() {
+        return log;
+    }
+
+    @Override
+    public void profilerConfig(ProfilerConfig profilerConfig) {
+        underlyingExec.profilerConfig(profilerConfig);
+    }
+
+    @Override
+    public Profiler profiler() {
+        return underlyingExec.profiler();
+    }
+
+    /**
+     * Contiguous runners of the batched part of the pipeline, either all batch-capable or none of them
+     */
+    protected static class Segment {
+        protected final List<PipelineStepRunner> runners;     //Null: the whole underlying executor
+        protected final boolean batchCapable;
+
+        protected Segment(List<PipelineStepRunner> runners, boolean batchCapable) {
+            this.runners = runners;
+            this.batchCapable = batchCapable;
+        }
+    }
+
+    protected static class PendingRequest {
+        protected final Data input;
+        protected final CompletableFuture<Data> future = new CompletableFuture<>();
+        /**
+         * Completed with the requests that the caller of this request must execute (as a batch), or with null once
+         * this request has been executed by another caller
+         */
+        protected final CompletableFuture<List<PendingRequest>> task = new CompletableFuture<>();
+
+        protected PendingRequest(Data input) {
+            this.input = input;
+        }
+
+        protected void close() {
+            future.completeExceptionally(new IllegalStateException("BatchingPipelineExecutor has been closed"));
+            task.complete(null);
+        }
+
+        protected Data get() {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for pipeline execution", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+}
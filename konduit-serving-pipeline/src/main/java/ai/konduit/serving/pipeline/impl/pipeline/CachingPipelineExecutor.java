@@ -0,0 +1,682 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.pipeline.impl.pipeline;
+
+import ai.konduit.serving.pipeline.api.context.Profiler;
+import ai.konduit.serving.pipeline.api.context.ProfilerConfig;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.Image;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.ValueType;
+import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import ai.konduit.serving.pipeline.registry.MicrometerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.slf4j.Logger;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link PipelineExecutor} that caches the output of the underlying executor, keyed by the content of the input Data.
+ * <p>
+ * The cache key is a 128-bit hash of the selected input keys (all keys if none are specified): NDArrays are hashed from
+ * their type, shape and raw buffer, bytes and strings from their content, and all other values from their
+ * {@link Data#asBytes()} serialization. Metadata is not part of the key.<br>
+ * The cache is bounded by both the number of entries and their total (approximate) size in bytes, evicting the least
+ * recently used entries first. Entries can optionally expire a fixed time after they were added, and can optionally be
+ * stored off-heap (serialized, in direct memory) instead of as Data instances on the heap.<br>
+ * Concurrent executions with the same key are coalesced: the underlying pipeline is executed once, and all the callers
+ * receive its output. Failed executions are not cached.<br>
+ * For {@link #exec(Data...)}, hits are answered from the cache and all the misses are forwarded to the underlying
+ * executor as a single {@code exec(Data...)} call, so that it can batch them.
+ * <p>
+ * Hits, misses, coalesced executions, evictions and the current size of the cache are published as metrics through
+ * {@link MicrometerRegistry}, with the "konduit.cache" prefix.
+ * <p>
+ * Callers receive a shallow copy of the cached Data instance, so the values in it (NDArrays, for example) may be shared
+ * with other callers and should not be modified in place.
+ */
+@Slf4j
+public class CachingPipelineExecutor implements PipelineExecutor {
+
+    public static final String METRIC_PREFIX = "konduit.cache";
+
+    @Getter
+    protected final PipelineExecutor underlyingExec;
+    @Getter
+    protected final List<String> keys;
+    @Getter
+    protected final long maxEntries;
+    @Getter
+    protected final long maxWeightBytes;
+    @Getter
+    protected final long ttlMillis;
+    @Getter
+    protected final boolean offHeap;
+
+    //Access ordered, so that iteration order is least recently used first
+    protected final LinkedHashMap<CacheKey, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    protected final ConcurrentHashMap<CacheKey, CompletableFuture<Data>> inFlight = new ConcurrentHashMap<>();
+    protected long weightBytes;
+
+    protected final List<Meter> meters = new ArrayList<>();
+    protected final Counter hits;
+    protected final Counter misses;
+    protected final Counter coalesced;
+    protected final Counter evictions;
+
+    /**
+     * @param underlyingExec The executor whose outputs should be cached
+     * @param keys           The input keys that make up the cache key. If null or empty: all the keys of the input
+     * @param maxEntries     Maximum number of cached outputs
+     * @param maxWeightBytes Maximum (approximate) total size of the cached outputs, in bytes
+     * @param ttlMillis      Time after which cached outputs expire, in milliseconds. 0 means no expiry
+     * @param offHeap        If true, outputs are stored serialized in direct (off-heap) memory
+     */
+    public CachingPipelineExecutor(@NonNull PipelineExecutor underlyingExec, List<String> keys, long maxEntries,
+                                   long maxWeightBytes, long ttlMillis, boolean offHeap) {
+        Preconditions.checkArgument(maxEntries >= 1, "Max entries must be 1 or more, got %s", maxEntries);
+        Preconditions.checkArgument(maxWeightBytes >= 1, "Max weight must be 1 or more bytes, got %s", maxWeightBytes);
+        Preconditions.checkArgument(ttlMillis >= 0, "TTL must be 0 or more, got %s", ttlMillis);
+
+        this.underlyingExec = underlyingExec;
+        this.keys = keys == null ? Collections.emptyList() : new ArrayList<>(keys);
+        this.maxEntries = maxEntries;
+        this.maxWeightBytes = maxWeightBytes;
+        this.ttlMillis = ttlMillis;
+        this.offHeap = offHeap;
+
+        MeterRegistry registry = MicrometerRegistry.getRegistry();
+        String id = underlyingExec.getPipeline() == null ? null : underlyingExec.getPipeline().id();
+        Tags tags = Tags.of("pipeline", id == null ? "default" : id);
+        hits = register(Counter.builder(METRIC_PREFIX + ".hits").tags(tags)
+                .description("Pipeline executions answered from the result cache").register(registry));
+        misses = register(Counter.builder(METRIC_PREFIX + ".misses").tags(tags)
+                .description("Pipeline executions not found in the result cache").register(registry));
+        coalesced = register(Counter.builder(METRIC_PREFIX + ".coalesced").tags(tags)
+                .description("Pipeline executions that waited for an identical in-flight execution").register(registry));
+        evictions = register(Counter.builder(METRIC_PREFIX + ".evictions").tags(tags)
+                .description("Entries evicted or expired from the result cache").register(registry));
+        register(Gauge.builder(METRIC_PREFIX + ".size", this, CachingPipelineExecutor::size).tags(tags)
+                .description("Number of entries in the result cache").register(registry));
+        register(Gauge.builder(METRIC_PREFIX + ".weight", this, CachingPipelineExecutor::weightBytes).tags(tags)
+                .description("Approximate size of the result cache, in bytes").baseUnit("bytes").register(registry));
+    }
+
+    private <T extends Meter> T register(T meter) {
+        meters.add(meter);
+        return meter;
+    }
+
+    @Override
+    public Pipeline getPipeline() {
+        return underlyingExec.getPipeline();
+    }
+
+    @Override
+    public List<PipelineStepRunner> getRunners() {
+        return underlyingExec.getRunners();
+    }
+
+    @Override
+    public Data exec(Data data) {
+        CacheKey key = key(data, keys);
+
+        Data cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<Data> f = new CompletableFuture<>();
+        CompletableFuture<Data> existing = inFlight.putIfAbsent(key, f);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing).clone();
+        }
+
+        try {
+            //Check again: another execution with the same key may have finished between the lookup and putIfAbsent
+            Data out = lookup(key);
+            if (out == null) {
+                misses.increment();
+                out = underlyingExec.exec(data);
+                store(key, out);
+            } else {
+                hits.increment();
+            }
+            f.complete(out);
+            return out.clone();
+        } catch (Throwable t) {
+            f.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, f);
+        }
+    }
+
+    @Override
+    public Data[] exec(Data... data) {
+        Data[] out = new Data[data.length];
+        //Indices of the inputs executed by this call, with their keys and in-flight futures
+        List<Integer> missIdx = new ArrayList<>();
+        List<CacheKey> missKeys = new ArrayList<>();
+        List<CompletableFuture<Data>> missFutures = new ArrayList<>();
+        //Inputs whose output comes from another execution: either by another caller, or of a duplicate in this call
+        Map<Integer, CompletableFuture<Data>> waiting = new HashMap<>();
+        Map<CacheKey, CompletableFuture<Data>> owned = new HashMap<>();
+
+        for (int i = 0; i < data.length; i++) {
+            CacheKey key = key(data[i], keys);
+            Data cached = lookup(key);
+            if (cached != null) {
+                hits.increment();
+                out[i] = cached;
+                continue;
+            }
+
+            CompletableFuture<Data> f = owned.get(key);
+            if (f == null) {
+                f = new CompletableFuture<>();
+                CompletableFuture<Data> existing = inFlight.putIfAbsent(key, f);
+                if (existing != null) {
+                    f = existing;
+                } else {
+                    //As in exec(Data): another execution may have finished between the lookup and putIfAbsent
+                    cached = lookup(key);
+                    if (cached != null) {
+                        inFlight.remove(key, f);
+                        f.complete(cached);
+                        hits.increment();
+                        out[i] = cached;
+                        continue;
+                    }
+                    owned.put(key, f);
+                    missIdx.add(i);
+                    missKeys.add(key);
+                    missFutures.add(f);
+                    continue;
+                }
+            }
+            coalesced.increment();
+            waiting.put(i, f);
+        }
+
+        if (!missIdx.isEmpty()) {
+            try {
+                Data[] in = new Data[missIdx.size()];
+                for (int j = 0; j < in.length; j++) {
+                    in[j] = data[missIdx.get(j)];
+                }
+                misses.increment(in.length);
+                Data[] results = underlyingExec.exec(in);
+                Preconditions.checkState(results != null && results.length == in.length,
+                        "Expected %s outputs from the underlying executor, got %s", in.length, results == null ? null : results.length);
+
+                for (int j = 0; j < in.length; j++) {
+                    store(missKeys.get(j), results[j]);
+                    missFutures.get(j).complete(results[j]);
+                    out[missIdx.get(j)] = results[j].clone();
+                }
+            } catch (Throwable t) {
+                for (CompletableFuture<Data> f : missFutures) {
+                    f.completeExceptionally(t);
+                }
+                throw t;
+            } finally {
+                for (int j = 0; j < missKeys.size(); j++) {
+                    inFlight.remove(missKeys.get(j), missFutures.get(j));
+                }
+            }
+        }
+
+        //Only wait for other executions after completing this call's own, so that concurrent calls can't deadlock
+        for (Map.Entry<Integer, CompletableFuture<Data>> e : waiting.entrySet()) {
+            out[e.getKey()] = await(e.getValue()).clone();
+        }
+        return out;
+    }
+
+    /**
+     * @return A copy of the cached output for the key, or null if it is not cached (or has expired)
+     */
+    protected Data lookup(CacheKey key) {
+        CacheEntry e;
+        synchronized (cache) {
+            e = cache.get(key);
+            if (e == null) {
+                return null;
+            }
+            if (e.expired(System.nanoTime())) {
+                remove(key);
+                evictions.increment();
+                return null;
+            }
+        }
+
+        if (e.data != null) {
+            return e.data.clone();
+        }
+
+        ByteBuffer bb = e.serialized.duplicate();
+        byte[] bytes = new byte[bb.remaining()];
+        bb.get(bytes);
+        return Data.fromBytes(bytes);
+    }
+
+    protected void store(CacheKey key, Data out) {
+        CacheEntry e;
+        if (offHeap) {
+            byte[] bytes = out.asBytes();
+            ByteBuffer bb = ByteBuffer.allocateDirect(bytes.length);
+            bb.put(bytes);
+            ((Buffer) bb).flip();
+            e = new CacheEntry(null, bb.asReadOnlyBuffer(), bytes.length, expiry());
+        } else {
+            e = new CacheEntry(out, null, weigh(out), expiry());
+        }
+
+        if (e.weight > maxWeightBytes) {
+            log.debug("Not caching pipeline output of {} bytes: larger than the maximum cache size of {} bytes",
+                    e.weight, maxWeightBytes);
+            return;
+        }
+
+        synchronized (cache) {
+            remove(key);
+            cache.put(key, e);
+            weightBytes += e.weight;
+
+            long now = System.nanoTime();
+            Iterator<Map.Entry<CacheKey, CacheEntry>> iter = cache.entrySet().iterator();
+            while (iter.hasNext() && (cache.size() > maxEntries || weightBytes > maxWeightBytes)) {
+                Map.Entry<CacheKey, CacheEntry> eldest = iter.next();
+                if (eldest.getValue() == e) {
+                    break;
+                }
+                iter.remove();
+                weightBytes -= eldest.getValue().weight;
+                evictions.increment();
+            }
+
+            //Drop expired entries at the head of the LRU order too, so they don't hold memory until they are looked up
+            iter = cache.entrySet().iterator();
+            while (iter.hasNext()) {
+                CacheEntry eldest = iter.next().getValue();
+                if (eldest == e || !eldest.expired(now)) {
+                    break;
+                }
+                iter.remove();
+                weightBytes -= eldest.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    //Must be called while holding the cache lock
+    private void remove(CacheKey key) {
+        CacheEntry old = cache.remove(key);
+        if (old != null) {
+            weightBytes -= old.weight;
+        }
+    }
+
+    private long expiry() {
+        return ttlMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis) : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return The number of entries in the cache
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return The approximate total size of the entries in the cache, in bytes
+     */
+    public long weightBytes() {
+        synchronized (cache) {
+            return weightBytes;
+        }
+    }
+
+    /**
+     * Remove all entries from the cache
+     */
+    public void invalidateAll() {
+        synchronized (cache) {
+            cache.clear();
+            weightBytes = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        invalidateAll();
+        MeterRegistry registry = MicrometerRegistry.getRegistry();
+        for (Meter m : meters) {
+            registry.remove(m);
+        }
+        underlyingExec.close();
+    }
+
+    @Override
+    public Logger getLogger() {
+        return log;
+    }
+
+    @Override
+    public void profilerConfig(ProfilerConfig profilerConfig) {
+        underlyingExec.profilerConfig(profilerConfig);
+    }
+
+    @Override
+    public Profiler profiler() {
+        return underlyingExec.profiler();
+    }
+
+    private static Data await(CompletableFuture<Data> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for pipeline execution", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Compute the cache key for the specified input
+     *
+     * @param data The input Data
+     * @param keys The keys of the input to include. If empty: all keys are included
+     */
+    public static CacheKey key(@NonNull Data data, @NonNull List<String> keys) {
+        List<String> toHash;
+        if (keys.isEmpty()) {
+            toHash = new ArrayList<>(data.keys());
+            Collections.sort(toHash);       //Key order depends on how the request was built, so isn't part of the content
+        } else {
+            toHash = keys;
+        }
+
+        Murmur3Hasher h = new Murmur3Hasher();
+        for (String k : toHash) {
+            h.putBytes(k.getBytes(StandardCharsets.UTF_8));
+            if (!data.has(k)) {
+                h.putInt(-1);
+                continue;
+            }
+
+            ValueType vt = data.type(k);
+            h.putInt(vt.ordinal());
+            switch (vt) {
+                case NDARRAY:
+                    SerializedNDArray arr = data.getNDArray(k).getAs(SerializedNDArray.class);
+                    h.putInt(arr.getType().ordinal());
+                    long[] shape = arr.getShape();
+                    h.putInt(shape.length);
+                    for (long l : shape) {
+                        h.putLong(l);
+                    }
+                    //Converters may leave the position of the buffer anywhere (at its limit, after a bulk copy for example)
+                    ByteBuffer buffer = arr.getBuffer().duplicate();
+                    ((Buffer) buffer).rewind();
+                    h.putBuffer(buffer);
+                    break;
+                case BYTES:
+                    h.putBytes(data.getBytes(k));
+                    break;
+                case STRING:
+                    h.putBytes(data.getString(k).getBytes(StandardCharsets.UTF_8));
+                    break;
+                case INT64:
+                    h.putLong(data.getLong(k));
+                    break;
+                case DOUBLE:
+                    h.putLong(Double.doubleToLongBits(data.getDouble(k)));
+                    break;
+                case BOOLEAN:
+                    h.putInt(data.getBoolean(k) ? 1 : 0);
+                    break;
+                default:
+                    Data single = Data.empty();
+                    single.copyFrom(k, data);
+                    h.putBytes(single.asBytes());
+            }
+        }
+        return h.hash();
+    }
+
+    /**
+     * @return The approximate size of the specified Data instance in memory, in bytes
+     */
+    protected static long weigh(Data data) {
+        long w = 64;
+        for (String k : data.keys()) {
+            w += 32 + 2L * k.length() + weighValue(data.get(k));
+        }
+        if (data.hasMetaData()) {
+            w += weigh(data.getMetaData());
+        }
+        return w;
+    }
+
+    private static long weighValue(Object o) {
+        if (o instanceof NDArray) {
+            NDArray arr = (NDArray) o;
+            long n = 1;
+            for (long l : arr.shape()) {
+                n *= l;
+            }
+            return 64 + n * Math.max(1, arr.type().width());
+        } else if (o instanceof byte[]) {
+            return 16 + ((byte[]) o).length;
+        } else if (o instanceof ByteBuffer) {
+            return 16 + ((ByteBuffer) o).capacity();
+        } else if (o instanceof String) {
+            return 40 + 2L * ((String) o).length();
+        } else if (o instanceof Image) {
+            Image i = (Image) o;
+            return 64 + (long) i.width() * i.height() * Math.max(1, i.channels());
+        } else if (o instanceof Data) {
+            return weigh((Data) o);
+        } else if (o instanceof List) {
+            long w = 24;
+            for (Object e : (List<?>) o) {
+                w += 8 + weighValue(e);
+            }
+            return w;
+        }
+        return 16;
+    }
+
+    protected static class CacheEntry {
+        protected final Data data;
+        protected final ByteBuffer serialized;
+        protected final long weight;
+        protected final long expiresAtNanos;
+
+        protected CacheEntry(Data data, ByteBuffer serialized, long weight, long expiresAtNanos) {
+            this.data = data;
+            this.serialized = serialized;
+            this.weight = weight;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        protected boolean expired(long nowNanos) {
+            return expiresAtNanos != Long.MAX_VALUE && nowNanos - expiresAtNanos >= 0;
+        }
+    }
+
+    /**
+     * A 128-bit content hash of (part of) an input Data instance
+     */
+    @EqualsAndHashCode
+    public static final class CacheKey {
+        private final long h1;
+        private final long h2;
+
+        private CacheKey(long h1, long h2) {
+            this.h1 = h1;
+            this.h2 = h2;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x%016x", h1, h2);
+        }
+    }
+
+    /**
+     * Incremental MurmurHash3 (x64, 128-bit). Input is consumed in 16 byte blocks, with any remainder buffered until
+     * more input arrives, so that the hash only depends on the concatenated input and not on how it was split up.
+     */
+    static final class Murmur3Hasher {
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private final ByteBuffer pending = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer scratch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        private long h1;
+        private long h2;
+        private long length;
+
+        void putInt(int i) {
+            ((Buffer) scratch).clear();
+            scratch.putInt(i);
+            ((Buffer) scratch).flip();
+            putBuffer(scratch);
+        }
+
+        void putLong(long l) {
+            ((Buffer) scratch).clear();
+            scratch.putLong(l);
+            ((Buffer) scratch).flip();
+            putBuffer(scratch);
+        }
+
+        void putBytes(byte[] bytes) {
+            putInt(bytes.length);
+            putBuffer(ByteBuffer.wrap(bytes));
+        }
+
+        void putBuffer(ByteBuffer buffer) {
+            ByteBuffer bb = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            length += bb.remaining();
+
+            //Top up any buffered partial block first
+            while (pending.position() > 0 && bb.hasRemaining()) {
+                pending.put(bb.get());
+                flushIfFull();
+            }
+
+            while (bb.remaining() >= 16) {
+                mix(bb.getLong(), bb.getLong());
+            }
+
+            while (bb.hasRemaining()) {
+                pending.put(bb.get());
+            }
+        }
+
+        CacheKey hash() {
+            int rem = pending.position();
+            if (rem > 0) {
+                long k1 = 0;
+                long k2 = 0;
+                for (int i = rem - 1; i >= 8; i--) {
+                    k2 ^= (pending.get(i) & 0xFFL) << ((i - 8) * 8);
+                }
+                for (int i = Math.min(rem, 8) - 1; i >= 0; i--) {
+                    k1 ^= (pending.get(i) & 0xFFL) << (i * 8);
+                }
+                h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+                h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+            }
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new CacheKey(h1, h2);
+        }
+
+        private void flushIfFull() {
+            if (!pending.hasRemaining()) {
+                mix(pending.getLong(0), pending.getLong(8));
+                ((Buffer) pending).clear();
+            }
+        }
+
+        private void mix(long k1, long k2) {
+            h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9a382cfa5ecL;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.pipeline.impl.pipeline;
+
+import ai.konduit.serving.pipeline.impl.pipeline.graph.*;
+import org.nd4j.common.base.Preconditions;
+
+import java.util.*;
+
+/**
+ * A {@link GraphPipeline} compiled for execution by {@link GraphPipelineExecutor}.<br>
+ * Steps are assigned integer indices (in {@link GraphPipeline#steps()} iteration order), and the graph structure is
+ * stored as index arrays: the inputs of each step, the steps each step feeds into, and the number of inputs that
+ * must be available before each step can be executed. Executing a request then only needs a copy of the pending
+ * counters plus an array of step outputs, indexed by step.<br>
+ * Instances are immutable and can be shared between threads.
+ */
+class GraphExecutionPlan {
+
+    static final byte UNKNOWN = -1;
+    static final byte INPUT = 0;
+    static final byte PIPELINE_STEP = 1;
+    static final byte MERGE = 2;
+    static final byte SWITCH = 3;
+    static final byte SWITCH_OUTPUT = 4;
+    static final byte ANY = 5;
+
+    final String[] names;
+    final GraphStep[] steps;
+    final byte[] kinds;
+    final int[][] inputs;           //Step indices of the inputs of each step, in GraphStep.inputs() order
+    final int[][] consumers;        //Step indices of the steps that each step is an input for, in increasing order
+    final int[] pending;            //Number of input arrivals required before each step can be executed
+    final int[] switchOutputNum;    //For SWITCH_OUTPUT steps: the SwitchStep output number. -1 otherwise
+    final int[][] anyExclusive;     //For ANY steps: steps whose outputs are only needed via that AnyStep. null otherwise
+    final int inputIdx;
+    final int outputIdx;
+
+    GraphExecutionPlan(GraphPipeline pipeline) {
+        Map<String, GraphStep> m = pipeline.steps();
+        int n = m.size();
+        names = new String[n];
+        steps = new GraphStep[n];
+        kinds = new byte[n];
+        inputs = new int[n][];
+        pending = new int[n];
+        switchOutputNum = new int[n];
+
+        Map<String, Integer> idxs = new HashMap<>();
+        int i = 0;
+        for (Map.Entry<String, GraphStep> e : m.entrySet()) {
+            names[i] = e.getKey();
+            steps[i] = e.getValue();
+            idxs.put(e.getKey(), i++);
+        }
+
+        Integer in = idxs.get(GraphPipeline.INPUT_KEY);
+        Preconditions.checkState(in != null, "Graph pipeline does not have an input step with name \"%s\"", GraphPipeline.INPUT_KEY);
+        inputIdx = in;
+        Integer out = idxs.get(pipeline.outputStep());
+        Preconditions.checkState(out != null, "Graph pipeline output step \"%s\" does not exist in the graph steps: %s", pipeline.outputStep(), m.keySet());
+        outputIdx = out;
+
+        List<List<Integer>> consumerLists = new ArrayList<>(n);
+        for (int j = 0; j < n; j++) {
+            consumerLists.add(new ArrayList<>());
+        }
+
+        for (int j = 0; j < n; j++) {
+            GraphStep gs = steps[j];
+            kinds[j] = kindOf(gs);
+            switchOutputNum[j] = gs instanceof SwitchOutput ? ((SwitchOutput) gs).outputNum() : -1;
+
+            List<String> stepInputs = gs.inputs();
+            int numInputs = stepInputs == null ? 0 : stepInputs.size();
+            if (kinds[j] == PIPELINE_STEP) {
+                Preconditions.checkState(numInputs == 1, "PipelineSteps should only have 1 input: got inputs %s for step \"%s\"", stepInputs, names[j]);
+            }
+
+            inputs[j] = new int[numInputs];
+            for (int k = 0; k < numInputs; k++) {
+                Integer inIdx = idxs.get(stepInputs.get(k));
+                Preconditions.checkState(inIdx != null, "Step \"%s\" has input \"%s\" which does not exist in the graph", names[j], stepInputs.get(k));
+                inputs[j][k] = inIdx;
+                consumerLists.get(inIdx).add(j);
+            }
+
+            //AnyStep can be executed once any one of its inputs is available; all other steps need all inputs
+            pending[j] = kinds[j] == ANY ? Math.min(1, numInputs) : numInputs;
+        }
+
+        consumers = new int[n][];
+        for (int j = 0; j < n; j++) {
+            List<Integer> l = consumerLists.get(j);
+            consumers[j] = new int[l.size()];
+            for (int k = 0; k < consumers[j].length; k++) {
+                consumers[j][k] = l.get(k);
+            }
+        }
+
+        anyExclusive = new int[n][];
+        for (int j = 0; j < n; j++) {
+            if (kinds[j] == ANY)
+                anyExclusive[j] = exclusiveAncestors(j);
+        }
+    }
+
+    int size() {
+        return steps.length;
+    }
+
+    /**
+     * Mark the output of the specified step as available: decrement the pending counters of the steps it is an input
+     * for, and add any steps that became ready to the queue.
+     *
+     * @param idx       Index of the step that was just executed
+     * @param switchOut Selected output, if the step is a SwitchStep. Only the matching SwitchOutput becomes ready
+     * @param pending   Pending counters for the current execution
+     * @param queue     Ready queue for the current execution
+     * @param tail      Current tail of the ready queue
+     * @return The new tail of the ready queue
+     */
+    int markAvailable(int idx, int switchOut, int[] pending, int[] queue, int tail) {
+        boolean isSwitch = kinds[idx] == SWITCH;
+        for (int c : consumers[idx]) {
+            if (isSwitch && kinds[c] == SWITCH_OUTPUT && switchOutputNum[c] != switchOut)
+                continue;
+            //Steps become ready exactly once: AnyStep counters go negative on subsequent input arrivals
+            if (--pending[c] == 0)
+                queue[tail++] = c;
+        }
+        return tail;
+    }
+
+    /**
+     * Steps upstream of the specified AnyStep from which the output step can only be reached through that AnyStep.
+     * Once the AnyStep has been executed, these steps no longer need to be executed for the current request.
+     */
+    private int[] exclusiveAncestors(int any) {
+        boolean[] reachesOutput = reverseReachable(outputIdx, any);
+        boolean[] ancestors = reverseReachable(any, -1);
+        int count = 0;
+        int[] out = new int[ancestors.length];
+        for (int j = 0; j < ancestors.length; j++) {
+            if (ancestors[j] && !reachesOutput[j] && j != any && j != inputIdx)
+                out[count++] = j;
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    /**
+     * Steps from which the specified step can be reached, not passing through step {@code excluded}
+     */
+    private boolean[] reverseReachable(int from, int excluded) {
+        boolean[] seen = new boolean[steps.length];
+        if (from == excluded)
+            return seen;
+        int[] stack = new int[steps.length];
+        int top = 0;
+        seen[from] = true;
+        stack[top++] = from;
+        while (top > 0) {
+            int v = stack[--top];
+            for (int u : inputs[v]) {
+                if (!seen[u] && u != excluded) {
+                    seen[u] = true;
+                    stack[top++] = u;
+                }
+            }
+        }
+        return seen;
+    }
+
+    private static byte kindOf(GraphStep gs) {
+        if (gs instanceof Input)
+            return INPUT;
+        if (gs instanceof MergeStep)
+            return MERGE;
+        if (gs instanceof SwitchStep)
+            return SWITCH;
+        if (gs instanceof AnyStep)
+            return ANY;
+        if (gs instanceof SwitchOutput)
+            return SWITCH_OUTPUT;
+        if (gs instanceof PipelineGraphStep)
+            return PIPELINE_STEP;
+        return UNKNOWN;
+    }
+}
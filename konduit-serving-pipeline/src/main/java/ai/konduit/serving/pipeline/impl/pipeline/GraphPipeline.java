@@ -64,12 +64,23 @@ public class GraphPipeline implements Pipeline {
     @EqualsAndHashCode.Exclude
     private String id;
 
+    @Schema(description = "Number of threads used to execute independent branches of the graph in parallel. Null, 0 or 1 " +
+            "means the graph is executed sequentially on the calling thread. -1 means the JVM-wide common ForkJoinPool " +
+            "is used; values > 1 create a dedicated ForkJoinPool with the specified parallelism for the executor.")
+    private Integer parallelism;
+
+    public GraphPipeline(Map<String, GraphStep> steps, String outputStep, String id){
+        this(steps, outputStep, id, null);
+    }
+
     public GraphPipeline(@JsonProperty("steps") Map<String, GraphStep> steps,
                          @JsonProperty("outputStep") String outputStep,
-                         @JsonProperty("id") String id){
+                         @JsonProperty("id") String id,
+                         @JsonProperty("parallelism") Integer parallelism){
         this.steps = steps;
         this.outputStep = outputStep;
         this.id = id;
+        this.parallelism = parallelism;
     }
 
     @Override
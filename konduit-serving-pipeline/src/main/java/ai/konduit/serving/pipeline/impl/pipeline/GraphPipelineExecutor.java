@@ -25,43 +25,59 @@ import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
 import ai.konduit.serving.pipeline.api.step.PipelineStep;
 import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
 import ai.konduit.serving.pipeline.impl.pipeline.graph.*;
-import ai.konduit.serving.pipeline.impl.pipeline.graph.SwitchOutput;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.nd4j.common.base.Preconditions;
 import org.slf4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
 
 /**
- * An executer for {@link GraphPipeline} instances
+ * An executer for {@link GraphPipeline} instances<br>
+ * By default, steps are executed one at a time on the calling thread. When {@link GraphPipeline#parallelism()} is set
+ * (or an {@link Executor} is provided), steps whose inputs are available are dispatched to the executor, so that
+ * independent branches of the graph run concurrently. MergeSteps wait for all of their inputs; AnyStep is executed
+ * as soon as its first input is available, after which any steps only needed by the other AnyStep inputs are skipped.
+ * Execution of a request stops as soon as the output step has been executed.
  *
  * @author Alex Black
  */
 @Slf4j
-@AllArgsConstructor
 public class GraphPipelineExecutor extends BasePipelineExecutor {
 
     private final GraphPipeline pipeline;
+    private final GraphExecutionPlan plan;
     private Map<String,PipelineStepRunner> runners;
-    private Map<String,List<String>> inputsFor;     //Key: a step. Value: The steps that this is an input for: i.e., key -> X exists
+    private PipelineStepRunner[] stepRunners;       //Indexed as per the plan - null for steps without a PipelineStep
     private ProfilerConfig profilerConfig;
+    private final Executor executor;                //Null for sequential execution
+    private final boolean ownsExecutor;             //If true: the executor is shut down when this executor is closed
 
     public GraphPipelineExecutor(GraphPipeline pipeline){
+        this(pipeline, executorFor(pipeline.parallelism()), pipeline.parallelism() != null && pipeline.parallelism() > 1);
+    }
+
+    /**
+     * @param pipeline Pipeline to execute
+     * @param executor Executor used to execute the graph steps in parallel. May be null for sequential execution.
+     *                 The executor is not shut down when this PipelineExecutor is closed
+     */
+    public GraphPipelineExecutor(GraphPipeline pipeline, Executor executor){
+        this(pipeline, executor, false);
+    }
+
+    private GraphPipelineExecutor(GraphPipeline pipeline, Executor executor, boolean ownsExecutor){
         this.pipeline = pipeline;
+        this.plan = new GraphExecutionPlan(pipeline);
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
 
         Map<String, GraphStep> steps = pipeline.steps();
 
-        inputsFor = new HashMap<>();
-        for(Map.Entry<String, GraphStep> e : steps.entrySet()){
-            GraphStep g = e.getValue();
-            List<String> inputs = g.inputs();
-            for(String s : inputs){
-                List<String> l = inputsFor.computeIfAbsent(s, x -> new ArrayList<>());
-                l.add(e.getKey());
-            }
-        }
-
         //Initialize runners:
         runners = new HashMap<>();
         for(Map.Entry<String, GraphStep> e : steps.entrySet()){
@@ -76,6 +92,20 @@ public class GraphPipelineExecutor extends BasePipelineExecutor {
                 runners.put(e.getKey(), null);
             }
         }
+
+        stepRunners = new PipelineStepRunner[plan.size()];
+        for( int i = 0; i < stepRunners.length; i++ ){
+            stepRunners[i] = runners.get(plan.names[i]);
+        }
+    }
+
+    private static Executor executorFor(Integer parallelism){
+        if(parallelism == null || parallelism == 0 || parallelism == 1)
+            return null;
+        if(parallelism == -1)
+            return ForkJoinPool.commonPool();
+        Preconditions.checkState(parallelism > 1, "Invalid GraphPipeline parallelism: must be -1, 0 or positive, got %s", parallelism);
+        return new ForkJoinPool(parallelism);
     }
 
     @Override
@@ -90,141 +120,235 @@ public class GraphPipelineExecutor extends BasePipelineExecutor {
 
     @Override
     public Data exec(Data in) {
+        GraphExecutionPlan p = plan;
+        int n = p.size();
+        if(n == 1 || p.outputIdx == p.inputIdx){
+            //No steps other than input - no-op
+            return in;
+        }
 
-        Queue<String> canExec = new LinkedList<>();
-        Set<String> canExecSet = new HashSet<>();
-
-        Map<String,Data> stepOutputData = new HashMap<>();
-        stepOutputData.put(GraphPipeline.INPUT_KEY, in);
+        if(executor != null){
+            return new ParallelExecution(in).get();
+        }
 
-        Map<String,GraphStep> m = pipeline.steps();
+        //Per-request state: step outputs, pending input counters and the ready queue. Each step is queued at most once
+        Data[] stepOutputData = new Data[n];
+        int[] pending = p.pending.clone();
+        int[] canExec = new int[n];
+        boolean[] skip = new boolean[n];        //Steps whose output is no longer required
+        int[] switchOut = new int[1];
+        IntFunction<Data> available = i -> stepOutputData[i];
+        int head = 0;
+        int tail;
+
+        stepOutputData[p.inputIdx] = in;
+        tail = p.markAvailable(p.inputIdx, -1, pending, canExec, 0);
+
+        while(head < tail){
+            int next = canExec[head++];
+            if(skip[next]){
+                continue;
+            }
+            Data stepOut = execStep(next, available, switchOut);
 
-        for(Map.Entry<String, GraphStep> e : m.entrySet()){
-            List<String> inputs = e.getValue().inputs();
-            if(inputs != null && inputs.size() == 1 && inputs.get(0).equals(GraphPipeline.INPUT_KEY)){
-                canExec.add(e.getKey());
-                canExecSet.add(e.getKey());
+            if(next == p.outputIdx){
+                return stepOut;
             }
-        }
 
-        Data out = null;
+            if(p.kinds[next] == GraphExecutionPlan.ANY){
+                //Only the first input of an AnyStep is used: don't execute steps only required by the others
+                for(int s : p.anyExclusive[next]){
+                    skip[s] = true;
+                }
+            }
 
-        if(m.size() == 1){
-            //No steps other than input - no-op
-            out = in;
+            stepOutputData[next] = stepOut;
+            tail = p.markAvailable(next, switchOut[0], pending, canExec, tail);
         }
 
-        while(!canExec.isEmpty()){
-            String next = canExec.remove();
-
-            log.trace("Executing step: {}", next);
-
-            canExecSet.remove(next);
-            GraphStep gs = m.get(next);
-            List<String> inputs = gs.inputs();
+        throw new IllegalStateException("Could not get output");
+    }
 
-            int switchOut = -1;
-            Data stepOut = null;
-            if(gs instanceof MergeStep) {
+    /**
+     * Execute a single step of the graph
+     *
+     * @param idx       Index of the step to execute
+     * @param available Output of the previously executed steps, by index. Returns null for steps not (yet) executed
+     * @param switchOut Used to return the selected output for SwitchSteps; -1 for other steps
+     * @return Output of the step
+     */
+    private Data execStep(int idx, IntFunction<Data> available, int[] switchOut){
+        GraphExecutionPlan p = plan;
+        String name = p.names[idx];
+        log.trace("Executing step: {}", name);
+
+        GraphStep gs = p.steps[idx];
+        int[] inputs = p.inputs[idx];
+
+        switchOut[0] = -1;
+        Data stepOut = null;
+        switch (p.kinds[idx]){
+            case GraphExecutionPlan.MERGE:
                 stepOut = Data.empty();
-                for (String s : inputs) {
-                    Data d = stepOutputData.get(s);
-                    stepOut.merge(false, d);
+                for (int i : inputs) {
+                    stepOut.merge(false, available.apply(i));
                 }
-            } else if(gs instanceof SwitchStep) {
-                SwitchStep s = (SwitchStep)gs;
-                Data inData = stepOutputData.get(inputs.get(0));
-                switchOut = s.switchFn().selectOutput(inData);
-                stepOut = inData;
-            } else if(gs instanceof AnyStep) {
-                List<String> stepInputs = gs.inputs();
-                for (String s : stepInputs) {
-                    if (stepOutputData.containsKey(s)) {
-                        stepOut = stepOutputData.get(s);
+                break;
+            case GraphExecutionPlan.SWITCH:
+                Data switchIn = available.apply(inputs[0]);
+                switchOut[0] = ((SwitchStep)gs).switchFn().selectOutput(switchIn);
+                stepOut = switchIn;
+                break;
+            case GraphExecutionPlan.ANY:
+                for (int i : inputs) {
+                    Data d = available.apply(i);
+                    if (d != null) {
+                        stepOut = d;
                         break;
                     }
                 }
-            } else if(gs instanceof SwitchOutput){
-                stepOut = stepOutputData.get(gs.input());
-            } else if(gs instanceof PipelineGraphStep){
-                Preconditions.checkState(inputs.size() == 1, "PipelineSteps should only have 1 input: got inputs %s", inputs);;
-                if (inputs.size() != 1 && !GraphPipeline.INPUT_KEY.equals(next))
-                    throw new IllegalStateException("Execution of steps with numInputs != 1 is not supported: " + next + ".numInputs=" + inputs.size());
-
-                PipelineStepRunner exec = runners.get(next);
-                Data inData = stepOutputData.get(inputs.get(0));
-                Preconditions.checkState(inData != null, "Input data is null for step %s - input %s", next, 0);
+                break;
+            case GraphExecutionPlan.SWITCH_OUTPUT:
+                stepOut = available.apply(inputs[0]);
+                break;
+            case GraphExecutionPlan.PIPELINE_STEP:
+                PipelineStepRunner exec = stepRunners[idx];
+                Data inData = available.apply(inputs[0]);
+                Preconditions.checkState(inData != null, "Input data is null for step %s - input %s", name, 0);
                 try {
                     stepOut = exec.exec(null, inData);
                 } catch (Throwable t){
-                    throw new RuntimeException("Execution failed in pipeline step \"" + next + "\" of type " + exec.getPipelineStep().getClass().getSimpleName(), t);
+                    throw new RuntimeException("Execution failed in pipeline step \"" + name + "\" of type " + exec.getPipelineStep().getClass().getSimpleName(), t);
                 }
-            } else {
+                break;
+            default:
                 throw new UnsupportedOperationException("Execution support not yet implemented: " + gs);
-            }
+        }
 
-            if(stepOut == null)
-                throw new IllegalStateException("Got null output from step \"" + next + "\"");
+        if(stepOut == null)
+            throw new IllegalStateException("Got null output from step \"" + name + "\"");
 
-            if(next.equals(pipeline.outputStep())){
-                out = stepOut;
-                break;
+        return stepOut;
+    }
+
+    /**
+     * State for a single execution of the graph in parallel mode.<br>
+     * Each step is executed exactly once, by the thread that made its last required input available: of the steps
+     * that become ready after a step completes, the first is executed by the current thread and the others are
+     * submitted to the executor. Pending counters are atomic, so the thread that decrements a counter to zero sees the
+     * outputs of all of the steps that were executed before it.
+     */
+    private class ParallelExecution {
+        private final GraphExecutionPlan p = plan;
+        private final AtomicReferenceArray<Data> stepOutputData;
+        private final AtomicIntegerArray pending;
+        private final AtomicIntegerArray skip;                      //1 for steps whose output is no longer required
+        private final AtomicInteger outstanding = new AtomicInteger();  //Steps that are ready but not yet finished
+        private final CompletableFuture<Data> result = new CompletableFuture<>();
+        private final IntFunction<Data> available;
+
+        private ParallelExecution(Data in){
+            int n = p.size();
+            stepOutputData = new AtomicReferenceArray<>(n);
+            pending = new AtomicIntegerArray(p.pending);
+            skip = new AtomicIntegerArray(n);
+            available = stepOutputData::get;
+            stepOutputData.set(p.inputIdx, in);
+        }
+
+        private Data get(){
+            outstanding.incrementAndGet();
+            int first = markAvailable(p.inputIdx, -1);
+            finished();
+            if(first >= 0)
+                run(first);
+
+            try {
+                return result.join();
+            } catch (CompletionException e){
+                Throwable t = e.getCause();
+                if(t instanceof RuntimeException)
+                    throw (RuntimeException) t;
+                if(t instanceof Error)
+                    throw (Error) t;
+                throw new RuntimeException(t);
             }
+        }
 
-            stepOutputData.put(next, stepOut);
+        private void run(int idx){
+            int[] switchOut = new int[1];
+            while(idx >= 0){
+                int next = -1;
+                if(!result.isDone() && skip.get(idx) == 0) {
+                    try {
+                        Data stepOut = execStep(idx, available, switchOut);
+                        if (idx == p.outputIdx) {
+                            result.complete(stepOut);
+                        } else {
+                            if (p.kinds[idx] == GraphExecutionPlan.ANY) {
+                                //Only the first input of an AnyStep is used: don't execute steps only required by the others
+                                for (int s : p.anyExclusive[idx]) {
+                                    skip.set(s, 1);
+                                }
+                            }
+                            stepOutputData.set(idx, stepOut);
+                            next = markAvailable(idx, switchOut[0]);
+                        }
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
+                    }
+                }
+                finished();
+                idx = next;
+            }
+        }
 
-            //Check what can now be executed
-            //TODO This should be optimized
-            Map<String, GraphStep> steps = pipeline.steps();
-            for(String s : steps.keySet()){
-                if(canExecSet.contains(s))
+        /**
+         * Decrement the pending counters of the consumers of the specified step. All but one of the steps that become
+         * ready are submitted to the executor
+         * @return The remaining step that became ready, to be executed by the current thread, or -1 if none
+         */
+        private int markAvailable(int idx, int switchOut){
+            boolean isSwitch = p.kinds[idx] == GraphExecutionPlan.SWITCH;
+            int inline = -1;
+            for(int c : p.consumers[idx]){
+                if (isSwitch && p.kinds[c] == GraphExecutionPlan.SWITCH_OUTPUT && p.switchOutputNum[c] != switchOut)
                     continue;
-                if(stepOutputData.containsKey(s))
+                if (pending.decrementAndGet(c) != 0)
                     continue;
 
-                GraphStep currStep = steps.get(s);
-                List<String> stepInputs = currStep.inputs();
-                boolean allSeen;
-                if(currStep instanceof SwitchOutput) {
-                    allSeen = false;
-                    SwitchOutput so = (SwitchOutput) currStep;
-                    String switchIn = so.input();
-                    if (switchIn.equals(next) && so.outputNum() == switchOut) {
-                        //Just executed the switch this iteration
-                        allSeen = true;
-                    }
-                } else if(currStep instanceof AnyStep ){
-                    //Can execute the Any step if at least one of the inputs are available
-                    allSeen = false;
-                    for (String inName : stepInputs) {
-                        if (stepOutputData.containsKey(inName)) {
-                            allSeen = true;
-                            break;
-                        }
-                    }
+                outstanding.incrementAndGet();
+                if(inline < 0){
+                    inline = c;
                 } else {
-                    //StandardPipelineStep, MergeStep
-                    allSeen = true;
-                    for (String inName : stepInputs) {
-                        if (!stepOutputData.containsKey(inName)) {
-                            allSeen = false;
-                            break;
-                        }
-                    }
+                    submit(c);
                 }
+            }
+            return inline;
+        }
 
-                if(allSeen) {
-                    canExec.add(s);
-                    canExecSet.add(s);
-                    //log.info("Can now exec: {}", s);
-                }
+        private void submit(int idx){
+            try {
+                executor.execute(() -> run(idx));
+            } catch (RejectedExecutionException e){
+                result.completeExceptionally(e);
+                finished();
             }
         }
 
-        if(out == null)
-            throw new IllegalStateException("Could not get output");
+        private void finished(){
+            if(outstanding.decrementAndGet() == 0 && !result.isDone()){
+                result.completeExceptionally(new IllegalStateException("Could not get output"));
+            }
+        }
+    }
 
-        return out;
+    @Override
+    public void close() {
+        super.close();
+        if(ownsExecutor){
+            ((ExecutorService) executor).shutdown();
+        }
     }
 
     @Override
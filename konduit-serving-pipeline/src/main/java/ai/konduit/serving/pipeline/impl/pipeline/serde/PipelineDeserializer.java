@@ -29,6 +29,7 @@ import org.nd4j.shade.jackson.core.JsonProcessingException;
 import org.nd4j.shade.jackson.core.TreeNode;
 import org.nd4j.shade.jackson.databind.DeserializationContext;
 import org.nd4j.shade.jackson.databind.deser.std.StdDeserializer;
+import org.nd4j.shade.jackson.databind.node.NumericNode;
 import org.nd4j.shade.jackson.databind.node.TextNode;
 
 import java.io.IOException;
@@ -76,7 +77,12 @@ public class PipelineDeserializer extends StdDeserializer<Pipeline> {
 
             String outputStep = ((TextNode)tn.get("outputStep")).asText();
 
-            p = new GraphPipeline(map, outputStep, id);
+            Integer parallelism = null;
+            if(tn.get("parallelism") instanceof NumericNode){
+                parallelism = ((NumericNode)tn.get("parallelism")).asInt();
+            }
+
+            p = new GraphPipeline(map, outputStep, id, parallelism);
         } else {
             throw new JsonParseException(jp, "Unable to deserialize Pipeline: Invalid JSON/YAML? Pipeline is neither a SequencePipeline or a GraphPipeline");
         }
@@ -23,13 +23,16 @@ import ai.konduit.serving.pipeline.impl.data.box.BBoxCHW;
 import ai.konduit.serving.pipeline.impl.data.image.Png;
 import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
 import ai.konduit.serving.pipeline.impl.format.JavaNDArrayFormats;
+import org.nd4j.shade.jackson.core.Base64Variants;
 import org.nd4j.shade.jackson.core.JsonGenerator;
 import org.nd4j.shade.jackson.databind.JsonSerializer;
-import org.nd4j.shade.jackson.databind.ObjectMapper;
 import org.nd4j.shade.jackson.databind.SerializerProvider;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
 
@@ -126,39 +129,56 @@ public class DataJsonSerializer extends JsonSerializer<Data> {
     }
 
     private void writeNestedData(JsonGenerator jg, Data data) throws IOException {
-        ObjectMapper om = (ObjectMapper) jg.getCodec();
-        String dataStr = om.writeValueAsString(data);
-        jg.writeRawValue(dataStr);
+        //Written in place, rather than to a separate String first
+        serialize(data, jg, null);
     }
 
     private void writeBytes(JsonGenerator jg, ByteBuffer bytes) throws IOException {
         //TODO add option to do raw bytes array - [0, 1, 2, ...] style
         jg.writeStartObject();
         jg.writeFieldName(Data.RESERVED_KEY_BYTEBUFFER_BASE64);
-        if(bytes.hasArray()) {
-            String base64 = Base64.getEncoder().encodeToString(bytes.array());
-            jg.writeString(base64);
-            jg.writeEndObject();
-        }
-        else {
-            byte[] bytesArr = new byte[bytes.capacity()];
-            bytes.get(bytesArr.length);
-            String base64 = Base64.getEncoder().encodeToString(bytesArr);
-            jg.writeString(base64);
-            jg.writeEndObject();
-        }
-
+        writeBase64(jg, bytes);
+        jg.writeEndObject();
     }
 
     private void writeBytes(JsonGenerator jg, byte[] bytes) throws IOException {
         //TODO add option to do raw bytes array - [0, 1, 2, ...] style
         jg.writeStartObject();
         jg.writeFieldName(Data.RESERVED_KEY_BYTES_BASE64);
-        String base64 = Base64.getEncoder().encodeToString(bytes);
-        jg.writeString(base64);
+        writeBase64(jg, bytes, 0, bytes.length);
         jg.writeEndObject();
     }
 
+    /**
+     * Write the content of the buffer (from position 0 to its limit) as a Base64 string. For JSON, the encoding is done
+     * by the generator in chunks, straight into its output buffer: no intermediate byte[] or String copies of the
+     * content are made. MIME_NO_LINEFEEDS is the same encoding as {@link Base64#getEncoder()}
+     */
+    private static void writeBase64(JsonGenerator jg, ByteBuffer buffer) throws IOException {
+        ByteBuffer bb = buffer.duplicate();
+        ((Buffer) bb).rewind();
+        if (bb.hasArray()) {
+            writeBase64(jg, bb.array(), bb.arrayOffset(), bb.remaining());
+        } else if (jg.canWriteBinaryNatively()) {
+            byte[] bytes = new byte[bb.remaining()];
+            bb.get(bytes);
+            writeBase64(jg, bytes, 0, bytes.length);
+        } else {
+            //Direct or read-only buffers
+            jg.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, new ByteBufferInputStream(bb), bb.remaining());
+        }
+    }
+
+    private static void writeBase64(JsonGenerator jg, byte[] bytes, int offset, int length) throws IOException {
+        if (jg.canWriteBinaryNatively()) {
+            //Formats such as YAML would write a native binary value instead of a Base64 string
+            jg.writeString(Base64.getEncoder().encodeToString(offset == 0 && length == bytes.length ?
+                    bytes : Arrays.copyOfRange(bytes, offset, offset + length)));
+        } else {
+            jg.writeBinary(Base64Variants.MIME_NO_LINEFEEDS, bytes, offset, length);
+        }
+    }
+
     private void writeDouble(JsonGenerator jg, double d) throws IOException {
         jg.writeNumber(d);
     }
@@ -174,8 +194,7 @@ public class DataJsonSerializer extends JsonSerializer<Data> {
         jg.writeFieldName(Data.RESERVED_KEY_IMAGE_FORMAT);
         jg.writeString("PNG");      //TODO No magic constant
         jg.writeFieldName(Data.RESERVED_KEY_IMAGE_DATA);
-        String base64 = Base64.getEncoder().encodeToString(imgData);
-        jg.writeString(base64);
+        writeBase64(jg, imgData, 0, imgData.length);
         jg.writeEndObject();
     }
 
@@ -190,22 +209,8 @@ public class DataJsonSerializer extends JsonSerializer<Data> {
             jg.writeFieldName(Data.RESERVED_KEY_NDARRAY_SHAPE);
             jg.writeArray(shape, 0, shape.length);
 
-            ByteBuffer bb = sn.getBuffer();
-            bb.rewind();
-            byte[] array;
-            if (bb.hasArray()) {
-                array = bb.array();
-            } else {
-                int size = bb.remaining();
-                array = new byte[size];
-                for (int i = 0; i < size; i++) {
-                    array[i] = bb.get(i);
-                }
-            }
-
-            String base64 = Base64.getEncoder().encodeToString(array);
             jg.writeFieldName(Data.RESERVED_KEY_NDARRAY_DATA_ARRAY);
-            jg.writeString(base64);
+            writeBase64(jg, sn.getBuffer());
             jg.writeEndObject();
 
     }
@@ -347,4 +352,38 @@ public class DataJsonSerializer extends JsonSerializer<Data> {
 
         jg.writeEndArray();
     }
+
+    /**
+     * Reads the remaining content of a ByteBuffer, in bulk
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer bb;
+
+        private ByteBufferInputStream(ByteBuffer bb) {
+            this.bb = bb;
+        }
+
+        @Override
+        public int read() {
+            return bb.hasRemaining() ? bb.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!bb.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, bb.remaining());
+            bb.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return bb.remaining();
+        }
+    }
 }
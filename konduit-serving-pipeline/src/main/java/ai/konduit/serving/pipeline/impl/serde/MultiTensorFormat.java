@@ -0,0 +1,122 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.pipeline.impl.serde;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.ValueType;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import lombok.NonNull;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A binary format for multiple named arrays, without the {@link Data} envelope. All integers are little endian:
+ * <pre>
+ * "KTNS" (4 bytes), number of arrays (int32)
+ * For each array: name length in bytes (int32), name (UTF-8), .npy content length in bytes (int64), .npy content
+ * </pre>
+ * Each array is stored in the .npy format - see {@link NpyFormat} for the supported arrays. As with {@link NpyFormat},
+ * reading doesn't copy the array data and writing produces views of the array data, for gathering writes.
+ */
+public class MultiTensorFormat {
+
+    public static final String CONTENT_TYPE = "application/x-konduit-tensors";
+
+    private static final byte[] MAGIC = {'K', 'T', 'N', 'S'};
+
+    private MultiTensorFormat() {
+    }
+
+    /**
+     * Read the arrays from the buffer, starting at its current position. The position of the buffer is not changed.
+     *
+     * @return Data with one NDArray value per array. The array buffers are read-only views of the input buffer
+     */
+    public static Data read(@NonNull ByteBuffer in) {
+        ByteBuffer bb = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (bb.remaining() < MAGIC.length + 4)
+            throw new IllegalArgumentException("Invalid multi-tensor content: too short (" + bb.remaining() + " bytes)");
+        for (byte b : MAGIC) {
+            if (bb.get() != b)
+                throw new IllegalArgumentException("Invalid multi-tensor content: magic string not found");
+        }
+        int n = bb.getInt();
+        if (n < 0)
+            throw new IllegalArgumentException("Invalid multi-tensor content: number of arrays is " + n);
+
+        Data out = Data.empty();
+        for (int i = 0; i < n; i++) {
+            int nameLength = bb.getInt();
+            if (nameLength < 0 || nameLength > bb.remaining())
+                throw new IllegalArgumentException("Invalid multi-tensor content: invalid name length " + nameLength + " for array " + i);
+            byte[] nameBytes = new byte[nameLength];
+            bb.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            long npyLength = bb.getLong();
+            if (npyLength < 0 || npyLength > bb.remaining())
+                throw new IllegalArgumentException("Invalid multi-tensor content: invalid length " + npyLength + " for array \"" + name + "\"");
+            int end = bb.position() + (int) npyLength;
+            ByteBuffer npy = bb.duplicate();
+            ((Buffer) npy).limit(end);
+            out.put(name, NDArray.create(NpyFormat.read(npy)));
+            ((Buffer) bb).position(end);
+        }
+        return out;
+    }
+
+    /**
+     * Write all NDArray values of the data. Other values are not included.
+     *
+     * @return The content, as a list of buffers to be written in order. The array data buffers are views, not copies
+     */
+    public static List<ByteBuffer> write(@NonNull Data data) {
+        List<String> names = new ArrayList<>();
+        for (String key : data.keys()) {
+            if (data.type(key) == ValueType.NDARRAY)
+                names.add(key);
+        }
+
+        List<ByteBuffer> out = new ArrayList<>(1 + 2 * names.size());
+        ByteBuffer start = ByteBuffer.allocate(MAGIC.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+        start.put(MAGIC).putInt(names.size());
+        ((Buffer) start).flip();
+        out.add(start);
+
+        for (String name : names) {
+            SerializedNDArray arr = data.getNDArray(name).getAs(SerializedNDArray.class);
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            byte[] header = NpyFormat.header(arr);
+            ByteBuffer arrData = NpyFormat.data(arr);
+
+            ByteBuffer prefix = ByteBuffer.allocate(4 + nameBytes.length + 8 + header.length).order(ByteOrder.LITTLE_ENDIAN);
+            prefix.putInt(nameBytes.length).put(nameBytes).putLong((long) header.length + arrData.remaining()).put(header);
+            ((Buffer) prefix).flip();
+            out.add(prefix);
+            out.add(arrData);
+        }
+        return out;
+    }
+}
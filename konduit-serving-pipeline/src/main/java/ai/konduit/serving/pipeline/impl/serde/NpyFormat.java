@@ -0,0 +1,269 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.pipeline.impl.serde;
+
+import ai.konduit.serving.pipeline.api.data.NDArrayType;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import lombok.NonNull;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reading and writing of arrays in the NumPy .npy format (see numpy.lib.format).<br>
+ * Only little endian (or single byte), C order arrays of fixed width types are supported: these can be used without
+ * converting the array data. Reading doesn't copy the data: the returned arrays are read-only views of the input buffer.
+ * Likewise, writing produces only the (small) header: the array data can be written directly after it, from
+ * {@link #data(SerializedNDArray)}.
+ */
+public class NpyFormat {
+
+    public static final String CONTENT_TYPE = "application/x-npy";
+
+    private static final byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+    private static final int HEADER_ALIGNMENT = 64;
+
+    private static final Pattern DESCR = Pattern.compile("'descr'\\s*:\\s*'([^']*)'");
+    private static final Pattern FORTRAN_ORDER = Pattern.compile("'fortran_order'\\s*:\\s*(True|False)");
+    private static final Pattern SHAPE = Pattern.compile("'shape'\\s*:\\s*\\(([^)]*)\\)");
+
+    private NpyFormat() {
+    }
+
+    /**
+     * Read a single array from the buffer, starting at its current position. The position of the buffer is not changed.
+     *
+     * @param npy Buffer containing the .npy content
+     * @return The array. Its buffer is a read-only view of the input buffer
+     */
+    public static SerializedNDArray read(@NonNull ByteBuffer npy) {
+        ByteBuffer bb = npy.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (bb.remaining() < MAGIC.length + 4)
+            throw new IllegalArgumentException("Invalid .npy content: too short (" + bb.remaining() + " bytes)");
+        for (byte b : MAGIC) {
+            if (bb.get() != b)
+                throw new IllegalArgumentException("Invalid .npy content: magic string not found");
+        }
+        int major = bb.get();
+        bb.get();   //Minor version
+        long headerLength;
+        if (major == 1) {
+            headerLength = bb.getShort() & 0xFFFF;
+        } else if (major == 2 || major == 3) {
+            headerLength = bb.getInt() & 0xFFFFFFFFL;
+        } else {
+            throw new IllegalArgumentException("Unsupported .npy format version: " + major);
+        }
+        if (headerLength > bb.remaining())
+            throw new IllegalArgumentException("Invalid .npy content: header length " + headerLength + " exceeds content length");
+
+        byte[] headerBytes = new byte[(int) headerLength];
+        bb.get(headerBytes);
+        //Version 3 headers are UTF-8, older versions are latin1 - the relevant parts are ASCII in both cases
+        String header = new String(headerBytes, major == 3 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+
+        String descr = find(DESCR, header, "descr");
+        if ("True".equals(find(FORTRAN_ORDER, header, "fortran_order")))
+            throw new IllegalArgumentException("Fortran order .npy arrays are not supported");
+        long[] shape = parseShape(find(SHAPE, header, "shape"));
+        NDArrayType type = fromDescr(descr);
+
+        long length = type.width();
+        try {
+            for (long l : shape) {
+                length = Math.multiplyExact(length, l);
+            }
+        } catch (ArithmeticException e) {
+            length = Long.MAX_VALUE;
+        }
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid .npy content: array of shape " + Arrays.toString(shape) + " and type " +
+                    descr + " is too large");
+        if (length > bb.remaining())
+            throw new IllegalArgumentException("Invalid .npy content: expected " + length + " bytes of data for shape " +
+                    Arrays.toString(shape) + " and type " + descr + ", got " + bb.remaining());
+
+        ((Buffer) bb).limit(bb.position() + (int) length);
+        ByteBuffer data = bb.slice().asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        return new SerializedNDArray(type, shape, data);
+    }
+
+    /**
+     * @return The .npy content for the array: the header, followed by a view of the array data
+     */
+    public static List<ByteBuffer> write(@NonNull SerializedNDArray arr) {
+        return Arrays.asList(ByteBuffer.wrap(header(arr)), data(arr));
+    }
+
+    /**
+     * @return The .npy (version 1.0) header for the array. The header is padded so that the array data (which follows it)
+     * is 64 byte aligned
+     */
+    public static byte[] header(@NonNull SerializedNDArray arr) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{'descr': '").append(toDescr(arr.getType())).append("', 'fortran_order': False, 'shape': (");
+        long[] shape = arr.getShape();
+        for (int i = 0; i < shape.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(shape[i]);
+        }
+        if (shape.length == 1)
+            sb.append(",");
+        sb.append("), }");
+
+        //Magic, version (2 bytes), header length (2 bytes), header and terminating newline
+        int unpadded = MAGIC.length + 4 + sb.length() + 1;
+        int padding = (HEADER_ALIGNMENT - unpadded % HEADER_ALIGNMENT) % HEADER_ALIGNMENT;
+        for (int i = 0; i < padding; i++) {
+            sb.append(' ');
+        }
+        sb.append('\n');
+        if (sb.length() > 0xFFFF)
+            throw new IllegalArgumentException("Array shape is too large for a version 1.0 .npy header: " + Arrays.toString(shape));
+
+        ByteBuffer out = ByteBuffer.allocate(MAGIC.length + 4 + sb.length()).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(MAGIC);
+        out.put((byte) 1);
+        out.put((byte) 0);
+        out.putShort((short) sb.length());
+        out.put(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        return out.array();
+    }
+
+    /**
+     * @return A view of the array data to be written after {@link #header(SerializedNDArray)}. Not a copy
+     */
+    public static ByteBuffer data(@NonNull SerializedNDArray arr) {
+        ByteBuffer bb = arr.getBuffer().duplicate();
+        ((Buffer) bb).rewind();
+        return bb;
+    }
+
+    private static String find(Pattern p, String header, String name) {
+        Matcher m = p.matcher(header);
+        if (!m.find())
+            throw new IllegalArgumentException("Invalid .npy header: no '" + name + "' entry in header " + header.trim());
+        return m.group(1);
+    }
+
+    private static long[] parseShape(String shape) {
+        String[] split = shape.split(",");
+        int n = 0;
+        long[] out = new long[split.length];
+        for (String s : split) {
+            s = s.trim();
+            if (s.isEmpty())
+                continue;
+            //Python 2 versions of numpy may write long values as e.g. "3L"
+            if (s.endsWith("L"))
+                s = s.substring(0, s.length() - 1);
+            long l;
+            try {
+                l = Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid .npy header: invalid shape (" + shape + ")");
+            }
+            if (l < 0)
+                throw new IllegalArgumentException("Invalid .npy header: negative dimension in shape (" + shape + ")");
+            out[n++] = l;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static NDArrayType fromDescr(String descr) {
+        if (descr.length() < 3)
+            throw new IllegalArgumentException("Unsupported .npy data type: " + descr);
+        char order = descr.charAt(0);
+        String t = descr.substring(1);
+        boolean singleByte = t.equals("i1") || t.equals("u1") || t.equals("b1");
+        if (order == '>' && !singleByte)
+            throw new IllegalArgumentException("Big endian .npy arrays are not supported: " + descr);
+        if (order != '<' && order != '|' && order != '=' && !(order == '>' && singleByte))
+            throw new IllegalArgumentException("Unsupported .npy data type: " + descr);
+        if (order == '=' && ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN && !singleByte)
+            throw new IllegalArgumentException("Big endian .npy arrays are not supported: " + descr);
+
+        switch (t) {
+            case "f8":
+                return NDArrayType.DOUBLE;
+            case "f4":
+                return NDArrayType.FLOAT;
+            case "f2":
+                return NDArrayType.FLOAT16;
+            case "i8":
+                return NDArrayType.INT64;
+            case "i4":
+                return NDArrayType.INT32;
+            case "i2":
+                return NDArrayType.INT16;
+            case "i1":
+                return NDArrayType.INT8;
+            case "u8":
+                return NDArrayType.UINT64;
+            case "u4":
+                return NDArrayType.UINT32;
+            case "u2":
+                return NDArrayType.UINT16;
+            case "u1":
+                return NDArrayType.UINT8;
+            case "b1":
+                return NDArrayType.BOOL;
+            default:
+                throw new IllegalArgumentException("Unsupported .npy data type: " + descr);
+        }
+    }
+
+    private static String toDescr(NDArrayType type) {
+        switch (type) {
+            case DOUBLE:
+                return "<f8";
+            case FLOAT:
+                return "<f4";
+            case FLOAT16:
+                return "<f2";
+            case INT64:
+                return "<i8";
+            case INT32:
+                return "<i4";
+            case INT16:
+                return "<i2";
+            case INT8:
+                return "|i1";
+            case UINT64:
+                return "<u8";
+            case UINT32:
+                return "<u4";
+            case UINT16:
+                return "<u2";
+            case UINT8:
+                return "|u1";
+            case BOOL:
+                return "|b1";
+            default:
+                throw new IllegalArgumentException("Arrays of type " + type + " can't be written in .npy format");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.pipeline.impl.step.bbox.nms;
+
+import ai.konduit.serving.annotation.json.JsonName;
+import ai.konduit.serving.pipeline.api.step.PipelineStep;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+/**
+ * A pipeline step that applies non-max suppression to a {@code List<BoundingBox>}, removing boxes that overlap
+ * (by more than the IOU threshold) with a higher probability box.<br>
+ * By default, suppression is done per class (label): boxes with different labels never suppress each other.
+ * Set classAgnostic to true to suppress across all labels. Set softNms to true to use Soft-NMS (Gaussian decay of the
+ * probabilities of overlapping boxes) instead of removing overlapping boxes outright.
+ * See {@link NonMaxSuppression} for details.
+ */
+@Data
+@Accessors(fluent = true)
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonName("BOUNDING_BOX_NMS")
+@Schema(description = "A pipeline step that applies non-max suppression to a list of bounding boxes, removing boxes that " +
+        "overlap with a higher probability box. Boxes with different labels don't suppress each other unless classAgnostic is set.")
+public class BoundingBoxNMSStep implements PipelineStep {
+
+    public static final String DEFAULT_OUTPUT_NAME = "bounding_boxes";
+
+    @Schema(description = "If true, other data key and values from the previous step are kept and passed on to the next step as well.",
+            defaultValue = "true")
+    private boolean keepOtherValues = true;
+
+    @Schema(description = "Input name where the bounding boxes are contained in. If not set, the input is inferred " +
+            "(assuming a single List<BoundingBox> exists in the input)")
+    protected String inputName;
+
+    @Schema(description = "Output key name where the bounding box will be contained in.",
+            defaultValue = DEFAULT_OUTPUT_NAME)
+    protected String outputName = DEFAULT_OUTPUT_NAME;
+
+    @Schema(description = "IOU (intersection over union) threshold. Boxes that overlap with a higher probability box by more " +
+            "than this are removed. Not used for Soft-NMS", defaultValue = "0.5")
+    protected double iouThreshold = 0.5;
+
+    @Schema(description = "If true, boxes with different labels can suppress each other.", defaultValue = "false")
+    protected boolean classAgnostic = false;
+
+    @Schema(description = "If true, use Soft-NMS: the probabilities of overlapping boxes are decayed by exp(-iou^2/sigma) " +
+            "instead of the boxes being removed.", defaultValue = "false")
+    protected boolean softNms = false;
+
+    @Schema(description = "Gaussian decay parameter (sigma) for Soft-NMS.", defaultValue = "0.5")
+    protected double softNmsSigma = 0.5;
+
+    @Schema(description = "Boxes with a probability (decayed probability, for Soft-NMS) below this value are removed.",
+            defaultValue = "0.0")
+    protected double scoreThreshold = 0.0;
+
+    @Schema(description = "Maximum number of boxes to keep per label (in total if classAgnostic is true). 0 means no limit.",
+            defaultValue = "0")
+    protected int maxBoxes = 0;
+
+}
@@ -0,0 +1,80 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.pipeline.impl.step.bbox.nms;
+
+import ai.konduit.serving.annotation.runner.CanRun;
+import ai.konduit.serving.pipeline.api.context.Context;
+import ai.konduit.serving.pipeline.api.data.BoundingBox;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.ValueType;
+import ai.konduit.serving.pipeline.api.step.PipelineStep;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.pipeline.util.DataUtils;
+import lombok.AllArgsConstructor;
+import org.nd4j.common.base.Preconditions;
+
+import java.util.List;
+
+@AllArgsConstructor
+@CanRun(BoundingBoxNMSStep.class)
+public class BoundingBoxNMSStepRunner implements PipelineStepRunner {
+
+    protected final BoundingBoxNMSStep step;
+
+    @Override
+    public void close() {
+
+    }
+
+    @Override
+    public PipelineStep getPipelineStep() {
+        return step;
+    }
+
+    @Override
+    public Data exec(Context ctx, Data data) {
+        String inputName = step.inputName();
+        if(inputName == null){
+            String err = "No input name was set in the BoundingBoxNMSStep configuration and input name could not be guessed based on type";
+            inputName = DataUtils.inferField(data, ValueType.BOUNDING_BOX, true, err + " (multiple keys)", err + " (no List<BoundingBox> values)");
+        } else {
+            Preconditions.checkState(data.has(inputName), "BoundingBoxNMSStep: Data does not have an input field with name \"%s\"", inputName);
+        }
+
+        List<BoundingBox> boxes = NonMaxSuppression.apply(data.getListBoundingBox(inputName), step.iouThreshold(),
+                step.classAgnostic(), step.softNms(), step.softNmsSigma(), step.scoreThreshold(), step.maxBoxes());
+
+        String outName = step.outputName();
+        if (outName == null)
+            outName = BoundingBoxNMSStep.DEFAULT_OUTPUT_NAME;
+
+        Data d = Data.singletonList(outName, boxes, ValueType.BOUNDING_BOX);
+
+        if (step.keepOtherValues()) {
+            for (String s : data.keys()) {
+                if (!inputName.equals(s) && !outName.equals(s)) {
+                    d.copyFrom(s, data);
+                }
+            }
+        }
+
+        return d;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.pipeline.impl.step.bbox.nms;
+
+import ai.konduit.serving.pipeline.api.data.BoundingBox;
+import org.nd4j.common.base.Preconditions;
+
+import java.util.*;
+
+/**
+ * Non-max suppression (NMS) implementations operating on primitive arrays.<br>
+ * Boxes are specified by their corners (x1, y1, x2, y2) with x1 <= x2 and y1 <= y2, one array element per box.<br>
+ * Classes (if provided) must be non-negative integers; boxes of different classes never suppress each other.
+ * If no classes are provided (null), suppression is class agnostic.
+ * <br>
+ * Two variants are available:
+ * <ul>
+ *     <li>{@link #nms(float[], float[], float[], float[], float[], int[], float, int)}: standard (hard) NMS - any box
+ *     with an IOU greater than the threshold with a higher scoring box is removed</li>
+ *     <li>{@link #softNms(float[], float[], float[], float[], float[], int[], float, float, int)}: Soft-NMS with Gaussian
+ *     decay - scores of overlapping boxes are reduced by exp(-iou^2 / sigma) instead, and boxes are only removed once
+ *     their score falls below the score threshold</li>
+ * </ul>
+ */
+public class NonMaxSuppression {
+
+    private NonMaxSuppression(){ }
+
+    /**
+     * Standard (hard) non-max suppression
+     *
+     * @param x1           Left coordinates
+     * @param y1           Top coordinates
+     * @param x2           Right coordinates
+     * @param y2           Bottom coordinates
+     * @param scores       Score (probability) of each box
+     * @param classes      Class index of each box. May be null, in which case suppression is class agnostic
+     * @param iouThreshold Boxes with an IOU greater than this value with a higher scoring box (of the same class) are removed
+     * @param maxOutput    Maximum number of boxes to keep per class (in total, if classes is null). 0 or less: no limit
+     * @return Indices of the kept boxes, in order of decreasing score (per class)
+     */
+    public static int[] nms(float[] x1, float[] y1, float[] x2, float[] y2, float[] scores, int[] classes,
+                            float iouThreshold, int maxOutput) {
+        int n = checkLengths(x1, y1, x2, y2, scores, classes);
+        int[] order = sortByClassThenScore(scores, classes);
+        float[] areas = areas(x1, y1, x2, y2);
+        boolean[] suppressed = new boolean[n];
+        int[] keep = new int[n];
+        int numKept = 0;
+
+        int segStart = 0;
+        while (segStart < n) {
+            int segEnd = segmentEnd(order, classes, segStart);
+            int keptInSegment = 0;
+            for (int a = segStart; a < segEnd; a++) {
+                int i = order[a];
+                if (suppressed[i])
+                    continue;
+
+                keep[numKept++] = i;
+                if (maxOutput > 0 && ++keptInSegment >= maxOutput)
+                    break;
+
+                float ix1 = x1[i], iy1 = y1[i], ix2 = x2[i], iy2 = y2[i], iArea = areas[i];
+                for (int b = a + 1; b < segEnd; b++) {
+                    int j = order[b];
+                    if (suppressed[j])
+                        continue;
+
+                    float w = Math.min(ix2, x2[j]) - Math.max(ix1, x1[j]);
+                    if (w <= 0)
+                        continue;
+                    float h = Math.min(iy2, y2[j]) - Math.max(iy1, y1[j]);
+                    if (h <= 0)
+                        continue;
+
+                    //iou > threshold, without the division
+                    float intersection = w * h;
+                    if (intersection > iouThreshold * (iArea + areas[j] - intersection))
+                        suppressed[j] = true;
+                }
+            }
+            segStart = segEnd;
+        }
+
+        return Arrays.copyOf(keep, numKept);
+    }
+
+    /**
+     * Soft-NMS with Gaussian score decay, as per Bodla et al. "Improving Object Detection With One Line of Code"
+     *
+     * @param x1             Left coordinates
+     * @param y1             Top coordinates
+     * @param x2             Right coordinates
+     * @param y2             Bottom coordinates
+     * @param scores         Score (probability) of each box. Note that this array is modified in place: after the call,
+     *                       it contains the decayed scores
+     * @param classes        Class index of each box. May be null, in which case suppression is class agnostic
+     * @param sigma          Gaussian decay parameter. Must be > 0
+     * @param scoreThreshold Boxes with a (decayed) score below this value are removed
+     * @param maxOutput      Maximum number of boxes to keep per class (in total, if classes is null). 0 or less: no limit
+     * @return Indices of the kept boxes, in order of selection (decreasing decayed score, per class)
+     */
+    public static int[] softNms(float[] x1, float[] y1, float[] x2, float[] y2, float[] scores, int[] classes,
+                                float sigma, float scoreThreshold, int maxOutput) {
+        Preconditions.checkArgument(sigma > 0, "Soft-NMS sigma must be > 0, got %s", sigma);
+        int n = checkLengths(x1, y1, x2, y2, scores, classes);
+        int[] order = sortByClassThenScore(scores, classes);
+        float[] areas = areas(x1, y1, x2, y2);
+        int[] keep = new int[n];
+        int numKept = 0;
+
+        //Candidates of the current segment (class) are kept in active[0..numActive); removal is by swapping with the last
+        int[] active = new int[n];
+        int segStart = 0;
+        while (segStart < n) {
+            int segEnd = segmentEnd(order, classes, segStart);
+            int numActive = 0;
+            for (int a = segStart; a < segEnd; a++) {
+                if (scores[order[a]] >= scoreThreshold)
+                    active[numActive++] = order[a];
+            }
+
+            int keptInSegment = 0;
+            while (numActive > 0 && (maxOutput <= 0 || keptInSegment < maxOutput)) {
+                int maxPos = 0;
+                for (int a = 1; a < numActive; a++) {
+                    if (scores[active[a]] > scores[active[maxPos]])
+                        maxPos = a;
+                }
+
+                int i = active[maxPos];
+                active[maxPos] = active[--numActive];
+                keep[numKept++] = i;
+                keptInSegment++;
+
+                float ix1 = x1[i], iy1 = y1[i], ix2 = x2[i], iy2 = y2[i], iArea = areas[i];
+                for (int a = 0; a < numActive; a++) {
+                    int j = active[a];
+                    float w = Math.min(ix2, x2[j]) - Math.max(ix1, x1[j]);
+                    if (w <= 0)
+                        continue;
+                    float h = Math.min(iy2, y2[j]) - Math.max(iy1, y1[j]);
+                    if (h <= 0)
+                        continue;
+
+                    float intersection = w * h;
+                    float iou = intersection / (iArea + areas[j] - intersection);
+                    scores[j] *= (float) Math.exp(-(iou * iou) / sigma);
+                    if (scores[j] < scoreThreshold) {
+                        active[a--] = active[--numActive];
+                    }
+                }
+            }
+            segStart = segEnd;
+        }
+
+        return Arrays.copyOf(keep, numKept);
+    }
+
+    /**
+     * As per {@link #apply(List, double, boolean, boolean, double, double, int)} using hard NMS, no score threshold
+     * and no limit on the number of boxes
+     */
+    public static List<BoundingBox> apply(List<BoundingBox> boxes, double iouThreshold, boolean classAgnostic) {
+        return apply(boxes, iouThreshold, classAgnostic, false, 0.5, 0.0, 0);
+    }
+
+    /**
+     * Apply non-max suppression to a list of bounding boxes. Boxes without a probability are treated as having
+     * probability 0.0. Boxes with different labels are treated as different classes unless classAgnostic is true.
+     *
+     * @param boxes          Bounding boxes to apply NMS to
+     * @param iouThreshold   IOU threshold for hard NMS. Not used for soft-NMS
+     * @param classAgnostic  If true: boxes of all labels suppress each other
+     * @param soft           If true: use Soft-NMS (Gaussian) instead of hard NMS
+     * @param softSigma      Soft-NMS Gaussian decay parameter
+     * @param scoreThreshold Boxes with a probability (or decayed probability, for soft-NMS) below this are removed
+     * @param maxBoxes       Maximum number of boxes to keep per label (in total, if classAgnostic). 0 or less: no limit
+     * @return The kept bounding boxes, in their original relative order. For soft-NMS, the probabilities of the kept
+     * boxes are the decayed probabilities
+     */
+    public static List<BoundingBox> apply(List<BoundingBox> boxes, double iouThreshold, boolean classAgnostic, boolean soft,
+                                          double softSigma, double scoreThreshold, int maxBoxes) {
+        if (boxes == null || boxes.size() <= 1)
+            return boxes;
+
+        int size = boxes.size();
+        int[] src = new int[size];
+        float[] x1 = new float[size];
+        float[] y1 = new float[size];
+        float[] x2 = new float[size];
+        float[] y2 = new float[size];
+        float[] scores = new float[size];
+        int[] classes = classAgnostic ? null : new int[size];
+        Map<String, Integer> classIdxs = classAgnostic ? null : new HashMap<>();
+
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            BoundingBox bb = boxes.get(i);
+            float score = bb.probability() == null ? 0.0f : bb.probability().floatValue();
+            if (score < scoreThreshold)
+                continue;
+
+            src[n] = i;
+            x1[n] = (float) Math.min(bb.x1(), bb.x2());
+            x2[n] = (float) Math.max(bb.x1(), bb.x2());
+            y1[n] = (float) Math.min(bb.y1(), bb.y2());
+            y2[n] = (float) Math.max(bb.y1(), bb.y2());
+            scores[n] = score;
+            if (classes != null) {
+                Integer c = classIdxs.get(bb.label());
+                if (c == null) {
+                    c = classIdxs.size();
+                    classIdxs.put(bb.label(), c);
+                }
+                classes[n] = c;
+            }
+            n++;
+        }
+
+        if (n < size) {
+            x1 = Arrays.copyOf(x1, n);
+            y1 = Arrays.copyOf(y1, n);
+            x2 = Arrays.copyOf(x2, n);
+            y2 = Arrays.copyOf(y2, n);
+            scores = Arrays.copyOf(scores, n);
+            if (classes != null)
+                classes = Arrays.copyOf(classes, n);
+        }
+
+        float[] origScores = soft ? scores.clone() : scores;
+        int[] kept = soft ?
+                softNms(x1, y1, x2, y2, scores, classes, (float) softSigma, (float) scoreThreshold, maxBoxes) :
+                nms(x1, y1, x2, y2, scores, classes, (float) iouThreshold, maxBoxes);
+
+        //Restore the original order
+        Arrays.sort(kept);
+        List<BoundingBox> out = new ArrayList<>(kept.length);
+        for (int k : kept) {
+            BoundingBox bb = boxes.get(src[k]);
+            if (scores[k] != origScores[k]) {
+                bb = BoundingBox.createXY(bb.x1(), bb.x2(), bb.y1(), bb.y2(), bb.label(), (double) scores[k]);
+            }
+            out.add(bb);
+        }
+        return out;
+    }
+
+    private static int checkLengths(float[] x1, float[] y1, float[] x2, float[] y2, float[] scores, int[] classes) {
+        int n = scores.length;
+        Preconditions.checkArgument(x1.length == n && y1.length == n && x2.length == n && y2.length == n,
+                "Coordinate arrays must have the same length as the scores array (%s)", n);
+        Preconditions.checkArgument(classes == null || classes.length == n,
+                "Classes array must have the same length as the scores array (%s), got %s", n, classes == null ? 0 : classes.length);
+        return n;
+    }
+
+    private static float[] areas(float[] x1, float[] y1, float[] x2, float[] y2) {
+        float[] areas = new float[x1.length];
+        for (int i = 0; i < areas.length; i++) {
+            areas[i] = (x2[i] - x1[i]) * (y2[i] - y1[i]);
+        }
+        return areas;
+    }
+
+    /**
+     * @return Box indices sorted by decreasing score (ties: increasing index). If classes is non-null, the indices are
+     * additionally (stable) grouped by class, so each class forms a contiguous segment sorted by decreasing score
+     */
+    private static int[] sortByClassThenScore(float[] scores, int[] classes) {
+        int n = scores.length;
+
+        //Pack (score, index) into a long so a primitive sort can be used
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int bits = Float.floatToIntBits(scores[i]);
+            bits ^= (bits >> 31) & 0x7FFFFFFF;      //Flip negative values, so integer order matches float order
+            keys[i] = ((long) bits << 32) | (Integer.MAX_VALUE - i);
+        }
+        Arrays.sort(keys);
+
+        int[] byScore = new int[n];
+        for (int i = 0; i < n; i++) {
+            byScore[i] = Integer.MAX_VALUE - (int) keys[n - 1 - i];
+        }
+
+        if (classes == null)
+            return byScore;
+
+        //Stable counting sort by class
+        int maxClass = 0;
+        for (int c : classes) {
+            Preconditions.checkArgument(c >= 0, "Class indices must be non-negative, got %s", c);
+            maxClass = Math.max(maxClass, c);
+        }
+        int[] offsets = new int[maxClass + 2];
+        for (int c : classes) {
+            offsets[c + 1]++;
+        }
+        for (int c = 1; c < offsets.length; c++) {
+            offsets[c] += offsets[c - 1];
+        }
+        int[] out = new int[n];
+        for (int i : byScore) {
+            out[offsets[classes[i]]++] = i;
+        }
+        return out;
+    }
+
+    private static int segmentEnd(int[] order, int[] classes, int segStart) {
+        if (classes == null)
+            return order.length;
+        int c = classes[order[segStart]];
+        int end = segStart + 1;
+        while (end < order.length && classes[order[end]] == c)
+            end++;
+        return end;
+    }
+}
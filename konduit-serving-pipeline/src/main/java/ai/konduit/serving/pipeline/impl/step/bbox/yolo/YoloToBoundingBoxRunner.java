@@ -27,6 +27,7 @@ import ai.konduit.serving.pipeline.api.data.ValueType;
 import ai.konduit.serving.pipeline.api.step.PipelineStep;
 import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
 import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import ai.konduit.serving.pipeline.impl.step.bbox.nms.NonMaxSuppression;
 import ai.konduit.serving.pipeline.util.DataUtils;
 import ai.konduit.serving.pipeline.util.NDArrayUtils;
 import lombok.AllArgsConstructor;
@@ -98,6 +99,7 @@ public class YoloToBoundingBoxRunner implements PipelineStepRunner {
 
         List<BoundingBox> out = new ArrayList<>();
         for( int i = 0; i < n; i++ ) {
+            List<BoundingBox> exampleBoxes = new ArrayList<>();
             for (int x = 0; x < w; x++) {
                 for (int y = 0; y < h; y++) {
                     for (int box = 0; box < b; box++) {
@@ -132,10 +134,16 @@ public class YoloToBoundingBoxRunner implements PipelineStepRunner {
                             lbl = classLabels.get(pIdx);
                         }
 
-                        out.add(BoundingBox.create(px/w, py/h, ph/h, pw/w, lbl, (double)prob));
+                        exampleBoxes.add(BoundingBox.create(px/w, py/h, ph/h, pw/w, lbl, (double)prob));
                     }
                 }
             }
+
+            //IOU can't exceed 1.0, so there is nothing to suppress for thresholds >= 1.0
+            if(step.nmsThreshold() < 1.0){
+                exampleBoxes = NonMaxSuppression.apply(exampleBoxes, step.nmsThreshold(), false);
+            }
+            out.addAll(exampleBoxes);
         }
 
         Data dOut;
@@ -89,7 +89,8 @@ public class YoloToBoundingBoxStep implements PipelineStep {
     @Schema(description = "The threshold, in range 0.0 to 1.0. Any boxes with object confidence less than this will be ignored")
     protected double threshold = 0.5;
 
-    @Schema(description = "Non-max suppression threshold to use, to filter closely overlapping objects")
+    @Schema(description = "Non-max suppression threshold to use, to filter closely overlapping objects. Applied per class " +
+            "and per example. Set to 1.0 to disable non-max suppression")
     protected double nmsThreshold = 0.5;
 
     @Schema(description = "Number of classes. Not required if classLabels are provided")
@@ -26,6 +26,7 @@ import ai.konduit.serving.pipeline.api.data.NDArray;
 import ai.konduit.serving.pipeline.api.data.ValueType;
 import ai.konduit.serving.pipeline.api.step.PipelineStep;
 import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.pipeline.impl.step.bbox.nms.NonMaxSuppression;
 import io.micrometer.core.instrument.util.IOUtils;
 import lombok.AllArgsConstructor;
 import org.apache.commons.lang3.ArrayUtils;
@@ -109,6 +110,10 @@ public class SSDToBoundingBoxRunner implements PipelineStepRunner {
                 l.add(BoundingBox.createXY(x1, x2, y1, y2, !step.classLabels.isEmpty() ? step.classLabels.get((int) label - 1) : "no label provided", p));
             }
 
+            if(step.nmsThreshold() != null){
+                l = NonMaxSuppression.apply(l, step.nmsThreshold(), false);
+            }
+
             //TODO copy other data to output
 
             String outName = step.outputName();
@@ -162,6 +167,10 @@ public class SSDToBoundingBoxRunner implements PipelineStepRunner {
                 l.add(BoundingBox.createXY(x1, x2, y1, y2, null, p));
             }
 
+            if(step.nmsThreshold() != null){
+                l = NonMaxSuppression.apply(l, step.nmsThreshold(), false);
+            }
+
             //TODO copy other data to output
 
             String outName = step.outputName();
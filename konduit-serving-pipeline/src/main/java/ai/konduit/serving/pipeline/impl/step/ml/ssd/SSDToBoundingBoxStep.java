@@ -42,6 +42,8 @@ import java.util.List;
  *     will be increased; the other dimension will not change. That is, the pre-aspect-ratio-corrected box will be contained
  *     fully within the output box
  *     </li>
+ *     <li><b>nmsThreshold</b>: An optional IOU threshold for non-max suppression, applied per label. See {@link
+ *     ai.konduit.serving.pipeline.impl.step.bbox.nms.NonMaxSuppression}</li>
  * </ul>
  *
  */
@@ -86,6 +88,11 @@ public class SSDToBoundingBoxStep implements PipelineStep {
             "fully within the output box")
     protected Double aspectRatio = null;
 
+    @Schema(description = "An optional non-max suppression (IOU) threshold. If specified, boxes that overlap with a higher " +
+            "probability box of the same label by more than this are removed. Not needed for models that already apply " +
+            "non-max suppression internally")
+    protected Double nmsThreshold = null;
+
 
     
     @Schema(description = "Output key name where the bounding box will be contained in.",
@@ -20,21 +20,31 @@ package ai.konduit.serving.pipeline.registry;
 
 import ai.konduit.serving.pipeline.api.data.Image;
 import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.NDArrayType;
 import ai.konduit.serving.pipeline.api.format.*;
 import ai.konduit.serving.pipeline.impl.data.image.Png;
 import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
 import org.nd4j.common.primitives.Pair;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NDArrayConverterRegistry extends AbstractRegistry<NDArrayConverter> {
 
     private static final NDArrayConverterRegistry INSTANCE = new NDArrayConverterRegistry();
 
+    //Marks keys for which no converter is available
+    private static final NDArrayConverter NONE = new TwoStepNDArrayConverter(Void.class, Void.class, null, null);
+
+    private final Map<ConverterKey, NDArrayConverter> cache = new ConcurrentHashMap<>();
+
     protected NDArrayConverterRegistry(){
         super(NDArrayConverter.class);
     }
@@ -70,31 +80,100 @@ public class NDArrayConverterRegistry extends AbstractRegistry<NDArrayConverter>
         return INSTANCE.getConverterForType(arr, type);
     }
 
+    /**
+     * Convert the array to the specified type. Equivalent to {@code getConverterFor(arr, type).convert(arr, type)},
+     * except that when a two-step conversion (X -> SerializedNDArray -> Y) is first looked up, the intermediate
+     * SerializedNDArray is used for the result instead of being converted a second time
+     *
+     * @throws IllegalStateException If no converter is available
+     */
+    public static <T> T convert(@NonNull NDArray arr, @NonNull Class<T> type){
+        return INSTANCE.convertClass(arr, type);
+    }
+
     public NDArrayConverter getConverterForClass(NDArray arr, Class<?> type ){
+        ConverterKey key = ConverterKey.of(arr, type);
+        NDArrayConverter c = lookup(key, arr, type);
+        if(c != null)
+            return c == NONE ? null : c;
+
+        //No factory is available. Try to fall back on X -> SerializedNDArray -> Y
+        if(canTwoStep(arr, type)){
+            NDArrayConverter c1 = getConverterForClass(arr, SerializedNDArray.class);
+            if(c1 != null){
+                NDArray arr2 = NDArray.create(c1.convert(arr, SerializedNDArray.class));
+                NDArrayConverter c2 = getConverterForClass(arr2, type);
+                if(c2 != null)
+                    return twoStep(key, arr, type, c1, c2);
+            }
+        }
+
+        cache.put(key, NONE);
+        return null;
+    }
+
+    public <T> T convertClass(NDArray arr, Class<T> type){
+        ConverterKey key = ConverterKey.of(arr, type);
+        NDArrayConverter c = lookup(key, arr, type);
+        if(c == null){
+            if(canTwoStep(arr, type)) {
+                NDArrayConverter c1 = getConverterForClass(arr, SerializedNDArray.class);
+                if (c1 != null) {
+                    //The intermediate array is needed to find the second converter - reuse it for the result
+                    NDArray arr2 = NDArray.create(c1.convert(arr, SerializedNDArray.class));
+                    NDArrayConverter c2 = getConverterForClass(arr2, type);
+                    if (c2 != null) {
+                        twoStep(key, arr, type, c1, c2);
+                        return c2.convert(arr2, type);
+                    }
+                }
+            }
+            cache.put(key, NONE);
+            c = NONE;
+        }
+        Preconditions.checkState(c != NONE, "No converter found for converting from %s to %s", arr.get().getClass(), type);
+        return c.convert(arr, type);
+    }
+
+    /**
+     * Find a converter for the array: from the cache or, failing that, from the registered converters (direct conversion
+     * only)
+     *
+     * @return The converter, NONE if the key is cached as not convertible, or null if no direct converter was found
+     */
+    private NDArrayConverter lookup(ConverterKey key, NDArray arr, Class<?> type){
         if(factories == null)
             init();
 
+        NDArrayConverter c = cache.get(key);
+        if(c != null) {
+            //canConvert may depend on more than the key for custom converters, so cached converters are re-checked
+            if (c == NONE || c.canConvert(arr, type))
+                return c;
+            cache.remove(key, c);
+        }
+
         if(factoriesMap.containsKey(type)){
             return factoriesMap.get(type).get(0);       //TODO multiple converters
         }
 
-        for(NDArrayConverter c : factories){
-            if(c.canConvert(arr, type)){
-                return c;
+        for(NDArrayConverter f : factories){
+            if(f.canConvert(arr, type)){
+                cache.put(key, f);
+                return f;
             }
         }
+        return null;
+    }
 
-        //No factory is available. Try to fall back on X -> SerializedNDArray -> Y
-        if(type != SerializedNDArray.class && !(arr.get() instanceof SerializedNDArray)){
-            NDArrayConverter c1 = getConverterForClass(arr, SerializedNDArray.class);
-            if(c1 != null){
-                NDArray arr2 = NDArray.create(c1.convert(arr, SerializedNDArray.class));            //TODO this is ugly - we throw this result away!
-                NDArrayConverter c2 = getConverterForClass(arr2, type);
-                return new TwoStepNDArrayConverter(arr.get().getClass(), type, c1, c2);
-            }
-        }
+    private static boolean canTwoStep(NDArray arr, Class<?> type){
+        return type != SerializedNDArray.class && !(arr.get() instanceof SerializedNDArray);
+    }
 
-        return null;
+    private NDArrayConverter twoStep(ConverterKey key, NDArray arr, Class<?> type, NDArrayConverter c1, NDArrayConverter c2){
+        NDArrayConverter c = new TwoStepNDArrayConverter(arr.get().getClass(), type, c1, c2);
+        cache.put(key, c);
+        return c;
     }
 
     public NDArrayConverter getConverterForType(NDArray arr, NDArrayFormat<?> type ){
@@ -111,6 +190,36 @@ public class NDArrayConverterRegistry extends AbstractRegistry<NDArrayConverter>
 
     public static void addConverter(NDArrayConverter f){
         INSTANCE.addFactoryInstance(f);
+        INSTANCE.cache.clear();
+    }
+
+    /**
+     * Key for the converter cache. canConvert for SerializedNDArray sources usually also depends on the data type and
+     * rank of the array, and so does the second step of an X -> SerializedNDArray -> Y conversion: these are part of
+     * the key for all sources
+     */
+    @EqualsAndHashCode
+    private static class ConverterKey {
+        private final Class<?> from;
+        private final Class<?> to;
+        private final NDArrayType type;
+        private final int rank;
+
+        private ConverterKey(Class<?> from, Class<?> to, NDArrayType type, int rank){
+            this.from = from;
+            this.to = to;
+            this.type = type;
+            this.rank = rank;
+        }
+
+        private static ConverterKey of(NDArray arr, Class<?> to){
+            Object o = arr.get();
+            if(o instanceof SerializedNDArray){
+                SerializedNDArray sn = (SerializedNDArray) o;
+                return new ConverterKey(o.getClass(), to, sn.getType(), sn.getShape().length);
+            }
+            return new ConverterKey(o.getClass(), to, arr.type(), arr.rank());
+        }
     }
 
     @AllArgsConstructor
@@ -0,0 +1,161 @@
+/* ******************************************************************************
+ * Copyright (c) 2022 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+package ai.konduit.serving.pipeline.registry;
+
+import ai.konduit.serving.pipeline.api.step.PipelineStep;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunnerFactory;
+import ai.konduit.serving.pipeline.api.step.ShareableRunner;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A process-wide, reference counted registry of {@link ShareableRunner} instances, keyed by the pipeline step
+ * configuration (JSON) and the {@link PipelineStepRunnerFactory} used to create the runner.<br>
+ * When enabled, pipeline executors that are created for identical pipeline step configurations (for example, one
+ * per verticle instance when the server is started with multiple instances) use the same runner - and hence the
+ * same loaded model - instead of loading the model once per executor.<br>
+ * Shared runners are closed when the last executor using them is closed.<br>
+ * Runners that don't implement {@link ShareableRunner} are never shared.<br>
+ * Sharing is disabled by default, so that executors created directly (for example, when embedding pipelines in an
+ * application) each have their own runners and state. The server enables it, before creating its verticles, from its
+ * {@code ExecutionConfiguration.shareRunners} setting. It is a process-wide setting: use {@link #setEnabled(boolean)}
+ * once, before any pipeline executors are created.
+ */
+@Slf4j
+public class SharedRunnerRegistry {
+
+    private static volatile boolean enabled = false;
+
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+    private static final Map<PipelineStepRunner, Entry> BY_RUNNER = new IdentityHashMap<>();
+
+    private SharedRunnerRegistry(){ }
+
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled){
+        SharedRunnerRegistry.enabled = enabled;
+    }
+
+    /**
+     * Get a runner for the specified step: a shared instance if sharing is enabled and a {@link ShareableRunner} has
+     * already been created for an identical step configuration, or otherwise a new runner from the supplier.<br>
+     * Runners returned by this method should be released with {@link #release(PipelineStepRunner)} rather than
+     * closed directly.
+     *
+     * @param step    Pipeline step to get the runner for
+     * @param factory Factory that the runner would be created with
+     * @param creator Creates a new runner for the step
+     */
+    public static PipelineStepRunner acquire(@NonNull PipelineStep step, @NonNull PipelineStepRunnerFactory factory,
+                                             @NonNull Supplier<PipelineStepRunner> creator){
+        if(!enabled)
+            return creator.get();
+
+        String key;
+        try {
+            key = factory.getClass().getName() + "/" + step.toJson();
+        } catch (Throwable t){
+            //Not serializable (for example, steps defined with lambdas) - can't tell whether configurations are identical
+            log.debug("Unable to share runner for step of type {}: step could not be converted to JSON", step.getClass().getName());
+            return creator.get();
+        }
+
+        while(true) {
+            Entry e = ENTRIES.computeIfAbsent(key, Entry::new);
+            synchronized (e) {
+                if (e.closed)
+                    continue;       //Concurrently released or not shareable - retry with a new entry
+
+                if (e.runner != null) {
+                    e.refCount++;
+                    log.debug("Reusing shared runner {} for step of type {} ({} references)", e.runner.name(), step.getClass().getName(), e.refCount);
+                    return e.runner;
+                }
+
+                //Note that the runner is created while holding the entry lock, so concurrent executors load the model only once
+                PipelineStepRunner r = creator.get();
+                if (r instanceof ShareableRunner) {
+                    e.runner = r;
+                    e.refCount = 1;
+                    synchronized (BY_RUNNER) {
+                        BY_RUNNER.put(r, e);
+                    }
+                } else {
+                    e.closed = true;
+                    ENTRIES.remove(key, e);
+                }
+                return r;
+            }
+        }
+    }
+
+    /**
+     * Release a runner previously returned by {@link #acquire(PipelineStep, PipelineStepRunnerFactory, Supplier)}.
+     * Non-shared runners are closed immediately; shared runners are closed once they are no longer used by any executor.
+     */
+    public static void release(@NonNull PipelineStepRunner runner){
+        Entry e;
+        synchronized (BY_RUNNER){
+            e = BY_RUNNER.get(runner);
+        }
+
+        if(e == null){
+            runner.close();
+            return;
+        }
+
+        synchronized (e){
+            if(--e.refCount > 0)
+                return;
+            e.closed = true;
+            ENTRIES.remove(e.key, e);
+            synchronized (BY_RUNNER){
+                BY_RUNNER.remove(runner);
+            }
+        }
+        log.debug("Closing shared runner {}: no longer referenced", runner.name());
+        runner.close();
+    }
+
+    /**
+     * @return The number of shared runners currently in the registry
+     */
+    public static int numShared(){
+        synchronized (BY_RUNNER){
+            return BY_RUNNER.size();
+        }
+    }
+
+    private static class Entry {
+        private final String key;
+        private PipelineStepRunner runner;
+        private int refCount;
+        private boolean closed;
+
+        private Entry(String key){
+            this.key = key;
+        }
+    }
+}
@@ -146,6 +146,15 @@ public class KonduitSettings {
         );
     }
 
+    public static boolean getMemoizeNDArrayConversions() { return getMemoizeNDArrayConversions(Constants.DEFAULT_MEMOIZE_NDARRAY_CONVERSIONS); }
+    public static boolean getMemoizeNDArrayConversions(boolean defaultValue) {
+        return Boolean.parseBoolean(KonduitSettings.fetchValueBasedOnPriority(
+                System.getenv(EnvironmentConstants.MEMOIZE_NDARRAY_CONVERSIONS),
+                System.getProperty(PropertiesConstants.MEMOIZE_NDARRAY_CONVERSIONS),
+                String.valueOf(defaultValue))
+        );
+    }
+
     public static String getServingId() {
         if(System.getProperty(SERVING_ID) == null) {
             System.setProperty(SERVING_ID, "id-not-set-" + UUID.randomUUID());
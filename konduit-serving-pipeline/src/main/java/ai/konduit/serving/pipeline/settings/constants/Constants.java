@@ -91,7 +91,7 @@ public class Constants {
 
     public static final String DEFAULT_CONSUMER_AUTO_OFFSET_RESET = "earliest";
 
-    public static final String DEFAULT_CONSUMER_AUTO_COMMIT = "true";
+    public static final String DEFAULT_CONSUMER_AUTO_COMMIT = "false";
 
     public static final String DEFAULT_PRODUCER_TOPIC_NAME = "inference-out";
 
@@ -100,4 +100,6 @@ public class Constants {
     public static final String DEFAULT_KAFKA_PRODUCER_VALUE_SERIALIZER_CLASS = "io.vertx.kafka.client.serialization.JsonObjectSerializer";
 
     public static final String DEFAULT_PRODUCER_ACKS = "1";
+
+    public static final boolean DEFAULT_MEMOIZE_NDARRAY_CONVERSIONS = false;
 }
@@ -98,4 +98,10 @@ public class EnvironmentConstants {
     public static final String KAFKA_PRODUCER_VALUE_SERIALIZER_CLASS = "KONDUIT_KAFKA_PRODUCER_DESERIALIZER_CLASS";
 
     public static final String PRODUCER_ACKS = "KONDUIT_PRODUCER_ACKS";
+
+    /**
+     * If true, NDArrays keep the results of their format conversions (for example, to INDArray), so that repeated
+     * conversions return the same instance
+     */
+    public static final String MEMOIZE_NDARRAY_CONVERSIONS = "KONDUIT_MEMOIZE_NDARRAY_CONVERSIONS";
 }
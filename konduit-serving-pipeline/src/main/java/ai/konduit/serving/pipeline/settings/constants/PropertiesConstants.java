@@ -93,5 +93,11 @@ public class PropertiesConstants {
 
     public static final String PRODUCER_ACKS = "konduit.producer.acks";
 
+    /**
+     * If true, NDArrays keep the results of their format conversions (for example, to INDArray), so that repeated
+     * conversions return the same instance
+     */
+    public static final String MEMOIZE_NDARRAY_CONVERSIONS = "konduit.memoize.ndarray.conversions";
+
     public static final String SERVING_ID = "serving.id";
 }
@@ -22,8 +22,10 @@ import ai.konduit.serving.pipeline.api.data.*;
 import org.junit.Test;
 import org.nd4j.common.resources.Resources;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 
@@ -222,4 +224,28 @@ public class DataJsonTest {
         Data meta2 = d2.getMetaData();
         assertEquals(meta ,meta2);
     }
+
+    @Test
+    public void testWriteJson() throws Exception {
+        Data d = Data.singleton("myArray", NDArray.create(new float[]{1, 2, 3, 4, 5}));
+        d.put("myString", "myValue");
+        d.put("myBytes", new byte[]{0, 1, 2, 3, 4, 5, 6});
+        d.put("myData", Data.singleton("inner", NDArray.create(new long[]{6, 7, 8})));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        d.writeJson(baos);
+        String json = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(d.toJson(), json);
+        Data restored = Data.fromJson(json);
+        assertEquals(d.getNDArray("myArray"), restored.getNDArray("myArray"));
+        assertEquals(d.getString("myString"), restored.getString("myString"));
+        assertArrayEquals(d.getBytes("myBytes"), restored.getBytes("myBytes"));
+        assertEquals(d.getData("myData"), restored.getData("myData"));
+
+        //Arrays deserialized from bytes have read-only buffers, which are Base64 encoded from a stream
+        Data arrays = Data.fromBytes(Data.singleton("myArray", NDArray.create(new float[]{1, 2, 3, 4, 5})).asBytes());
+        baos = new ByteArrayOutputStream();
+        arrays.writeJson(baos);
+        assertEquals(arrays, Data.fromJson(new String(baos.toByteArray(), StandardCharsets.UTF_8)));
+    }
 }
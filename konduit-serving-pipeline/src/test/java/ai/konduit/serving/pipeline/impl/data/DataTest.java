@@ -39,6 +39,8 @@ import java.util.List;
 import static ai.konduit.serving.pipeline.impl.data.JData.empty;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 public class DataTest {
@@ -363,6 +365,58 @@ public class DataTest {
         assertEquals(ndData, restoredData);
     }
 
+    @Test
+    public void testNDArrayBytesNoCopy() {
+        float[] rawData = {1, 3, 6, 7, 8, 10, 4, 3, 2, 4};
+        Data ndData = Data.singleton(KEY, NDArray.create(rawData));
+        byte[] bytes = ndData.asBytes();
+
+        //Deserialized arrays are read-only views of the input bytes
+        Data restored = Data.fromBytes(bytes);
+        assertEquals(ndData, restored);
+        SerializedNDArray sn = restored.getNDArray(KEY).getAs(SerializedNDArray.class);
+        assertTrue(sn.getBuffer().isReadOnly());
+        assertEquals(rawData.length * 4, sn.getBuffer().capacity());
+        assertArrayEquals(rawData, restored.getNDArray(KEY).getAs(float[].class), 0.0f);
+
+        //And are written back out unchanged
+        assertArrayEquals(bytes, restored.asBytes());
+    }
+
+    @Test
+    public void testLazyDeserialization() {
+        float[] rawData = {1, 3, 6, 7, 8, 10, 4, 3, 2, 4};
+        Data data = Data.singleton(KEY, NDArray.create(rawData));
+        data.put("route", "left");
+        data.putListInt64("ids", Arrays.asList(1L, 2L));
+        byte[] bytes = data.asBytes();
+
+        Data lazy = ProtoData.fromBytes(bytes, true);
+        LazyDataMap dataMap = (LazyDataMap) ((JData) lazy).getDataMap();
+        assertEquals(3, lazy.size());
+        assertTrue(lazy.has(KEY));
+        assertEquals("left", lazy.getString("route"));
+        assertTrue(dataMap.isDecoded("route"));
+        assertFalse(dataMap.isDecoded(KEY));
+        assertFalse(dataMap.isDecoded("ids"));
+
+        //Untouched values are written back as the original protobuf items
+        lazy.put("route", "right");
+        Data out = Data.fromBytes(lazy.asBytes());
+        assertFalse(dataMap.isDecoded(KEY));
+        assertEquals("right", out.getString("route"));
+        assertArrayEquals(rawData, out.getNDArray(KEY).getAs(float[].class), 0.0f);
+
+        //Copies don't decode values either
+        Data copy = new ProtoData(lazy);
+        assertFalse(((LazyDataMap) ((JData) copy).getDataMap()).isDecoded(KEY));
+
+        data.put("route", "right");
+        assertEquals(data, lazy);
+        assertEquals(data, copy);
+        assertTrue(dataMap.isDecoded(KEY));
+    }
+
     @Test
     public void testImageListSerde() throws IOException {
         List<Image> imageList = new ArrayList<>();
@@ -18,6 +18,7 @@
 
 package ai.konduit.serving.pipeline.impl.data;
 
+import ai.konduit.serving.pipeline.api.data.Data;
 import ai.konduit.serving.pipeline.api.data.NDArray;
 import ai.konduit.serving.pipeline.api.data.NDArrayType;
 import ai.konduit.serving.pipeline.api.format.NDArrayConverter;
@@ -25,18 +26,25 @@ import ai.konduit.serving.pipeline.api.format.NDArrayFactory;
 import ai.konduit.serving.pipeline.api.format.NDArrayFormat;
 import ai.konduit.serving.pipeline.impl.data.ndarray.BaseNDArray;
 import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import ai.konduit.serving.pipeline.impl.serde.MultiTensorFormat;
+import ai.konduit.serving.pipeline.impl.serde.NpyFormat;
 import ai.konduit.serving.pipeline.registry.NDArrayConverterRegistry;
 import ai.konduit.serving.pipeline.registry.NDArrayFactoryRegistry;
 import lombok.AllArgsConstructor;
 import org.junit.Test;
 import org.nd4j.common.base.Preconditions;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
-import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.*;
 
 public class NDArrayTests {
 
@@ -67,6 +75,31 @@ public class NDArrayTests {
         assertArrayEquals(f, outF, 0.0f);
     }
 
+    @Test
+    public void testConverterCacheAndMemoization(){
+        NDArray nd = NDArray.create(new float[]{1,2,3});
+
+        NDArrayConverter c = NDArrayConverterRegistry.getConverterFor(nd, SerializedNDArray.class);
+        assertNotNull(c);
+        assertSame(c, NDArrayConverterRegistry.getConverterFor(NDArray.create(new float[]{4,5}), SerializedNDArray.class));
+        assertNull(NDArrayConverterRegistry.getConverterFor(nd, String.class));
+        assertNull(NDArrayConverterRegistry.getConverterFor(nd, String.class));
+        assertFalse(nd.canGetAs(String.class));
+
+        //Without memoization, each call converts again
+        assertNotSame(nd.getAs(SerializedNDArray.class), nd.getAs(SerializedNDArray.class));
+
+        boolean memoize = BaseNDArray.isMemoizeConversions();
+        try {
+            BaseNDArray.setMemoizeConversions(true);
+            SerializedNDArray sn = nd.getAs(SerializedNDArray.class);
+            assertSame(sn, nd.getAs(SerializedNDArray.class));
+            assertArrayEquals(new float[]{1,2,3}, NDArray.create(sn).getAs(float[].class), 0.0f);
+        } finally {
+            BaseNDArray.setMemoizeConversions(memoize);
+        }
+    }
+
     @AllArgsConstructor
     @lombok.Data
     public static class TestNDArrayObject {
@@ -145,6 +178,75 @@ public class NDArrayTests {
         }
     }
 
+    @Test
+    public void testNpyAndMultiTensorFormats(){
+        float[][] f = new float[][]{{1,2,3},{4,5,6}};
+        SerializedNDArray sa = NDArray.create(f).getAs(SerializedNDArray.class);
+
+        ByteBuffer npy = concat(NpyFormat.write(sa));
+        assertEquals(0, NpyFormat.header(sa).length % 64);
+        SerializedNDArray read = NpyFormat.read(npy);
+        assertEquals(NDArrayType.FLOAT, read.getType());
+        assertArrayEquals(new long[]{2, 3}, read.getShape());
+        assertTrue(read.getBuffer().isReadOnly());
+        assertArrayEquals(f[1], NDArray.create(read).getAs(float[][].class)[1], 0.0f);
+
+        Data d = Data.singleton("a", NDArray.create(f));
+        d.put("b", NDArray.create(new float[]{7, 8}));
+        d.put("skipped", "not an array");
+        Data multi = MultiTensorFormat.read(concat(MultiTensorFormat.write(d)));
+        assertEquals(Arrays.asList("a", "b"), multi.keys());
+        assertArrayEquals(f[0], multi.getNDArray("a").getAs(float[][].class)[0], 0.0f);
+        assertArrayEquals(new float[]{7, 8}, multi.getNDArray("b").getAs(float[].class), 0.0f);
+    }
+
+    @Test
+    public void testNpyMalformedHeader(){
+        assertNpyInvalid(npy("(-1, -1)", 16), "negative dimension");
+        assertNpyInvalid(npy("(2, -3)", 24), "negative dimension");
+        assertNpyInvalid(npy("(4611686018427387904, 4)", 16), "too large");        //Overflows a long
+        assertNpyInvalid(npy("(1073741824,)", 16), "too large");                  //4 GB of floats
+        assertNpyInvalid(npy("(2, x)", 16), "invalid shape");
+        assertNpyInvalid(npy("(2, 3)", 8), "expected 24 bytes");
+
+        SerializedNDArray valid = NpyFormat.read(npy("(2, 2)", 16));
+        assertArrayEquals(new long[]{2, 2}, valid.getShape());
+        assertEquals(16, valid.getBuffer().remaining());
+    }
+
+    /**
+     * @return Version 1.0 .npy content for a float array with the given shape, followed by the given number of data bytes
+     */
+    private static ByteBuffer npy(String shape, int dataBytes){
+        byte[] header = ("{'descr': '<f4', 'fortran_order': False, 'shape': " + shape + ", }\n").getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer bb = ByteBuffer.allocate(10 + header.length + dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+        bb.put(new byte[]{(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0});
+        bb.putShort((short) header.length);
+        bb.put(header);
+        ((Buffer) bb).rewind();
+        return bb;
+    }
+
+    private static void assertNpyInvalid(ByteBuffer npy, String message){
+        try {
+            NpyFormat.read(npy);
+            fail("Expected exception for invalid .npy content");
+        } catch (IllegalArgumentException e){
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static ByteBuffer concat(List<ByteBuffer> buffers){
+        int length = 0;
+        for(ByteBuffer b : buffers)
+            length += b.remaining();
+        ByteBuffer out = ByteBuffer.allocate(length);
+        for(ByteBuffer b : buffers)
+            out.put(b.duplicate());
+        ((Buffer) out).flip();
+        return out;
+    }
+
     public static class SerializedNDArrayToTND implements NDArrayConverter {
 
         @Override
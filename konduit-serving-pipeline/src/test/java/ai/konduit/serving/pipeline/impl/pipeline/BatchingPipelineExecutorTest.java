@@ -0,0 +1,312 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.pipeline.impl.pipeline;
+
+import ai.konduit.serving.pipeline.api.context.Context;
+import ai.konduit.serving.pipeline.api.context.NoOpProfiler;
+import ai.konduit.serving.pipeline.api.context.Profiler;
+import ai.konduit.serving.pipeline.api.context.ProfilerConfig;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.api.step.BatchCapableRunner;
+import ai.konduit.serving.pipeline.api.step.PipelineStep;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.pipeline.impl.step.logging.LoggingStep;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BatchingPipelineExecutorTest {
+
+    @Test
+    public void testStackAndSplit() {
+        List<Data> inputs = Arrays.asList(
+                Data.singleton("in", NDArray.create(new float[][]{{1, 2, 3}})),
+                Data.singleton("in", NDArray.create(new float[][]{{4, 5, 6}, {7, 8, 9}})));
+        for (Data d : inputs) {
+            d.put("mode", "x");
+        }
+
+        long[] rows = new long[2];
+        Data stacked = BatchingPipelineExecutor.stack(inputs, rows);
+        assertNotNull(stacked);
+        assertArrayEquals(new long[]{1, 2}, rows);
+        assertArrayEquals(new long[]{3, 3}, stacked.getNDArray("in").shape());
+        assertArrayEquals(new float[][]{{1, 2, 3}, {4, 5, 6}, {7, 8, 9}}, stacked.getNDArray("in").getAs(float[][].class));
+        assertEquals("x", stacked.getString("mode"));
+
+        Data[] split = BatchingPipelineExecutor.split(stacked, rows);
+        assertNotNull(split);
+        assertEquals(2, split.length);
+        for (int i = 0; i < split.length; i++) {
+            assertArrayEquals(inputs.get(i).getNDArray("in").getAs(float[][].class), split[i].getNDArray("in").getAs(float[][].class));
+            assertEquals("x", split[i].getString("mode"));
+        }
+    }
+
+    @Test
+    public void testNotStackable() {
+        //Different trailing dimensions
+        assertNull(BatchingPipelineExecutor.stack(Arrays.asList(
+                Data.singleton("in", NDArray.create(new float[][]{{1, 2, 3}})),
+                Data.singleton("in", NDArray.create(new float[][]{{4, 5}}))), new long[2]));
+
+        //Rank 1 - no batch dimension
+        assertNull(BatchingPipelineExecutor.stack(Arrays.asList(
+                Data.singleton("in", NDArray.create(new float[]{1, 2, 3})),
+                Data.singleton("in", NDArray.create(new float[]{4, 5, 6}))), new long[2]));
+
+        //Different non-NDArray values
+        Data d1 = Data.singleton("in", NDArray.create(new float[][]{{1, 2, 3}}));
+        d1.put("mode", "x");
+        Data d2 = Data.singleton("in", NDArray.create(new float[][]{{4, 5, 6}}));
+        d2.put("mode", "y");
+        assertNull(BatchingPipelineExecutor.stack(Arrays.asList(d1, d2), new long[2]));
+    }
+
+    @Test
+    public void testConcurrentRequestsAreBatched() throws Exception {
+        int n = 8;
+        CountingExecutor underlying = new CountingExecutor(true);
+        BatchingPipelineExecutor exec = new BatchingPipelineExecutor(underlying, n, TimeUnit.SECONDS.toMicros(10));
+
+        ExecutorService es = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<Data>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                float value = i;
+                futures.add(es.submit(() -> exec.exec(Data.singleton("in", NDArray.create(new float[][]{{value, value}})))));
+            }
+
+            for (int i = 0; i < n; i++) {
+                Data out = futures.get(i).get(30, TimeUnit.SECONDS);
+                assertArrayEquals(new float[][]{{i, i}}, out.getNDArray("in").getAs(float[][].class));
+            }
+
+            assertEquals(1, underlying.count.get());
+        } finally {
+            es.shutdownNow();
+            exec.close();
+        }
+    }
+
+    @Test
+    public void testExecutesOnCallerThreads() throws Exception {
+        //Different shapes: can't be stacked, so the two requests of the batch are executed individually.
+        //Both executions must be in progress at the same time (on the two callers' threads) for the barrier to trip
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        CountingExecutor underlying = new CountingExecutor(true) {
+            @Override
+            public Data exec(Data data) {
+                threads.add(Thread.currentThread().getName());
+                try {
+                    barrier.await(30, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return super.exec(data);
+            }
+        };
+        BatchingPipelineExecutor exec = new BatchingPipelineExecutor(underlying, 2, TimeUnit.SECONDS.toMicros(10));
+
+        ExecutorService es = Executors.newFixedThreadPool(2);
+        try {
+            Future<Data> f1 = es.submit(() -> exec.exec(Data.singleton("in", NDArray.create(new float[][]{{1, 2}}))));
+            Future<Data> f2 = es.submit(() -> exec.exec(Data.singleton("in", NDArray.create(new float[][]{{1, 2, 3}}))));
+
+            assertArrayEquals(new float[][]{{1, 2}}, f1.get(30, TimeUnit.SECONDS).getNDArray("in").getAs(float[][].class));
+            assertArrayEquals(new float[][]{{1, 2, 3}}, f2.get(30, TimeUnit.SECONDS).getNDArray("in").getAs(float[][].class));
+
+            assertEquals(2, threads.size());
+            assertNotEquals(threads.get(0), threads.get(1));
+            for (String t : threads) {
+                assertNotEquals("konduit-pipeline-batching", t);
+            }
+        } finally {
+            es.shutdownNow();
+            exec.close();
+        }
+    }
+
+    @Test
+    public void testNotBatchCapable() {
+        CountingExecutor underlying = new CountingExecutor(false);
+        BatchingPipelineExecutor exec = new BatchingPipelineExecutor(underlying, 8, 1000);
+
+        Data in = Data.singleton("in", NDArray.create(new float[][]{{1, 2}}));
+        assertEquals(in, exec.exec(in));
+        assertEquals(1, underlying.count.get());
+        exec.close();
+    }
+
+    @Test
+    public void testMixedPipelineBatchesModelSteps() throws Exception {
+        //Only the model step is batch-capable: the steps around it are executed per request, the model once per batch
+        int n = 4;
+        CountingRunner pre = new CountingRunner(2, 0);
+        CountingRunner model = new BatchCountingRunner(1, 1);
+        CountingRunner post = new CountingRunner(1, 0);
+        CountingExecutor underlying = new CountingExecutor(Arrays.asList(pre, model, post));
+        BatchingPipelineExecutor exec = new BatchingPipelineExecutor(underlying, underlying.getRunners(), n,
+                TimeUnit.SECONDS.toMicros(10));
+
+        ExecutorService es = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<Data>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                float value = i;
+                futures.add(es.submit(() -> exec.exec(Data.singleton("in", NDArray.create(new float[][]{{value, value}})))));
+            }
+
+            for (int i = 0; i < n; i++) {
+                Data out = futures.get(i).get(30, TimeUnit.SECONDS);
+                assertArrayEquals(new float[][]{{2 * i + 1, 2 * i + 1}}, out.getNDArray("in").getAs(float[][].class));
+            }
+
+            assertEquals(n, pre.calls.get());
+            assertEquals(1, model.calls.get());
+            assertEquals(Collections.singletonList((long) n), model.rows);
+            assertEquals(n, post.calls.get());
+            assertEquals(0, underlying.count.get());
+        } finally {
+            es.shutdownNow();
+            exec.close();
+        }
+    }
+
+    private static class CountingExecutor implements PipelineExecutor {
+        private final AtomicInteger count = new AtomicInteger();
+        private final List<PipelineStepRunner> runners;
+
+        private CountingExecutor(boolean batchCapable) {
+            this(Collections.singletonList(batchCapable ? new IdentityBatchRunner() : new IdentityRunner()));
+        }
+
+        private CountingExecutor(List<PipelineStepRunner> runners) {
+            this.runners = runners;
+        }
+
+        @Override
+        public Pipeline getPipeline() {
+            return null;
+        }
+
+        @Override
+        public List<PipelineStepRunner> getRunners() {
+            return runners;
+        }
+
+        @Override
+        public Data exec(Data data) {
+            count.incrementAndGet();
+            for (PipelineStepRunner r : runners) {
+                data = r.exec(null, data);
+            }
+            return data;
+        }
+
+        @Override
+        public Logger getLogger() {
+            return LoggerFactory.getLogger(CountingExecutor.class);
+        }
+
+        @Override
+        public void profilerConfig(ProfilerConfig profilerConfig) {
+        }
+
+        @Override
+        public Profiler profiler() {
+            return new NoOpProfiler();
+        }
+    }
+
+    private static class IdentityRunner implements PipelineStepRunner {
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public PipelineStep getPipelineStep() {
+            return null;
+        }
+
+        @Override
+        public Data exec(Context ctx, Data data) {
+            return data;
+        }
+    }
+
+    private static class IdentityBatchRunner extends IdentityRunner implements BatchCapableRunner {
+    }
+
+    /**
+     * Computes {@code in * multiply + add}, counting its calls and the number of rows of each call
+     */
+    private static class CountingRunner implements PipelineStepRunner {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final List<Long> rows = Collections.synchronizedList(new ArrayList<>());
+        private final float multiply;
+        private final float add;
+
+        private CountingRunner(float multiply, float add) {
+            this.multiply = multiply;
+            this.add = add;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public PipelineStep getPipelineStep() {
+            return new LoggingStep();
+        }
+
+        @Override
+        public Data exec(Context ctx, Data data) {
+            calls.incrementAndGet();
+            float[][] in = data.getNDArray("in").getAs(float[][].class);
+            rows.add((long) in.length);
+            for (float[] row : in) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] = row[j] * multiply + add;
+                }
+            }
+            return Data.singleton("in", NDArray.create(in));
+        }
+    }
+
+    private static class BatchCountingRunner extends CountingRunner implements BatchCapableRunner {
+        private BatchCountingRunner(float multiply, float add) {
+            super(multiply, add);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.pipeline.impl.pipeline;
+
+import ai.konduit.serving.pipeline.api.context.NoOpProfiler;
+import ai.konduit.serving.pipeline.api.context.Profiler;
+import ai.konduit.serving.pipeline.api.context.ProfilerConfig;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CachingPipelineExecutorTest {
+
+    @Test
+    public void testKey() {
+        Data d1 = Data.singleton("in", NDArray.create(new float[][]{{1, 2, 3}}));
+        d1.put("mode", "x");
+        Data d2 = Data.singleton("mode", "x");
+        d2.put("in", NDArray.create(new float[][]{{1, 2, 3}}));
+        Data d3 = Data.singleton("in", NDArray.create(new float[][]{{1, 2, 4}}));
+        d3.put("mode", "x");
+        Data d4 = Data.singleton("in", NDArray.create(new float[]{1, 2, 3}));
+        d4.put("mode", "x");
+
+        List<String> all = Collections.emptyList();
+        //Key order doesn't matter, but the values and shapes do
+        assertEquals(CachingPipelineExecutor.key(d1, all), CachingPipelineExecutor.key(d2, all));
+        assertNotEquals(CachingPipelineExecutor.key(d1, all), CachingPipelineExecutor.key(d3, all));
+        assertNotEquals(CachingPipelineExecutor.key(d1, all), CachingPipelineExecutor.key(d4, all));
+
+        //Only the selected keys are part of the cache key
+        d2.put("mode", "y");
+        assertNotEquals(CachingPipelineExecutor.key(d1, all), CachingPipelineExecutor.key(d2, all));
+        assertEquals(CachingPipelineExecutor.key(d1, Collections.singletonList("in")),
+                CachingPipelineExecutor.key(d2, Collections.singletonList("in")));
+    }
+
+    @Test
+    public void testKeyIgnoresBufferPosition() {
+        CountingExecutor underlying = new CountingExecutor(null);
+        CachingPipelineExecutor exec = new CachingPipelineExecutor(underlying, null, 100, Long.MAX_VALUE, 0, false);
+        for (int i = 1; i <= 2; i++) {
+            Data in = readOnlyInput(i);
+            //The ND4J converter copies read-only heap buffers to direct memory like this, leaving them at their limit
+            SerializedNDArray sa = (SerializedNDArray) in.getNDArray("in").get();
+            ByteBuffer direct = ByteBuffer.allocateDirect(sa.getBuffer().remaining());
+            direct.put(sa.getBuffer());
+            assertFalse(sa.getBuffer().hasRemaining());
+
+            assertEquals(CachingPipelineExecutor.key(readOnlyInput(i), Collections.emptyList()),
+                    CachingPipelineExecutor.key(in, Collections.emptyList()));
+            assertOutput(i, exec.exec(in));
+        }
+        assertEquals(2, underlying.count.get());
+
+        assertOutput(1, exec.exec(readOnlyInput(1)));
+        assertEquals(2, underlying.count.get());
+        exec.close();
+    }
+
+    @Test
+    public void testBatchExec() {
+        CountingExecutor underlying = new CountingExecutor(null);
+        CachingPipelineExecutor exec = new CachingPipelineExecutor(underlying, null, 100, Long.MAX_VALUE, 0, false);
+        exec.exec(input(1));
+        assertEquals(1, underlying.count.get());
+
+        //Input 1 is a hit. The misses, 2 and 3, are forwarded as one batch, and the duplicate of 2 is executed once
+        Data[] out = exec.exec(input(1), input(2), input(3), input(2));
+        assertEquals(4, out.length);
+        assertOutput(1, out[0]);
+        assertOutput(2, out[1]);
+        assertOutput(3, out[2]);
+        assertOutput(2, out[3]);
+        assertEquals(3, underlying.count.get());
+        assertEquals(1, underlying.batches.get());
+        assertEquals(2, underlying.lastBatchSize);
+
+        //All hits: nothing is forwarded
+        out = exec.exec(input(3), input(2));
+        assertOutput(3, out[0]);
+        assertOutput(2, out[1]);
+        assertEquals(3, underlying.count.get());
+        assertEquals(1, underlying.batches.get());
+        exec.close();
+    }
+
+    @Test
+    public void testHitsAndEviction() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            CountingExecutor underlying = new CountingExecutor(null);
+            CachingPipelineExecutor exec = new CachingPipelineExecutor(underlying, null, 2, Long.MAX_VALUE, 0, offHeap);
+
+            assertOutput(1, exec.exec(input(1)));
+            assertOutput(1, exec.exec(input(1)));
+            assertEquals(1, underlying.count.get());
+
+            exec.exec(input(2));
+            exec.exec(input(1));        //Make input 2 the least recently used
+            exec.exec(input(3));
+            assertEquals(3, underlying.count.get());
+            assertEquals(2, exec.size());
+
+            exec.exec(input(1));
+            assertEquals(3, underlying.count.get());
+            exec.exec(input(2));
+            assertEquals(4, underlying.count.get());
+            exec.close();
+        }
+    }
+
+    @Test
+    public void testTtl() throws Exception {
+        CountingExecutor underlying = new CountingExecutor(null);
+        CachingPipelineExecutor exec = new CachingPipelineExecutor(underlying, null, 100, Long.MAX_VALUE, 50, false);
+        exec.exec(input(1));
+        exec.exec(input(1));
+        assertEquals(1, underlying.count.get());
+
+        Thread.sleep(100);
+        exec.exec(input(1));
+        assertEquals(2, underlying.count.get());
+        exec.close();
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        int n = 8;
+        CountDownLatch release = new CountDownLatch(1);
+        CountingExecutor underlying = new CountingExecutor(release);
+        CachingPipelineExecutor exec = new CachingPipelineExecutor(underlying, null, 100, Long.MAX_VALUE, 0, false);
+
+        ExecutorService es = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<Data>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                futures.add(es.submit(() -> exec.exec(input(1))));
+            }
+
+            //Wait for the first execution to start, and give the others time to arrive
+            while (underlying.count.get() == 0) {
+                Thread.sleep(5);
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<Data> f : futures) {
+                assertOutput(1, f.get(30, TimeUnit.SECONDS));
+            }
+            assertEquals(1, underlying.count.get());
+        } finally {
+            es.shutdownNow();
+            exec.close();
+        }
+    }
+
+    @Test
+    public void testFailuresNotCached() {
+        CountingExecutor underlying = new CountingExecutor(null);
+        CachingPipelineExecutor exec = new CachingPipelineExecutor(underlying, null, 100, Long.MAX_VALUE, 0, false);
+        for (int i = 0; i < 2; i++) {
+            try {
+                exec.exec(Data.singleton("fail", true));
+                fail("Expected exception");
+            } catch (IllegalStateException e) {
+                //Expected
+            }
+        }
+        assertEquals(2, underlying.count.get());
+        assertEquals(0, exec.size());
+        exec.close();
+    }
+
+    private static Data input(int i) {
+        return Data.singleton("in", NDArray.create(new float[][]{{i, i}}));
+    }
+
+    //An input backed by a read-only heap buffer, as for arrays deserialized without copying
+    private static Data readOnlyInput(int i) {
+        SerializedNDArray sa = NDArray.create(new float[][]{{i, i}}).getAs(SerializedNDArray.class);
+        ByteBuffer bb = sa.getBuffer().asReadOnlyBuffer().order(sa.getBuffer().order());
+        return Data.singleton("in", NDArray.create(new SerializedNDArray(sa.getType(), sa.getShape(), bb)));
+    }
+
+    private static void assertOutput(int i, Data out) {
+        assertEquals(Collections.singletonList("out"), out.keys());
+        assertArrayEquals(new float[][]{{2 * i, 2 * i}}, out.getNDArray("out").getAs(float[][].class));
+    }
+
+    private static class CountingExecutor implements PipelineExecutor {
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger batches = new AtomicInteger();
+        private volatile int lastBatchSize;
+        private final CountDownLatch release;
+
+        private CountingExecutor(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public Pipeline getPipeline() {
+            return null;
+        }
+
+        @Override
+        public List<PipelineStepRunner> getRunners() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Data[] exec(Data... data) {
+            batches.incrementAndGet();
+            lastBatchSize = data.length;
+            Data[] out = new Data[data.length];
+            for (int i = 0; i < data.length; i++) {
+                out[i] = exec(data[i]);
+            }
+            return out;
+        }
+
+        @Override
+        public Data exec(Data data) {
+            count.incrementAndGet();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            if (data.has("fail")) {
+                throw new IllegalStateException("Failed");
+            }
+
+            float[][] in = data.getNDArray("in").getAs(float[][].class);
+            float[][] out = new float[in.length][];
+            for (int i = 0; i < in.length; i++) {
+                out[i] = new float[in[i].length];
+                for (int j = 0; j < in[i].length; j++) {
+                    out[i][j] = 2 * in[i][j];
+                }
+            }
+            return Data.singleton("out", NDArray.create(out));
+        }
+
+        @Override
+        public Logger getLogger() {
+            return LoggerFactory.getLogger(CountingExecutor.class);
+        }
+
+        @Override
+        public void profilerConfig(ProfilerConfig profilerConfig) {
+        }
+
+        @Override
+        public Profiler profiler() {
+            return new NoOpProfiler();
+        }
+    }
+}
@@ -38,9 +38,17 @@ import org.junit.Test;
 import org.nd4j.shade.jackson.databind.ObjectMapper;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 import static org.junit.Assert.assertTrue;
 
 public class GraphPipelineTest {
@@ -253,4 +261,191 @@ public class GraphPipelineTest {
             assertEquals(outRight, outRight2);
         }
     }
+
+    @Test
+    public void testDiamondRepeatedExec() throws Exception {
+        //input -> (a, b) -> merge -> c: c must only execute once both branches are done, on every execution
+        GraphBuilder b = new GraphBuilder();
+        GraphStep input = b.input();
+
+        List<String> execOrder = Collections.synchronizedList(new ArrayList<>());
+        GraphStep left = input.then("a", new FunctionStep(d -> {
+            execOrder.add("a");
+            return Data.singleton("a", d.getString("in") + "_a");
+        }));
+        GraphStep right = input.then("b", new FunctionStep(d -> {
+            execOrder.add("b");
+            return Data.singleton("b", d.getString("in") + "_b");
+        }));
+        GraphStep merge = left.mergeWith("merge", right);
+        GraphStep out = merge.then("c", new FunctionStep(d -> {
+            execOrder.add("c");
+            return Data.singleton("c", d.getString("a") + "," + d.getString("b"));
+        }));
+
+        PipelineExecutor exec = b.build(out).executor();
+
+        for( int i = 0; i < 3; i++ ) {
+            execOrder.clear();
+            Data o = exec.exec(Data.singleton("in", "x" + i));
+            assertEquals(Data.singleton("c", "x" + i + "_a,x" + i + "_b"), o);
+            assertEquals(3, execOrder.size());
+            assertEquals("c", execOrder.get(2));
+        }
+
+        //Per-request state must not be shared between concurrent executions
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Data>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String v = "v" + i;
+                futures.add(es.submit(() -> exec.exec(Data.singleton("in", v))));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Data.singleton("c", "v" + i + "_a,v" + i + "_b"), futures.get(i).get());
+            }
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelBranches() throws Exception {
+        //Both branches wait for each other: this only completes if they are executed concurrently
+        CountDownLatch latch = new CountDownLatch(2);
+        GraphBuilder b = new GraphBuilder().parallelism(2);
+        GraphStep input = b.input();
+        GraphStep left = input.then("a", new FunctionStep(d -> {
+            await(latch);
+            return Data.singleton("a", d.getString("in") + "_a");
+        }));
+        GraphStep right = input.then("b", new FunctionStep(d -> {
+            await(latch);
+            return Data.singleton("b", d.getString("in") + "_b");
+        }));
+        GraphStep out = left.mergeWith("merge", right).then("c", new FunctionStep(d ->
+                Data.singleton("c", d.getString("a") + "," + d.getString("b"))));
+
+        PipelineExecutor exec = b.build(out).executor();
+        try {
+            assertEquals(Data.singleton("c", "x_a,x_b"), exec.exec(Data.singleton("in", "x")));
+        } finally {
+            exec.close();
+        }
+
+        //Failures in any branch should be propagated to the caller
+        GraphBuilder b2 = new GraphBuilder();
+        GraphStep in2 = b2.input();
+        GraphStep fail = in2.then("fail", new FunctionStep(d -> {
+            throw new IllegalStateException("Failed");
+        }));
+        GraphStep ok = in2.then("ok", new FunctionStep(d -> d));
+        Pipeline p2 = b2.build(fail.mergeWith("merge", ok));
+        ExecutorService es = Executors.newFixedThreadPool(2);
+        try {
+            new GraphPipelineExecutor((GraphPipeline) p2, es).exec(Data.singleton("in", "x"));
+            fail("Expected exception");
+        } catch (RuntimeException e){
+            assertTrue(e.getMessage(), e.getMessage().contains("\"fail\""));
+        } finally {
+            es.shutdownNow();
+        }
+
+        GraphBuilder b3 = new GraphBuilder().parallelism(4);
+        GraphPipeline p3 = b3.build(b3.input().then("count", new CountStep()));
+        GraphPipeline fromJson = (GraphPipeline) Pipeline.fromJson(p3.toJson());
+        assertEquals(p3, fromJson);
+        assertEquals(4, (int)fromJson.parallelism());
+    }
+
+    @Test
+    public void testParallelAnySkipsSlowBranch() throws Exception {
+        //input -> (fast, slow -> slow2) -> any: once "fast" is done, "slow2" should never be executed
+        AtomicBoolean slow2Executed = new AtomicBoolean();
+        GraphBuilder b = new GraphBuilder().parallelism(-1);
+        GraphStep input = b.input();
+        GraphStep fast = input.then("fast", new FunctionStep(d -> Data.singleton("out", "fast")));
+        GraphStep slow = input.then("slow", new FunctionStep(d -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            return Data.singleton("out", "slow");
+        })).then("slow2", new FunctionStep(d -> {
+            slow2Executed.set(true);
+            return d;
+        }));
+        GraphStep out = b.any("any", fast, slow);
+
+        PipelineExecutor exec = b.build(out).executor();
+        assertEquals(Data.singleton("out", "fast"), exec.exec(Data.singleton("in", "x")));
+        Thread.sleep(400);
+        assertFalse(slow2Executed.get());
+    }
+
+    @Test
+    public void testAnySkipsExclusiveBranch() throws Exception {
+        //input -> (fast, slow1 -> slow2 -> slow3) -> any -> post
+        //The AnyStep is not the output step, so the remaining branch must be skipped because of the AnyStep, not
+        //because the result is already available. "post" only completes once slow1 has finished
+        for(int parallelism : new int[]{0, -1}) {
+            AtomicBoolean slow2Executed = new AtomicBoolean();
+            AtomicBoolean slow3Executed = new AtomicBoolean();
+            CountDownLatch slow1Done = new CountDownLatch(1);
+            GraphBuilder b = new GraphBuilder().parallelism(parallelism);
+            GraphStep input = b.input();
+            GraphStep fast = input.then("fast", new FunctionStep(d -> Data.singleton("out", "fast")));
+            GraphStep slow = input.then("slow1", new FunctionStep(d -> {
+                sleep(200);
+                slow1Done.countDown();
+                return Data.singleton("out", "slow");
+            })).then("slow2", new FunctionStep(d -> {
+                slow2Executed.set(true);
+                return d;
+            })).then("slow3", new FunctionStep(d -> {
+                slow3Executed.set(true);
+                return d;
+            }));
+            GraphStep out = b.any("any", fast, slow).then("post", new FunctionStep(d -> {
+                try {
+                    assertTrue(slow1Done.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e){
+                    throw new RuntimeException(e);
+                }
+                sleep(200);
+                return d;
+            }));
+
+            PipelineExecutor exec = b.build(out).executor();
+            try {
+                assertEquals(Data.singleton("out", "fast"), exec.exec(Data.singleton("in", "x")));
+                sleep(200);
+                //Sequential mode: slow2 may be executed before the AnyStep, depending on the step order
+                if(parallelism != 0) {
+                    assertFalse(slow2Executed.get());
+                }
+                assertFalse(slow3Executed.get());
+            } finally {
+                exec.close();
+            }
+        }
+    }
+
+    private static void sleep(long millis){
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch){
+        latch.countDown();
+        try {
+            assertTrue("Branches were not executed in parallel", latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e){
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package ai.konduit.serving.pipeline.impl.step;
+
+import ai.konduit.serving.pipeline.api.data.BoundingBox;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.ValueType;
+import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.impl.pipeline.SequencePipeline;
+import ai.konduit.serving.pipeline.impl.step.bbox.nms.BoundingBoxNMSStep;
+import ai.konduit.serving.pipeline.impl.step.bbox.nms.NonMaxSuppression;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestBoundingBoxNMSStep {
+
+    private static List<BoundingBox> boxes() {
+        List<BoundingBox> l = new ArrayList<>();
+        l.add(BoundingBox.createXY(0.0, 0.4, 0.0, 0.4, "a", 0.8));
+        l.add(BoundingBox.createXY(0.02, 0.42, 0.0, 0.4, "a", 0.9));      //Overlaps box 0, higher probability
+        l.add(BoundingBox.createXY(0.02, 0.42, 0.0, 0.4, "b", 0.7));      //Same location, different class
+        l.add(BoundingBox.createXY(0.6, 0.9, 0.6, 0.9, "a", 0.6));        //No overlap
+        return l;
+    }
+
+    @Test
+    public void testPerClass() {
+        Pipeline p = SequencePipeline.builder()
+                .add(new BoundingBoxNMSStep()
+                        .inputName("in")
+                        .iouThreshold(0.5))
+                .build();
+
+        PipelineExecutor exec = p.executor();
+        Data in = Data.singletonList("in", boxes(), ValueType.BOUNDING_BOX);
+        in.put("other", "value");
+        Data out = exec.exec(in);
+
+        List<BoundingBox> l = boxes();
+        assertEquals(Arrays.asList(l.get(1), l.get(2), l.get(3)), out.getListBoundingBox(BoundingBoxNMSStep.DEFAULT_OUTPUT_NAME));
+        assertEquals("value", out.getString("other"));
+        assertFalse(out.has("in"));
+
+        assertEquals(p, Pipeline.fromJson(p.toJson()));
+        assertEquals(p, Pipeline.fromYaml(p.toYaml()));
+    }
+
+    @Test
+    public void testClassAgnostic() {
+        List<BoundingBox> l = boxes();
+        List<BoundingBox> out = NonMaxSuppression.apply(l, 0.5, true);
+        assertEquals(Arrays.asList(l.get(1), l.get(3)), out);
+
+        out = NonMaxSuppression.apply(l, 0.5, true, false, 0.5, 0.0, 1);
+        assertEquals(Arrays.asList(l.get(1)), out);
+    }
+
+    @Test
+    public void testSoftNms() {
+        List<BoundingBox> l = boxes();
+        List<BoundingBox> out = NonMaxSuppression.apply(l, 0.5, false, true, 0.5, 0.0, 0);
+        assertEquals(4, out.size());
+        //Lower probability overlapping box is kept, but with a decayed probability
+        assertEquals(l.get(1), out.get(1));
+        assertTrue(out.get(0).probability() < 0.8 * 0.5);
+        assertEquals(l.get(0).x1(), out.get(0).x1(), 1e-6);
+
+        out = NonMaxSuppression.apply(l, 0.5, false, true, 0.5, 0.5, 0);
+        assertEquals(Arrays.asList(l.get(1), l.get(2), l.get(3)), out);
+    }
+
+    @Test
+    public void testNmsVsBruteForce() {
+        Random r = new Random(12345);
+        int n = 2000;
+        float[] x1 = new float[n], y1 = new float[n], x2 = new float[n], y2 = new float[n], scores = new float[n];
+        int[] classes = new int[n];
+        for (int i = 0; i < n; i++) {
+            x1[i] = r.nextFloat() * 100;
+            y1[i] = r.nextFloat() * 100;
+            x2[i] = x1[i] + 5 + r.nextFloat() * 20;
+            y2[i] = y1[i] + 5 + r.nextFloat() * 20;
+            scores[i] = r.nextFloat();
+            classes[i] = r.nextInt(5);
+        }
+
+        int[] kept = NonMaxSuppression.nms(x1, y1, x2, y2, scores, classes, 0.5f, 0);
+
+        //Greedy reference implementation
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Float.compare(scores[b], scores[a]));
+        List<Integer> exp = new ArrayList<>();
+        for (int i : order) {
+            boolean keep = true;
+            for (int j : exp) {
+                if (classes[i] != classes[j])
+                    continue;
+                float w = Math.max(0, Math.min(x2[i], x2[j]) - Math.max(x1[i], x1[j]));
+                float h = Math.max(0, Math.min(y2[i], y2[j]) - Math.max(y1[i], y1[j]));
+                float inter = w * h;
+                float union = (x2[i] - x1[i]) * (y2[i] - y1[i]) + (x2[j] - x1[j]) * (y2[j] - y1[j]) - inter;
+                if (inter / union > 0.5f) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep)
+                exp.add(i);
+        }
+
+        int[] expArr = exp.stream().mapToInt(Integer::intValue).sorted().toArray();
+        Arrays.sort(kept);
+        assertArrayEquals(expArr, kept);
+    }
+}
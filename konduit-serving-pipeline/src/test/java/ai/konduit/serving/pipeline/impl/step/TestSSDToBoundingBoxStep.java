@@ -0,0 +1,72 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.pipeline.impl.step;
+
+import ai.konduit.serving.pipeline.api.data.BoundingBox;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
+import ai.konduit.serving.pipeline.impl.pipeline.SequencePipeline;
+import ai.konduit.serving.pipeline.impl.step.ml.ssd.SSDToBoundingBoxStep;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestSSDToBoundingBoxStep {
+
+    @Test
+    public void testNMS(){
+        //SSD order: [y1, x1, y2, x2]. Boxes 0 and 1 overlap and have the same label, box 2 is at the same location with
+        //a different label, box 3 is below the threshold
+        float[][][] boxes = {{
+                {0.1f, 0.1f, 0.5f, 0.5f},
+                {0.12f, 0.1f, 0.52f, 0.5f},
+                {0.1f, 0.1f, 0.5f, 0.5f},
+                {0.6f, 0.6f, 0.9f, 0.9f}}};
+        float[][] scores = {{0.9f, 0.8f, 0.7f, 0.1f}};
+        float[][] classes = {{1, 1, 2, 1}};
+
+        Data in = Data.singleton("detection_boxes", NDArray.create(boxes));
+        in.put("detection_scores", NDArray.create(scores));
+        in.put("detection_classes", NDArray.create(classes));
+
+        //No NMS by default
+        Pipeline p = SequencePipeline.builder()
+                .add(new SSDToBoundingBoxStep()
+                        .classLabels("a", "b"))
+                .build();
+        List<BoundingBox> l = p.executor().exec(in).getListBoundingBox(SSDToBoundingBoxStep.DEFAULT_OUTPUT_NAME);
+        assertEquals(3, l.size());
+
+        p = SequencePipeline.builder()
+                .add(new SSDToBoundingBoxStep()
+                        .classLabels("a", "b")
+                        .nmsThreshold(0.5))
+                .build();
+        l = p.executor().exec(in).getListBoundingBox(SSDToBoundingBoxStep.DEFAULT_OUTPUT_NAME);
+        assertEquals(2, l.size());
+        double sumProb = 0;
+        for(BoundingBox bb : l){
+            sumProb += bb.probability();
+        }
+        assertEquals(0.9 + 0.7, sumProb, 1e-5);
+    }
+}
@@ -129,4 +129,53 @@ public class TestYoloStep {
 
         }
     }
+
+    @Test
+    public void testYoloStepNMS(){
+        int mb = 2;
+        int cl = 2;
+        int b = 2;
+        int h = 4;
+        int w = 4;
+
+        //Both anchor boxes of cell (1,1) detect the same class 0 object, at almost the same position. Same for both examples
+        float[][][][][] f = new float[mb][b][cl+5][h][w];
+        for( int i=0; i<mb; i++ ){
+            for( int box=0; box<b; box++ ){
+                f[i][box][0][1][1] = box == 0 ? 0.5f : 0.6f;        //px
+                f[i][box][1][1][1] = 0.5f;                          //py
+                f[i][box][2][1][1] = 2.0f;                          //width
+                f[i][box][3][1][1] = 2.0f;                          //height
+                f[i][box][4][1][1] = 0.9f;                          //Confidence
+                f[i][box][5][1][1] = box == 0 ? 0.9f : 0.8f;        //class 0 prob
+                f[i][box][6][1][1] = 0.1f;                          //class 1 prob
+            }
+        }
+
+        NDArray arr = NDArray.create(f);
+        SerializedNDArray sa = arr.getAs(SerializedNDArray.class);
+        sa = new SerializedNDArray(NDArrayType.FLOAT, new long[]{mb, b * (cl + 5), h, w}, sa.getBuffer());      //Reshape
+        Data in = Data.singleton("in", NDArray.create(sa));
+
+        //Default: NMS applied per example - only the highest probability box of each example is kept
+        Pipeline p = SequencePipeline.builder()
+                .add(new YoloToBoundingBoxStep()
+                        .classLabels("a", "b"))
+                .build();
+        List<BoundingBox> l = p.executor().exec(in).getListBoundingBox(YoloToBoundingBoxStep.DEFAULT_OUTPUT_NAME);
+        assertEquals(2, l.size());
+        for(BoundingBox bb : l){
+            assertEquals("a", bb.label());
+            assertEquals(0.9, bb.probability(), 1e-6);
+        }
+
+        //NMS disabled
+        p = SequencePipeline.builder()
+                .add(new YoloToBoundingBoxStep()
+                        .classLabels("a", "b")
+                        .nmsThreshold(1.0))
+                .build();
+        l = p.executor().exec(in).getListBoundingBox(YoloToBoundingBoxStep.DEFAULT_OUTPUT_NAME);
+        assertEquals(4, l.size());
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.pipeline.registry;
+
+import ai.konduit.serving.pipeline.api.context.Context;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.step.PipelineStep;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunnerFactory;
+import ai.konduit.serving.pipeline.api.step.ShareableRunner;
+import ai.konduit.serving.pipeline.impl.testpipelines.count.CountPipelineFactory;
+import ai.konduit.serving.pipeline.impl.testpipelines.count.CountStep;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SharedRunnerRegistryTest {
+
+    @After
+    public void after(){
+        SharedRunnerRegistry.setEnabled(false);
+    }
+
+    @Test
+    public void testSharedRunners(){
+        SharedRunnerRegistry.setEnabled(true);
+        PipelineStepRunnerFactory f = new CountPipelineFactory();
+        AtomicInteger created = new AtomicInteger();
+
+        //Identical configurations: one runner, closed when the last reference is released
+        PipelineStepRunner r1 = SharedRunnerRegistry.acquire(new CountStep(1), f, () -> runner(created, true));
+        PipelineStepRunner r2 = SharedRunnerRegistry.acquire(new CountStep(1), f, () -> runner(created, true));
+        assertSame(r1, r2);
+        assertEquals(1, created.get());
+
+        //Different configuration: a different runner
+        PipelineStepRunner r3 = SharedRunnerRegistry.acquire(new CountStep(2), f, () -> runner(created, true));
+        assertNotSame(r1, r3);
+        assertEquals(2, created.get());
+
+        SharedRunnerRegistry.release(r1);
+        assertFalse(((TestRunner) r1).closed);
+        SharedRunnerRegistry.release(r2);
+        assertTrue(((TestRunner) r1).closed);
+        SharedRunnerRegistry.release(r3);
+        assertTrue(((TestRunner) r3).closed);
+        assertEquals(0, SharedRunnerRegistry.numShared());
+
+        //Released runners are not reused
+        PipelineStepRunner r4 = SharedRunnerRegistry.acquire(new CountStep(1), f, () -> runner(created, true));
+        assertNotSame(r1, r4);
+        SharedRunnerRegistry.release(r4);
+
+        //Runners that are not thread-safe are never shared
+        PipelineStepRunner n1 = SharedRunnerRegistry.acquire(new CountStep(1), f, () -> runner(created, false));
+        PipelineStepRunner n2 = SharedRunnerRegistry.acquire(new CountStep(1), f, () -> runner(created, false));
+        assertNotSame(n1, n2);
+        SharedRunnerRegistry.release(n1);
+        assertTrue(((TestRunner) n1).closed);
+        assertFalse(((TestRunner) n2).closed);
+        SharedRunnerRegistry.release(n2);
+    }
+
+    @Test
+    public void testDisabledByDefault(){
+        //Only the server enables sharing: executors created directly each get their own runners
+        assertFalse(SharedRunnerRegistry.isEnabled());
+    }
+
+    @Test
+    public void testDisabled(){
+        SharedRunnerRegistry.setEnabled(false);
+        PipelineStepRunnerFactory f = new CountPipelineFactory();
+        AtomicInteger created = new AtomicInteger();
+        PipelineStepRunner r1 = SharedRunnerRegistry.acquire(new CountStep(1), f, () -> runner(created, true));
+        PipelineStepRunner r2 = SharedRunnerRegistry.acquire(new CountStep(1), f, () -> runner(created, true));
+        assertNotSame(r1, r2);
+        assertEquals(0, SharedRunnerRegistry.numShared());
+        SharedRunnerRegistry.release(r1);
+        SharedRunnerRegistry.release(r2);
+        assertTrue(((TestRunner) r1).closed);
+    }
+
+    private static PipelineStepRunner runner(AtomicInteger created, boolean shareable){
+        return shareable ? new ShareableTestRunner(created) : new TestRunner(created);
+    }
+
+    private static class TestRunner implements PipelineStepRunner {
+        private boolean closed;
+
+        private TestRunner(AtomicInteger created){
+            created.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public PipelineStep getPipelineStep() {
+            return null;
+        }
+
+        @Override
+        public Data exec(Context ctx, Data data) {
+            return data;
+        }
+    }
+
+    private static class ShareableTestRunner extends TestRunner implements ShareableRunner {
+        private ShareableTestRunner(AtomicInteger created){
+            super(created);
+        }
+    }
+}
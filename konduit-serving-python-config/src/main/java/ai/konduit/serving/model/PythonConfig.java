@@ -109,6 +109,21 @@ public class PythonConfig implements Serializable, TextConfig {
     @Builder.Default
     private String jobSuffix = "konduit_job";
 
+    @Builder.Default
+    @Schema(description = "Where the python code is executed. IN_PROCESS uses the python interpreter embedded in the JVM, where only " +
+            "one thread can execute python code at a time (the GIL is shared by all python steps). PROCESS_POOL executes the code in a pool " +
+            "of separate python worker processes, each with its own GIL.", defaultValue = "IN_PROCESS")
+    private PythonExecutionMode executionMode = PythonExecutionMode.IN_PROCESS;
+
+    @Builder.Default
+    @Schema(description = "Number of python worker processes, for the PROCESS_POOL execution mode. 0 means one worker per available processor.",
+            defaultValue = "0")
+    private int workers = 0;
+
+    @Schema(description = "Path of the python executable for the worker processes of the PROCESS_POOL execution mode. If not specified, " +
+            "the executable is resolved from the python config type, falling back to the python executable bundled with javacpp.")
+    private String pythonExecutable;
+
     public String resolvePythonLibrariesPath() {
         if(pythonConfigType == null) {
             log.info("Python config type not specified...");
@@ -245,4 +260,9 @@ public class PythonConfig implements Serializable, TextConfig {
         STATIC,
         DYNAMIC
     }
+
+    public enum PythonExecutionMode {
+        IN_PROCESS,
+        PROCESS_POOL
+    }
 }
@@ -17,6 +17,7 @@ package ai.konduit.serving.python;
 
 import ai.konduit.serving.annotation.runner.CanRun;
 import ai.konduit.serving.data.nd4j.data.ND4JNDArray;
+import ai.konduit.serving.model.PythonConfig;
 import ai.konduit.serving.model.PythonIO;
 import ai.konduit.serving.pipeline.api.context.Context;
 import ai.konduit.serving.pipeline.api.data.Data;
@@ -32,6 +33,7 @@ import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.python4j.PythonExecutioner;
 import org.nd4j.python4j.PythonGIL;
+import org.nd4j.python4j.PythonTypes;
 import org.nd4j.python4j.PythonVariable;
 import org.nd4j.python4j.PythonVariables;
 
@@ -40,6 +42,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.bytedeco.cpython.global.python.PyGILState_Check;
 
@@ -47,8 +50,13 @@ import static org.bytedeco.cpython.global.python.PyGILState_Check;
 @Slf4j
 public class PythonRunner implements PipelineStepRunner {
 
+    private static final AtomicInteger COMPILED_CODE_COUNTER = new AtomicInteger();
+
     private PythonStep pythonStep;
     private String code;
+    //Name of the python global holding the compiled code object, for the IN_PROCESS execution mode
+    private String compiledCodeName;
+    private PythonWorkerPool workerPool;
 
 
     @SneakyThrows
@@ -97,16 +105,28 @@ public class PythonRunner implements PipelineStepRunner {
             log.info("Resolving import code from " + pythonStep.pythonConfig().getImportCodePath());
         }
 
-        if(importCode != null) {
+        if(pythonStep.pythonConfig().getExecutionMode() == PythonConfig.PythonExecutionMode.PROCESS_POOL) {
+            this.workerPool = new PythonWorkerPool(pythonStep.pythonConfig(), this.code, importCode);
+        } else {
+            //Compile the code once, rather than having the interpreter parse it again on every execution
+            this.compiledCodeName = "__konduit_python_step_" + COMPILED_CODE_COUNTER.getAndIncrement();
+            PythonVariables source = new PythonVariables();
+            source.add(compiledCodeName, PythonTypes.STR, this.code);
             try(PythonGIL ignored = PythonGIL.lock()) {
-                PythonExecutioner.exec(importCode);
+                if(importCode != null) {
+                    PythonExecutioner.exec(importCode);
+                }
+                PythonExecutioner.exec(compiledCodeName + " = compile(" + compiledCodeName + ", '<python_step>', 'exec')", source, null);
             }
         }
     }
 
     @Override
     public void close() {
-
+        if(workerPool != null) {
+            workerPool.close();
+            workerPool = null;
+        }
     }
 
     @Override
@@ -118,24 +138,25 @@ public class PythonRunner implements PipelineStepRunner {
     @Override
     public Data exec(Context ctx, Data data) {
         Data ret = Data.empty();
-        System.out.println("Creating outputs");
         PythonVariables outputs = KonduitPythonUtils.createOutputVariables(pythonStep.pythonConfig());
-        System.out.println("Created outputs");
         PythonVariables pythonVariables = KonduitPythonUtils.createPythonVariablesFromDataInput(data, pythonStep.pythonConfig());
-        System.out.println("After created python variables");
+        if(workerPool != null) {
+            workerPool.exec(pythonVariables, outputs);
+            convertOutputs(ret, outputs);
+            return ret;
+        }
+
         try(PythonGIL ignored = PythonGIL.lock()) {
             log.debug("Thread " + Thread.currentThread().getId() + " has the GIL. Name of thread " + Thread.currentThread().getName());
             log.debug("Py gil state " + (PyGILState_Check() > 0));
-            runExec(ret, outputs, pythonVariables);
+            PythonExecutioner.exec("exec(" + compiledCodeName + ")", pythonVariables, outputs);
+            convertOutputs(ret, outputs);
         }
 
         return ret;
     }
 
-    private void runExec(Data ret, PythonVariables outputs, PythonVariables pythonVariables) throws IOException {
-        System.out.println("Before execution of code " + code);
-        PythonExecutioner.exec(code, pythonVariables, outputs);
-        System.out.println("After execution of code " + code);
+    private void convertOutputs(Data ret, PythonVariables outputs) throws IOException {
         Preconditions.checkNotNull(outputs,"No outputs found!");
         for(PythonVariable variable : outputs) {
             PythonIO pythonIO = pythonStep.pythonConfig().getIoOutputs().get(variable.getName());
@@ -160,9 +181,7 @@ public class PythonRunner implements PipelineStepRunner {
                             pythonStep.pythonConfig());
                     break;
                 case "numpy.ndarray":
-                    System.out.println("Before insert ndarray");
                     ret.put(variable.getName(),new ND4JNDArray(KonduitPythonUtils.getWithType(outputs,variable.getName(),INDArray.class)));
-                    System.out.println("After insert ndarray");
                     break;
                 case "str":
                     ret.put(variable.getName(),KonduitPythonUtils.getWithType(outputs,variable.getName(),String.class));
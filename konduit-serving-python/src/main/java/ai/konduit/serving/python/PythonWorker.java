@@ -0,0 +1,302 @@
+/* ******************************************************************************
+ * Copyright (c) 2022 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+package ai.konduit.serving.python;
+
+import ai.konduit.serving.data.nd4j.format.ND4JConverters;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import ai.konduit.serving.pipeline.impl.serde.NpyFormat;
+import ai.konduit.serving.pipeline.util.ObjectMappers;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.python4j.PythonException;
+import org.nd4j.python4j.PythonVariable;
+import org.nd4j.python4j.PythonVariables;
+import org.nd4j.shade.jackson.databind.DeserializationFeature;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A python worker process, for the {@link ai.konduit.serving.model.PythonConfig.PythonExecutionMode#PROCESS_POOL}
+ * execution mode. The worker runs {@code konduit_python_worker.py}: control messages are sent over the stdin/stdout
+ * of the process, while NDArrays and bytes go through a memory mapped file shared by both processes. Input arrays are
+ * copied into the shared memory once and used by python without further copies.
+ * <p>
+ * A worker executes one request at a time. After an {@link IOException}, the worker is no longer usable
+ * (see {@link #isAlive()}) and should be replaced.
+ */
+@Slf4j
+class PythonWorker implements Closeable {
+
+    private static final int INITIAL_SHARED_MEMORY_SIZE = 16 * 1024 * 1024;
+    private static final int ALIGNMENT = 64;
+
+    private final File sharedMemoryFile;
+    private final FileChannel channel;
+    private MappedByteBuffer sharedMemory;
+
+    private final Process process;
+    private final DataOutputStream toWorker;
+    private final DataInputStream fromWorker;
+    private volatile boolean alive = true;
+
+    private final ND4JConverters.Nd4jToSerializedConverter toSerialized = new ND4JConverters.Nd4jToSerializedConverter();
+    private final ND4JConverters.SerializedToNd4jArrConverter toNd4j = new ND4JConverters.SerializedToNd4jArrConverter();
+
+    PythonWorker(List<String> command, Map<String, String> environment, String code, String importCode,
+                 PythonVariables outputs) throws IOException {
+        sharedMemoryFile = createSharedMemoryFile();
+        channel = FileChannel.open(sharedMemoryFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(INITIAL_SHARED_MEMORY_SIZE);
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+        processBuilder.environment().putAll(environment);
+        try {
+            process = processBuilder.start();
+        } catch (IOException e) {
+            closeSharedMemory();
+            throw e;
+        }
+        toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        fromWorker = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+
+        Map<String, String> outputTypes = new LinkedHashMap<>();
+        for (PythonVariable<?> variable : outputs) {
+            outputTypes.put(variable.getName(), variable.getType().getName());
+        }
+
+        Map<String, Object> init = new LinkedHashMap<>();
+        init.put("op", "init");
+        init.put("shm", sharedMemoryFile.getAbsolutePath());
+        init.put("code", code);
+        init.put("import_code", importCode);
+        init.put("outputs", outputTypes);
+        try {
+            request(init);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Execute the code with the given inputs, setting the values of the given output variables
+     */
+    synchronized void exec(PythonVariables inputs, PythonVariables outputs) throws IOException {
+        Map<String, Object> encodedInputs = new LinkedHashMap<>();
+        long offset = 0;
+        for (PythonVariable<?> variable : inputs) {
+            Object value = variable.getValue();
+            if (value instanceof INDArray) {
+                SerializedNDArray arr = toSerialized.convert((INDArray) value);
+                byte[] header = NpyFormat.header(arr);
+                ByteBuffer data = NpyFormat.data(arr);
+                offset = align(offset);
+                long length = header.length + data.remaining();
+                ensureCapacity(offset + length);
+                ByteBuffer target = sharedMemory.duplicate();
+                ((Buffer) target).position((int) offset);
+                target.put(header).put(data);
+                encodedInputs.put(variable.getName(), region("ndarray", offset, length));
+                offset += length;
+            } else if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                offset = align(offset);
+                ensureCapacity(offset + bytes.length);
+                ByteBuffer target = sharedMemory.duplicate();
+                ((Buffer) target).position((int) offset);
+                target.put(bytes);
+                encodedInputs.put(variable.getName(), region("bytes", offset, bytes.length));
+                offset += bytes.length;
+            } else {
+                checkJsonValue(variable.getName(), value);
+                Map<String, Object> v = new LinkedHashMap<>();
+                v.put("t", "value");
+                v.put("v", value);
+                encodedInputs.put(variable.getName(), v);
+            }
+        }
+
+        Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("op", "exec");
+        msg.put("shm_size", sharedMemory.capacity());
+        msg.put("outputs_offset", align(offset));
+        msg.put("inputs", encodedInputs);
+        Map<String, Object> response = request(msg);
+
+        long size = ((Number) response.get("shm_size")).longValue();
+        if (size > sharedMemory.capacity())
+            map(size);
+
+        Map<String, Map<String, Object>> encodedOutputs = (Map<String, Map<String, Object>>) response.get("outputs");
+        for (PythonVariable variable : outputs) {
+            Map<String, Object> o = encodedOutputs.get(variable.getName());
+            if (o == null)
+                throw new IllegalStateException("No value was returned by the python worker for output " + variable.getName());
+            variable.setValue(decode(variable.getType().getName(), o));
+        }
+    }
+
+    boolean isAlive() {
+        return alive && process.isAlive();
+    }
+
+    @Override
+    public void close() {
+        alive = false;
+        try {
+            Map<String, Object> shutdown = Collections.singletonMap("op", "shutdown");
+            write(shutdown);
+        } catch (IOException e) {
+            //Process has already exited
+        }
+
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        }
+        closeSharedMemory();
+    }
+
+    private Object decode(String pythonType, Map<String, Object> o) {
+        String t = (String) o.get("t");
+        if ("ndarray".equals(t) || "bytes".equals(t)) {
+            int offset = ((Number) o.get("offset")).intValue();
+            int length = ((Number) o.get("length")).intValue();
+            ByteBuffer view = sharedMemory.duplicate();
+            ((Buffer) view).position(offset);
+            ((Buffer) view).limit(offset + length);
+            view = view.slice();
+
+            if ("bytes".equals(t)) {
+                byte[] bytes = new byte[length];
+                view.get(bytes);
+                return bytes;
+            }
+
+            //The shared memory is reused by the next execution, so the array data has to be copied out
+            SerializedNDArray arr = NpyFormat.read(view);
+            ByteBuffer copy = ByteBuffer.allocate(arr.getBuffer().remaining()).order(ByteOrder.LITTLE_ENDIAN);
+            copy.put(arr.getBuffer().duplicate());
+            ((Buffer) copy).flip();
+            return toNd4j.convert(new SerializedNDArray(arr.getType(), arr.getShape(), copy));
+        }
+
+        Object value = o.get("v");
+        switch (pythonType) {
+            case "int":
+                return ((Number) value).longValue();
+            case "float":
+                return ((Number) value).doubleValue();
+            default:
+                return value;
+        }
+    }
+
+    private static void checkJsonValue(String name, Object value) {
+        if (value instanceof Collection) {
+            for (Object o : (Collection<?>) value) {
+                if (o instanceof INDArray || o instanceof byte[])
+                    throw new UnsupportedOperationException("Lists of NDArrays or bytes are not supported in the PROCESS_POOL python " +
+                            "execution mode: input " + name);
+            }
+        }
+    }
+
+    private Map<String, Object> request(Map<String, Object> msg) throws IOException {
+        write(msg);
+        Map<String, Object> response;
+        try {
+            int length = fromWorker.readInt();
+            byte[] bytes = new byte[length];
+            fromWorker.readFully(bytes);
+            response = ObjectMappers.json().readerFor(Map.class)
+                    .with(DeserializationFeature.USE_LONG_FOR_INTS)
+                    .readValue(bytes);
+        } catch (IOException e) {
+            alive = false;
+            throw new IOException("Error reading response from python worker process", e);
+        }
+
+        if (!Boolean.TRUE.equals(response.get("ok")))
+            throw new PythonException("Python worker execution failed: " + response.get("error"));
+        return response;
+    }
+
+    private void write(Map<String, Object> msg) throws IOException {
+        try {
+            byte[] bytes = ObjectMappers.json().writeValueAsBytes(msg);
+            toWorker.writeInt(bytes.length);
+            toWorker.write(bytes);
+            toWorker.flush();
+        } catch (IOException e) {
+            alive = false;
+            throw e;
+        }
+    }
+
+    private void ensureCapacity(long required) throws IOException {
+        if (required > sharedMemory.capacity())
+            map(Math.max(required, 2L * sharedMemory.capacity()));
+    }
+
+    private void map(long size) throws IOException {
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalStateException("Python worker inputs and outputs must be smaller than 2GB in total, got " + size + " bytes");
+        sharedMemory = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void closeSharedMemory() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Error closing python worker shared memory file {}", sharedMemoryFile, e);
+        }
+        if (!sharedMemoryFile.delete())
+            sharedMemoryFile.deleteOnExit();
+    }
+
+    private static Map<String, Object> region(String type, long offset, long length) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("t", type);
+        m.put("offset", offset);
+        m.put("length", length);
+        return m;
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static File createSharedMemoryFile() throws IOException {
+        //On Linux, /dev/shm is backed by memory rather than disk
+        File shm = new File("/dev/shm");
+        File dir = shm.isDirectory() && shm.canWrite() ? shm : null;
+        return File.createTempFile("konduit-python-worker-", ".shm", dir);
+    }
+}
@@ -0,0 +1,196 @@
+/* ******************************************************************************
+ * Copyright (c) 2022 Konduit K.K.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ ******************************************************************************/
+package ai.konduit.serving.python;
+
+import ai.konduit.serving.model.PythonConfig;
+import ai.konduit.serving.pipeline.api.python.PythonPathUtils;
+import ai.konduit.serving.pipeline.api.python.models.CondaDetails;
+import ai.konduit.serving.pipeline.api.python.models.PythonDetails;
+import ai.konduit.serving.pipeline.api.python.models.VenvDetails;
+import ai.konduit.serving.python.util.KonduitPythonUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.bytedeco.javacpp.Loader;
+import org.nd4j.python4j.PythonVariables;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+
+/**
+ * A pool of {@link PythonWorker} processes, for the {@link PythonConfig.PythonExecutionMode#PROCESS_POOL} execution
+ * mode. Each worker has its own interpreter (and GIL), so up to {@link PythonConfig#getWorkers()} executions of the
+ * python code can run in parallel. Workers that die are replaced on their next use.
+ */
+@Slf4j
+public class PythonWorkerPool implements Closeable {
+
+    private static final String WORKER_SCRIPT = "konduit_python_worker.py";
+    private static File workerScript;
+
+    private final List<String> command;
+    private final Map<String, String> environment;
+    private final String code;
+    private final String importCode;
+    private final PythonVariables outputs;
+    private final BlockingQueue<PythonWorker> idle = new LinkedBlockingQueue<>();
+    private final List<PythonWorker> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    public PythonWorkerPool(PythonConfig pythonConfig, String code, String importCode) throws IOException {
+        this.code = code;
+        this.importCode = importCode;
+        this.outputs = KonduitPythonUtils.createOutputVariables(pythonConfig);
+        this.environment = new HashMap<>();
+
+        String executable = resolveExecutable(pythonConfig);
+        if (executable == null) {
+            //Python bundled with javacpp, along with the numpy package
+            executable = Loader.load(org.bytedeco.cpython.python.class);
+            String pythonPath = Arrays.stream(org.bytedeco.numpy.presets.numpy.cachePackages())
+                    .map(File::getAbsolutePath)
+                    .collect(Collectors.joining(File.pathSeparator));
+            if (pythonConfig.getPythonLibrariesPath() != null)
+                pythonPath = pythonPath + File.pathSeparator + pythonConfig.getPythonLibrariesPath();
+            environment.put("PYTHONPATH", pythonPath);
+        }
+        this.command = Arrays.asList(executable, "-u", workerScript().getAbsolutePath());
+
+        int n = pythonConfig.getWorkers() > 0 ? pythonConfig.getWorkers() : Runtime.getRuntime().availableProcessors();
+        log.info("Starting {} python worker processes with {}", n, executable);
+        try {
+            for (int i = 0; i < n; i++) {
+                idle.add(startWorker());
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Execute the python code on the next available worker, blocking until one is available
+     *
+     * @param inputs  Input variables
+     * @param outputs Output variables. Their values are set from the outputs of the python code
+     */
+    public void exec(PythonVariables inputs, PythonVariables outputs) throws IOException, InterruptedException {
+        if (closed)
+            throw new IllegalStateException("Python worker pool has been closed");
+
+        PythonWorker worker = idle.take();
+        try {
+            if (!worker.isAlive()) {
+                log.warn("Python worker process has exited. Starting a new worker");
+                worker = replace(worker);
+            }
+            worker.exec(inputs, outputs);
+        } finally {
+            idle.add(worker);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (workers) {
+            for (PythonWorker w : workers) {
+                w.close();
+            }
+            workers.clear();
+        }
+        idle.clear();
+    }
+
+    private PythonWorker startWorker() throws IOException {
+        PythonWorker w = new PythonWorker(command, environment, code, importCode, outputs);
+        synchronized (workers) {
+            workers.add(w);
+        }
+        return w;
+    }
+
+    private PythonWorker replace(PythonWorker worker) throws IOException {
+        worker.close();
+        synchronized (workers) {
+            workers.remove(worker);
+        }
+        return startWorker();
+    }
+
+    /**
+     * @return The python executable for the configuration, or null if the python bundled with javacpp should be used
+     */
+    private static String resolveExecutable(PythonConfig pythonConfig) {
+        if (pythonConfig.getPythonExecutable() != null)
+            return pythonConfig.getPythonExecutable();
+
+        if (pythonConfig.getPythonConfigType() == null) {
+            //Same resolution order as PythonConfig#resolvePythonLibrariesPath()
+            List<CondaDetails> condaInstalls = PythonPathUtils.findCondaInstallations();
+            if (!condaInstalls.isEmpty())
+                return findPython(condaInstalls.get(0).environments(), "base", "conda environment");
+            List<PythonDetails> pythonInstalls = PythonPathUtils.findPythonInstallations();
+            return pythonInstalls.isEmpty() ? null : pythonInstalls.get(0).path();
+        }
+
+        switch (pythonConfig.getPythonConfigType()) {
+            case PYTHON:
+                return findPython(PythonPathUtils.findPythonInstallations(), pythonConfig.getPythonPath(), "python install");
+            case CONDA:
+                return findPython(PythonConfig.findCondaDetails(pythonConfig.getPythonPath()).environments(),
+                        pythonConfig.getEnvironmentName(), "conda environment");
+            case VENV:
+                for (VenvDetails venv : PythonPathUtils.findVenvInstallations()) {
+                    if (venv.id().equals(pythonConfig.getPythonPath()))
+                        return PythonPathUtils.getVenvPythonFile(venv.path()).getAbsolutePath();
+                }
+                throw new IllegalStateException("No venv found with id " + pythonConfig.getPythonPath());
+            case CUSTOM:
+                return pythonConfig.getPythonPath();
+            case JAVACPP:
+            default:
+                return null;
+        }
+    }
+
+    private static String findPython(List<PythonDetails> installs, String id, String description) {
+        for (PythonDetails d : installs) {
+            if (d.id().equals(id))
+                return d.path();
+        }
+        throw new IllegalStateException("No " + description + " found with id " + id);
+    }
+
+    private static synchronized File workerScript() throws IOException {
+        if (workerScript == null || !workerScript.exists()) {
+            File f = File.createTempFile("konduit_python_worker", ".py");
+            f.deleteOnExit();
+            try (InputStream in = PythonWorkerPool.class.getResourceAsStream(WORKER_SCRIPT)) {
+                if (in == null)
+                    throw new IllegalStateException("Python worker script " + WORKER_SCRIPT + " not found on the classpath");
+                FileUtils.copyInputStreamToFile(in, f);
+            }
+            workerScript = f;
+        }
+        return workerScript;
+    }
+}
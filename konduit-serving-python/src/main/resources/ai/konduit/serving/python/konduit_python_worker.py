@@ -0,0 +1,209 @@
+# ******************************************************************************
+# Copyright (c) 2022 Konduit K.K.
+#
+# This program and the accompanying materials are made available under the
+# terms of the Apache License, Version 2.0 which is available at
+# https://www.apache.org/licenses/LICENSE-2.0.
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+# WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+# License for the specific language governing permissions and limitations
+# under the License.
+#
+# SPDX-License-Identifier: Apache-2.0
+# ******************************************************************************
+
+# Python worker process for the PROCESS_POOL execution mode of the python step (see PythonWorker.java).
+#
+# Messages are exchanged over stdin/stdout as a 4 byte big endian length followed by UTF-8 JSON.
+# Arrays and bytes are not sent in the messages: they are written to a memory mapped file shared with the JVM
+# (in .npy format for arrays) and only their offsets and lengths are sent. Input arrays are views of the shared
+# memory, not copies.
+
+import ast
+import io
+import json
+import mmap
+import os
+import struct
+import sys
+import traceback
+
+import numpy as np
+
+ALIGNMENT = 64
+
+
+class SharedMemory(object):
+    def __init__(self, path):
+        self.fd = os.open(path, os.O_RDWR)
+        self.size = 0
+        self.mm = None
+
+    def ensure(self, size):
+        file_size = os.fstat(self.fd).st_size
+        if file_size < size:
+            file_size = max(size, 2 * file_size)
+            os.ftruncate(self.fd, file_size)
+        if self.mm is None or self.size != file_size:
+            # The previous mapping isn't closed explicitly: arrays from previous executions may still reference it
+            self.mm = mmap.mmap(self.fd, file_size)
+            self.size = file_size
+
+
+def align(offset):
+    return (offset + ALIGNMENT - 1) // ALIGNMENT * ALIGNMENT
+
+
+def read_npy(mm, offset, length):
+    buf = memoryview(mm)[offset:offset + length]
+    major = buf[6]
+    if major == 1:
+        header_length = struct.unpack_from('<H', buf, 8)[0]
+        start = 10
+    else:
+        header_length = struct.unpack_from('<I', buf, 8)[0]
+        start = 12
+    header = ast.literal_eval(bytes(buf[start:start + header_length]).decode('latin1'))
+    shape = tuple(header['shape'])
+    count = int(np.prod(shape)) if len(shape) > 0 else 1
+    arr = np.frombuffer(buf, dtype=np.dtype(header['descr']), count=count, offset=start + header_length)
+    return arr.reshape(shape)
+
+
+def write_npy(shm, offset, value):
+    arr = np.asarray(value)
+    if not arr.flags['C_CONTIGUOUS']:
+        arr = np.ascontiguousarray(arr)
+    if arr.dtype.byteorder == '>':
+        arr = arr.astype(arr.dtype.newbyteorder('<'))
+    header_buffer = io.BytesIO()
+    np.lib.format.write_array_header_1_0(header_buffer, np.lib.format.header_data_from_array_1_0(arr))
+    header = header_buffer.getvalue()
+    length = len(header) + arr.nbytes
+    shm.ensure(offset + length)
+    shm.mm[offset:offset + len(header)] = header
+    if arr.size > 0:
+        target = np.frombuffer(shm.mm, dtype=arr.dtype, count=arr.size, offset=offset + len(header))
+        target[...] = arr.reshape(-1)
+    return length
+
+
+def write_bytes(shm, offset, value):
+    value = bytes(value)
+    shm.ensure(offset + len(value))
+    shm.mm[offset:offset + len(value)] = value
+    return len(value)
+
+
+def to_json(o):
+    if isinstance(o, np.generic):
+        return o.item()
+    if isinstance(o, np.ndarray):
+        return o.tolist()
+    raise TypeError('Object of type %s is not JSON serializable' % type(o).__name__)
+
+
+def convert(value, python_type):
+    if python_type == 'int':
+        return int(value)
+    if python_type == 'float':
+        return float(value)
+    if python_type == 'bool':
+        return bool(value)
+    if python_type == 'str':
+        return str(value)
+    if python_type == 'list':
+        return list(value)
+    return value
+
+
+class Worker(object):
+    def __init__(self, msg):
+        self.shm = SharedMemory(msg['shm'])
+        self.output_types = msg['outputs']
+        self.globals = {'__name__': '__main__', '__builtins__': __builtins__}
+        if msg.get('import_code'):
+            exec(compile(msg['import_code'], '<python_step_import>', 'exec'), self.globals)
+        self.code = compile(msg['code'], '<python_step>', 'exec')
+
+    def execute(self, msg):
+        self.shm.ensure(msg['shm_size'])
+        for name, v in msg['inputs'].items():
+            t = v['t']
+            if t == 'ndarray':
+                self.globals[name] = read_npy(self.shm.mm, v['offset'], v['length'])
+            elif t == 'bytes':
+                self.globals[name] = self.shm.mm[v['offset']:v['offset'] + v['length']]
+            else:
+                self.globals[name] = v['v']
+
+        exec(self.code, self.globals)
+
+        outputs = {}
+        offset = msg['outputs_offset']
+        for name, python_type in self.output_types.items():
+            if name not in self.globals:
+                raise NameError("Output variable '%s' was not defined by the python code" % name)
+            value = self.globals[name]
+            if python_type == 'numpy.ndarray':
+                offset = align(offset)
+                length = write_npy(self.shm, offset, value)
+                outputs[name] = {'t': 'ndarray', 'offset': offset, 'length': length}
+                offset += length
+            elif python_type == 'bytes':
+                offset = align(offset)
+                length = write_bytes(self.shm, offset, value)
+                outputs[name] = {'t': 'bytes', 'offset': offset, 'length': length}
+                offset += length
+            else:
+                outputs[name] = {'t': 'value', 'v': convert(value, python_type)}
+        return {'ok': True, 'shm_size': self.shm.size, 'outputs': outputs}
+
+
+def read_message(f):
+    header = f.read(4)
+    if len(header) < 4:
+        return None
+    length = struct.unpack('>I', header)[0]
+    return json.loads(f.read(length).decode('utf-8'))
+
+
+def write_message(f, msg):
+    data = json.dumps(msg, default=to_json).encode('utf-8')
+    f.write(struct.pack('>I', len(data)))
+    f.write(data)
+    f.flush()
+
+
+def main():
+    protocol_in = os.fdopen(os.dup(0), 'rb')
+    protocol_out = os.fdopen(os.dup(1), 'wb')
+    # Anything the python code prints goes to stderr, so that it can't corrupt the protocol
+    devnull = os.open(os.devnull, os.O_RDONLY)
+    os.dup2(devnull, 0)
+    os.dup2(2, 1)
+    sys.stdout = sys.stderr
+
+    worker = None
+    while True:
+        msg = read_message(protocol_in)
+        if msg is None or msg['op'] == 'shutdown':
+            break
+        try:
+            if msg['op'] == 'init':
+                worker = Worker(msg)
+                response = {'ok': True}
+            else:
+                response = worker.execute(msg)
+        except BaseException:
+            response = {'ok': False, 'error': traceback.format_exc()}
+        try:
+            write_message(protocol_out, response)
+        except TypeError:
+            write_message(protocol_out, {'ok': False, 'error': traceback.format_exc()})
+
+
+if __name__ == '__main__':
+    main()
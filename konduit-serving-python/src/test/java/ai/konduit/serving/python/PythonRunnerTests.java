@@ -21,6 +21,7 @@ import ai.konduit.serving.model.PythonConfig;
 import ai.konduit.serving.model.PythonIO;
 import ai.konduit.serving.pipeline.api.data.*;
 import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.api.python.models.PythonConfigType;
 import ai.konduit.serving.pipeline.impl.pipeline.SequencePipeline;
 import ai.konduit.serving.python.util.KonduitPythonUtils;
 import org.apache.commons.io.FileUtils;
@@ -73,6 +74,37 @@ public class PythonRunnerTests {
 
     }
 
+    @Test
+    public void testProcessPool() {
+        PythonConfig config = PythonConfig.builder()
+                .pythonConfigType(PythonConfigType.JAVACPP)
+                .executionMode(PythonConfig.PythonExecutionMode.PROCESS_POOL)
+                .workers(2)
+                .importCode("import numpy as np")
+                .pythonCode("arr = arr * 2\ncount = count + 1")
+                .ioInput("arr", PythonIO.builder().name("arr").pythonType("numpy.ndarray").build())
+                .ioInput("count", PythonIO.builder().name("count").pythonType("int").build())
+                .ioOutput("arr", PythonIO.builder().name("arr").pythonType("numpy.ndarray").build())
+                .ioOutput("count", PythonIO.builder().name("count").pythonType("int").build())
+                .build();
+
+        PipelineExecutor executor = SequencePipeline.builder()
+                .add(new PythonStep().pythonConfig(config))
+                .build()
+                .executor();
+        try {
+            for (int i = 0; i < 4; i++) {
+                Data data = Data.singleton("arr", new ND4JNDArray(Nd4j.linspace(1, 6, 6).reshape(2, 3)));
+                data.put("count", i);
+                Data out = executor.exec(data);
+                assertEquals(new ND4JNDArray(Nd4j.linspace(1, 6, 6).reshape(2, 3).muli(2)), out.getNDArray("arr"));
+                assertEquals(i + 1, out.getLong("count"));
+            }
+        } finally {
+            executor.close();
+        }
+    }
+
     @Test
     public void testDictUtilsPoint() {
         try(PythonGIL pythonGIL = PythonGIL.lock()) {
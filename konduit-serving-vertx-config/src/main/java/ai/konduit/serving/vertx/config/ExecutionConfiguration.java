@@ -0,0 +1,109 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.config;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+@Data
+@Accessors(fluent=true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Configuration for how and where the pipeline is executed for the incoming inference requests. " +
+        "The worker pool, in-flight limit and queue are shared by all the server instances of a process.")
+public class ExecutionConfiguration implements Serializable {
+
+    @Schema(description = "Where the pipeline is executed for the incoming requests.", defaultValue = "WORKER_POOL")
+    private ExecutionMode mode = ExecutionMode.WORKER_POOL;
+
+    @Schema(description = "Number of threads in the worker pool when mode is WORKER_POOL. 0 means the number of available processors.",
+            defaultValue = "0")
+    private int workerPoolSize = 0;
+
+    @Schema(description = "Maximum number of requests that can be executing through the pipeline at the same time. " +
+            "0 means the same as the worker pool size (or the number of available processors for VIRTUAL_THREADS).",
+            defaultValue = "0")
+    private int maxInFlight = 0;
+
+    @Schema(description = "Maximum number of requests that can wait for execution once the in-flight limit is reached. " +
+            "Requests beyond this are rejected immediately (HTTP 503 with a Retry-After header).",
+            defaultValue = "256")
+    private int maxQueueSize = 256;
+
+    @Schema(description = "Value of the Retry-After header (in seconds) sent back with rejected requests.", defaultValue = "1")
+    private int retryAfterSeconds = 1;
+
+    @Schema(description = "How the in-flight limit is set. With AIMD or GRADIENT, the limit adapts to the measured pipeline " +
+            "latency, between minInFlight and maxInFlight (which is also the initial limit).", defaultValue = "FIXED")
+    private LimitAlgorithm limitAlgorithm = LimitAlgorithm.FIXED;
+
+    @Schema(description = "Lowest value the in-flight limit can adapt down to, with the AIMD or GRADIENT limit algorithms.",
+            defaultValue = "1")
+    private int minInFlight = 1;
+
+    @Schema(description = "Pipeline latency (in milliseconds) above which the AIMD limit algorithm decreases the in-flight limit. " +
+            "0 means the limit is only decreased when requests miss their deadline.", defaultValue = "0")
+    private long targetLatencyMillis = 0;
+
+    @Schema(description = "Deadline (in milliseconds) for requests that don't specify their own: requests that are still " +
+            "waiting in the queue when their deadline passes are failed without being executed. 0 means no deadline.",
+            defaultValue = "0")
+    private long defaultTimeoutMillis = 0;
+
+    @Schema(description = "Maximum number of concurrent requests that are combined into a single pipeline execution " +
+            "(server-side micro-batching). 1 means no batching. Batching only happens when all the pipeline steps support it, " +
+            "and is only useful with the WORKER_POOL or VIRTUAL_THREADS modes.",
+            defaultValue = "1")
+    private int maxBatchSize = 1;
+
+    @Schema(description = "Maximum time (in microseconds) to wait for more requests to fill up a batch, after the first " +
+            "request of the batch has arrived.", defaultValue = "1000")
+    private long maxBatchWaitMicros = 1000;
+
+    @Schema(description = "If true, thread-safe pipeline step runners (and hence the loaded models) are shared by all " +
+            "server instances in the same process that are configured with identical pipeline steps, instead of each " +
+            "instance loading its own copy.", defaultValue = "true")
+    private boolean shareRunners = true;
+
+    @Schema(description = "Configuration for caching the pipeline outputs for repeated inputs.", defaultValue = "{}")
+    private ResultCacheConfiguration resultCache = new ResultCacheConfiguration();
+
+    /**
+     * @return the number of requests that can execute concurrently, with the defaults resolved
+     */
+    public int resolvedMaxInFlight() {
+        if (maxInFlight > 0) {
+            return maxInFlight;
+        }
+
+        return mode == ExecutionMode.WORKER_POOL ? resolvedWorkerPoolSize() : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return the number of worker threads, with the defaults resolved
+     */
+    public int resolvedWorkerPoolSize() {
+        return workerPoolSize > 0 ? workerPoolSize : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.config;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "An enum that determines where the pipeline is executed for incoming inference requests. <br><br>" +
+        "EVENT_LOOP -> executes the pipeline directly on the vert.x event loop thread that received the request, <br>" +
+        "WORKER_POOL -> executes the pipeline on a dedicated, fixed size pool of worker threads, <br>" +
+        "VIRTUAL_THREADS -> executes the pipeline on virtual threads (requires JDK 21+, falls back to WORKER_POOL otherwise).")
+public enum ExecutionMode {
+    EVENT_LOOP,
+    WORKER_POOL,
+    VIRTUAL_THREADS
+}
@@ -71,6 +71,12 @@ public class InferenceConfiguration implements Serializable, TextConfig {
     @Schema(description = "Mqtt related configuration.", defaultValue = "{}")
     private MqttConfiguration mqttConfiguration = new MqttConfiguration();
 
+    @Schema(description = "Configuration for where and how the pipeline is executed for the incoming requests.", defaultValue = "{}")
+    private ExecutionConfiguration executionConfiguration = new ExecutionConfiguration();
+
+    @Schema(description = "Configuration for warming up the pipeline before the server accepts inference requests.", defaultValue = "{}")
+    private WarmupConfiguration warmupConfiguration = new WarmupConfiguration();
+
     @Schema(description = "List of custom endpoint class names that are configured to " +
             "provide custom endpoints functionality (fully qualified Java path - for example com.mycompany.MyEndpointsClass).")
     private List<String> customEndpoints = new ArrayList<>();
@@ -57,9 +57,21 @@ public class KafkaConfiguration {
     @Schema(description = "What to do when there is no initial offset in Kafka or if the current offset does not exist any more on the server (e.g. because that data has been deleted): <ul><li>earliest: automatically reset the offset to the earliest offset<li>latest: automatically reset the offset to the latest offset</li><li>none: throw exception to the consumer if no previous offset is found for the consumer's group</li><li>anything else: throw exception to the consumer.</li></ul>", defaultValue = Constants.DEFAULT_CONSUMER_AUTO_OFFSET_RESET)
     private String consumerAutoOffsetReset = Constants.DEFAULT_CONSUMER_AUTO_OFFSET_RESET;
 
-    @Schema(description = "If true the consumer's offset will be periodically committed in the background.", defaultValue = Constants.DEFAULT_CONSUMER_AUTO_COMMIT)
+    @Schema(description = "If true the consumer's offset will be periodically committed in the background. If false, the offsets " +
+            "of the records are committed once the producer acknowledged their outputs, so that records aren't lost on a crash.", defaultValue = Constants.DEFAULT_CONSUMER_AUTO_COMMIT)
     private String consumerAutoCommit = Constants.DEFAULT_CONSUMER_AUTO_COMMIT;
 
+    @Schema(description = "Maximum number of records of a partition that are passed through the pipeline together, as a micro-batch. " +
+            "Partitions are processed in parallel, and the records of a partition in order. 1 means records are processed one at a time.", defaultValue = "1")
+    private int consumerBatchSize = 1;
+
+    @Schema(description = "How long (in milliseconds) a micro-batch waits for more records before being processed, if it isn't full.", defaultValue = "10")
+    private long consumerBatchTimeoutMillis = 10;
+
+    @Schema(description = "Number of received but not yet processed records at which a partition is paused. " +
+            "It's resumed once half of them have been processed.", defaultValue = "500")
+    private int consumerMaxPendingRecords = 500;
+
     @Schema(description = "Topic name for producer", defaultValue = Constants.DEFAULT_PRODUCER_TOPIC_NAME)
     private String producerTopicName = Constants.DEFAULT_PRODUCER_TOPIC_NAME;
 
@@ -85,4 +97,10 @@ public class KafkaConfiguration {
             + " remains alive. This is the strongest available guarantee. This is equivalent to the acks=-1 setting."
             + "</ul>", defaultValue = Constants.DEFAULT_PRODUCER_ACKS)
     private String producerAcks = Constants.DEFAULT_PRODUCER_ACKS;
+
+    @Schema(description = "How long (in milliseconds) the producer waits for more outputs to send them together in a single request.", defaultValue = "5")
+    private int producerLingerMillis = 5;
+
+    @Schema(description = "Maximum size (in bytes) of the batches of outputs the producer sends in a single request, per partition.", defaultValue = "65536")
+    private int producerBatchSizeBytes = 65536;
 }
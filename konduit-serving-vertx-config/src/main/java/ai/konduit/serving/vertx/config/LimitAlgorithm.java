@@ -0,0 +1,33 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.config;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "An enum that determines how the limit on the number of requests executing at the same time is set. <br><br>" +
+        "FIXED -> the limit is always the configured max in-flight value, <br>" +
+        "AIMD -> the limit is increased by one while requests complete within the target latency, and multiplied by 0.9 " +
+        "when they don't (additive increase, multiplicative decrease), <br>" +
+        "GRADIENT -> the limit follows the ratio between the long term and the recent execution latency, so that it shrinks " +
+        "as soon as requests start queueing up inside the pipeline.")
+public enum LimitAlgorithm {
+    FIXED,
+    AIMD,
+    GRADIENT
+}
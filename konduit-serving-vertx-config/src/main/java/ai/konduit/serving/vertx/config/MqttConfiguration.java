@@ -25,10 +25,24 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.experimental.Accessors;
 
+import java.util.HashMap;
+import java.util.Map;
+
 @Data
 @Accessors(fluent=true)
 @NoArgsConstructor
 @Schema(description = "Mqtt configuration")
 public class MqttConfiguration {
 
+    @Schema(description = "Maximum number of messages of a client waiting for execution. Past that, QoS 0 messages are dropped, " +
+            "and QoS 1 and 2 messages are answered with an error on the output topic.", defaultValue = "100")
+    private int maxPendingMessagesPerClient = 100;
+
+    @Schema(description = "Maximum number of messages of a topic executing at the same time, by topic name. " +
+            "Topics that aren't listed use the default topic concurrency limit.")
+    private Map<String, Integer> topicConcurrencyLimits = new HashMap<>();
+
+    @Schema(description = "Maximum number of messages of a topic executing at the same time, for the topics without a " +
+            "specific limit. 0 means no limit other than the limits of the execution configuration.", defaultValue = "0")
+    private int defaultTopicConcurrencyLimit = 0;
 }
@@ -0,0 +1,59 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.config;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Accessors(fluent=true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Configuration for caching the pipeline outputs, keyed by the content of the pipeline inputs. " +
+        "Concurrent requests with identical inputs are executed only once.")
+public class ResultCacheConfiguration implements Serializable {
+
+    @Schema(description = "If true, pipeline outputs are cached.", defaultValue = "false")
+    private boolean enabled = false;
+
+    @Schema(description = "Input keys whose values make up the cache key. Empty means all the input keys.")
+    private List<String> keys = new ArrayList<>();
+
+    @Schema(description = "Maximum number of cached pipeline outputs.", defaultValue = "10000")
+    private long maxEntries = 10000;
+
+    @Schema(description = "Maximum (approximate) total size of the cached pipeline outputs, in bytes.", defaultValue = "268435456")
+    private long maxWeightBytes = 256L * 1024 * 1024;
+
+    @Schema(description = "Time (in seconds) after which a cached output expires. 0 means outputs don't expire.",
+            defaultValue = "0")
+    private long ttlSeconds = 0;
+
+    @Schema(description = "If true, cached outputs are stored serialized in off-heap (direct) memory instead of on the heap. " +
+            "This reduces garbage collection pressure for large caches, at the cost of deserializing on each cache hit.",
+            defaultValue = "false")
+    private boolean offHeap = false;
+}
@@ -0,0 +1,77 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.config;
+
+import ai.konduit.serving.pipeline.api.data.NDArrayType;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Accessors(fluent=true)
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Configuration for warming up the pipeline (JIT compilation, model graph optimization, native memory " +
+        "allocation etc.) before the server starts accepting inference requests.")
+public class WarmupConfiguration implements Serializable {
+
+    @Schema(description = "Paths of sample inputs to execute the pipeline with. Files ending in .json contain the Data " +
+            "in JSON format, any other files contain Data in the binary (protobuf) format.")
+    private List<String> samplePaths = new ArrayList<>();
+
+    @Schema(description = "Inputs to synthesize (zero filled NDArrays) and execute the pipeline with, in addition to the samples.")
+    private List<WarmupInput> inputs = new ArrayList<>();
+
+    @Schema(description = "Number of times each sample input is executed through the pipeline.", defaultValue = "10")
+    private int iterations = 10;
+
+    @Schema(description = "If true, the server fails to start when the pipeline fails to execute a warm-up input. " +
+            "Otherwise the failure is logged and the server becomes ready anyway.", defaultValue = "false")
+    private boolean failOnError = false;
+
+    /**
+     * @return True if there are any warm-up inputs configured
+     */
+    public boolean enabled() {
+        return iterations > 0 && ((samplePaths != null && !samplePaths.isEmpty()) || (inputs != null && !inputs.isEmpty()));
+    }
+
+    @Data
+    @Accessors(fluent=true)
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Schema(description = "An NDArray input that's synthesized for warming up the pipeline.")
+    public static class WarmupInput implements Serializable {
+
+        @Schema(description = "Name of the input key.")
+        private String name;
+
+        @Schema(description = "Data type of the NDArray.", defaultValue = "FLOAT")
+        private NDArrayType dataType = NDArrayType.FLOAT;
+
+        @Schema(description = "Shape of the NDArray. Dimensions of -1 (variable size) are replaced by 1.")
+        private long[] shape;
+    }
+}
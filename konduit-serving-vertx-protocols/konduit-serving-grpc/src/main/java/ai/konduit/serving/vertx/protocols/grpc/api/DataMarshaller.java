@@ -0,0 +1,132 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.protocols.grpc.api;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.impl.data.ProtoData;
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A gRPC marshaller that reads and writes {@link Data} instances directly from/to the gRPC message streams.<br>
+ * The wire format is the same as the serialized {@code DataScheme} messages of the {@code Inference} service (i.e. the
+ * {@code DataMap} bytes of {@link Data#asBytes()}), so clients generated from the service definition are unaffected. On
+ * the server side, this avoids converting each message between {@code DataScheme}, {@code byte[]} and {@link Data}.
+ */
+public class DataMarshaller implements MethodDescriptor.Marshaller<Data> {
+
+    public static final DataMarshaller INSTANCE = new DataMarshaller();
+
+    @Override
+    public InputStream stream(Data value) {
+        return new DataStream(value);
+    }
+
+    @Override
+    public Data parse(InputStream stream) {
+        try {
+            //Values are only decoded if the pipeline uses them
+            return ProtoData.fromStream(stream, true);
+        } catch (IOException e) {
+            throw Status.INVALID_ARGUMENT.withDescription("Unable to parse input data").withCause(e).asRuntimeException();
+        }
+    }
+
+    /**
+     * An input stream over a Data instance. When drained by the transport (the usual case), the data is written straight
+     * into the transport's output buffers. Otherwise, the data is serialized to a byte array on the first read.
+     */
+    private static class DataStream extends InputStream implements Drainable {
+        private Data data;
+        private ByteArrayInputStream serialized;
+
+        private DataStream(Data data) {
+            this.data = data;
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            if (serialized != null) {
+                int count = serialized.available();
+                byte[] remaining = new byte[count];
+                serialized.read(remaining, 0, count);
+                target.write(remaining);
+                return count;
+            }
+            if (data == null) {
+                return 0;
+            }
+
+            CountingOutputStream os = new CountingOutputStream(target);
+            data.write(os);
+            data = null;
+            return os.count;
+        }
+
+        @Override
+        public int read() {
+            return serialized().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return serialized().read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return serialized().available();
+        }
+
+        private ByteArrayInputStream serialized() {
+            if (serialized == null) {
+                serialized = new ByteArrayInputStream(data == null ? new byte[0] : data.asBytes());
+                data = null;
+            }
+            return serialized;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private int count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -25,11 +25,13 @@ public final class GrpcService {
     java.lang.String[] descriptorData = {
       "\n\022grpc-service.proto\022\022ai.konduit.serving" +
       "\0323ai/konduit/serving/pipeline/api/protob" +
-      "uf/data.proto2X\n\tInference\022K\n\007predict\022\036." +
-      "ai.konduit.serving.DataScheme\032\036.ai.kondu" +
-      "it.serving.DataScheme\"\000B:\n+ai.konduit.se" +
-      "rving.vertx.protocols.grpc.apiB\013GrpcServ" +
-      "iceb\006proto3"
+      "uf/data.proto2\257\001\n\tInference\022K\n\007predict\022\036" +
+      ".ai.konduit.serving.DataScheme\032\036.ai.kond" +
+      "uit.serving.DataScheme\"\000\022U\n\rpredictStrea" +
+      "m\022\036.ai.konduit.serving.DataScheme\032\036.ai.k" +
+      "onduit.serving.DataScheme\"\000(\0010\001B:\n+ai.ko" +
+      "nduit.serving.vertx.protocols.grpc.apiB\013" +
+      "GrpcServiceb\006proto3"
     };
     descriptor = com.google.protobuf.Descriptors.FileDescriptor
       .internalBuildGeneratedFileFrom(descriptorData,
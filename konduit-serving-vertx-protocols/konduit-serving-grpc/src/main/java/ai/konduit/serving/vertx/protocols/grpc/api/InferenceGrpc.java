@@ -86,6 +86,33 @@ public final class InferenceGrpc {
      return getPredictMethod;
   }
 
+  private static volatile io.grpc.MethodDescriptor<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme,
+      ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme> getPredictStreamMethod;
+
+  public static io.grpc.MethodDescriptor<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme,
+      ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme> getPredictStreamMethod() {
+    io.grpc.MethodDescriptor<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme, ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme> getPredictStreamMethod;
+    if ((getPredictStreamMethod = InferenceGrpc.getPredictStreamMethod) == null) {
+      synchronized (InferenceGrpc.class) {
+        if ((getPredictStreamMethod = InferenceGrpc.getPredictStreamMethod) == null) {
+          InferenceGrpc.getPredictStreamMethod = getPredictStreamMethod = 
+              io.grpc.MethodDescriptor.<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme, ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme>newBuilder()
+              .setType(io.grpc.MethodDescriptor.MethodType.BIDI_STREAMING)
+              .setFullMethodName(generateFullMethodName(
+                  "ai.konduit.serving.Inference", "predictStream"))
+              .setSampledToLocalTracing(true)
+              .setRequestMarshaller(io.grpc.protobuf.ProtoUtils.marshaller(
+                  ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme.getDefaultInstance()))
+              .setResponseMarshaller(io.grpc.protobuf.ProtoUtils.marshaller(
+                  ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme.getDefaultInstance()))
+                  .setSchemaDescriptor(new InferenceMethodDescriptorSupplier("predictStream"))
+                  .build();
+          }
+        }
+     }
+     return getPredictStreamMethod;
+  }
+
   /**
    * Creates a new async stub that supports all call types for the service
    */
@@ -133,6 +160,16 @@ public final class InferenceGrpc {
       asyncUnimplementedUnaryCall(getPredictMethod(), responseObserver);
     }
 
+    /**
+     * <pre>
+     * predicts an output for each input of a stream, in the same order
+     * </pre>
+     */
+    public io.grpc.stub.StreamObserver<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme> predictStream(
+        io.grpc.stub.StreamObserver<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme> responseObserver) {
+      return asyncUnimplementedStreamingCall(getPredictStreamMethod(), responseObserver);
+    }
+
     @java.lang.Override public final io.grpc.ServerServiceDefinition bindService() {
       return io.grpc.ServerServiceDefinition.builder(getServiceDescriptor())
           .addMethod(
@@ -142,6 +179,13 @@ public final class InferenceGrpc {
                 ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme,
                 ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme>(
                   this, METHODID_PREDICT)))
+          .addMethod(
+            getPredictStreamMethod(),
+            asyncBidiStreamingCall(
+              new MethodHandlers<
+                ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme,
+                ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme>(
+                  this, METHODID_PREDICT_STREAM)))
           .build();
     }
   }
@@ -177,6 +221,17 @@ public final class InferenceGrpc {
       asyncUnaryCall(
           getChannel().newCall(getPredictMethod(), getCallOptions()), request, responseObserver);
     }
+
+    /**
+     * <pre>
+     * predicts an output for each input of a stream, in the same order
+     * </pre>
+     */
+    public io.grpc.stub.StreamObserver<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme> predictStream(
+        io.grpc.stub.StreamObserver<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme> responseObserver) {
+      return asyncBidiStreamingCall(
+          getChannel().newCall(getPredictStreamMethod(), getCallOptions()), responseObserver);
+    }
   }
 
   /**
@@ -261,6 +316,16 @@ public final class InferenceGrpc {
       asyncUnimplementedUnaryCall(getPredictMethod(), InferenceGrpc.toObserver(response));
     }
 
+    /**
+     * <pre>
+     * predicts an output for each input of a stream, in the same order
+     * </pre>
+     */
+    public void predictStream(
+        io.vertx.grpc.GrpcBidiExchange<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme, ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme> exchange) {
+      exchange.setReadObserver(asyncUnimplementedStreamingCall(getPredictStreamMethod(), exchange.writeObserver()));
+    }
+
     @java.lang.Override public final io.grpc.ServerServiceDefinition bindService() {
       return io.grpc.ServerServiceDefinition.builder(getServiceDescriptor())
           .addMethod(
@@ -270,6 +335,13 @@ public final class InferenceGrpc {
                 ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme,
                 ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme>(
                   this, METHODID_PREDICT)))
+          .addMethod(
+            getPredictStreamMethod(),
+            asyncBidiStreamingCall(
+              new VertxMethodHandlers<
+                ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme,
+                ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme>(
+                  this, METHODID_PREDICT_STREAM)))
           .build();
     }
   }
@@ -305,9 +377,24 @@ public final class InferenceGrpc {
       asyncUnaryCall(
           getChannel().newCall(getPredictMethod(), getCallOptions()), request, InferenceGrpc.toObserver(response));
     }
+
+    /**
+     * <pre>
+     * predicts an output for each input of a stream, in the same order
+     * </pre>
+     */
+    public void predictStream(io.vertx.core.Handler<
+        io.vertx.grpc.GrpcBidiExchange<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme, ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme>> handler) {
+      final io.vertx.grpc.GrpcReadStream<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme> readStream =
+          io.vertx.grpc.GrpcReadStream.<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme>create();
+
+      handler.handle(io.vertx.grpc.GrpcBidiExchange.create(readStream, asyncBidiStreamingCall(
+          getChannel().newCall(getPredictStreamMethod(), getCallOptions()), readStream.readObserver())));
+    }
   }
 
   private static final int METHODID_PREDICT = 0;
+  private static final int METHODID_PREDICT_STREAM = 1;
 
   private static final class MethodHandlers<Req, Resp> implements
       io.grpc.stub.ServerCalls.UnaryMethod<Req, Resp>,
@@ -340,6 +427,9 @@ public final class InferenceGrpc {
     public io.grpc.stub.StreamObserver<Req> invoke(
         io.grpc.stub.StreamObserver<Resp> responseObserver) {
       switch (methodId) {
+        case METHODID_PREDICT_STREAM:
+          return (io.grpc.stub.StreamObserver<Req>) serviceImpl.predictStream(
+              (io.grpc.stub.StreamObserver<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme>) responseObserver);
         default:
           throw new AssertionError();
       }
@@ -384,6 +474,13 @@ public final class InferenceGrpc {
     public io.grpc.stub.StreamObserver<Req> invoke(
         io.grpc.stub.StreamObserver<Resp> responseObserver) {
       switch (methodId) {
+        case METHODID_PREDICT_STREAM:
+          io.vertx.grpc.GrpcBidiExchange<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme, ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme> params =
+              io.vertx.grpc.GrpcBidiExchange.create(
+                  io.vertx.grpc.GrpcReadStream.<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme>create(),
+                  (io.grpc.stub.StreamObserver<ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme>) responseObserver);
+          serviceImpl.predictStream(params);
+          return (io.grpc.stub.StreamObserver<Req>) params.readObserver();
         default:
           throw new AssertionError();
       }
@@ -436,6 +533,7 @@ public final class InferenceGrpc {
           serviceDescriptor = result = io.grpc.ServiceDescriptor.newBuilder(SERVICE_NAME)
               .setSchemaDescriptor(new InferenceFileDescriptorSupplier())
               .addMethod(getPredictMethod())
+              .addMethod(getPredictStreamMethod())
               .build();
         }
       }
@@ -0,0 +1,251 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.protocols.grpc.api;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.vertx.execution.InferenceExecutionService;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Implements the {@code Inference} gRPC service ({@link InferenceGrpc#SERVICE_NAME}) on top of a {@link PipelineExecutor}:
+ * <ul>
+ *     <li>{@code predict}: a unary call, executing the pipeline once per request</li>
+ *     <li>{@code predictStream}: a bidirectional stream, where an output is sent back for each input, in the same order</li>
+ * </ul>
+ * Messages are marshalled directly to and from {@link Data} with {@link DataMarshaller}. Pipeline execution happens
+ * through the {@link InferenceExecutionService}, so it doesn't block the event loop.<br>
+ * Streams use manual gRPC flow control: at most {@code 2 * batchSize} inputs are requested from the client ahead of
+ * processing, no more inputs are requested while the client isn't reading the outputs, and the elements of a stream are
+ * executed in batches of (at most) {@code batchSize} that are passed to {@link PipelineExecutor#exec(Data...)} at once.
+ */
+@Slf4j
+public class InferenceGrpcApi {
+
+    public static final MethodDescriptor<Data, Data> PREDICT_METHOD = MethodDescriptor.<Data, Data>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(InferenceGrpc.SERVICE_NAME, "predict"))
+            .setRequestMarshaller(DataMarshaller.INSTANCE)
+            .setResponseMarshaller(DataMarshaller.INSTANCE)
+            .build();
+
+    public static final MethodDescriptor<Data, Data> PREDICT_STREAM_METHOD = MethodDescriptor.<Data, Data>newBuilder()
+            .setType(MethodDescriptor.MethodType.BIDI_STREAMING)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(InferenceGrpc.SERVICE_NAME, "predictStream"))
+            .setRequestMarshaller(DataMarshaller.INSTANCE)
+            .setResponseMarshaller(DataMarshaller.INSTANCE)
+            .build();
+
+    private final PipelineExecutor pipelineExecutor;
+    private final InferenceExecutionService executionService;
+    private final int batchSize;
+
+    /**
+     * @param pipelineExecutor The pipeline executor to execute the requests with
+     * @param executionService Where the pipeline is executed
+     * @param batchSize        Maximum number of stream elements that are executed together. 1 means no batching.
+     */
+    public InferenceGrpcApi(PipelineExecutor pipelineExecutor, InferenceExecutionService executionService, int batchSize) {
+        this.pipelineExecutor = pipelineExecutor;
+        this.executionService = executionService;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public ServerServiceDefinition serviceDefinition() {
+        return ServerServiceDefinition.builder(InferenceGrpc.SERVICE_NAME)
+                .addMethod(PREDICT_METHOD, ServerCalls.asyncUnaryCall(this::predict))
+                .addMethod(PREDICT_STREAM_METHOD, ServerCalls.asyncBidiStreamingCall(this::predictStream))
+                .build();
+    }
+
+    public void predict(Data request, StreamObserver<Data> responseObserver) {
+        executionService.execute(() -> pipelineExecutor.exec(request), timeoutNanos(Context.current().getDeadline()), result -> {
+            if (result.failed()) {
+                responseObserver.onError(toStatus(result.cause()));
+            } else {
+                responseObserver.onNext(result.result());
+                responseObserver.onCompleted();
+            }
+        });
+    }
+
+    public StreamObserver<Data> predictStream(StreamObserver<Data> responseObserver) {
+        return new StreamingCall((ServerCallStreamObserver<Data>) responseObserver);
+    }
+
+    /**
+     * @return the time left until the call deadline, in nanoseconds. 0 if the call has no deadline, which means the
+     * configured default deadline is used
+     */
+    private static long timeoutNanos(Deadline deadline) {
+        if (deadline == null) {
+            return 0;
+        }
+        //A deadline that already passed still has to fail the request, rather than fall back to the default
+        return Math.max(1, deadline.timeRemaining(TimeUnit.NANOSECONDS));
+    }
+
+    private static RuntimeException toStatus(Throwable cause) {
+        if (cause instanceof RejectedExecutionException) {
+            return Status.RESOURCE_EXHAUSTED.withDescription(cause.getMessage()).asRuntimeException();
+        } else if (cause instanceof TimeoutException) {
+            return Status.DEADLINE_EXCEEDED.withDescription(cause.getMessage()).asRuntimeException();
+        }
+
+        log.error("Failed to process the pipeline with the input data", cause);
+        return Status.INTERNAL.withDescription(cause.getMessage()).withCause(cause).asRuntimeException();
+    }
+
+    /**
+     * State of a single {@code predictStream} call. At most one batch of the stream is executing at any time, which keeps
+     * the outputs in the same order as the inputs.
+     */
+    private class StreamingCall implements StreamObserver<Data> {
+        private final ServerCallStreamObserver<Data> responseObserver;
+        private final Deadline deadline;
+        private final ArrayDeque<Data> queue = new ArrayDeque<>();
+        private boolean executing;
+        private boolean inputCompleted;
+        private boolean failed;
+        private int deferredRequests;           //Inputs to request once the client is ready to receive more outputs
+
+        private StreamingCall(ServerCallStreamObserver<Data> responseObserver) {
+            this.responseObserver = responseObserver;
+            this.deadline = Context.current().getDeadline();
+            responseObserver.disableAutoInboundFlowControl();
+            responseObserver.setOnReadyHandler(this::onReady);
+            responseObserver.setOnCancelHandler(() -> {
+                synchronized (this) {
+                    failed = true;
+                    queue.clear();
+                }
+            });
+            responseObserver.request(2 * batchSize);
+        }
+
+        @Override
+        public void onNext(Data value) {
+            synchronized (this) {
+                if (failed)
+                    return;
+                queue.add(value);
+            }
+            executeNext();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            synchronized (this) {
+                failed = true;
+                queue.clear();
+            }
+            log.debug("Inference stream cancelled by the client", t);
+        }
+
+        @Override
+        public void onCompleted() {
+            synchronized (this) {
+                inputCompleted = true;
+            }
+            executeNext();
+        }
+
+        private void onReady() {
+            int n;
+            synchronized (this) {
+                n = deferredRequests;
+                deferredRequests = 0;
+            }
+            if (n > 0) {
+                responseObserver.request(n);
+            }
+        }
+
+        private void executeNext() {
+            Data[] batch;
+            synchronized (this) {
+                if (executing || failed)
+                    return;
+
+                if (queue.isEmpty()) {
+                    if (inputCompleted) {
+                        failed = true;      //Nothing more can be sent on this call
+                        responseObserver.onCompleted();
+                    }
+                    return;
+                }
+
+                batch = new Data[Math.min(batchSize, queue.size())];
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = queue.poll();
+                }
+                executing = true;
+            }
+
+            executionService.execute(() -> batch.length == 1 ? new Data[]{pipelineExecutor.exec(batch[0])} : pipelineExecutor.exec(batch),
+                    timeoutNanos(deadline), result -> {
+                synchronized (this) {
+                    executing = false;
+                    if (failed)
+                        return;
+                    if (result.failed()) {
+                        failed = true;
+                        queue.clear();
+                    }
+                }
+
+                if (result.failed()) {
+                    responseObserver.onError(toStatus(result.cause()));
+                    return;
+                }
+
+                for (Data output : result.result()) {
+                    responseObserver.onNext(output);
+                }
+
+                //Backpressure: only ask the client for more inputs once it is reading the outputs
+                if (responseObserver.isReady()) {
+                    responseObserver.request(batch.length);
+                } else {
+                    synchronized (this) {
+                        deferredRequests += batch.length;
+                    }
+                    if (responseObserver.isReady()) {
+                        onReady();
+                    }
+                }
+
+                executeNext();
+            });
+        }
+    }
+}
@@ -18,13 +18,9 @@
 
 package ai.konduit.serving.vertx.protocols.grpc.verticle;
 
-import ai.konduit.serving.pipeline.api.data.Data;
-import ai.konduit.serving.pipeline.impl.data.ProtoData;
-import ai.konduit.serving.pipeline.impl.data.protobuf.DataProtoMessage.DataScheme;
-import ai.konduit.serving.vertx.protocols.grpc.api.InferenceGrpc;
+import ai.konduit.serving.vertx.protocols.grpc.api.InferenceGrpcApi;
 import ai.konduit.serving.pipeline.settings.constants.EnvironmentConstants;
 import ai.konduit.serving.vertx.verticle.InferenceVerticle;
-import io.grpc.stub.StreamObserver;
 import io.vertx.core.Promise;
 import io.vertx.core.impl.ContextInternal;
 import io.vertx.core.json.JsonObject;
@@ -40,6 +36,7 @@ public class InferenceVerticleGrpc extends InferenceVerticle {
         vertx.executeBlocking(handler -> {
             try {
                 initialize();
+                warmup.run();
                 handler.complete();
             } catch (Exception exception) {
                 handler.fail(exception);
@@ -78,19 +75,8 @@ public class InferenceVerticleGrpc extends InferenceVerticle {
 
                 VertxServer rpcServer = VertxServerBuilder
                         .forAddress(vertx, inferenceConfiguration.host(), inferenceConfiguration.port())
-                        .addService(new InferenceGrpc.InferenceImplBase() {
-                            @Override
-                            public void predict(DataScheme request, StreamObserver<DataScheme> responseObserver) {
-                                try {
-                                    Data output = pipelineExecutor.exec(ProtoData.fromBytes(request.toByteArray()));
-                                    responseObserver.onNext(DataScheme.parseFrom(output.asBytes()));
-                                    responseObserver.onCompleted();
-                                } catch (Throwable throwable) {
-                                    log.error("Failed to process the pipeline with the input data", throwable);
-                                    responseObserver.onError(throwable);
-                                }
-                            }
-                        })
+                        .addService(new InferenceGrpcApi(pipelineExecutor, executionService,
+                                inferenceConfiguration.executionConfiguration().maxBatchSize()).serviceDefinition())
                         .build();
 
                 rpcServer.start(handler -> {
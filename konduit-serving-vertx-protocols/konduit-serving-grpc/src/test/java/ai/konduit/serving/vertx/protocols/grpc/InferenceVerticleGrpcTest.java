@@ -30,6 +30,7 @@ import ai.konduit.serving.vertx.protocols.grpc.api.InferenceGrpc;
 import ai.konduit.serving.vertx.protocols.grpc.test.FailureTestingPipelineStep;
 import com.google.protobuf.InvalidProtocolBufferException;
 import io.grpc.ManagedChannel;
+import io.grpc.stub.StreamObserver;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
@@ -44,6 +45,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.event.Level;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @RunWith(VertxUnitRunner.class)
@@ -130,6 +134,42 @@ public class InferenceVerticleGrpcTest {
         });
     }
 
+    @Test
+    public void testGrpcServerStream(TestContext testContext) throws InvalidProtocolBufferException {
+        causeFailure.set(false);
+
+        int count = 10;
+        List<Data> outputs = Collections.synchronizedList(new ArrayList<>());
+        Async async = testContext.async();
+
+        StreamObserver<DataScheme> requests = InferenceGrpc.newStub(channel).predictStream(new StreamObserver<DataScheme>() {
+            @Override
+            public void onNext(DataScheme value) {
+                outputs.add(Data.fromBytes(value.toByteArray()));
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                testContext.fail(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                testContext.assertEquals(count, outputs.size());
+                for (int i = 0; i < count; i++) {
+                    //Outputs are returned in the same order as the inputs
+                    testContext.assertEquals(JData.singleton("key", "value" + i), outputs.get(i));
+                }
+                async.complete();
+            }
+        });
+
+        for (int i = 0; i < count; i++) {
+            requests.onNext(DataScheme.parseFrom(JData.singleton("key", "value" + i).asBytes()));
+        }
+        requests.onCompleted();
+    }
+
     @AfterClass
     public static void tearDown(TestContext testContext) {
         channel.shutdownNow();
@@ -24,10 +24,12 @@ import io.swagger.v3.oas.annotations.media.Schema;
 @Schema(description = "An enum specifying the type of error occured on the konduit serving http server. " +
         "DATA_PARSING_ERROR -> If the incoming data cannot be parsed " +
         "MISSING_OR_EMPTY_CONTENT_TYPE_HEADER -> If the requests has no Content-Type header " +
-        "INVALID_CONTENT_TYPE_HEADER -> If the Content-Type header has an invalid value. Currently it should be either application/json or application/octet-stream " +
+        "INVALID_CONTENT_TYPE_HEADER -> If the Content-Type header has an invalid value. Currently it should be one of application/json, application/octet-stream, application/x-npy or application/x-konduit-tensors " +
         "MISSING_OR_EMPTY_ACCEPT_HEADER -> If the request has no Accept header " +
-        "INVALID_ACCEPT_HEADER -> If the Accept header has an invalid value. Currently it should be either application/json or application/octet-stream " +
-        "PIPELINE_PROCESSING_ERROR -> If there's an error while processing the data through the pipeline.")
+        "INVALID_ACCEPT_HEADER -> If the Accept header has an invalid value. Currently it should be one of application/json, application/octet-stream, application/x-npy or application/x-konduit-tensors " +
+        "PIPELINE_PROCESSING_ERROR -> If there's an error while processing the data through the pipeline. " +
+        "SERVER_OVERLOADED -> If the server has too many pending requests and can't accept any more for now, or is still warming up. " +
+        "DEADLINE_EXCEEDED -> If the request deadline (X-Request-Timeout header) passed before the pipeline could execute it.")
 public enum HttpApiErrorCode {
     /**
      * If the incoming data cannot be parsed
@@ -40,7 +42,7 @@ public enum HttpApiErrorCode {
     MISSING_OR_EMPTY_CONTENT_TYPE_HEADER,
 
     /**
-     * If the "Content-Type" header has an invalid value. Currently it should be either application/json or application/octet-stream
+     * If the "Content-Type" header has an invalid value. Currently it should be one of application/json, application/octet-stream, application/x-npy or application/x-konduit-tensors
      */
     INVALID_CONTENT_TYPE_HEADER,
 
@@ -50,12 +52,24 @@ public enum HttpApiErrorCode {
     MISSING_OR_EMPTY_ACCEPT_HEADER,
 
     /**
-     * If the "Accept" header has an invalid value. Currently it should be either application/json or application/octet-stream
+     * If the "Accept" header has an invalid value. Currently it should be one of application/json, application/octet-stream, application/x-npy or application/x-konduit-tensors
      */
     INVALID_ACCEPT_HEADER,
 
     /**
      * If there's an error while processing the data through the {@link Pipeline}.
      */
-    PIPELINE_PROCESSING_ERROR
+    PIPELINE_PROCESSING_ERROR,
+
+    /**
+     * If the server has too many pending requests and can't accept any more for now, or is still warming up the
+     * pipeline. Sent back with a 503 status code and a "Retry-After" header.
+     */
+    SERVER_OVERLOADED,
+
+    /**
+     * If the request deadline (from the "X-Request-Timeout" header, or the configured default) passed while the request
+     * was waiting for execution. Sent back with a 504 status code.
+     */
+    DEADLINE_EXCEEDED
 }
@@ -18,22 +18,39 @@
 
 package ai.konduit.serving.vertx.protocols.http.api;
 
+import ai.konduit.serving.data.arrow.ArrowStreamProcessor;
 import ai.konduit.serving.data.nd4j.format.ND4JConverters;
 import ai.konduit.serving.pipeline.api.data.Data;
 import ai.konduit.serving.pipeline.api.data.Image;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.ValueType;
 import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.impl.data.ProtoData;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
 import ai.konduit.serving.pipeline.impl.format.JavaImageFactory;
+import ai.konduit.serving.pipeline.impl.serde.MultiTensorFormat;
+import ai.konduit.serving.pipeline.impl.serde.NpyFormat;
 import ai.konduit.serving.pipeline.registry.ImageFactoryRegistry;
 import ai.konduit.serving.pipeline.registry.NDArrayConverterRegistry;
+import ai.konduit.serving.vertx.config.ExecutionMode;
+import ai.konduit.serving.vertx.execution.InferenceExecutionService;
+import ai.konduit.serving.vertx.util.DataBuffers;
+import ai.konduit.serving.vertx.util.HttpResponseOutputStream;
+import ai.konduit.serving.vertx.util.ReadStreamInputStream;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.ext.web.FileUpload;
 import io.vertx.ext.web.RoutingContext;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -44,15 +61,43 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static io.netty.handler.codec.http.HttpHeaderValues.*;
 import static io.vertx.core.http.HttpHeaders.ACCEPT;
 import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
 
+@Slf4j
 @AllArgsConstructor
 @Getter
 public class InferenceHttpApi {
 
+    /**
+     * Request parameter for the key of the input array, for {@link NpyFormat#CONTENT_TYPE} requests
+     */
+    public static final String NPY_KEY_PARAM = "key";
+    public static final String DEFAULT_NPY_KEY = "input";
+
+    /**
+     * Request header with the time (in milliseconds) the request may wait for execution before it is failed with
+     * {@link HttpApiErrorCode#DEADLINE_EXCEEDED}
+     */
+    public static final String REQUEST_TIMEOUT_HEADER = "X-Request-Timeout";
+
+    /**
+     * Maximum number of request body bytes buffered (and not yet read by the pipeline) for an Arrow stream request,
+     * before reading from the connection is paused
+     */
+    public static final long ARROW_MAX_BUFFERED_BYTES = 8 * 1024 * 1024;
+    public static final int ARROW_RESPONSE_CHUNK_SIZE = 64 * 1024;
+
+    private static final BufferAllocator ARROW_ALLOCATOR = new RootAllocator(Long.MAX_VALUE);
+
     private static double requestTime = -1.0;
     private static double pipelineTime = -1.0;
 
@@ -62,6 +107,7 @@ public class InferenceHttpApi {
     protected static Counter requestsHandledCounter = null;
 
     protected final PipelineExecutor pipelineExecutor;
+    protected final InferenceExecutionService executionService;
     protected static MeterRegistry registry = null;
 
     static {
@@ -70,12 +116,24 @@ public class InferenceHttpApi {
         NDArrayConverterRegistry.addConverter(new ND4JConverters.SerializedToNd4jArrConverter());
     }
 
+    public InferenceHttpApi(PipelineExecutor pipelineExecutor) {
+        this(pipelineExecutor, InferenceExecutionService.eventLoop());
+    }
+
     public static Data extractData(String contentType, RoutingContext ctx) {
         try {
             if (contentType.contains(APPLICATION_JSON.toString())) {
                 return Data.fromJson(ctx.getBodyAsString(StandardCharsets.UTF_8.name()));
             } else if (contentType.contains(APPLICATION_OCTET_STREAM.toString())) {
-                return Data.fromBytes(ctx.getBody().getBytes());
+                //Values are only decoded if the pipeline uses them, others are passed through as is
+                return ProtoData.fromBytes(ctx.getBody().getBytes(), true);
+            } else if (contentType.contains(NpyFormat.CONTENT_TYPE)) {
+                //Arrays are read-only views of the request body, not copies
+                String key = ctx.request().getParam(NPY_KEY_PARAM);
+                return Data.singleton(Strings.isNullOrEmpty(key) ? DEFAULT_NPY_KEY : key,
+                        NDArray.create(NpyFormat.read(ctx.getBody().getByteBuf().nioBuffer())));
+            } else if (contentType.contains(MultiTensorFormat.CONTENT_TYPE)) {
+                return MultiTensorFormat.read(ctx.getBody().getByteBuf().nioBuffer());
             } else if(contentType.contains(MULTIPART_FORM_DATA.toString())) {
                 StringBuilder stringBuilder = new StringBuilder("{");
                 ctx.request().formAttributes().forEach(entry -> stringBuilder.append(String.format(",\"%s\":%s", entry.getKey(), entry.getValue().startsWith("[") ? entry.getValue() : String.format("\"%s\"", entry.getValue()))));
@@ -93,7 +151,8 @@ public class InferenceHttpApi {
                 return data;
             } else {
                 throw new KonduitServingHttpException(HttpApiErrorCode.INVALID_CONTENT_TYPE_HEADER,
-                        String.format("Invalid Content-Type header %s. Should be one of [application/json, application/octet-stream, multipart/form-data]", contentType));
+                        String.format("Invalid Content-Type header %s. Should be one of [application/json, application/octet-stream, multipart/form-data, %s, %s]",
+                                contentType, NpyFormat.CONTENT_TYPE, MultiTensorFormat.CONTENT_TYPE));
             }
         } catch (Exception exception) {
             throw new KonduitServingHttpException(HttpApiErrorCode.DATA_PARSING_ERROR,
@@ -111,49 +170,173 @@ public class InferenceHttpApi {
 
         if(Strings.isNullOrEmpty(contentType)) {
             throw new KonduitServingHttpException(HttpApiErrorCode.MISSING_OR_EMPTY_CONTENT_TYPE_HEADER,
-                    "Content-Type header should not be null. Possible values are: [application/json, application/octet-stream, multipart/form-data]");
+                    "Content-Type header should not be null. Possible values are: [application/json, application/octet-stream, multipart/form-data, " +
+                            NpyFormat.CONTENT_TYPE + ", " + MultiTensorFormat.CONTENT_TYPE + "]");
         }
 
         if(Strings.isNullOrEmpty(accept)) {
             throw new KonduitServingHttpException(HttpApiErrorCode.MISSING_OR_EMPTY_ACCEPT_HEADER,
-                    "Accept header should not be null. Possible values are: [application/json, application/octet-stream]");
+                    "Accept header should not be null. Possible values are: [application/json, application/octet-stream, " +
+                            NpyFormat.CONTENT_TYPE + ", " + MultiTensorFormat.CONTENT_TYPE + "]");
         }
 
         Data input = extractData(contentType, ctx);
-        Data output;
 
-        try {
+        executionService.execute(() -> {
             double pipelineTimeStart = (double) System.nanoTime();
 
-            output = pipelineExecutor.exec(input);
+            Data output = pipelineExecutor.exec(input);
 
             double pipelineTimeEnd = (double) System.nanoTime();
             pipelineTime = pipelineTimeEnd - pipelineTimeStart;
-        } catch (Exception exception) {
-            throw new KonduitServingHttpException(HttpApiErrorCode.PIPELINE_PROCESSING_ERROR, exception);
+
+            return output;
+        }, requestTimeoutNanos(ctx), result -> {
+            if (result.failed()) {
+                ctx.fail(toHttpException(result.cause()));
+                return;
+            }
+
+            if (ctx.response().closed()) {
+                return;
+            }
+
+            try {
+                writeOutput(ctx, accept, result.result());
+            } catch (Exception exception) {
+                ctx.fail(exception);
+                return;
+            }
+
+            if (registry != null) {
+                requestsHandledCounter.increment();
+            }
+
+            double requestTimeEnd = (double) System.nanoTime();
+            requestTime = requestTimeEnd - requestTimeStart;
+        });
+    }
+
+    /**
+     * Execute the pipeline on each record batch of an Arrow IPC stream request ({@link ArrowStreamProcessor#CONTENT_TYPE}),
+     * streaming the output record batches back as they are produced. The request body is consumed incrementally (it is
+     * not read by the {@code BodyHandler}), so the size of the stream is only limited by the size of the individual batches.
+     * <p>
+     * If processing fails after the response has started, the connection is closed without writing the end of stream
+     * marker, so that clients can tell that the output is incomplete.
+     */
+    public void predictArrow(RoutingContext ctx) {
+        double requestTimeStart = (double) System.nanoTime();
+        ReadStreamInputStream in = new ReadStreamInputStream(ctx.vertx().getOrCreateContext(), ctx.request(), ARROW_MAX_BUFFERED_BYTES);
+        ctx.response().putHeader(CONTENT_TYPE, ArrowStreamProcessor.CONTENT_TYPE);
+        HttpResponseOutputStream out = new HttpResponseOutputStream(ctx.response(), ARROW_RESPONSE_CHUNK_SIZE);
+
+        //The task blocks on the request body, which is read on the event loop: it must never run on the event loop itself
+        Callable<Long> task = () -> {
+            try (BufferAllocator allocator = ARROW_ALLOCATOR.newChildAllocator("predict-arrow", 0, Long.MAX_VALUE)) {
+                double pipelineTimeStart = (double) System.nanoTime();
+                long batches = ArrowStreamProcessor.process(in, out, allocator, pipelineExecutor::exec);
+                pipelineTime = (double) System.nanoTime() - pipelineTimeStart;
+                out.close();
+                return batches;
+            } finally {
+                in.close();
+            }
+        };
+
+        Handler<AsyncResult<Long>> resultHandler = result -> {
+            if (result.failed()) {
+                if (ctx.response().headWritten()) {
+                    log.error("Arrow stream processing failed after the response was started. Closing the connection", result.cause());
+                    ctx.response().close();
+                } else {
+                    ctx.fail(toHttpException(result.cause()));
+                }
+                return;
+            }
+
+            if (registry != null) {
+                requestsHandledCounter.increment();
+            }
+            requestTime = (double) System.nanoTime() - requestTimeStart;
+        };
+
+        if (executionService.getMode() == ExecutionMode.EVENT_LOOP) {
+            ctx.vertx().<Long>executeBlocking(promise -> {
+                try {
+                    promise.complete(task.call());
+                } catch (Exception exception) {
+                    promise.fail(exception);
+                }
+            }, false, resultHandler);
+        } else {
+            executionService.execute(task, requestTimeoutNanos(ctx), resultHandler);
         }
+    }
 
+    /**
+     * @return the request deadline from the {@link #REQUEST_TIMEOUT_HEADER} header, in nanoseconds from now. 0 if there's
+     * no (valid) deadline
+     */
+    protected static long requestTimeoutNanos(RoutingContext ctx) {
+        String timeout = ctx.request().getHeader(REQUEST_TIMEOUT_HEADER);
+        if (Strings.isNullOrEmpty(timeout)) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, TimeUnit.MILLISECONDS.toNanos(Long.parseLong(timeout.trim())));
+        } catch (NumberFormatException exception) {
+            log.debug("Ignoring invalid {} header value: {}", REQUEST_TIMEOUT_HEADER, timeout);
+            return 0;
+        }
+    }
+
+    protected static KonduitServingHttpException toHttpException(Throwable cause) {
+        if (cause instanceof RejectedExecutionException) {
+            return new KonduitServingHttpException(HttpApiErrorCode.SERVER_OVERLOADED, cause.getMessage());
+        } else if (cause instanceof TimeoutException) {
+            return new KonduitServingHttpException(HttpApiErrorCode.DEADLINE_EXCEEDED, cause.getMessage());
+        }
+        return new KonduitServingHttpException(HttpApiErrorCode.PIPELINE_PROCESSING_ERROR, cause);
+    }
+
+    private static void writeOutput(RoutingContext ctx, String accept, Data output) {
         if(accept.contains(APPLICATION_JSON.toString())) {
             ctx.response()
                     .setStatusCode(200)
                     .putHeader(CONTENT_TYPE, APPLICATION_JSON.toString())
-                    .end(output.toJson(), StandardCharsets.UTF_8.name());
+                    .end(DataBuffers.toJson(output));
         } else if(accept.contains(APPLICATION_OCTET_STREAM.toString())) {
             ctx.response()
                     .setStatusCode(200)
                     .putHeader(CONTENT_TYPE, APPLICATION_OCTET_STREAM.toString())
                     .end(Buffer.buffer(output.asBytes()));
+        } else if(accept.contains(NpyFormat.CONTENT_TYPE)) {
+            List<String> arrayKeys = new ArrayList<>();
+            for(String key : output.keys()) {
+                if(output.type(key) == ValueType.NDARRAY)
+                    arrayKeys.add(key);
+            }
+            if(arrayKeys.size() != 1) {
+                throw new KonduitServingHttpException(HttpApiErrorCode.INVALID_ACCEPT_HEADER,
+                        String.format("Accept header %s requires exactly one NDArray in the pipeline output, got NDArray keys %s. Use %s for multiple arrays",
+                                accept, arrayKeys, MultiTensorFormat.CONTENT_TYPE));
+            }
+            ctx.response()
+                    .setStatusCode(200)
+                    .putHeader(CONTENT_TYPE, NpyFormat.CONTENT_TYPE)
+                    .end(DataBuffers.wrap(NpyFormat.write(output.getNDArray(arrayKeys.get(0)).getAs(SerializedNDArray.class))));
+        } else if(accept.contains(MultiTensorFormat.CONTENT_TYPE)) {
+            ctx.response()
+                    .setStatusCode(200)
+                    .putHeader(CONTENT_TYPE, MultiTensorFormat.CONTENT_TYPE)
+                    .end(DataBuffers.wrap(MultiTensorFormat.write(output)));
         } else {
             throw new KonduitServingHttpException(HttpApiErrorCode.INVALID_ACCEPT_HEADER,
-                    String.format("Invalid Accept header %s. Should be one of [application/json, application/octet-stream]", accept));
-        }
-
-        if(registry != null) {
-            requestsHandledCounter.increment();
+                    String.format("Invalid Accept header %s. Should be one of [application/json, application/octet-stream, %s, %s]",
+                            accept, NpyFormat.CONTENT_TYPE, MultiTensorFormat.CONTENT_TYPE));
         }
-
-        double requestTimeEnd = (double) System.nanoTime();
-        requestTime = requestTimeEnd - requestTimeStart;
     }
 
     public static void setMetrics(MeterRegistry registry, Iterable<Tag> tags) {
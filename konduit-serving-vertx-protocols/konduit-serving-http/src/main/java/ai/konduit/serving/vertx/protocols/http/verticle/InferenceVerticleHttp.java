@@ -18,11 +18,14 @@
 
 package ai.konduit.serving.vertx.protocols.http.verticle;
 
+import ai.konduit.serving.data.arrow.ArrowStreamProcessor;
 import ai.konduit.serving.endpoint.Endpoint;
 import ai.konduit.serving.endpoint.HttpEndpoints;
 import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
 import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
 import ai.konduit.serving.pipeline.impl.metrics.MetricsProvider;
+import ai.konduit.serving.pipeline.impl.serde.MultiTensorFormat;
+import ai.konduit.serving.pipeline.impl.serde.NpyFormat;
 import ai.konduit.serving.pipeline.registry.MicrometerRegistry;
 import ai.konduit.serving.pipeline.settings.DirectoryFetcher;
 import ai.konduit.serving.pipeline.settings.constants.EnvironmentConstants;
@@ -63,6 +66,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 
 import static ai.konduit.serving.pipeline.settings.KonduitSettings.getServingId;
+import static io.netty.handler.codec.http.HttpHeaderNames.RETRY_AFTER;
 import static io.netty.handler.codec.http.HttpHeaderValues.*;
 import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
 
@@ -134,10 +138,23 @@ public class InferenceVerticleHttp extends InferenceVerticle {
 
                                     log.info("Inference HTTP server is listening on host: '{}'", inferenceConfiguration.host());
                                     log.info("Inference HTTP server started on port {} with {} pipeline steps", actualPort, pipeline.size());
-                                    startPromise.complete();
                                 } catch (Throwable throwable) {
                                     startPromise.fail(throwable);
+                                    return;
                                 }
+
+                                //Warm up while listening, so that /health/ready can report the progress. Inference
+                                //requests are rejected until the warm-up is done.
+                                vertx.executeBlocking(warmupHandler -> {
+                                    warmup.run();
+                                    warmupHandler.complete();
+                                }, false, warmupResult -> {
+                                    if (warmupResult.failed()) {
+                                        startPromise.fail(warmupResult.cause());
+                                    } else {
+                                        startPromise.complete();
+                                    }
+                                });
                             }
                         });
             }
@@ -232,6 +249,36 @@ public class InferenceVerticleHttp extends InferenceVerticle {
                     });
         }
 
+        inferenceRouter.get("/health/live").handler(ctx -> ctx.response()
+                .putHeader(CONTENT_TYPE, APPLICATION_JSON.toString())
+                .end(ObjectMappers.toJson(Collections.singletonMap("live", true))));
+
+        inferenceRouter.get("/health/ready").handler(ctx -> ctx.response()
+                .setStatusCode(warmup.isReady() ? 200 : 503)
+                .putHeader(CONTENT_TYPE, APPLICATION_JSON.toString())
+                .end(ObjectMappers.toJson(warmup.status())));
+
+        //Rejected before the request body is read (and buffered) by the body handler
+        inferenceRouter.post().handler(ctx -> {
+            if (!warmup.isReady()) {
+                sendErrorResponse(ctx, HttpApiErrorCode.SERVER_OVERLOADED, "The server is warming up and isn't ready to serve requests yet.");
+            } else if (executionService.isSaturated()) {
+                sendErrorResponse(ctx, HttpApiErrorCode.SERVER_OVERLOADED, "Too many pending requests.");
+            } else {
+                ctx.next();
+            }
+        });
+
+        InferenceHttpApi.setMetrics(registry, tags);
+
+        InferenceHttpApi inferenceHttpApi = new InferenceHttpApi(pipelineExecutor, executionService);
+
+        //Registered before the body handler, as the request body is streamed through the pipeline instead of being buffered
+        inferenceRouter.post("/predict/arrow")
+                .consumes(ArrowStreamProcessor.CONTENT_TYPE)
+                .produces(ArrowStreamProcessor.CONTENT_TYPE)
+                .handler(inferenceHttpApi::predictArrow);
+
         inferenceRouter.post().handler(BodyHandler.create()
                 .setUploadsDirectory(DirectoryFetcher.getFileUploadsDir().getAbsolutePath())
                 .setDeleteUploadedFilesOnEnd(true)
@@ -259,16 +306,16 @@ public class InferenceVerticleHttp extends InferenceVerticle {
                     }
                 });
 
-        InferenceHttpApi.setMetrics(registry, tags);
-
-        InferenceHttpApi inferenceHttpApi = new InferenceHttpApi(pipelineExecutor);
-
         inferenceRouter.post("/predict")
                 .consumes(APPLICATION_JSON.toString())
                 .consumes(APPLICATION_OCTET_STREAM.toString())
                 .consumes(MULTIPART_FORM_DATA.toString())
+                .consumes(NpyFormat.CONTENT_TYPE)
+                .consumes(MultiTensorFormat.CONTENT_TYPE)
                 .produces(APPLICATION_JSON.toString())
                 .produces(APPLICATION_OCTET_STREAM.toString())
+                .produces(NpyFormat.CONTENT_TYPE)
+                .produces(MultiTensorFormat.CONTENT_TYPE)
                 .handler(inferenceHttpApi::predict);
 
         File staticContentRoot = new File(inferenceConfiguration.staticContentRoot());
@@ -314,8 +361,17 @@ public class InferenceVerticleHttp extends InferenceVerticle {
     }
 
     private void sendErrorResponse(RoutingContext ctx, HttpApiErrorCode errorCode, String errorMessage) {
+        if (errorCode == HttpApiErrorCode.SERVER_OVERLOADED) {
+            ctx.response()
+                    .setStatusCode(503)
+                    .putHeader(RETRY_AFTER, String.valueOf(inferenceConfiguration.executionConfiguration().retryAfterSeconds()));
+        } else if (errorCode == HttpApiErrorCode.DEADLINE_EXCEEDED) {
+            ctx.response().setStatusCode(504);
+        } else {
+            ctx.response().setStatusCode(500);
+        }
+
         ctx.response()
-                .setStatusCode(500)
                 .putHeader(CONTENT_TYPE, APPLICATION_JSON.toString())
                 .end(ObjectMappers.toJson(ErrorResponse.builder()
                         .errorCode(errorCode)
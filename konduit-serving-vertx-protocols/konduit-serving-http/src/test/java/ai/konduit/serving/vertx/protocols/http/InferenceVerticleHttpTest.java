@@ -18,9 +18,16 @@
 
 package ai.konduit.serving.vertx.protocols.http;
 
+import ai.konduit.serving.data.arrow.ArrowBatches;
+import ai.konduit.serving.data.arrow.ArrowStreamProcessor;
 import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.NDArrayType;
 import ai.konduit.serving.pipeline.impl.data.JData;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
 import ai.konduit.serving.pipeline.impl.pipeline.SequencePipeline;
+import ai.konduit.serving.pipeline.impl.serde.MultiTensorFormat;
+import ai.konduit.serving.pipeline.impl.serde.NpyFormat;
 import ai.konduit.serving.pipeline.impl.step.logging.LoggingStep;
 import ai.konduit.serving.vertx.api.DeployKonduitServing;
 import ai.konduit.serving.vertx.config.InferenceConfiguration;
@@ -36,6 +43,12 @@ import io.vertx.core.VertxOptions;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -43,6 +56,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.event.Level;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static ai.konduit.serving.vertx.protocols.http.api.HttpApiErrorCode.*;
@@ -52,6 +71,7 @@ import static com.jayway.restassured.RestAssured.given;
 public class InferenceVerticleHttpTest {
 
     public static final String PREDICT_ENDPOINT = "/predict";
+    public static final String PREDICT_ARROW_ENDPOINT = "/predict/arrow";
 
     static InferenceConfiguration configuration;
     static Vertx vertx;
@@ -151,6 +171,167 @@ public class InferenceVerticleHttpTest {
         testContext.assertEquals(input, Data.fromBytes(response.asByteArray()));
     }
 
+    @Test
+    public void inferenceVerticleHttpTestNpyToNpy(TestContext testContext) {
+        float[][] f = new float[][]{{1, 2, 3}, {4, 5, 6}};
+
+        Response response = given().port(inferenceDeploymentResult.getActualPort())
+                .contentType(NpyFormat.CONTENT_TYPE)
+                .accept(NpyFormat.CONTENT_TYPE)
+                .body(toBytes(NpyFormat.write(NDArray.create(f).getAs(SerializedNDArray.class))))
+                .post(PREDICT_ENDPOINT)
+                .andReturn();
+
+        testContext.assertEquals(200, response.statusCode());
+        testContext.assertEquals(NpyFormat.CONTENT_TYPE, response.contentType());
+        SerializedNDArray out = NpyFormat.read(ByteBuffer.wrap(response.asByteArray()));
+        testContext.assertEquals(NDArrayType.FLOAT, out.getType());
+        testContext.assertTrue(Arrays.equals(new long[]{2, 3}, out.getShape()));
+        testContext.assertTrue(Arrays.deepEquals(f, NDArray.create(out).getAs(float[][].class)));
+    }
+
+    @Test
+    public void inferenceVerticleHttpTestNpyToJson(TestContext testContext) {
+        float[] f = new float[]{1, 2, 3};
+
+        Response response = given().port(inferenceDeploymentResult.getActualPort())
+                .contentType(NpyFormat.CONTENT_TYPE)
+                .accept(ContentType.JSON)
+                .queryParam("key", "key_npy_to_json")
+                .body(toBytes(NpyFormat.write(NDArray.create(f).getAs(SerializedNDArray.class))))
+                .post(PREDICT_ENDPOINT)
+                .andReturn();
+
+        testContext.assertEquals(200, response.statusCode());
+        testContext.assertEquals(ContentType.JSON.toString(), response.contentType());
+        Data output = Data.fromJson(response.asString());
+        testContext.assertEquals(Arrays.asList("key_npy_to_json"), output.keys());
+        testContext.assertTrue(Arrays.equals(f, output.getNDArray("key_npy_to_json").getAs(float[].class)));
+    }
+
+    @Test
+    public void inferenceVerticleHttpTestMultiTensorToMultiTensor(TestContext testContext) {
+        float[][] f = new float[][]{{1, 2}, {3, 4}};
+        double[] d = new double[]{5, 6, 7};
+        Data input = Data.singleton("a", NDArray.create(f));
+        input.put("b", NDArray.create(d));
+
+        Response response = given().port(inferenceDeploymentResult.getActualPort())
+                .contentType(MultiTensorFormat.CONTENT_TYPE)
+                .accept(MultiTensorFormat.CONTENT_TYPE)
+                .body(toBytes(MultiTensorFormat.write(input)))
+                .post(PREDICT_ENDPOINT)
+                .andReturn();
+
+        testContext.assertEquals(200, response.statusCode());
+        testContext.assertEquals(MultiTensorFormat.CONTENT_TYPE, response.contentType());
+        Data output = MultiTensorFormat.read(ByteBuffer.wrap(response.asByteArray()));
+        testContext.assertEquals(Arrays.asList("a", "b"), output.keys());
+        testContext.assertTrue(Arrays.deepEquals(f, output.getNDArray("a").getAs(float[][].class)));
+        testContext.assertTrue(Arrays.equals(d, output.getNDArray("b").getAs(double[].class)));
+    }
+
+    @Test
+    public void testMultiTensorToNpyInvalid(TestContext testContext) {
+        //A single .npy array can't hold a multi-array output
+        Data input = Data.singleton("a", NDArray.create(new float[]{1, 2}));
+        input.put("b", NDArray.create(new float[]{3, 4}));
+
+        Response response = given().port(inferenceDeploymentResult.getActualPort())
+                .contentType(MultiTensorFormat.CONTENT_TYPE)
+                .accept(NpyFormat.CONTENT_TYPE)
+                .body(toBytes(MultiTensorFormat.write(input)))
+                .post(PREDICT_ENDPOINT)
+                .andReturn();
+
+        testContext.assertEquals(500, response.statusCode());
+        testContext.assertEquals(ContentType.JSON.toString(), response.contentType());
+        testContext.assertEquals(INVALID_ACCEPT_HEADER.name(), ErrorResponse.fromJson(response.asString()).getErrorCode().name());
+    }
+
+    @Test
+    public void testInvalidNpyData(TestContext testContext) {
+        Response response = given().port(inferenceDeploymentResult.getActualPort())
+                .contentType(NpyFormat.CONTENT_TYPE)
+                .accept(NpyFormat.CONTENT_TYPE)
+                .body(new byte[] {0x11, 0x22, 0x33, 0x44}) // invalid data
+                .post(PREDICT_ENDPOINT)
+                .andReturn();
+
+        testContext.assertEquals(500, response.statusCode());
+        testContext.assertEquals(ContentType.JSON.toString(), response.contentType());
+        testContext.assertEquals(DATA_PARSING_ERROR.name(), ErrorResponse.fromJson(response.asString()).getErrorCode().name());
+    }
+
+    @Test
+    public void inferenceVerticleHttpTestArrowStream(TestContext testContext) throws IOException {
+        Data input = Data.singleton("x", NDArray.create(new float[]{1, 2, 3}));
+        input.put("features", NDArray.create(new double[][]{{1, 2}, {3, 4}, {5, 6}}));
+        input.putListString("id", Arrays.asList("a", "b", "c"));
+
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE)) {
+            Response response = given().port(inferenceDeploymentResult.getActualPort())
+                    .contentType(ArrowStreamProcessor.CONTENT_TYPE)
+                    .accept(ArrowStreamProcessor.CONTENT_TYPE)
+                    .body(toArrowStream(input, 3, allocator))
+                    .post(PREDICT_ARROW_ENDPOINT)
+                    .andReturn();
+
+            testContext.assertEquals(200, response.statusCode());
+            testContext.assertEquals(ArrowStreamProcessor.CONTENT_TYPE, response.contentType());
+
+            try (ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(response.asByteArray()), allocator)) {
+                int batches = 0;
+                while (reader.loadNextBatch()) {
+                    Data output = ArrowBatches.toData(reader.getVectorSchemaRoot());
+                    testContext.assertEquals(input.keys(), output.keys());
+                    testContext.assertTrue(Arrays.equals(new float[]{1, 2, 3}, output.getNDArray("x").getAs(float[].class)));
+                    testContext.assertTrue(Arrays.deepEquals(new double[][]{{1, 2}, {3, 4}, {5, 6}}, output.getNDArray("features").getAs(double[][].class)));
+                    testContext.assertEquals(Arrays.asList("a", "b", "c"), output.getListString("id"));
+                    batches++;
+                }
+                testContext.assertEquals(3, batches);
+            }
+        }
+    }
+
+    @Test
+    public void inferenceVerticleHttpTestArrowEmptyStream(TestContext testContext) throws IOException {
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE)) {
+            Response response = given().port(inferenceDeploymentResult.getActualPort())
+                    .contentType(ArrowStreamProcessor.CONTENT_TYPE)
+                    .accept(ArrowStreamProcessor.CONTENT_TYPE)
+                    .body(toArrowStream(Data.singleton("x", NDArray.create(new float[]{1})), 0, allocator))
+                    .post(PREDICT_ARROW_ENDPOINT)
+                    .andReturn();
+
+            testContext.assertEquals(200, response.statusCode());
+            try (ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(response.asByteArray()), allocator)) {
+                testContext.assertTrue(reader.getVectorSchemaRoot().getSchema().getFields().isEmpty());
+                testContext.assertFalse(reader.loadNextBatch());
+            }
+        }
+    }
+
+    @Test
+    public void testArrowFailedPipeline(TestContext testContext) throws IOException {
+        causeFailure.set(true);
+
+        try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE)) {
+            Response response = given().port(inferenceDeploymentResult.getActualPort())
+                    .contentType(ArrowStreamProcessor.CONTENT_TYPE)
+                    .accept(ArrowStreamProcessor.CONTENT_TYPE)
+                    .body(toArrowStream(Data.singleton("x", NDArray.create(new float[]{1})), 1, allocator))
+                    .post(PREDICT_ARROW_ENDPOINT)
+                    .andReturn();
+
+            //Nothing was written before the failure, so the usual error response is sent
+            testContext.assertEquals(500, response.statusCode());
+            testContext.assertEquals(ContentType.JSON.toString(), response.contentType());
+            testContext.assertEquals(PIPELINE_PROCESSING_ERROR.name(), ErrorResponse.fromJson(response.asString()).getErrorCode().name());
+        }
+    }
+
     @Test
     public void testEmptyOrNullContentTypeHeader(TestContext testContext) {
         Data input = JData.singleton("key_null_or_empty_content_type_header", false);
@@ -257,5 +438,32 @@ public class InferenceVerticleHttpTest {
         vertx.close(testContext.asyncAssertSuccess());
     }
 
+    private static byte[] toArrowStream(Data batch, int numBatches, BufferAllocator allocator) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (VectorSchemaRoot root = ArrowBatches.toArrow(batch, allocator);
+             ArrowStreamWriter writer = new ArrowStreamWriter(root, new DictionaryProvider.MapDictionaryProvider(), out)) {
+            writer.start();
+            for (int i = 0; i < numBatches; i++) {
+                writer.writeBatch();
+            }
+            writer.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] toBytes(List<ByteBuffer> buffers) {
+        int length = 0;
+        for(ByteBuffer b : buffers)
+            length += b.remaining();
+        byte[] out = new byte[length];
+        int pos = 0;
+        for(ByteBuffer b : buffers) {
+            int n = b.remaining();
+            b.duplicate().get(out, pos, n);
+            pos += n;
+        }
+        return out;
+    }
+
 
 }
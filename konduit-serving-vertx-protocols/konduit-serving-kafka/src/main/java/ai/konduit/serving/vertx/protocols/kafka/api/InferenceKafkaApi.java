@@ -1,4 +1,413 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
 package ai.konduit.serving.vertx.protocols.kafka.api;
 
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.vertx.execution.InferenceExecutionService;
+import ai.konduit.serving.vertx.util.DataBuffers;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.kafka.client.common.TopicPartition;
+import io.vertx.kafka.client.consumer.KafkaConsumer;
+import io.vertx.kafka.client.consumer.KafkaConsumerRecord;
+import io.vertx.kafka.client.consumer.OffsetAndMetadata;
+import io.vertx.kafka.client.producer.KafkaProducer;
+import io.vertx.kafka.client.producer.KafkaProducerRecord;
+import io.vertx.kafka.client.serialization.BufferSerializer;
+import io.vertx.kafka.client.serialization.JsonObjectSerializer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.sql.Date;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the records of a kafka consumer through a {@link PipelineExecutor} and sends the outputs with a kafka producer.
+ * <ul>
+ *     <li>Records are grouped into micro-batches of (at most) {@code batchSize} records of the same partition, which
+ *     are passed to {@link PipelineExecutor#exec(Data...)} at once. A batch is started as soon as it is full, or
+ *     {@code batchTimeoutMillis} after its first record arrived.</li>
+ *     <li>Batches are executed through the {@link InferenceExecutionService}, so they don't block the event loop. Different
+ *     partitions execute in parallel, but at most one batch of each partition is executing at any time, which keeps
+ *     the outputs of a partition in the same order as its records.</li>
+ *     <li>If {@code commitOffsets} is set (auto commit is disabled), the offsets of a batch are committed only once the
+ *     producer acknowledged all of its outputs. If an output can't be sent, the partition is rewound to the start of
+ *     the batch, so its records are consumed again.</li>
+ *     <li>A partition is paused once {@code maxPendingRecords} of its records are received but not yet processed, and
+ *     resumed once half of them have been processed.</li>
+ * </ul>
+ * All the state is confined to the event loop of the verticle that created the consumer.
+ */
+@Slf4j
 public class InferenceKafkaApi {
+
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    private final Vertx vertx;
+    private final KafkaConsumer<Object, Object> consumer;
+    private final KafkaProducer<Object, Object> producer;
+    private final PipelineExecutor pipelineExecutor;
+    private final InferenceExecutionService executionService;
+    private final String producerTopicName;
+    private final String producerValueSerializerClass;
+    private final int batchSize;
+    private final long batchTimeoutMillis;
+    private final int maxPendingRecords;
+    private final boolean commitOffsets;
+
+    private final Map<TopicPartition, PartitionState> partitions = new HashMap<>();
+
+    /**
+     * @param batchSize          Maximum number of records of a partition that are executed together. 1 means no batching.
+     * @param batchTimeoutMillis How long a batch waits for more records before being executed, if it isn't full
+     * @param maxPendingRecords  Number of received but unprocessed records at which a partition is paused
+     * @param commitOffsets      Whether to commit the offsets of the records once their outputs are acknowledged.
+     *                           Should be set if, and only if, auto commit is disabled for the consumer.
+     */
+    public InferenceKafkaApi(Vertx vertx, KafkaConsumer<Object, Object> consumer, KafkaProducer<Object, Object> producer,
+                             PipelineExecutor pipelineExecutor, InferenceExecutionService executionService,
+                             String producerTopicName, String producerValueSerializerClass,
+                             int batchSize, long batchTimeoutMillis, int maxPendingRecords, boolean commitOffsets) {
+        if(!producerValueSerializerClass.equals(BufferSerializer.class.getCanonicalName()) &&
+                !producerValueSerializerClass.equals(JsonObjectSerializer.class.getCanonicalName()) &&
+                !producerValueSerializerClass.equals(StringSerializer.class.getCanonicalName())) {
+            throw new IllegalStateException("No conversion format exist for output value class type: " + producerValueSerializerClass);
+        }
+
+        this.vertx = vertx;
+        this.consumer = consumer;
+        this.producer = producer;
+        this.pipelineExecutor = pipelineExecutor;
+        this.executionService = executionService;
+        this.producerTopicName = producerTopicName;
+        this.producerValueSerializerClass = producerValueSerializerClass;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchTimeoutMillis = Math.max(0, batchTimeoutMillis);
+        this.maxPendingRecords = Math.max(this.batchSize, maxPendingRecords);
+        this.commitOffsets = commitOffsets;
+    }
+
+    /**
+     * Registers the record and rebalance handlers on the consumer. Should be called before subscribing.
+     */
+    public void start() {
+        consumer.handler(this::onRecord);
+        consumer.partitionsRevokedHandler(revoked -> {
+            for (TopicPartition topicPartition : revoked) {
+                PartitionState state = partitions.remove(topicPartition);
+                if (state != null) {
+                    //The new owner of the partition starts again from the last committed offset
+                    state.revoked = true;
+                    state.pending.clear();
+                    cancelLinger(state);
+                }
+            }
+        });
+        consumer.exceptionHandler(throwable -> log.error("Error occurred in the kafka consumer.", throwable));
+    }
+
+    private void onRecord(KafkaConsumerRecord<Object, Object> record) {
+        log.debug("Received input from topic: {} at {}. " +
+                        "Headers={}, Key={}, " +
+                        "Value={}, Partition={}, " +
+                        "Offset={}",
+                record.topic(), Date.from(Instant.ofEpochMilli(record.timestamp())),
+                record.headers(), record.key(),
+                record.value(), record.partition(),
+                record.offset());
+
+        TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+        PartitionState state = partitions.computeIfAbsent(topicPartition, PartitionState::new);
+        if (state.rewinding) {
+            return;     //Fetched before the seek, it's received again after it
+        }
+        state.pending.add(record);
+
+        if (!state.paused && state.pending.size() + state.executingCount >= maxPendingRecords) {
+            state.paused = true;
+            consumer.pause(topicPartition);
+        }
+
+        if (state.executingCount > 0) {
+            return;     //Picked up once the current batch completes
+        }
+
+        if (state.pending.size() >= batchSize || batchTimeoutMillis == 0) {
+            cancelLinger(state);
+            executeNext(state);
+        } else if (state.lingerTimer == -1) {
+            state.lingerTimer = vertx.setTimer(batchTimeoutMillis, id -> {
+                state.lingerTimer = -1;
+                if (state.executingCount == 0) {
+                    executeNext(state);
+                }
+            });
+        }
+    }
+
+    private void executeNext(PartitionState state) {
+        if (state.revoked || state.pending.isEmpty()) {
+            return;
+        }
+
+        List<KafkaConsumerRecord<Object, Object>> batch = new ArrayList<>(Math.min(batchSize, state.pending.size()));
+        while (batch.size() < batchSize && !state.pending.isEmpty()) {
+            batch.add(state.pending.poll());
+        }
+        state.executingCount = batch.size();
+        execute(state, batch);
+    }
+
+    private void execute(PartitionState state, List<KafkaConsumerRecord<Object, Object>> batch) {
+        executionService.execute(() -> process(batch), result -> {
+            if (state.revoked) {
+                return;
+            }
+
+            if (result.failed()) {
+                if (result.cause() instanceof RejectedExecutionException || result.cause() instanceof TimeoutException) {
+                    //Overloaded: retry the same batch later instead of dropping its records
+                    log.debug("Retrying a batch of {} records from {}: {}", batch.size(), state.topicPartition, result.cause().getMessage());
+                    vertx.setTimer(RETRY_DELAY_MILLIS, id -> {
+                        if (!state.revoked) {
+                            execute(state, batch);
+                        }
+                    });
+                } else {
+                    log.error("Failed to process a batch of {} records from {}", batch.size(), state.topicPartition, result.cause());
+                    complete(state, batch);
+                }
+                return;
+            }
+
+            send(state, batch, result.result());
+        });
+    }
+
+    /**
+     * Executes the pipeline on a batch of records, and converts the outputs to producer record values.
+     * Records that can't be decoded are skipped, and the others are executed together. If the batch fails as a whole,
+     * its records are executed one by one, so that only the failing records are skipped.
+     * Skipped records have a null value in the returned list.
+     */
+    private List<Object> process(List<KafkaConsumerRecord<Object, Object>> batch) {
+        Data[] inputs = new Data[batch.size()];
+        List<Integer> decoded = new ArrayList<>(inputs.length);
+        for (int i = 0; i < inputs.length; i++) {
+            try {
+                inputs[i] = toData(batch.get(i).value());
+                decoded.add(i);
+            } catch (Exception e) {
+                KafkaConsumerRecord<Object, Object> record = batch.get(i);
+                log.error("Failed to decode the record at offset {} of {}-{}. Skipping it.",
+                        record.offset(), record.topic(), record.partition(), e);
+            }
+        }
+
+        Data[] outputs = new Data[inputs.length];
+        if (decoded.size() == 1) {
+            int i = decoded.get(0);
+            outputs[i] = execOne(batch.get(i), inputs[i]);
+        } else if (decoded.size() > 1) {
+            Data[] toExec = new Data[decoded.size()];
+            for (int j = 0; j < toExec.length; j++) {
+                toExec[j] = inputs[decoded.get(j)];
+            }
+
+            try {
+                Data[] out = pipelineExecutor.exec(toExec);
+                for (int j = 0; j < toExec.length; j++) {
+                    outputs[decoded.get(j)] = out[j];
+                }
+            } catch (Exception e) {
+                log.warn("Failed to process a batch of {} records, processing them one at a time.", toExec.length, e);
+                for (int i : decoded) {
+                    outputs[i] = execOne(batch.get(i), inputs[i]);
+                }
+            }
+        }
+
+        List<Object> values = new ArrayList<>(outputs.length);
+        for (Data output : outputs) {
+            values.add(output == null ? null : toValue(output));
+        }
+        return values;
+    }
+
+    /**
+     * @return The output for a single record, or null if the pipeline failed on it
+     */
+    private Data execOne(KafkaConsumerRecord<Object, Object> record, Data input) {
+        try {
+            return pipelineExecutor.exec(input);
+        } catch (Exception e) {
+            log.error("Failed to process the record at offset {} of {}-{}. Skipping it.",
+                    record.offset(), record.topic(), record.partition(), e);
+            return null;
+        }
+    }
+
+    private void send(PartitionState state, List<KafkaConsumerRecord<Object, Object>> batch, List<Object> values) {
+        int[] remaining = {0};
+        boolean[] failed = {false};
+        for (Object value : values) {
+            if (value != null) {
+                remaining[0]++;
+            }
+        }
+
+        if (remaining[0] == 0) {
+            complete(state, batch);
+            return;
+        }
+
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+
+            KafkaProducerRecord<Object, Object> recordOut = KafkaProducerRecord.create(producerTopicName, value);
+            producer.send(recordOut, ar -> {
+                if (ar.succeeded()) {
+                    log.debug("Sent output to topic: {}. Partition={}, Offset={}",
+                            recordOut.topic(), ar.result().getPartition(), ar.result().getOffset());
+                } else {
+                    log.error("Failed to send output to topic: {}", recordOut.topic(), ar.cause());
+                    failed[0] = true;
+                }
+
+                if (--remaining[0] == 0) {
+                    if (failed[0]) {
+                        rewind(state, batch);
+                    } else {
+                        complete(state, batch);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Called once all the outputs of a batch are acknowledged (or the batch was skipped): commits the offsets of the
+     * batch and moves on to the next batch of the partition.
+     */
+    private void complete(PartitionState state, List<KafkaConsumerRecord<Object, Object>> batch) {
+        if (state.revoked) {
+            return;
+        }
+
+        if (commitOffsets) {
+            long nextOffset = batch.get(batch.size() - 1).offset() + 1;
+            consumer.commit(Collections.singletonMap(state.topicPartition, new OffsetAndMetadata(nextOffset, null)), ar -> {
+                if (ar.failed()) {
+                    log.warn("Failed to commit offset {} for {}", nextOffset, state.topicPartition, ar.cause());
+                }
+            });
+        }
+
+        state.executingCount = 0;
+        resumeIfDrained(state);
+        executeNext(state);
+    }
+
+    /**
+     * Called if some outputs of a batch couldn't be sent: seeks the partition back to the first record of the batch so it
+     * is consumed (and processed) again. Records received after the batch are dropped, as they will be received again too.
+     */
+    private void rewind(PartitionState state, List<KafkaConsumerRecord<Object, Object>> batch) {
+        if (state.revoked) {
+            return;
+        }
+
+        long offset = batch.get(0).offset();
+        state.rewinding = true;
+        state.pending.clear();
+        cancelLinger(state);
+        consumer.seek(state.topicPartition, offset, ar -> {
+            if (ar.failed()) {
+                log.error("Failed to seek {} back to offset {}", state.topicPartition, offset, ar.cause());
+            }
+
+            state.rewinding = false;
+            state.pending.clear();
+            state.executingCount = 0;
+            resumeIfDrained(state);
+        });
+    }
+
+    private void resumeIfDrained(PartitionState state) {
+        if (state.paused && state.pending.size() <= maxPendingRecords / 2) {
+            state.paused = false;
+            consumer.resume(state.topicPartition);
+        }
+    }
+
+    private void cancelLinger(PartitionState state) {
+        if (state.lingerTimer != -1) {
+            vertx.cancelTimer(state.lingerTimer);
+            state.lingerTimer = -1;
+        }
+    }
+
+    private static Data toData(Object input) {
+        if(input instanceof Buffer) {
+            return Data.fromBytes(((Buffer) input).getBytes());
+        } else if(input instanceof JsonObject) {
+            return Data.fromJson(((JsonObject) input).encode());
+        } else if(input instanceof String) {
+            return Data.fromJson((String) input);
+        } else {
+            throw new IllegalStateException("No conversion format exist for input value class type: " + input.getClass().getCanonicalName());
+        }
+    }
+
+    private Object toValue(Data output) {
+        if(producerValueSerializerClass.equals(BufferSerializer.class.getCanonicalName())) {
+            return Buffer.buffer(output.asBytes());
+        } else if(producerValueSerializerClass.equals(JsonObjectSerializer.class.getCanonicalName())) {
+            return new JsonObject(DataBuffers.toJson(output));
+        } else {
+            return output.toJson();
+        }
+    }
+
+    private static class PartitionState {
+        private final TopicPartition topicPartition;
+        private final ArrayDeque<KafkaConsumerRecord<Object, Object>> pending = new ArrayDeque<>();
+        private int executingCount;         //Size of the batch being processed, 0 if none
+        private long lingerTimer = -1;
+        private boolean paused;
+        private boolean rewinding;
+        private boolean revoked;
+
+        private PartitionState(TopicPartition topicPartition) {
+            this.topicPartition = topicPartition;
+        }
+    }
 }
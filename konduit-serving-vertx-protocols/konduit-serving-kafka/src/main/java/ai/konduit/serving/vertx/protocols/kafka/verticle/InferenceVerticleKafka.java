@@ -18,15 +18,14 @@
 
 package ai.konduit.serving.vertx.protocols.kafka.verticle;
 
-import ai.konduit.serving.pipeline.api.data.Data;
 import ai.konduit.serving.pipeline.settings.constants.Constants;
 import ai.konduit.serving.pipeline.settings.constants.EnvironmentConstants;
 import ai.konduit.serving.vertx.config.KafkaConfiguration;
+import ai.konduit.serving.vertx.protocols.kafka.api.InferenceKafkaApi;
 import ai.konduit.serving.vertx.verticle.InferenceVerticle;
 import com.google.common.base.Strings;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Promise;
-import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.http.HttpVersion;
 import io.vertx.core.impl.ContextInternal;
@@ -34,20 +33,12 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.PemKeyCertOptions;
 import io.vertx.core.net.SelfSignedCertificate;
 import io.vertx.kafka.client.consumer.KafkaConsumer;
-import io.vertx.kafka.client.consumer.KafkaConsumerRecord;
 import io.vertx.kafka.client.producer.KafkaProducer;
-import io.vertx.kafka.client.producer.KafkaProducerRecord;
-import io.vertx.kafka.client.producer.RecordMetadata;
-import io.vertx.kafka.client.serialization.BufferSerializer;
-import io.vertx.kafka.client.serialization.JsonObjectSerializer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
-import org.apache.kafka.common.serialization.StringSerializer;
 
 import java.io.File;
-import java.sql.Date;
-import java.time.Instant;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -62,6 +53,7 @@ public class InferenceVerticleKafka extends InferenceVerticle {
         vertx.executeBlocking(handler -> {
             try {
                 initialize();
+                warmup.run();
                 handler.complete();
             } catch (Exception exception) {
                 handler.fail(exception);
@@ -105,7 +97,8 @@ public class InferenceVerticleKafka extends InferenceVerticle {
                 configConsumer.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, getKafkaConsumerValueDeserializerClass(kafkaConfiguration != null ? kafkaConfiguration.consumerValueDeserializerClass() : null));
                 configConsumer.put(ConsumerConfig.GROUP_ID_CONFIG, getConsumerGroupId(kafkaConfiguration != null ? kafkaConfiguration.consumerGroupId() : null));
                 configConsumer.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, getConsumerAutoOffsetReset(kafkaConfiguration != null ? kafkaConfiguration.consumerAutoOffsetReset() : null));
-                configConsumer.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, getConsumerAutoCommit(kafkaConfiguration != null ? kafkaConfiguration.consumerAutoCommit() : null));
+                String consumerAutoCommit = getConsumerAutoCommit(kafkaConfiguration != null ? kafkaConfiguration.consumerAutoCommit() : null);
+                configConsumer.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, consumerAutoCommit);
 
                 String producerValueSerializerClass = getKafkaProducerValueSerializerClass(kafkaConfiguration != null ? kafkaConfiguration.producerValueSerializerClass() : null);
 
@@ -114,73 +107,27 @@ public class InferenceVerticleKafka extends InferenceVerticle {
                 configProducer.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, getKafkaProducerKeySerializerClass(kafkaConfiguration != null ? kafkaConfiguration.producerKeySerializerClass() : null));
                 configProducer.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, producerValueSerializerClass);
                 configProducer.put(ProducerConfig.ACKS_CONFIG, getProducerAcks(kafkaConfiguration != null ? kafkaConfiguration.producerAcks() : null));
+                configProducer.put(ProducerConfig.LINGER_MS_CONFIG, String.valueOf(kafkaConfiguration != null ? kafkaConfiguration.producerLingerMillis() : 5));
+                configProducer.put(ProducerConfig.BATCH_SIZE_CONFIG, String.valueOf(kafkaConfiguration != null ? kafkaConfiguration.producerBatchSizeBytes() : 65536));
 
                 KafkaConsumer consumer = KafkaConsumer.create(vertx, configConsumer);
                 KafkaProducer producer = KafkaProducer.create(vertx, configProducer);
 
-                consumer.handler(
-                        recordIn -> {
-                            KafkaConsumerRecord castedRecordIn = (KafkaConsumerRecord) recordIn;
-                            Object input = castedRecordIn.value();
-
-                            log.debug("Processing input from topic: {} at {}. " +
-                                            "Headers={}, Key={}, " +
-                                            "Value={}, Partition={}, " +
-                                            "Offset={}",
-                                    castedRecordIn.topic(), Date.from(Instant.ofEpochMilli(castedRecordIn.timestamp())),
-                                    castedRecordIn.headers(), castedRecordIn.key(),
-                                    input, castedRecordIn.partition(),
-                                    castedRecordIn.offset());
-
-                            Data output;
-
-                            if(input instanceof Buffer) {
-                                output = pipelineExecutor.exec(Data.fromBytes(((Buffer) input).getBytes()));
-                            } else if(input instanceof JsonObject) {
-                                output = pipelineExecutor.exec(Data.fromJson(((JsonObject) input).encode()));
-                            } else if(input instanceof String) {
-                                output = pipelineExecutor.exec(Data.fromJson((String) input));
-                            } else {
-                                throw new IllegalStateException("No conversion format exist for input value class type: " + input.getClass().getCanonicalName());
-                            }
-
-                            String producerTopicName = getProducerTopicName(kafkaConfiguration != null ? kafkaConfiguration.producerTopicName() : null);
-
-                            KafkaProducerRecord recordOut;
-                            if(producerValueSerializerClass.equals(BufferSerializer.class.getCanonicalName())) {
-                                recordOut = KafkaProducerRecord.create(producerTopicName, Buffer.buffer(output.asBytes()));
-                            } else if(producerValueSerializerClass.equals(JsonObjectSerializer.class.getCanonicalName())) {
-                                recordOut = KafkaProducerRecord.create(producerTopicName, new JsonObject(output.toJson()));
-                            } else if(producerValueSerializerClass.equals(StringSerializer.class.getCanonicalName())) {
-                                recordOut = KafkaProducerRecord.create(producerTopicName, output.toJson());
-                            } else {
-                                throw new IllegalStateException("No conversion format exist for output value class type: " + producerValueSerializerClass);
-                            }
-
-                            producer.send(recordOut, recordOutHandler -> {
-                                AsyncResult<RecordMetadata> castedRecordOutHandler = (AsyncResult<RecordMetadata>) recordOutHandler;
-
-                                if (castedRecordOutHandler.succeeded()) {
-                                    log.debug("Sent output to topic: {} at {}. " +
-                                                    "Headers={}, Key={}, " +
-                                                    "Value={}, Partition={}, " +
-                                                    "Offset={}",
-                                            recordOut.topic(), Date.from(Instant.ofEpochMilli(recordOut.timestamp())),
-                                            recordOut.headers(), recordOut.key(),
-                                            recordOut.value(), recordOut.partition(),
-                                            castedRecordOutHandler.result().getOffset());
-                                } else {
-                                    log.error("Failed to send output to topic: {} at {}. " +
-                                                    "Headers={}, Key={}, " +
-                                                    "Value={}, Partition={}",
-                                            recordOut.topic(), Date.from(Instant.ofEpochMilli(recordOut.timestamp())),
-                                            recordOut.headers(), recordOut.key(),
-                                            recordOut.value(), recordOut.partition(),
-                                            castedRecordOutHandler.cause());
-                                }
-                            });
-                        }
-                );
+                String producerTopicName = getProducerTopicName(kafkaConfiguration != null ? kafkaConfiguration.producerTopicName() : null);
+
+                InferenceKafkaApi inferenceKafkaApi;
+                try {
+                    inferenceKafkaApi = new InferenceKafkaApi(vertx, consumer, producer, pipelineExecutor, executionService,
+                            producerTopicName, producerValueSerializerClass,
+                            kafkaConfiguration != null ? kafkaConfiguration.consumerBatchSize() : 1,
+                            kafkaConfiguration != null ? kafkaConfiguration.consumerBatchTimeoutMillis() : 10,
+                            kafkaConfiguration != null ? kafkaConfiguration.consumerMaxPendingRecords() : 500,
+                            !Boolean.parseBoolean(consumerAutoCommit));
+                } catch (Exception exception) {
+                    startPromise.fail(exception);
+                    return;
+                }
+                inferenceKafkaApi.start();
 
                 String consumerTopicName = getConsumerTopicName(kafkaConfiguration != null ? kafkaConfiguration.consumerTopicName() : null);
 
@@ -0,0 +1,245 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.protocols.kafka;
+
+import ai.konduit.serving.pipeline.api.context.NoOpProfiler;
+import ai.konduit.serving.pipeline.api.context.Profiler;
+import ai.konduit.serving.pipeline.api.context.ProfilerConfig;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.vertx.execution.InferenceExecutionService;
+import ai.konduit.serving.vertx.protocols.kafka.api.InferenceKafkaApi;
+import io.vertx.core.Vertx;
+import io.vertx.kafka.client.consumer.KafkaConsumer;
+import io.vertx.kafka.client.producer.KafkaProducer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the batching, commit and rewind logic of {@link InferenceKafkaApi}, with mock kafka clients instead of a broker
+ */
+public class InferenceKafkaApiTest {
+
+    private static final String IN_TOPIC = "inference-in";
+    private static final String OUT_TOPIC = "inference-out";
+    private static final TopicPartition PARTITION = new TopicPartition(IN_TOPIC, 0);
+
+    private Vertx vertx;
+    private MockConsumer<Object, Object> mockConsumer;
+    private MockProducer<String, String> mockProducer;
+    private RecordingExecutor executor;
+
+    @Before
+    public void before() {
+        vertx = Vertx.vertx();
+        mockConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        executor = new RecordingExecutor();
+    }
+
+    @After
+    public void after() {
+        vertx.close();
+    }
+
+    @Test
+    public void testBatchAndCommit() throws Exception {
+        start(3, 10_000, true);
+        addRecords(input(1), input(2), input(3));
+
+        await(() -> mockProducer.history().size() == 3);
+        assertEquals(Collections.singletonList(3), executor.batchSizes);
+        assertOutputs(1, 2, 3);
+        await(() -> committed() == 3);
+    }
+
+    @Test
+    public void testBatchTimeout() throws Exception {
+        start(10, 50, true);
+        addRecords(input(1), input(2));
+
+        //Not a full batch: executed once the batch timeout passes
+        await(() -> mockProducer.history().size() == 2);
+        assertEquals(Collections.singletonList(2), executor.batchSizes);
+        await(() -> committed() == 2);
+    }
+
+    @Test
+    public void testMalformedRecordIsSkipped() throws Exception {
+        start(3, 10_000, true);
+        addRecords(input(1), "not a valid input", input(3));
+
+        //The other records of the batch are still executed together, and the offset of the whole batch is committed
+        await(() -> mockProducer.history().size() == 2);
+        assertEquals(Collections.singletonList(2), executor.batchSizes);
+        assertOutputs(1, 3);
+        await(() -> committed() == 3);
+    }
+
+    @Test
+    public void testFailedRecordIsSkipped() throws Exception {
+        start(3, 10_000, true);
+        addRecords(input(1), input(-1), input(3));
+
+        //The batch fails as a whole, so its records are executed one at a time
+        await(() -> mockProducer.history().size() == 2);
+        assertEquals(Collections.singletonList(3), executor.batchSizes);
+        assertOutputs(1, 3);
+        await(() -> committed() == 3);
+    }
+
+    @Test
+    public void testRewindOnSendFailure() throws Exception {
+        start(2, 10_000, false);
+        addRecords(input(1), input(2));
+
+        await(() -> mockProducer.history().size() == 2);
+        await(() -> mockConsumer.position(PARTITION) == 2);
+        assertTrue(mockProducer.errorNext(new RuntimeException("Broker unavailable")));
+        assertTrue(mockProducer.completeNext());
+
+        //Not committed, and the partition is rewound to the start of the batch so that it's consumed again
+        await(() -> mockConsumer.position(PARTITION) == 0);
+        assertEquals(-1, committed());
+    }
+
+    private void start(int batchSize, long batchTimeoutMillis, boolean autoCompleteSends) throws Exception {
+        mockProducer = new MockProducer<>(autoCompleteSends, new StringSerializer(), new StringSerializer());
+        KafkaConsumer<Object, Object> consumer = KafkaConsumer.create(vertx, mockConsumer);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        KafkaProducer<Object, Object> producer = (KafkaProducer) KafkaProducer.create(vertx, mockProducer);
+
+        InferenceKafkaApi api = new InferenceKafkaApi(vertx, consumer, producer, executor, InferenceExecutionService.eventLoop(),
+                OUT_TOPIC, StringSerializer.class.getCanonicalName(), batchSize, batchTimeoutMillis, 100, true);
+        api.start();
+
+        boolean[] subscribed = {false};
+        consumer.subscribe(IN_TOPIC, ar -> subscribed[0] = ar.succeeded());
+        await(() -> subscribed[0]);
+        mockConsumer.schedulePollTask(() -> {
+            mockConsumer.rebalance(Collections.singletonList(PARTITION));
+            mockConsumer.updateBeginningOffsets(Collections.singletonMap(PARTITION, 0L));
+            mockConsumer.seek(PARTITION, 0);
+        });
+    }
+
+    private void addRecords(Object... values) {
+        mockConsumer.schedulePollTask(() -> {
+            for (int i = 0; i < values.length; i++) {
+                mockConsumer.addRecord(new ConsumerRecord<>(IN_TOPIC, 0, i, null, values[i]));
+            }
+        });
+    }
+
+    private long committed() {
+        OffsetAndMetadata offset = mockConsumer.committed(PARTITION);
+        return offset == null ? -1 : offset.offset();
+    }
+
+    private void assertOutputs(long... inputs) {
+        List<ProducerRecord<String, String>> history = mockProducer.history();
+        assertEquals(inputs.length, history.size());
+        for (int i = 0; i < inputs.length; i++) {
+            assertEquals(OUT_TOPIC, history.get(i).topic());
+            assertEquals(2 * inputs[i], Data.fromJson(history.get(i).value()).getLong("out"));
+        }
+    }
+
+    private static String input(long x) {
+        return Data.singleton("x", x).toJson();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for condition", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Doubles the "x" input value, and fails for negative values. Records the size of each batch it executes.
+     */
+    private static class RecordingExecutor implements PipelineExecutor {
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Pipeline getPipeline() {
+            return null;
+        }
+
+        @Override
+        public List<PipelineStepRunner> getRunners() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Data[] exec(Data... data) {
+            batchSizes.add(data.length);
+            List<Data> out = new ArrayList<>(data.length);
+            for (Data d : data) {
+                out.add(exec(d));
+            }
+            return out.toArray(new Data[0]);
+        }
+
+        @Override
+        public Data exec(Data data) {
+            long x = data.getLong("x");
+            if (x < 0) {
+                throw new IllegalStateException("Negative input: " + x);
+            }
+            return Data.singleton("out", 2 * x);
+        }
+
+        @Override
+        public Logger getLogger() {
+            return LoggerFactory.getLogger(RecordingExecutor.class);
+        }
+
+        @Override
+        public void profilerConfig(ProfilerConfig profilerConfig) {
+        }
+
+        @Override
+        public Profiler profiler() {
+            return new NoOpProfiler();
+        }
+    }
+}
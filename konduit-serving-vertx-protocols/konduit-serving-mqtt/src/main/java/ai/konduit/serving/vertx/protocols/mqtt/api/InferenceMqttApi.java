@@ -0,0 +1,430 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.protocols.mqtt.api;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.vertx.config.MqttConfiguration;
+import ai.konduit.serving.vertx.execution.InferenceExecutionService;
+import ai.konduit.serving.vertx.util.DataBuffers;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.mqtt.MqttEndpoint;
+import io.vertx.mqtt.MqttTopicSubscription;
+import io.vertx.mqtt.messages.MqttPublishMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Serves the inference requests of connected MQTT clients: a message published to the topic {@code <topic>} is run
+ * through the {@link PipelineExecutor}, and the output is published to {@code <topic>-out}.
+ * <ul>
+ *     <li>Payloads are either JSON ({@link Data#fromJson(String)}) or binary protobuf ({@link Data#fromBytes(byte[])}).
+ *     Outputs are published in the same format as the input.</li>
+ *     <li>The pipeline executes through the {@link InferenceExecutionService}, so it doesn't block the event loop.
+ *     Different clients execute in parallel, but at most one message of each client is executing at any time, which keeps
+ *     the outputs of a client in the same order as its messages.</li>
+ *     <li>At most {@code maxPendingMessagesPerClient} messages of a client are waiting for execution. Past that, QoS 0
+ *     messages are dropped, and QoS 1 and 2 messages are acknowledged and answered with an error, so clients never keep
+ *     waiting for them.</li>
+ *     <li>The number of messages of a topic executing at the same time can be limited per topic.</li>
+ *     <li>Besides the publishing client, outputs are sent to one member of each shared subscription group
+ *     ({@code $share/<group>/<filter>}) whose filter matches the output topic, in a round-robin fashion.</li>
+ * </ul>
+ * All the state is confined to the event loop of the verticle that created the MQTT server.
+ */
+@Slf4j
+public class InferenceMqttApi {
+
+    public static final String OUTPUT_TOPIC_SUFFIX = "-out";
+    public static final String SHARED_SUBSCRIPTION_PREFIX = "$share/";
+
+    private final PipelineExecutor pipelineExecutor;
+    private final InferenceExecutionService executionService;
+    private final int maxPendingMessagesPerClient;
+    private final Map<String, Integer> topicConcurrencyLimits;
+    private final int defaultTopicConcurrencyLimit;
+
+    private final Map<String, TopicState> topics = new HashMap<>();
+    private final Map<String, SharedGroup> sharedGroups = new LinkedHashMap<>();
+    private final RateLimitedDebug messageLog = new RateLimitedDebug(1, TimeUnit.SECONDS);
+    private final RateLimitedDebug dropLog = new RateLimitedDebug(1, TimeUnit.SECONDS);
+
+    public InferenceMqttApi(PipelineExecutor pipelineExecutor, InferenceExecutionService executionService,
+                            MqttConfiguration configuration) {
+        this.pipelineExecutor = pipelineExecutor;
+        this.executionService = executionService;
+        this.maxPendingMessagesPerClient = Math.max(1, configuration.maxPendingMessagesPerClient());
+        this.topicConcurrencyLimits = configuration.topicConcurrencyLimits() == null ?
+                Collections.emptyMap() : configuration.topicConcurrencyLimits();
+        this.defaultTopicConcurrencyLimit = configuration.defaultTopicConcurrencyLimit();
+    }
+
+    /**
+     * Accepts the connection of the given endpoint and starts serving its messages
+     */
+    public void accept(MqttEndpoint endpoint) {
+        log.debug("MQTT client [{}] request to connect, clean session = {}, keep alive timeout = {}",
+                endpoint.clientIdentifier(),
+                endpoint.isCleanSession(),
+                endpoint.keepAliveTimeSeconds());
+
+        ClientState client = new ClientState(endpoint);
+
+        endpoint.accept(false)
+                .closeHandler(v -> onClose(client))
+                .disconnectHandler(v -> log.debug("Received disconnect from client [{}]", endpoint.clientIdentifier()))
+                .subscribeHandler(message ->
+                        endpoint.subscribeAcknowledge(message.messageId(),
+                                message.topicSubscriptions().stream().map(subscription -> {
+                                    log.debug("Subscription for {} with QoS {} from client [{}]",
+                                            subscription.topicName(),
+                                            subscription.qualityOfService(),
+                                            endpoint.clientIdentifier());
+
+                                    subscribe(client, subscription);
+                                    return subscription.qualityOfService();
+                                }).collect(Collectors.toList())))
+                .unsubscribeHandler(message -> {
+                    message.topics().forEach(topic -> {
+                        log.debug("Unsubscription for {} from client [{}]", topic, endpoint.clientIdentifier());
+                        unsubscribe(client, topic);
+                    });
+                    endpoint.unsubscribeAcknowledge(message.messageId());
+                })
+                .publishHandler(message -> onPublish(client, message))
+                .publishReleaseHandler(endpoint::publishComplete)
+                .publishReceivedHandler(endpoint::publishRelease);
+    }
+
+    private void onPublish(ClientState client, MqttPublishMessage message) {
+        if (messageLog.shouldLog()) {
+            log.debug("Received message with QoS [{}] in topic [{}] from client [{}] ({} more messages received since the last log)",
+                    message.qosLevel(),
+                    message.topicName(),
+                    client.endpoint.clientIdentifier(),
+                    messageLog.takeSuppressed());
+        }
+
+        boolean accepted = client.queue.size() < maxPendingMessagesPerClient;
+
+        if (message.qosLevel() == MqttQoS.AT_LEAST_ONCE) {
+            client.endpoint.publishAcknowledge(message.messageId());
+        } else if (message.qosLevel() == MqttQoS.EXACTLY_ONCE) {
+            client.endpoint.publishReceived(message.messageId());
+        }
+
+        if (accepted) {
+            client.queue.add(message);
+            executeNext(client);
+        } else {
+            if (dropLog.shouldLog()) {
+                log.debug("Too many pending messages for client [{}], rejecting a message with QoS [{}] ({} more rejected since the last log)",
+                        client.endpoint.clientIdentifier(),
+                        message.qosLevel(),
+                        dropLog.takeSuppressed());
+            }
+
+            if (message.qosLevel() != MqttQoS.AT_MOST_ONCE) {
+                publishError(client, message.topicName(), String.format("Too many pending messages. Max pending messages per client: %s",
+                        maxPendingMessagesPerClient));
+            }
+        }
+    }
+
+    private void executeNext(ClientState client) {
+        if (client.closed || client.executing || client.waitingForTopic || client.queue.isEmpty()) {
+            return;
+        }
+
+        MqttPublishMessage message = client.queue.peek();
+        String topicName = message.topicName();
+        TopicState topic = topicState(topicName);
+        if (topic != null) {
+            if (topic.inFlight >= topic.limit) {
+                client.waitingForTopic = true;
+                topic.waiting.add(client);
+                return;
+            }
+            topic.inFlight++;
+        }
+
+        client.queue.poll();
+        client.executing = true;
+
+        byte[] payload = message.payload().getBytes();
+        boolean binary = !isJson(payload);
+        executionService.execute(() -> {
+            Data input = binary ? Data.fromBytes(payload) : Data.fromJson(new String(payload, StandardCharsets.UTF_8));
+            Data output = pipelineExecutor.exec(input);
+            return binary ? Buffer.buffer(output.asBytes()) : DataBuffers.toJson(output);
+        }, result -> {
+            client.executing = false;
+            if (topic != null) {
+                topic.inFlight--;
+                wakeUp(topic);
+            }
+
+            if (client.closed) {
+                return;
+            }
+
+            if (result.succeeded()) {
+                publishOutput(client, topicName, result.result());
+            } else {
+                log.error("Unable to process the message from client [{}] in topic [{}]",
+                        client.endpoint.clientIdentifier(), topicName, result.cause());
+                publishError(client, topicName, result.cause().getMessage());
+            }
+
+            executeNext(client);
+        });
+    }
+
+    private void wakeUp(TopicState topic) {
+        while (topic.inFlight < topic.limit && !topic.waiting.isEmpty()) {
+            ClientState client = topic.waiting.poll();
+            client.waitingForTopic = false;
+            executeNext(client);
+        }
+    }
+
+    /**
+     * @return The state for limiting the concurrency of the given topic, or null if it isn't limited
+     */
+    private TopicState topicState(String topicName) {
+        TopicState topic = topics.get(topicName);
+        if (topic == null) {
+            Integer limit = topicConcurrencyLimits.get(topicName);
+            int l = limit != null ? limit : defaultTopicConcurrencyLimit;
+            if (l <= 0) {
+                return null;
+            }
+            topic = new TopicState(l);
+            topics.put(topicName, topic);
+        }
+        return topic;
+    }
+
+    private void publishOutput(ClientState origin, String topicName, Buffer output) {
+        String outputTopic = topicName + OUTPUT_TOPIC_SUFFIX;
+
+        if (origin.endpoint.isConnected()) {
+            origin.endpoint.publish(outputTopic, output, MqttQoS.EXACTLY_ONCE, false, false);
+        }
+
+        for (SharedGroup group : sharedGroups.values()) {
+            if (!matches(group.filter, outputTopic)) {
+                continue;
+            }
+
+            Subscriber subscriber = group.next();
+            if (subscriber != null && subscriber.client != origin && subscriber.client.endpoint.isConnected()) {
+                subscriber.client.endpoint.publish(outputTopic, output.copy(), subscriber.qos, false, false);
+            }
+        }
+    }
+
+    private void publishError(ClientState client, String topicName, String errorMessage) {
+        if (client.endpoint.isConnected()) {
+            client.endpoint.publish(topicName + OUTPUT_TOPIC_SUFFIX,
+                    Buffer.buffer(new JsonObject()
+                            .put("errorMessage", errorMessage)
+                            .encodePrettily()),
+                    MqttQoS.EXACTLY_ONCE,
+                    false,
+                    false);
+        }
+    }
+
+    private void subscribe(ClientState client, MqttTopicSubscription subscription) {
+        String topicName = subscription.topicName();
+        if (!topicName.startsWith(SHARED_SUBSCRIPTION_PREFIX)) {
+            return;
+        }
+
+        int separator = topicName.indexOf('/', SHARED_SUBSCRIPTION_PREFIX.length());
+        if (separator < 0) {
+            log.warn("Invalid shared subscription [{}] from client [{}]. Expected format: $share/<group>/<filter>",
+                    topicName, client.endpoint.clientIdentifier());
+            return;
+        }
+
+        SharedGroup group = sharedGroups.computeIfAbsent(topicName, k -> new SharedGroup(topicName.substring(separator + 1)));
+        group.remove(client);
+        group.members.add(new Subscriber(client, subscription.qualityOfService()));
+        client.sharedSubscriptions.add(topicName);
+    }
+
+    private void unsubscribe(ClientState client, String topicName) {
+        SharedGroup group = sharedGroups.get(topicName);
+        if (group != null) {
+            group.remove(client);
+            if (group.members.isEmpty()) {
+                sharedGroups.remove(topicName);
+            }
+        }
+        client.sharedSubscriptions.remove(topicName);
+    }
+
+    private void onClose(ClientState client) {
+        log.debug("Connection closed for client [{}]", client.endpoint.clientIdentifier());
+
+        client.closed = true;
+        client.queue.clear();
+        for (String topicName : new ArrayList<>(client.sharedSubscriptions)) {
+            unsubscribe(client, topicName);
+        }
+    }
+
+    /**
+     * @return True if the payload is a JSON object (starts with '{'), false if it is a binary (protobuf) {@link Data}
+     * payload. Leading whitespaces aren't skipped, as a serialized {@link Data} starts with the byte 0x0A ('\n')
+     */
+    public static boolean isJson(byte[] payload) {
+        return payload.length > 0 && payload[0] == '{';
+    }
+
+    /**
+     * @return True if the MQTT topic filter (which can contain '+' and '#' wildcards) matches the topic name
+     */
+    public static boolean matches(String filter, String topicName) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topicName.split("/", -1);
+
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    private static class ClientState {
+        private final MqttEndpoint endpoint;
+        private final ArrayDeque<MqttPublishMessage> queue = new ArrayDeque<>();
+        private final Set<String> sharedSubscriptions = new HashSet<>();
+        private boolean executing;
+        private boolean waitingForTopic;        //Waiting for a slot in the concurrency limit of the topic of its next message
+        private boolean closed;
+
+        private ClientState(MqttEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+
+    private static class TopicState {
+        private final int limit;
+        private final ArrayDeque<ClientState> waiting = new ArrayDeque<>();
+        private int inFlight;
+
+        private TopicState(int limit) {
+            this.limit = limit;
+        }
+    }
+
+    private static class Subscriber {
+        private final ClientState client;
+        private final MqttQoS qos;
+
+        private Subscriber(ClientState client, MqttQoS qos) {
+            this.client = client;
+            this.qos = qos;
+        }
+    }
+
+    private static class SharedGroup {
+        private final String filter;
+        private final List<Subscriber> members = new ArrayList<>();
+        private int next;
+
+        private SharedGroup(String filter) {
+            this.filter = filter;
+        }
+
+        private Subscriber next() {
+            if (members.isEmpty()) {
+                return null;
+            }
+            next = (next + 1) % members.size();
+            return members.get(next);
+        }
+
+        private void remove(ClientState client) {
+            for (Iterator<Subscriber> iter = members.iterator(); iter.hasNext(); ) {
+                if (iter.next().client == client) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Allows at most one debug log per interval, counting the suppressed ones
+     */
+    private static class RateLimitedDebug {
+        private final long intervalNanos;
+        private long nextLogNanos = System.nanoTime();
+        private long suppressed;
+
+        private RateLimitedDebug(long interval, TimeUnit unit) {
+            this.intervalNanos = unit.toNanos(interval);
+        }
+
+        private boolean shouldLog() {
+            if (!log.isDebugEnabled()) {
+                return false;
+            }
+
+            long now = System.nanoTime();
+            if (now - nextLogNanos >= 0) {
+                nextLogNanos = now + intervalNanos;
+                return true;
+            }
+            suppressed++;
+            return false;
+        }
+
+        private long takeSuppressed() {
+            long s = suppressed;
+            suppressed = 0;
+            return s;
+        }
+    }
+}
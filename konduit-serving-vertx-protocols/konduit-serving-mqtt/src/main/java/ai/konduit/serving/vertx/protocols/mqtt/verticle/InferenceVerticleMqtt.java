@@ -18,13 +18,12 @@
 
 package ai.konduit.serving.vertx.protocols.mqtt.verticle;
 
-import ai.konduit.serving.pipeline.api.data.Data;
 import ai.konduit.serving.pipeline.settings.constants.EnvironmentConstants;
+import ai.konduit.serving.vertx.config.MqttConfiguration;
+import ai.konduit.serving.vertx.protocols.mqtt.api.InferenceMqttApi;
 import ai.konduit.serving.vertx.verticle.InferenceVerticle;
 import com.google.common.base.Strings;
-import io.netty.handler.codec.mqtt.MqttQoS;
 import io.vertx.core.Promise;
-import io.vertx.core.buffer.Buffer;
 import io.vertx.core.impl.ContextInternal;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.PemKeyCertOptions;
@@ -34,8 +33,6 @@ import io.vertx.mqtt.MqttServerOptions;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
-import java.nio.charset.StandardCharsets;
-import java.util.stream.Collectors;
 
 @Slf4j
 public class InferenceVerticleMqtt extends InferenceVerticle {
@@ -45,6 +42,7 @@ public class InferenceVerticleMqtt extends InferenceVerticle {
         vertx.executeBlocking(handler -> {
             try {
                 initialize();
+                warmup.run();
                 handler.complete();
             } catch (Exception exception) {
                 handler.fail(exception);
@@ -110,96 +108,11 @@ public class InferenceVerticleMqtt extends InferenceVerticle {
                 }
 
                 MqttServer mqttServer = MqttServer.create(vertx, mqttServerOptions);
-                mqttServer.endpointHandler(
-                        endpoint -> {
-                            log.info("MQTT client [{}] request to connect, clean session = {}",
-                                    endpoint.clientIdentifier() ,
-                                    endpoint.isCleanSession());
-
-                            if (endpoint.auth() != null) {
-                                log.info("[username = {}, password = {}]",
-                                        endpoint.auth().getUsername(),
-                                        endpoint.auth().getPassword());
-                            }
-                            if (endpoint.will() != null) {
-                                log.info("[will topic = {} msg = {} QoS = {} isRetain = {}]",
-                                        endpoint.will().getWillTopic(),
-                                        endpoint.will().getWillMessageBytes(),
-                                        endpoint.will().getWillQos(),
-                                        endpoint.will().isWillRetain());
-                            }
+                MqttConfiguration mqttConfiguration = inferenceConfiguration.mqttConfiguration() != null ?
+                        inferenceConfiguration.mqttConfiguration() : new MqttConfiguration();
+                InferenceMqttApi inferenceMqttApi = new InferenceMqttApi(pipelineExecutor, executionService, mqttConfiguration);
 
-                            log.info("[keep alive timeout = {}]",
-                                    endpoint.keepAliveTimeSeconds());
-
-                            endpoint.accept(false)
-
-                                    .disconnectHandler(v -> log.info("Received disconnect from client"))
-
-                                    .subscribeHandler(handler ->
-                                            endpoint.subscribeAcknowledge(handler.messageId(),
-                                                    handler.topicSubscriptions().stream().map(subscription -> {
-                                                        log.info("Subscription for {} with QoS {}",
-                                                                subscription.topicName(),
-                                                                subscription.qualityOfService());
-
-                                                        return subscription.qualityOfService();
-                                                    }).collect(Collectors.toList())))
-                                    .unsubscribeHandler(handler -> {
-                                        handler.topics().forEach(topic -> log.info("Unsubscription for {}", topic));
-                                        endpoint.unsubscribeAcknowledge(handler.messageId());
-                                    })
-
-                                    .publishHandler(message -> {
-                                        String topicName = message.topicName();
-                                        String messageString = message.payload().toString(StandardCharsets.UTF_8);
-                                        log.info("Just received message [{}] with QoS [{}}] in topic [{}]",
-                                                messageString,
-                                                message.qosLevel(),
-                                                topicName);
-
-                                        if (message.qosLevel() == MqttQoS.AT_LEAST_ONCE) {
-                                            endpoint.publishAcknowledge(message.messageId());
-                                        } else if (message.qosLevel() == MqttQoS.EXACTLY_ONCE) {
-                                            endpoint.publishReceived(message.messageId());
-                                        }
-
-                                        try {
-                                            String output = pipelineExecutor.exec(Data.fromJson(messageString)).toJson();
-                                            String outputTopic = topicName + "-out";
-
-                                            log.debug("Publishing message: {} to topic: {}", output, outputTopic);
-
-                                            endpoint.publish(outputTopic,
-                                                    Buffer.buffer(output),
-                                                    MqttQoS.EXACTLY_ONCE,
-                                                    false,
-                                                    false);
-
-                                            log.debug("Message published to topic: {}", outputTopic);
-                                        } catch (Throwable throwable) {
-                                            log.error("Unable to publish data due to the following error", throwable);
-
-                                            endpoint.publish(topicName + "-out",
-                                                    Buffer.buffer(new JsonObject()
-                                                            .put("errorMessage", throwable.getMessage())
-                                                            .encodePrettily()),
-                                                    MqttQoS.EXACTLY_ONCE,
-                                                    false,
-                                                    false);
-                                        }
-                                    })
-
-                                    .publishReleaseHandler(endpoint::publishComplete)
-
-                                    .publishAcknowledgeHandler(messageId -> log.info("Received ack for message = {}", messageId))
-
-                                    .publishReceivedHandler(endpoint::publishRelease)
-
-                                    .publishCompletionHandler(messageId -> log.info("Received ack for message = {}", messageId))
-
-                            .pingHandler(v -> log.info("Ping received from client"));
-                        })
+                mqttServer.endpointHandler(inferenceMqttApi::accept)
                         .listen(handler -> {
                             if (handler.failed()) {
                                 startPromise.fail(handler.cause());
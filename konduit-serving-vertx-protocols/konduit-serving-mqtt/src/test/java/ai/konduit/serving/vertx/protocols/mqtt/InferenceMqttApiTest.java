@@ -0,0 +1,298 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.protocols.mqtt;
+
+import ai.konduit.serving.pipeline.api.context.NoOpProfiler;
+import ai.konduit.serving.pipeline.api.context.Profiler;
+import ai.konduit.serving.pipeline.api.context.ProfilerConfig;
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.api.step.PipelineStepRunner;
+import ai.konduit.serving.vertx.config.ExecutionConfiguration;
+import ai.konduit.serving.vertx.config.ExecutionMode;
+import ai.konduit.serving.vertx.config.MqttConfiguration;
+import ai.konduit.serving.vertx.execution.InferenceExecutionService;
+import ai.konduit.serving.vertx.protocols.mqtt.api.InferenceMqttApi;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.mqtt.MqttClient;
+import io.vertx.mqtt.MqttServer;
+import io.vertx.mqtt.MqttServerOptions;
+import io.vertx.mqtt.messages.MqttPublishMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the shared subscriptions, pending message limits and topic concurrency limits of {@link InferenceMqttApi}
+ */
+public class InferenceMqttApiTest {
+
+    private static final String TOPIC = "inference";
+    private static final String OUTPUT_TOPIC = TOPIC + InferenceMqttApi.OUTPUT_TOPIC_SUFFIX;
+    private static final String SHARED_SUBSCRIPTION = InferenceMqttApi.SHARED_SUBSCRIPTION_PREFIX + "group/+";
+
+    private Vertx vertx;
+    private InferenceExecutionService executionService;
+    private GatedExecutor executor;
+    private int port;
+
+    @Before
+    public void before() {
+        vertx = Vertx.vertx();
+        executionService = new InferenceExecutionService(new ExecutionConfiguration()
+                .mode(ExecutionMode.WORKER_POOL)
+                .workerPoolSize(4));
+        executor = new GatedExecutor();
+    }
+
+    @After
+    public void after() {
+        executor.release.countDown();
+        executionService.close();
+        vertx.close();
+    }
+
+    @Test
+    public void testIsJson() {
+        Data data = Data.singleton("x", 1L);
+        byte[] binary = data.asBytes();
+        assertEquals(0x0A, binary[0]);
+        assertFalse(InferenceMqttApi.isJson(binary));
+        assertTrue(InferenceMqttApi.isJson(data.toJson().getBytes(StandardCharsets.UTF_8)));
+        assertFalse(InferenceMqttApi.isJson(new byte[0]));
+    }
+
+    @Test
+    public void testSharedSubscriptionFanOut() throws Exception {
+        start(new MqttConfiguration());
+        executor.release.countDown();
+
+        List<MqttPublishMessage> first = new CopyOnWriteArrayList<>();
+        List<MqttPublishMessage> second = new CopyOnWriteArrayList<>();
+        List<MqttPublishMessage> origin = new CopyOnWriteArrayList<>();
+        MqttClient firstMember = connect(first);
+        MqttClient secondMember = connect(second);
+        MqttClient publisher = connect(origin);
+        subscribe(firstMember, SHARED_SUBSCRIPTION);
+        subscribe(secondMember, SHARED_SUBSCRIPTION);
+
+        for (int i = 0; i < 4; i++) {
+            publish(publisher, TOPIC, i, MqttQoS.AT_LEAST_ONCE);
+        }
+
+        //The publisher gets all the outputs, and each output goes to one member of the group in turn
+        await(() -> origin.size() == 4 && first.size() + second.size() == 4);
+        assertEquals(2, first.size());
+        assertEquals(2, second.size());
+        for (MqttPublishMessage message : first) {
+            assertEquals(OUTPUT_TOPIC, message.topicName());
+            assertEquals(MqttQoS.AT_LEAST_ONCE, message.qosLevel());
+        }
+
+        //Once a member leaves the group, the remaining one gets every output
+        CountDownLatch unsubscribed = new CountDownLatch(1);
+        secondMember.unsubscribeCompletionHandler(id -> unsubscribed.countDown());
+        secondMember.unsubscribe(SHARED_SUBSCRIPTION);
+        assertTrue(unsubscribed.await(10, TimeUnit.SECONDS));
+        publish(publisher, TOPIC, 4, MqttQoS.AT_LEAST_ONCE);
+        publish(publisher, TOPIC, 5, MqttQoS.AT_LEAST_ONCE);
+        await(() -> origin.size() == 6 && first.size() == 4);
+        assertEquals(2, second.size());
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        start(new MqttConfiguration().maxPendingMessagesPerClient(1));
+
+        List<MqttPublishMessage> received = new CopyOnWriteArrayList<>();
+        List<Integer> completed = new CopyOnWriteArrayList<>();
+        MqttClient client = connect(received);
+        client.publishCompletionHandler(completed::add);
+
+        publish(client, TOPIC, 0, MqttQoS.AT_LEAST_ONCE);       //Executing
+        publish(client, TOPIC, 1, MqttQoS.AT_LEAST_ONCE);       //Pending
+        publish(client, TOPIC, 2, MqttQoS.AT_LEAST_ONCE);       //Rejected
+        publish(client, TOPIC, 3, MqttQoS.EXACTLY_ONCE);        //Rejected
+        publish(client, TOPIC, 4, MqttQoS.AT_MOST_ONCE);        //Dropped
+
+        //The QoS 1 and 2 messages are acknowledged even if rejected, and answered with an error
+        await(() -> completed.size() == 4 && received.size() == 2);
+        for (MqttPublishMessage message : received) {
+            assertEquals(OUTPUT_TOPIC, message.topicName());
+            assertTrue(new JsonObject(message.payload()).getString("errorMessage").contains("Too many pending messages"));
+        }
+
+        executor.release.countDown();
+        await(() -> received.size() == 4);
+        assertEquals(0, Data.fromJson(received.get(2).payload().toString()).getLong("x"));
+        assertEquals(1, Data.fromJson(received.get(3).payload().toString()).getLong("x"));
+
+        Thread.sleep(200);
+        assertEquals(4, received.size());
+        assertEquals(2, executor.executed.get());
+    }
+
+    @Test
+    public void testTopicConcurrencyLimit() throws Exception {
+        start(new MqttConfiguration().topicConcurrencyLimits(Collections.singletonMap("limited", 1)));
+
+        List<MqttPublishMessage> received = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            publish(connect(received), "limited", i, MqttQoS.AT_LEAST_ONCE);
+        }
+        for (int i = 0; i < 2; i++) {
+            publish(connect(received), "unlimited", i, MqttQoS.AT_LEAST_ONCE);
+        }
+
+        //Only one message of the limited topic executes at a time, while the other topic isn't limited
+        await(() -> executor.running("unlimited") == 2 && executor.running("limited") == 1);
+        Thread.sleep(200);
+        assertEquals(1, executor.running("limited"));
+
+        executor.release.countDown();
+        await(() -> received.size() == 5);
+        assertEquals(1, executor.maxRunning.get("limited").get());
+        assertEquals(2, executor.maxRunning.get("unlimited").get());
+    }
+
+    private void start(MqttConfiguration configuration) throws Exception {
+        InferenceMqttApi api = new InferenceMqttApi(executor, executionService, configuration);
+        CountDownLatch listening = new CountDownLatch(1);
+        MqttServer.create(vertx, new MqttServerOptions().setHost("localhost").setPort(0))
+                .endpointHandler(api::accept)
+                .listen(ar -> {
+                    if (ar.succeeded()) {
+                        port = ar.result().actualPort();
+                        listening.countDown();
+                    }
+                });
+        assertTrue(listening.await(10, TimeUnit.SECONDS));
+    }
+
+    private MqttClient connect(List<MqttPublishMessage> received) throws Exception {
+        MqttClient client = MqttClient.create(vertx);
+        client.publishHandler(received::add);
+        CountDownLatch connected = new CountDownLatch(1);
+        client.connect(port, "localhost", ar -> {
+            if (ar.succeeded()) {
+                connected.countDown();
+            }
+        });
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+        return client;
+    }
+
+    private static void subscribe(MqttClient client, String topicName) throws Exception {
+        CountDownLatch subscribed = new CountDownLatch(1);
+        client.subscribeCompletionHandler(ack -> subscribed.countDown());
+        client.subscribe(topicName, MqttQoS.AT_LEAST_ONCE.value());
+        assertTrue(subscribed.await(10, TimeUnit.SECONDS));
+    }
+
+    private static void publish(MqttClient client, String topicName, long x, MqttQoS qos) {
+        Data data = Data.empty();
+        data.put("topic", topicName);
+        data.put("x", x);
+        client.publish(topicName, Buffer.buffer(data.toJson()), qos, false, false);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for condition", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Returns its input once released, keeping track of the number of executions running at the same time per topic
+     */
+    private static class GatedExecutor implements PipelineExecutor {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger executed = new AtomicInteger();
+        private final Map<String, AtomicInteger> runningByTopic = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> maxRunning = new ConcurrentHashMap<>();
+
+        private int running(String topicName) {
+            AtomicInteger running = runningByTopic.get(topicName);
+            return running == null ? 0 : running.get();
+        }
+
+        @Override
+        public Pipeline getPipeline() {
+            return null;
+        }
+
+        @Override
+        public List<PipelineStepRunner> getRunners() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Data exec(Data data) {
+            String topicName = data.getString("topic");
+            AtomicInteger running = runningByTopic.computeIfAbsent(topicName, k -> new AtomicInteger());
+            AtomicInteger max = maxRunning.computeIfAbsent(topicName, k -> new AtomicInteger());
+            max.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            executed.incrementAndGet();
+            return data;
+        }
+
+        @Override
+        public Logger getLogger() {
+            return LoggerFactory.getLogger(GatedExecutor.class);
+        }
+
+        @Override
+        public void profilerConfig(ProfilerConfig profilerConfig) {
+        }
+
+        @Override
+        public Profiler profiler() {
+            return new NoOpProfiler();
+        }
+    }
+}
@@ -54,6 +54,7 @@ public class InferenceVerticleMqttTest {
 
     static final String publishTopicName = "inference";
     static final String subscribeTopicName = "inference-out";
+    static final String binaryPublishTopicName = "inference-binary";
 
     @BeforeClass
     public static void setUp(TestContext testContext) {
@@ -115,6 +116,36 @@ public class InferenceVerticleMqttTest {
         });
     }
 
+    @Test
+    public void testMqttServerBinaryPayload(TestContext testContext) {
+        int countDown = 10;
+        Async async = testContext.async(countDown);
+
+        Data data = Data.empty();
+        data.put("mqttMessageKey", "mqttMessageValue");
+
+        MqttClient client = MqttClient.create(vertx);
+
+        client.connect(mqttPort, mqttHostName, connectHandler -> {
+            client.publishHandler(
+                    publishHandler -> {
+                        testContext.assertEquals(publishHandler.topicName(), binaryPublishTopicName + "-out");
+                        testContext.assertEquals(Data.fromBytes(publishHandler.payload().getBytes()).toJson(), data.toJson());
+
+                        async.countDown();
+                    })
+                    .subscribe(binaryPublishTopicName + "-out", qos);
+
+            for (int i = 0; i < countDown; i++) {
+                client.publish(binaryPublishTopicName,
+                        Buffer.buffer(data.asBytes()),
+                        MqttQoS.AT_LEAST_ONCE,
+                        false,
+                        false);
+            }
+        });
+    }
+
     @AfterClass
     public static void tearDown(TestContext testContext) {
         vertx.close(testContext.asyncAssertSuccess());
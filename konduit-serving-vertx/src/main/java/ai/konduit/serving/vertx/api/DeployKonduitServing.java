@@ -18,8 +18,10 @@
 
 package ai.konduit.serving.vertx.api;
 
+import ai.konduit.serving.pipeline.registry.SharedRunnerRegistry;
 import ai.konduit.serving.pipeline.settings.constants.Constants;
 import ai.konduit.serving.pipeline.util.ObjectMappers;
+import ai.konduit.serving.vertx.config.ExecutionMode;
 import ai.konduit.serving.vertx.config.InferenceConfiguration;
 import ai.konduit.serving.vertx.config.InferenceDeploymentResult;
 import ai.konduit.serving.vertx.config.ServerProtocol;
@@ -60,9 +62,16 @@ public class DeployKonduitServing {
                               DeploymentOptions deploymentOptions,
                               InferenceConfiguration inferenceConfiguration,
                               Handler<AsyncResult<InferenceDeploymentResult>> eventHandler) {
-        Vertx vertx = Vertx.vertx(vertxOptions
-                .setMaxEventLoopExecuteTime(60)
-                .setMaxEventLoopExecuteTimeUnit(TimeUnit.SECONDS));
+        if (inferenceConfiguration.protocol() != HTTP ||
+                inferenceConfiguration.executionConfiguration().mode() == ExecutionMode.EVENT_LOOP) {
+            // The pipeline is executed directly on the event loop in these cases, so long running
+            // requests shouldn't be reported as blocked threads.
+            vertxOptions.setMaxEventLoopExecuteTime(60)
+                    .setMaxEventLoopExecuteTimeUnit(TimeUnit.SECONDS);
+        }
+
+        configureProcess(inferenceConfiguration);
+        Vertx vertx = Vertx.vertx(vertxOptions);
         registerInferenceVerticleFactory(vertx);
 
         JsonObject jsonConfiguration;
@@ -116,6 +125,15 @@ public class DeployKonduitServing {
         return PROTOCOL_SERVICE_MAP;
     }
 
+    /**
+     * Apply the process-wide settings of the configuration. Called once per process, before the verticles (and hence
+     * the pipeline executors of each verticle instance) are created
+     */
+    public static void configureProcess(InferenceConfiguration inferenceConfiguration) {
+        //With multiple verticle instances, runners that are thread-safe are shared instead of loading the models once per instance
+        SharedRunnerRegistry.setEnabled(inferenceConfiguration.executionConfiguration().shareRunners());
+    }
+
     public static void registerInferenceVerticleFactory(Vertx vertx) {
         vertx.registerVerticleFactory(new ServiceVerticleFactory(vertx));
     }
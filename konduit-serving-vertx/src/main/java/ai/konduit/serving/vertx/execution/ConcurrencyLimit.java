@@ -0,0 +1,192 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.execution;
+
+import ai.konduit.serving.vertx.config.ExecutionConfiguration;
+import ai.konduit.serving.vertx.config.LimitAlgorithm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The limit on the number of requests that {@link InferenceExecutionService} executes at the same time. Adaptive limits
+ * are updated with the latency of every completed execution, which lets the service find the concurrency at which the
+ * pipeline has the highest throughput without latency building up, instead of relying on a hand tuned fixed value.
+ */
+public abstract class ConcurrencyLimit {
+
+    protected final int minLimit;
+    protected final int maxLimit;
+
+    protected ConcurrencyLimit(int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        this.maxLimit = Math.max(1, maxLimit);
+    }
+
+    /**
+     * @return the limit for the given configuration
+     */
+    public static ConcurrencyLimit create(ExecutionConfiguration configuration) {
+        int max = configuration.resolvedMaxInFlight();
+        LimitAlgorithm algorithm = configuration.limitAlgorithm() == null ? LimitAlgorithm.FIXED : configuration.limitAlgorithm();
+        switch (algorithm) {
+            case AIMD:
+                return new Aimd(configuration.minInFlight(), max, TimeUnit.MILLISECONDS.toNanos(configuration.targetLatencyMillis()));
+            case GRADIENT:
+                return new Gradient(configuration.minInFlight(), max);
+            case FIXED:
+            default:
+                return new Fixed(max);
+        }
+    }
+
+    /**
+     * @return the current limit
+     */
+    public abstract int getLimit();
+
+    /**
+     * Update the limit with the result of an execution
+     *
+     * @param latencyNanos   How long the execution took. Not meaningful (and ignored) for dropped requests
+     * @param inFlight       Number of executions in flight when this execution started
+     * @param droppedRequest True if the request missed its deadline
+     */
+    public abstract void onSample(long latencyNanos, int inFlight, boolean droppedRequest);
+
+    protected int clamp(double limit) {
+        return (int) Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+
+    public static class Fixed extends ConcurrencyLimit {
+
+        public Fixed(int limit) {
+            super(limit, limit);
+        }
+
+        @Override
+        public int getLimit() {
+            return maxLimit;
+        }
+
+        @Override
+        public void onSample(long latencyNanos, int inFlight, boolean droppedRequest) {
+            //Nothing to update
+        }
+    }
+
+    /**
+     * Additive increase, multiplicative decrease: the limit grows by one for every execution that completes within the
+     * target latency while the limit is being used, and is cut by 10% when an execution is slower than the target or a
+     * request misses its deadline.
+     */
+    public static class Aimd extends ConcurrencyLimit {
+        private static final double BACKOFF_RATIO = 0.9;
+
+        private final long targetLatencyNanos;
+        private volatile int limit;
+
+        public Aimd(int minLimit, int maxLimit, long targetLatencyNanos) {
+            super(minLimit, maxLimit);
+            this.targetLatencyNanos = targetLatencyNanos;
+            this.limit = this.maxLimit;
+        }
+
+        @Override
+        public int getLimit() {
+            return limit;
+        }
+
+        @Override
+        public synchronized void onSample(long latencyNanos, int inFlight, boolean droppedRequest) {
+            if (droppedRequest || (targetLatencyNanos > 0 && latencyNanos > targetLatencyNanos)) {
+                limit = clamp(Math.floor(limit * BACKOFF_RATIO));
+            } else if (inFlight * 2 >= limit) {
+                //Only grow when the limit is actually in use, otherwise it grows without bound while idle
+                limit = clamp(limit + 1);
+            }
+        }
+    }
+
+    /**
+     * Gradient based limit: compares a long term average of the latency with the latency of the recent executions.
+     * When the recent latency goes up (requests start waiting on each other inside the pipeline) the gradient
+     * {@code longTerm / recent} drops below 1 and the limit shrinks proportionally. A headroom of {@code sqrt(limit)}
+     * allows the limit to grow (and probe for more throughput) while the latency is stable.
+     */
+    public static class Gradient extends ConcurrencyLimit {
+        private static final double TOLERANCE = 1.5;
+        private static final double SMOOTHING = 0.2;
+        private static final double LONG_TERM_WEIGHT = 2.0 / (600 + 1);     //Exponential average over ~600 samples
+        private static final double SHORT_TERM_WEIGHT = 2.0 / (10 + 1);     //Exponential average over ~10 samples
+
+        private double estimatedLimit;
+        private double longTermLatency;
+        private double shortTermLatency;
+        private volatile int limit;
+
+        public Gradient(int minLimit, int maxLimit) {
+            super(minLimit, maxLimit);
+            this.estimatedLimit = this.maxLimit;
+            this.limit = this.maxLimit;
+        }
+
+        @Override
+        public int getLimit() {
+            return limit;
+        }
+
+        @Override
+        public synchronized void onSample(long latencyNanos, int inFlight, boolean droppedRequest) {
+            if (droppedRequest) {
+                //The request wasn't executed, so its latency says nothing about the pipeline: only back off
+                update(0.5);
+                return;
+            }
+
+            double latency = Math.max(1, latencyNanos);
+            if (longTermLatency == 0) {
+                longTermLatency = latency;
+                shortTermLatency = latency;
+            } else {
+                longTermLatency += LONG_TERM_WEIGHT * (latency - longTermLatency);
+                shortTermLatency += SHORT_TERM_WEIGHT * (latency - shortTermLatency);
+            }
+
+            //After a sustained latency decrease, let the long term average come down faster, so that a later increase
+            //is measured against the new latency rather than the old, higher one
+            if (longTermLatency / shortTermLatency > 2) {
+                longTermLatency *= 0.95;
+            }
+
+            //Don't grow the limit when it isn't being used
+            if (inFlight < estimatedLimit / 2) {
+                return;
+            }
+
+            update(Math.max(0.5, Math.min(1.0, TOLERANCE * longTermLatency / shortTermLatency)));
+        }
+
+        private void update(double gradient) {
+            double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+            estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+            limit = clamp(estimatedLimit);
+        }
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.execution;
+
+import ai.konduit.serving.pipeline.registry.MicrometerRegistry;
+import ai.konduit.serving.vertx.config.ExecutionConfiguration;
+import ai.konduit.serving.vertx.config.ExecutionMode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking work (usually {@code PipelineExecutor#exec}) away from the vert.x event loop, as configured
+ * by an {@link ExecutionConfiguration}. The number of tasks that can be executing at the same time is limited
+ * by a {@link ConcurrencyLimit} - either fixed at {@link ExecutionConfiguration#resolvedMaxInFlight()}, or adapting
+ * to the measured execution latency - and at most {@link ExecutionConfiguration#maxQueueSize()} tasks can wait for
+ * their turn. Anything submitted beyond that fails immediately with a {@link RejectedExecutionException} so that the
+ * caller can shed the load (for example, with an HTTP 503 response).
+ * <p>
+ * Tasks can have a deadline: a task that is still waiting in the queue when its deadline passes is failed with a
+ * {@link TimeoutException} without being executed. Tasks that have already started are not interrupted.
+ * <p>
+ * Result handlers are always called back on the vert.x context that submitted the task, so that response encoding
+ * and writing stays on the event loop.
+ * <p>
+ * Server verticles use {@link #shared(Vertx, String, ExecutionConfiguration)}, so that all the verticle instances
+ * deployed on a vert.x instance share one service - and hence one worker pool, in-flight limit and queue - per protocol.
+ * <p>
+ * The current limit, the number of in-flight and queued tasks, and the number of rejected tasks are published as
+ * metrics through {@link MicrometerRegistry}, with the "konduit.admission" prefix and a "service" tag holding the
+ * name of the service (the protocol, for shared services).
+ */
+@Slf4j
+public class InferenceExecutionService {
+
+    public static final String METRIC_PREFIX = "konduit.admission";
+
+    public static final String DEFAULT_NAME = "default";
+
+    private static final ScheduledExecutorService DEADLINE_SCHEDULER = createDeadlineScheduler();
+
+    //Services shared by the verticles of each vert.x instance, by name
+    private static final Map<Vertx, Map<String, InferenceExecutionService>> SHARED = new IdentityHashMap<>();
+
+    @Getter
+    private final String name;
+    @Getter
+    private final ExecutionConfiguration configuration;
+    @Getter
+    private final ExecutionMode mode;
+    @Getter
+    private final ConcurrencyLimit limit;
+    private final ExecutorService executorService;
+    private final int maxQueueSize;
+    private final long defaultTimeoutNanos;
+
+    //Guarded by "this"
+    private final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+    private int inFlight;
+
+    private final List<Meter> meters = new ArrayList<>();
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedDeadline;
+
+    //Set for shared services only. Guarded by SHARED
+    private Vertx sharedBy;
+    private int refCount;
+
+    public InferenceExecutionService(ExecutionConfiguration configuration) {
+        this(configuration, DEFAULT_NAME);
+    }
+
+    /**
+     * @param configuration the execution configuration
+     * @param name          the name of the service, used as the "service" tag of its metrics
+     */
+    public InferenceExecutionService(ExecutionConfiguration configuration, String name) {
+        this.name = name;
+        this.configuration = configuration;
+
+        ExecutorService virtualThreadExecutor = null;
+        if(configuration.mode() == ExecutionMode.VIRTUAL_THREADS) {
+            virtualThreadExecutor = createVirtualThreadExecutor();
+        }
+
+        if(configuration.mode() == ExecutionMode.EVENT_LOOP) {
+            this.mode = ExecutionMode.EVENT_LOOP;
+            this.executorService = null;
+        } else if(virtualThreadExecutor != null) {
+            this.mode = ExecutionMode.VIRTUAL_THREADS;
+            this.executorService = virtualThreadExecutor;
+        } else {
+            this.mode = ExecutionMode.WORKER_POOL;
+            this.executorService = Executors.newFixedThreadPool(configuration.resolvedWorkerPoolSize(), new WorkerThreadFactory());
+        }
+
+        this.limit = ConcurrencyLimit.create(configuration);
+        this.maxQueueSize = Math.max(0, configuration.maxQueueSize());
+        this.defaultTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, configuration.defaultTimeoutMillis()));
+
+        MeterRegistry registry = MicrometerRegistry.getRegistry();
+        Tags tags = Tags.of("service", name);
+        register(Gauge.builder(METRIC_PREFIX + ".limit", limit, ConcurrencyLimit::getLimit).tags(tags)
+                .description("Current limit on the number of requests executing at the same time").register(registry));
+        register(Gauge.builder(METRIC_PREFIX + ".inflight", this, InferenceExecutionService::inFlightCount).tags(tags)
+                .description("Number of requests executing").register(registry));
+        register(Gauge.builder(METRIC_PREFIX + ".queue.depth", this, InferenceExecutionService::queuedCount).tags(tags)
+                .description("Number of requests waiting for execution").register(registry));
+        rejectedQueueFull = register(Counter.builder(METRIC_PREFIX + ".rejected").tags(tags).tag("reason", "queue_full")
+                .description("Requests rejected without being executed").register(registry));
+        rejectedDeadline = register(Counter.builder(METRIC_PREFIX + ".rejected").tags(tags).tag("reason", "deadline")
+                .description("Requests rejected without being executed").register(registry));
+
+        if(mode != ExecutionMode.EVENT_LOOP) {
+            log.info("Executing pipeline in {} mode with {} in-flight limit: {} (min {}) and max queue size: {}",
+                    mode, configuration.limitAlgorithm(), limit.getLimit(), configuration.minInFlight(), maxQueueSize);
+        }
+    }
+
+    private <M extends Meter> M register(M meter) {
+        meters.add(meter);
+        return meter;
+    }
+
+    /**
+     * @return an execution service that runs everything directly on the calling thread
+     */
+    public static InferenceExecutionService eventLoop() {
+        return new InferenceExecutionService(new ExecutionConfiguration().mode(ExecutionMode.EVENT_LOOP), "event_loop");
+    }
+
+    /**
+     * Get the execution service with the given name that is shared by everything deployed on the vert.x instance, creating
+     * it from the configuration if there is none yet. The configuration of later calls is ignored: all the verticle
+     * instances of a deployment have the same configuration.<br>
+     * Each call must be matched by a call to {@link #close()}: the shared service is only closed by the last one.
+     *
+     * @param vertx         the vert.x instance the service is shared on
+     * @param name          the name of the service (usually the protocol), also used as the "service" tag of its metrics
+     * @param configuration the configuration to create the service with, if needed
+     */
+    public static InferenceExecutionService shared(Vertx vertx, String name, ExecutionConfiguration configuration) {
+        synchronized (SHARED) {
+            Map<String, InferenceExecutionService> services = SHARED.computeIfAbsent(vertx, v -> new HashMap<>());
+            InferenceExecutionService service = services.get(name);
+            if(service == null) {
+                service = new InferenceExecutionService(configuration, name);
+                service.sharedBy = vertx;
+                services.put(name, service);
+            }
+            service.refCount++;
+            return service;
+        }
+    }
+
+    /**
+     * Execute the given task as configured and call back the result handler on the current vert.x context.
+     * The task has the configured default deadline, if any.
+     *
+     * @see #execute(Callable, long, Handler)
+     */
+    public <T> void execute(Callable<T> task, Handler<AsyncResult<T>> resultHandler) {
+        execute(task, 0, resultHandler);
+    }
+
+    /**
+     * Execute the given task as configured and call back the result handler on the current vert.x context.
+     *
+     * @param task          the blocking task to execute
+     * @param timeoutNanos  the time the task may wait for execution, from now. 0 means the configured default deadline
+     *                      (if any). Ignored in {@link ExecutionMode#EVENT_LOOP} mode, where tasks never wait.
+     * @param resultHandler the handler to call with the result of the task. Fails with a {@link RejectedExecutionException}
+     *                      if the in-flight limit and the queue are both full, or with a {@link TimeoutException} if the
+     *                      deadline passed before the task could start.
+     */
+    public <T> void execute(Callable<T> task, long timeoutNanos, Handler<AsyncResult<T>> resultHandler) {
+        if(mode == ExecutionMode.EVENT_LOOP) {
+            resultHandler.handle(call(task));
+            return;
+        }
+
+        long timeout = timeoutNanos > 0 ? timeoutNanos : defaultTimeoutNanos;
+        Task<T> t = new Task<>(task, resultHandler, Vertx.currentContext(), timeout > 0 ? System.nanoTime() + timeout : 0);
+
+        boolean dispatch;
+        boolean rejected = false;
+        synchronized (this) {
+            dispatch = inFlight < limit.getLimit() && queue.isEmpty();
+            if(dispatch) {
+                inFlight++;
+            } else if(queue.size() < maxQueueSize) {
+                queue.add(t);
+            } else {
+                rejected = true;
+            }
+        }
+
+        if(rejected) {
+            rejectedQueueFull.increment();
+            resultHandler.handle(Future.failedFuture(new RejectedExecutionException(
+                    String.format("Too many pending requests. Max in-flight: %s, max queue size: %s",
+                            limit.getLimit(),
+                            maxQueueSize))));
+        } else if(dispatch) {
+            dispatch(t);
+        } else if(t.deadlineNanos != 0) {
+            t.timeout = DEADLINE_SCHEDULER.schedule(() -> expire(t), timeout, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return True if a task submitted now would be rejected straight away, because the in-flight limit and the queue
+     * are both full. Useful for rejecting requests before spending any resources (such as reading the request body) on them.
+     */
+    public synchronized boolean isSaturated() {
+        return mode != ExecutionMode.EVENT_LOOP && inFlight >= limit.getLimit() && queue.size() >= maxQueueSize;
+    }
+
+    /**
+     * @return the number of tasks that are either executing or waiting for execution
+     */
+    public synchronized int pendingCount() {
+        return inFlight + queue.size();
+    }
+
+    /**
+     * @return the number of tasks that are executing
+     */
+    public synchronized int inFlightCount() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of tasks that are waiting for execution
+     */
+    public synchronized int queuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting new tasks. Tasks that were already submitted are allowed to finish.<br>
+     * A service returned by {@link #shared(Vertx, String, ExecutionConfiguration)} is only closed once it has been closed
+     * as many times as it was returned.
+     */
+    public void close() {
+        synchronized (SHARED) {
+            if(sharedBy != null) {
+                if(--refCount > 0) {
+                    return;
+                }
+                Map<String, InferenceExecutionService> services = SHARED.get(sharedBy);
+                if(services != null) {
+                    services.remove(name, this);
+                    if(services.isEmpty()) {
+                        SHARED.remove(sharedBy);
+                    }
+                }
+                sharedBy = null;
+            }
+        }
+
+        if(executorService != null) {
+            executorService.shutdown();
+        }
+
+        MeterRegistry registry = MicrometerRegistry.getRegistry();
+        for(Meter m : meters) {
+            registry.remove(m);
+        }
+    }
+
+    private <T> void dispatch(Task<T> t) {
+        try {
+            executorService.execute(() -> run(t));
+        } catch (RejectedExecutionException exception) {
+            synchronized (this) {
+                inFlight--;
+            }
+            t.complete(Future.failedFuture(exception));
+        }
+    }
+
+    private <T> void run(Task<T> t) {
+        int inFlightAtStart;
+        synchronized (this) {
+            inFlightAtStart = inFlight;
+        }
+
+        long start = System.nanoTime();
+        AsyncResult<T> result;
+        boolean dropped = false;
+        if(t.deadlineNanos != 0 && start - t.deadlineNanos >= 0) {
+            //Dispatched from the queue just as the deadline passed
+            rejectedDeadline.increment();
+            result = Future.failedFuture(new TimeoutException("Request deadline passed before execution could start"));
+            dropped = true;
+        } else {
+            result = call(t.task);
+        }
+
+        limit.onSample(System.nanoTime() - start, inFlightAtStart, dropped);
+        release();
+        t.complete(result);
+    }
+
+    private void release() {
+        List<Task<?>> toDispatch = null;
+        synchronized (this) {
+            inFlight--;
+            while(inFlight < limit.getLimit() && !queue.isEmpty()) {
+                Task<?> next = queue.poll();
+                if(next.timeout != null) {
+                    next.timeout.cancel(false);
+                }
+                inFlight++;
+                if(toDispatch == null) {
+                    toDispatch = new ArrayList<>(1);
+                }
+                toDispatch.add(next);
+            }
+        }
+
+        if(toDispatch != null) {
+            for(Task<?> next : toDispatch) {
+                dispatch(next);
+            }
+        }
+    }
+
+    private void expire(Task<?> t) {
+        synchronized (this) {
+            if(!queue.remove(t)) {
+                return;     //Already dispatched
+            }
+        }
+
+        rejectedDeadline.increment();
+        //A deadline being missed while queued means the limit is too high for the current latency
+        limit.onSample(0, limit.getLimit(), true);
+        t.complete(Future.failedFuture(new TimeoutException("Request deadline passed while waiting for execution")));
+    }
+
+    private static <T> AsyncResult<T> call(Callable<T> task) {
+        try {
+            return Future.succeededFuture(task.call());
+        } catch (Throwable throwable) {
+            return Future.failedFuture(throwable);
+        }
+    }
+
+    private static ScheduledExecutorService createDeadlineScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "konduit-inference-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private static class Task<T> {
+        private final Callable<T> task;
+        private final Handler<AsyncResult<T>> resultHandler;
+        private final Context context;
+        private final long deadlineNanos;
+        private volatile ScheduledFuture<?> timeout;
+
+        private Task(Callable<T> task, Handler<AsyncResult<T>> resultHandler, Context context, long deadlineNanos) {
+            this.task = task;
+            this.resultHandler = resultHandler;
+            this.context = context;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private void complete(AsyncResult<T> result) {
+            if(context != null) {
+                context.runOnContext(v -> resultHandler.handle(result));
+            } else {
+                resultHandler.handle(result);
+            }
+        }
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            // Looked up reflectively as virtual threads are only available from JDK 21
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception exception) {
+            log.warn("Virtual threads aren't available in this JVM ({}). Falling back to {} execution mode.",
+                    System.getProperty("java.version"), ExecutionMode.WORKER_POOL);
+            return null;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+        private final int poolNumber = POOL_COUNTER.incrementAndGet();
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, String.format("konduit-inference-worker-%d-%d", poolNumber, threadCounter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.execution;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.impl.data.ndarray.SerializedNDArray;
+import ai.konduit.serving.pipeline.impl.pipeline.CachingPipelineExecutor;
+import ai.konduit.serving.vertx.config.WarmupConfiguration;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Warms up a pipeline by executing it a number of times with sample (or synthesized) inputs, as configured by a
+ * {@link WarmupConfiguration}. This moves the one-time costs of the first executions (JIT compilation, model graph
+ * optimization, workspace and native library initialization, etc.) to server startup, instead of the first requests.
+ * <p>
+ * The progress is tracked so that it can be reported by a readiness check while the warm-up is running.
+ */
+@Slf4j
+public class PipelineWarmup {
+
+    public enum State {
+        PENDING, RUNNING, COMPLETE, FAILED
+    }
+
+    @Getter
+    private final WarmupConfiguration configuration;
+    private final PipelineExecutor executor;
+
+    @Getter
+    private volatile State state = State.PENDING;
+    @Getter
+    private volatile int completedExecutions;
+    @Getter
+    private volatile int totalExecutions;
+    @Getter
+    private volatile String error;
+
+    /**
+     * @param configuration Warm-up configuration. May be null, in which case there is no warm-up
+     * @param executor      The executor to warm up
+     */
+    public PipelineWarmup(WarmupConfiguration configuration, @NonNull PipelineExecutor executor) {
+        this.configuration = configuration;
+        //Warming up through the result cache would only execute each input once
+        this.executor = executor instanceof CachingPipelineExecutor ?
+                ((CachingPipelineExecutor) executor).getUnderlyingExec() : executor;
+    }
+
+    /**
+     * Run the warm-up, blocking until all of the warm-up executions are done
+     *
+     * @throws IllegalStateException If a warm-up execution fails and {@link WarmupConfiguration#failOnError()} is set
+     */
+    public void run() {
+        if (configuration == null || !configuration.enabled()) {
+            state = State.COMPLETE;
+            return;
+        }
+
+        state = State.RUNNING;
+        try {
+            List<Data> inputs = inputs();
+            totalExecutions = inputs.size() * configuration.iterations();
+            log.info("Warming up the pipeline with {} inputs, {} iterations each", inputs.size(), configuration.iterations());
+
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < configuration.iterations(); i++) {
+                for (Data d : inputs) {
+                    executor.exec(d);
+                    completedExecutions++;
+                }
+            }
+            log.info("Pipeline warm-up completed in {} ms", System.currentTimeMillis() - start);
+            state = State.COMPLETE;
+        } catch (Throwable t) {
+            error = t.toString();
+            state = State.FAILED;
+            if (configuration.failOnError()) {
+                throw new IllegalStateException("Pipeline warm-up failed", t);
+            }
+            log.warn("Pipeline warm-up failed after {} of {} executions. Continuing without warm-up.",
+                    completedExecutions, totalExecutions, t);
+        }
+    }
+
+    /**
+     * @return True if the warm-up has finished (or failed, without {@link WarmupConfiguration#failOnError()} set),
+     * and the pipeline is ready to serve requests
+     */
+    public boolean isReady() {
+        return state == State.COMPLETE || (state == State.FAILED && !configuration.failOnError());
+    }
+
+    /**
+     * @return The warm-up progress, for reporting in a readiness check
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("ready", isReady());
+        m.put("warmup", state.name());
+        m.put("completed", completedExecutions);
+        m.put("total", totalExecutions);
+        if (error != null) {
+            m.put("error", error);
+        }
+        return m;
+    }
+
+    protected List<Data> inputs() throws IOException {
+        List<Data> out = new ArrayList<>();
+        if (configuration.samplePaths() != null) {
+            for (String path : configuration.samplePaths()) {
+                File f = new File(path);
+                if (f.getName().toLowerCase().endsWith(".json")) {
+                    out.add(Data.fromJson(FileUtils.readFileToString(f, StandardCharsets.UTF_8)));
+                } else {
+                    out.add(Data.fromFile(f));
+                }
+            }
+        }
+
+        if (configuration.inputs() != null && !configuration.inputs().isEmpty()) {
+            Data synthesized = Data.empty();
+            for (WarmupConfiguration.WarmupInput input : configuration.inputs()) {
+                synthesized.put(input.name(), synthesize(input));
+            }
+            out.add(synthesized);
+        }
+        return out;
+    }
+
+    protected static NDArray synthesize(WarmupConfiguration.WarmupInput input) {
+        if (!input.dataType().isFixedWidth()) {
+            throw new IllegalStateException("Unable to synthesize warm-up input \"" + input.name() + "\" of type " +
+                    input.dataType() + ": only fixed width (numerical) types are supported");
+        }
+
+        long[] shape = input.shape() == null ? new long[0] : input.shape().clone();
+        long length = input.dataType().width();
+        for (int i = 0; i < shape.length; i++) {
+            if (shape[i] < 0) {
+                shape[i] = 1;
+            }
+            length *= shape[i];
+        }
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Warm-up input \"" + input.name() + "\" is too large: " + length + " bytes");
+        }
+
+        ByteBuffer bb = ByteBuffer.allocateDirect((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        return NDArray.create(new SerializedNDArray(input.dataType(), shape, bb));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.util;
+
+import ai.konduit.serving.pipeline.api.data.Data;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Utilities for serializing {@link Data} instances into Vert.x {@link Buffer}s
+ */
+public class DataBuffers {
+
+    private static final int MIN_CHUNK_SIZE = 4 * 1024;
+    private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+    private DataBuffers() {
+    }
+
+    /**
+     * Serialize the data to JSON (as per {@link Data#toJson()}), written directly into a buffer.<br>
+     * Unlike {@code Buffer.buffer(data.toJson())}, no intermediate JSON String (or UTF-8 byte[] copy of it) is created,
+     * and NDArray, image and bytes values are Base64 encoded in chunks straight into the output. The buffer is made of
+     * fixed size chunks so it is never copied to grow, and is written out by Netty with a gathering write.
+     *
+     * @param data Data to serialize
+     * @return Buffer containing the UTF-8 JSON
+     */
+    public static Buffer toJson(@NonNull Data data) {
+        ChunkedOutputStream os = new ChunkedOutputStream();
+        try {
+            data.writeJson(os);
+        } catch (IOException e) {
+            throw new RuntimeException("Error serializing Data instance to JSON", e);
+        }
+        return Buffer.buffer(os.toByteBuf());
+    }
+
+    /**
+     * Wrap the NIO buffers (from their positions to their limits) as a single Vert.x buffer, without copying them
+     *
+     * @param buffers Buffers, in order. These should not be modified until the returned buffer has been written
+     */
+    public static Buffer wrap(@NonNull List<ByteBuffer> buffers) {
+        return Buffer.buffer(Unpooled.wrappedBuffer(buffers.toArray(new ByteBuffer[0])));
+    }
+
+    /**
+     * An output stream that writes into a composite buffer of chunks. Chunk sizes start small (so that small outputs
+     * stay small) and double up to {@link #MAX_CHUNK_SIZE}
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+        private final CompositeByteBuf out = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        private ByteBuf current;
+        private int nextChunkSize = MIN_CHUNK_SIZE;
+
+        @Override
+        public void write(int b) {
+            ensureWritable();
+            current.writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                ensureWritable();
+                int n = Math.min(len, current.writableBytes());
+                current.writeBytes(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void ensureWritable() {
+            if (current != null && current.isWritable()) {
+                return;
+            }
+            addCurrent();
+            current = Unpooled.buffer(nextChunkSize, nextChunkSize);
+            nextChunkSize = Math.min(2 * nextChunkSize, MAX_CHUNK_SIZE);
+        }
+
+        private void addCurrent() {
+            if (current != null && current.isReadable()) {
+                out.addComponent(true, current);
+            }
+            current = null;
+        }
+
+        private ByteBuf toByteBuf() {
+            addCurrent();
+            return out;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.util;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A blocking {@link OutputStream} that writes a chunked HTTP response, for producing a response body incrementally from
+ * a thread other than the event loop. Bytes are written to the response in chunks of {@code chunkSize}, and writes
+ * block while the write queue of the response is full, so that a slow client slows down the producer instead of the
+ * response being buffered in memory.
+ * <p>
+ * {@link #close()} ends the response. This must not be written to from the event loop.
+ */
+public class HttpResponseOutputStream extends OutputStream {
+
+    private final HttpServerResponse response;
+    private final byte[] chunk;
+    private int count;
+    private volatile boolean connectionClosed;
+    private boolean closed;
+
+    public HttpResponseOutputStream(@NonNull HttpServerResponse response, int chunkSize) {
+        this.response = response;
+        this.chunk = new byte[chunkSize];
+        response.setChunked(true);
+        response.closeHandler(v -> {
+            connectionClosed = true;
+            synchronized (this) {
+                notifyAll();
+            }
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == chunk.length)
+            flushChunk();
+        chunk[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == chunk.length)
+                flushChunk();
+            int n = Math.min(len, chunk.length - count);
+            System.arraycopy(b, off, chunk, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushChunk();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        flushChunk();
+        if (!connectionClosed)
+            response.end();
+    }
+
+    private void flushChunk() throws IOException {
+        if (count == 0)
+            return;
+        awaitWritable();
+        byte[] bytes = new byte[count];
+        System.arraycopy(chunk, 0, bytes, 0, count);
+        count = 0;
+        response.write(Buffer.buffer(bytes));
+    }
+
+    private void awaitWritable() throws IOException {
+        while (true) {
+            if (connectionClosed)
+                throw new IOException("Connection was closed by the client");
+            if (!response.writeQueueFull())
+                return;
+
+            synchronized (this) {
+                //Set the drain handler before checking again, so that a drain between the two can't be missed
+                response.drainHandler(v -> {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                });
+                if (response.writeQueueFull() && !connectionClosed) {
+                    try {
+                        wait(1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for the response to drain", e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.util;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+
+/**
+ * A blocking {@link InputStream} over a Vert.x {@link ReadStream}, for consuming a request body incrementally from a
+ * thread other than the event loop. The read stream is paused while more than {@code maxBufferedBytes} bytes are
+ * waiting to be read, and resumed once half of them have been consumed, so memory use stays bounded no matter how large
+ * the body is.
+ * <p>
+ * The handlers of the read stream are replaced, so this should be created on the event loop (before any data has
+ * been received) and must not be read from the event loop.
+ */
+public class ReadStreamInputStream extends InputStream {
+
+    private final Context context;
+    private final ReadStream<Buffer> stream;
+    private final long maxBufferedBytes;
+
+    private final ArrayDeque<Buffer> queue = new ArrayDeque<>();
+    private long buffered;
+    private boolean paused;
+    private boolean ended;
+    private Throwable error;
+    private boolean closed;
+
+    private Buffer current;
+    private int position;
+
+    public ReadStreamInputStream(@NonNull Context context, @NonNull ReadStream<Buffer> stream, long maxBufferedBytes) {
+        this.context = context;
+        this.stream = stream;
+        this.maxBufferedBytes = maxBufferedBytes;
+
+        stream.handler(this::onData);
+        stream.endHandler(v -> onEnd());
+        stream.exceptionHandler(this::onError);
+    }
+
+    private synchronized void onData(Buffer buffer) {
+        if (closed)
+            return;
+        queue.add(buffer);
+        buffered += buffer.length();
+        if (!paused && buffered >= maxBufferedBytes) {
+            paused = true;
+            stream.pause();
+        }
+        notifyAll();
+    }
+
+    private synchronized void onEnd() {
+        ended = true;
+        notifyAll();
+    }
+
+    private synchronized void onError(Throwable t) {
+        error = t;
+        notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n < 0 ? -1 : (b[0] & 0xFF);
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!nextBuffer())
+            return -1;
+
+        int n = Math.min(len, current.length() - position);
+        current.getBytes(position, position + n, b, off);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public synchronized int available() {
+        return current == null ? 0 : current.length() - position;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+        buffered = 0;
+        current = null;
+        if (paused) {
+            paused = false;
+            context.runOnContext(v -> stream.resume());
+        }
+    }
+
+    /**
+     * Wait for the next buffer with unread bytes, if the current one has been read completely
+     *
+     * @return False at the end of the stream
+     */
+    private boolean nextBuffer() throws IOException {
+        while (current == null || position >= current.length()) {
+            if (closed)
+                throw new IOException("Stream is closed");
+            Buffer next = queue.poll();
+            if (next != null) {
+                current = next;
+                position = 0;
+                buffered -= next.length();
+                if (paused && buffered < maxBufferedBytes / 2) {
+                    paused = false;
+                    context.runOnContext(v -> stream.resume());
+                }
+                continue;
+            }
+
+            if (error != null)
+                throw new IOException("Error reading from stream", error);
+            if (ended)
+                return false;
+
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for data", e);
+            }
+        }
+        return true;
+    }
+}
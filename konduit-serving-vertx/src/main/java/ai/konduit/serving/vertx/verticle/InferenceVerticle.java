@@ -22,7 +22,13 @@ package ai.konduit.serving.vertx.verticle;
 
 import ai.konduit.serving.pipeline.api.pipeline.Pipeline;
 import ai.konduit.serving.pipeline.api.pipeline.PipelineExecutor;
+import ai.konduit.serving.pipeline.impl.pipeline.BatchingPipelineExecutor;
+import ai.konduit.serving.pipeline.impl.pipeline.CachingPipelineExecutor;
+import ai.konduit.serving.vertx.config.ExecutionConfiguration;
 import ai.konduit.serving.vertx.config.InferenceConfiguration;
+import ai.konduit.serving.vertx.config.ResultCacheConfiguration;
+import ai.konduit.serving.vertx.execution.InferenceExecutionService;
+import ai.konduit.serving.vertx.execution.PipelineWarmup;
 import ai.konduit.serving.pipeline.settings.DirectoryFetcher;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Promise;
@@ -34,6 +40,7 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public abstract class InferenceVerticle extends AbstractVerticle {
@@ -42,12 +49,36 @@ public abstract class InferenceVerticle extends AbstractVerticle {
     protected InferenceConfiguration inferenceConfiguration;
     protected Pipeline pipeline;
     protected PipelineExecutor pipelineExecutor;
+    protected InferenceExecutionService executionService;
+    protected PipelineWarmup warmup;
 
     protected void initialize() throws Exception {
         inferenceConfiguration = InferenceConfiguration.fromJson(context.config().encode());
         pipeline = inferenceConfiguration.pipeline();
+
+        ExecutionConfiguration executionConfiguration = inferenceConfiguration.executionConfiguration();
         pipelineExecutor = pipeline.executor();
 
+        if (executionConfiguration.maxBatchSize() > 1) {
+            pipelineExecutor = new BatchingPipelineExecutor(pipelineExecutor,
+                    executionConfiguration.maxBatchSize(),
+                    executionConfiguration.maxBatchWaitMicros());
+        }
+
+        ResultCacheConfiguration resultCache = executionConfiguration.resultCache();
+        if (resultCache != null && resultCache.enabled()) {
+            //Outermost, so that cache hits don't wait for a batch to fill up
+            pipelineExecutor = new CachingPipelineExecutor(pipelineExecutor,
+                    resultCache.keys(),
+                    resultCache.maxEntries(),
+                    resultCache.maxWeightBytes(),
+                    TimeUnit.SECONDS.toMillis(resultCache.ttlSeconds()),
+                    resultCache.offHeap());
+        }
+        //One service (worker pool, in-flight limit and queue) for all the instances of the verticle, not one each
+        executionService = InferenceExecutionService.shared(vertx, inferenceConfiguration.protocol().name().toLowerCase(), executionConfiguration);
+        warmup = new PipelineWarmup(inferenceConfiguration.warmupConfiguration(), pipelineExecutor);
+
         log.info("\n\n" +
                 "####################################################################\n" +
                 "#                                                                  #\n" +
@@ -62,6 +93,14 @@ public abstract class InferenceVerticle extends AbstractVerticle {
 
     @Override
     public void stop(Promise<Void> stopPromise) {
+        if (executionService != null) {
+            executionService.close();
+        }
+
+        if (pipelineExecutor != null) {
+            pipelineExecutor.close();
+        }
+
         if (vertx != null) {
             vertx.close(handler -> {
                 if(handler.succeeded()) {
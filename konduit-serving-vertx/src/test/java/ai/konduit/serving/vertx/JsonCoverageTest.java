@@ -21,6 +21,8 @@ import ai.konduit.serving.common.test.BaseJsonCoverageTest;
 import ai.konduit.serving.pipeline.impl.pipeline.GraphPipeline;
 import ai.konduit.serving.pipeline.impl.pipeline.graph.GraphStep;
 import ai.konduit.serving.pipeline.util.ObjectMappers;
+import ai.konduit.serving.vertx.config.ExecutionConfiguration;
+import ai.konduit.serving.vertx.config.ExecutionMode;
 import ai.konduit.serving.vertx.config.InferenceConfiguration;
 import ai.konduit.serving.vertx.config.ServerProtocol;
 import org.junit.Test;
@@ -52,6 +54,7 @@ public class JsonCoverageTest extends BaseJsonCoverageTest {
        testConfigSerDe(new InferenceConfiguration()
                .customEndpoints(Collections.singletonList("0"))
                .port(80).protocol(ServerProtocol.HTTP)
+               .executionConfiguration(new ExecutionConfiguration().mode(ExecutionMode.VIRTUAL_THREADS).maxQueueSize(10))
                .pipeline(new GraphPipeline(steps, "foo", "myGraphPipeline"))
        );
     }
@@ -0,0 +1,220 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.execution;
+
+import ai.konduit.serving.pipeline.registry.MicrometerRegistry;
+import ai.konduit.serving.vertx.config.ExecutionConfiguration;
+import ai.konduit.serving.vertx.config.ExecutionMode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Vertx;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class InferenceExecutionServiceTest {
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        InferenceExecutionService executionService = new InferenceExecutionService(new ExecutionConfiguration()
+                .mode(ExecutionMode.WORKER_POOL)
+                .workerPoolSize(1)
+                .maxInFlight(1)
+                .maxQueueSize(1));
+
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch finished = new CountDownLatch(2);
+
+            executionService.execute(() -> {
+                started.countDown();
+                release.await();
+                return "first";
+            }, result -> finished.countDown());
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            AtomicReference<String> queuedResult = new AtomicReference<>();
+            executionService.execute(() -> "second", result -> {
+                queuedResult.set(result.result());
+                finished.countDown();
+            });
+            assertEquals(2, executionService.pendingCount());
+
+            AtomicReference<Throwable> rejection = new AtomicReference<>();
+            executionService.execute(() -> "third", result -> rejection.set(result.cause()));
+            assertTrue(rejection.get() instanceof RejectedExecutionException);
+
+            release.countDown();
+            assertTrue(finished.await(10, TimeUnit.SECONDS));
+            assertEquals("second", queuedResult.get());
+            assertEquals(0, executionService.pendingCount());
+        } finally {
+            executionService.close();
+        }
+    }
+
+    @Test
+    public void testQueuedTaskDeadline() throws Exception {
+        InferenceExecutionService executionService = new InferenceExecutionService(new ExecutionConfiguration()
+                .mode(ExecutionMode.WORKER_POOL)
+                .workerPoolSize(1)
+                .maxInFlight(1)
+                .maxQueueSize(1));
+
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            executionService.execute(() -> {
+                started.countDown();
+                release.await();
+                return "first";
+            }, result -> { });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            CountDownLatch expired = new CountDownLatch(1);
+            AtomicReference<Throwable> cause = new AtomicReference<>();
+            AtomicReference<Boolean> executed = new AtomicReference<>(false);
+            executionService.execute(() -> {
+                executed.set(true);
+                return "second";
+            }, TimeUnit.MILLISECONDS.toNanos(50), result -> {
+                cause.set(result.cause());
+                expired.countDown();
+            });
+
+            //Fails while the first task is still executing, without waiting for it
+            assertTrue(expired.await(10, TimeUnit.SECONDS));
+            assertTrue(cause.get() instanceof TimeoutException);
+            assertEquals(1, executionService.pendingCount());
+
+            release.countDown();
+            Thread.sleep(100);
+            assertFalse(executed.get());
+            assertEquals(0, executionService.pendingCount());
+        } finally {
+            executionService.close();
+        }
+    }
+
+    @Test
+    public void testAdaptiveLimits() {
+        ConcurrencyLimit aimd = new ConcurrencyLimit.Aimd(1, 10, TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(10, aimd.getLimit());
+        aimd.onSample(TimeUnit.MILLISECONDS.toNanos(200), 10, false);
+        assertEquals(9, aimd.getLimit());
+        aimd.onSample(0, 1, true);
+        assertEquals(8, aimd.getLimit());
+        aimd.onSample(TimeUnit.MILLISECONDS.toNanos(10), 8, false);
+        assertEquals(9, aimd.getLimit());
+        aimd.onSample(TimeUnit.MILLISECONDS.toNanos(10), 1, false);      //Limit isn't in use: no increase
+        assertEquals(9, aimd.getLimit());
+
+        ConcurrencyLimit gradient = new ConcurrencyLimit.Gradient(1, 100);
+        for (int i = 0; i < 100; i++) {
+            gradient.onSample(TimeUnit.MILLISECONDS.toNanos(10), gradient.getLimit(), false);
+        }
+        assertEquals(100, gradient.getLimit());
+        for (int i = 0; i < 50; i++) {
+            gradient.onSample(TimeUnit.MILLISECONDS.toNanos(100), gradient.getLimit(), false);
+        }
+        assertTrue(gradient.getLimit() < 50);
+        assertTrue(gradient.getLimit() >= 1);
+    }
+
+    @Test
+    public void testGradientLimitBacksOffOnExpiries() {
+        ConcurrencyLimit gradient = new ConcurrencyLimit.Gradient(1, 100);
+        for (int i = 0; i < 100; i++) {
+            gradient.onSample(TimeUnit.MILLISECONDS.toNanos(10), gradient.getLimit(), false);
+        }
+        assertEquals(100, gradient.getLimit());
+
+        //Overloaded: requests expire in the queue, and those that execute are 3 times slower than before. The expiries
+        //must not count as (near zero latency) fast executions, which would keep the limit from backing off
+        for (int i = 0; i < 40; i++) {
+            int before = gradient.getLimit();
+            gradient.onSample(0, gradient.getLimit(), true);
+            assertTrue(gradient.getLimit() <= before);
+            gradient.onSample(TimeUnit.MILLISECONDS.toNanos(30), gradient.getLimit(), false);
+        }
+        assertTrue(String.valueOf(gradient.getLimit()), gradient.getLimit() < 10);
+    }
+
+    @Test
+    public void testEventLoopModeRunsInline() {
+        InferenceExecutionService executionService = InferenceExecutionService.eventLoop();
+        Thread caller = Thread.currentThread();
+
+        AtomicReference<Thread> executedOn = new AtomicReference<>();
+        executionService.execute(() -> {
+            executedOn.set(Thread.currentThread());
+            return true;
+        }, result -> assertTrue(result.succeeded()));
+
+        assertSame(caller, executedOn.get());
+    }
+
+    @Test
+    public void testSharedPerVertxAndName() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        ExecutionConfiguration configuration = new ExecutionConfiguration()
+                .mode(ExecutionMode.WORKER_POOL)
+                .workerPoolSize(1)
+                .maxInFlight(1);
+        try {
+            InferenceExecutionService a = InferenceExecutionService.shared(vertx, "http", configuration);
+            InferenceExecutionService b = InferenceExecutionService.shared(vertx, "http", configuration);
+            InferenceExecutionService c = InferenceExecutionService.shared(vertx, "grpc", configuration);
+            assertSame(a, b);
+            assertNotSame(a, c);
+            assertEquals("http", a.getName());
+
+            //Metrics are tagged by name, not by instance
+            MeterRegistry registry = MicrometerRegistry.getRegistry();
+            assertNotNull(registry.find(InferenceExecutionService.METRIC_PREFIX + ".limit").tag("service", "http").gauge());
+            assertNotNull(registry.find(InferenceExecutionService.METRIC_PREFIX + ".limit").tag("service", "grpc").gauge());
+
+            //Still usable until closed by every user
+            a.close();
+            CountDownLatch done = new CountDownLatch(1);
+            AtomicReference<String> result = new AtomicReference<>();
+            b.execute(() -> "ok", r -> {
+                result.set(r.result());
+                done.countDown();
+            });
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals("ok", result.get());
+
+            b.close();
+            assertNull(registry.find(InferenceExecutionService.METRIC_PREFIX + ".limit").tag("service", "http").gauge());
+            InferenceExecutionService d = InferenceExecutionService.shared(vertx, "http", configuration);
+            assertNotSame(a, d);
+            d.close();
+            c.close();
+        } finally {
+            vertx.close();
+        }
+    }
+}
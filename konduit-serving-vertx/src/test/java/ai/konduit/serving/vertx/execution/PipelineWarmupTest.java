@@ -0,0 +1,61 @@
+/*
+ *  ******************************************************************************
+ *  * Copyright (c) 2022 Konduit K.K.
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package ai.konduit.serving.vertx.execution;
+
+import ai.konduit.serving.pipeline.api.data.NDArray;
+import ai.konduit.serving.pipeline.api.data.NDArrayType;
+import ai.konduit.serving.pipeline.impl.pipeline.SequencePipeline;
+import ai.konduit.serving.pipeline.impl.step.logging.LoggingStep;
+import ai.konduit.serving.vertx.config.WarmupConfiguration;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class PipelineWarmupTest {
+
+    @Test
+    public void testSynthesizedInputs() {
+        NDArray arr = PipelineWarmup.synthesize(new WarmupConfiguration.WarmupInput("in", NDArrayType.FLOAT, new long[]{-1, 3, 2}));
+        assertEquals(NDArrayType.FLOAT, arr.type());
+        assertArrayEquals(new long[]{1, 3, 2}, arr.shape());
+
+        WarmupConfiguration config = new WarmupConfiguration()
+                .iterations(3)
+                .inputs(Collections.singletonList(new WarmupConfiguration.WarmupInput("in", NDArrayType.INT32, new long[]{2, 2})));
+        PipelineWarmup warmup = new PipelineWarmup(config, SequencePipeline.builder().add(new LoggingStep()).build().executor());
+        assertFalse(warmup.isReady());
+        assertEquals(PipelineWarmup.State.PENDING, warmup.getState());
+
+        warmup.run();
+        assertTrue(warmup.isReady());
+        assertEquals(PipelineWarmup.State.COMPLETE, warmup.getState());
+        assertEquals(3, warmup.getCompletedExecutions());
+        assertEquals(3, warmup.getTotalExecutions());
+    }
+
+    @Test
+    public void testNoWarmup() {
+        PipelineWarmup warmup = new PipelineWarmup(new WarmupConfiguration(), SequencePipeline.builder().add(new LoggingStep()).build().executor());
+        warmup.run();
+        assertTrue(warmup.isReady());
+        assertEquals(0, warmup.getTotalExecutions());
+    }
+}